@@ -0,0 +1,124 @@
+package org.example.tunesfx;
+
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.utils.AudioExporter;
+import org.example.tunesfx.utils.ProjectFile;
+import org.example.tunesfx.utils.ProjectLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Render sin interfaz (no arranca JavaFX ni OpenAL): lee proyectos en texto (ver ProjectLoader)
+ * o binarios (.tfxp, ver ProjectFile) y los exporta a WAV. Sirve para renderizar canciones en lote en un servidor.
+ * <pre>
+ * java -cp ... org.example.tunesfx.HeadlessRenderer [--jobs N] [--out carpeta] [--bpm X] proyecto1.txt proyecto2.txt ...
+ * </pre>
+ * Cada proyecto se escribe como carpeta/nombre.wav. Se renderizan como mucho N proyectos a la vez
+ * (cada render ya reparte su trabajo en el ForkJoinPool común, así que N no tiene por qué ser alto).
+ */
+public class HeadlessRenderer {
+
+    public static void main(String[] args) throws Exception {
+        int jobs = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        File outDir = null;
+        Double bpmOverride = null;
+        List<File> projects = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--jobs" -> jobs = Math.max(1, Integer.parseInt(args[++i]));
+                case "--out" -> outDir = new File(args[++i]);
+                case "--bpm" -> bpmOverride = Double.parseDouble(args[++i]);
+                case "-h", "--help" -> {
+                    printUsage();
+                    return;
+                }
+                default -> projects.add(new File(args[i]));
+            }
+        }
+        if (projects.isEmpty()) {
+            printUsage();
+            System.exit(2);
+        }
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) {
+            System.err.println("No se pudo crear la carpeta de salida: " + outDir);
+            System.exit(1);
+        }
+
+        int failed = render(projects, outDir, bpmOverride, jobs);
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Renderiza los proyectos con un pool de como mucho jobs hilos. Devuelve cuántos han fallado.
+     */
+    public static int render(List<File> projects, File outDir, Double bpmOverride, int jobs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, projects.size()));
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (File projectFile : projects) {
+                results.add(pool.submit(() -> {
+                    long t0 = System.nanoTime();
+                    File output = outputFileFor(projectFile, outDir);
+                    try {
+                        SongProject project = loadProject(projectFile);
+                        if (bpmOverride != null) project.setBpm(bpmOverride);
+                        AudioExporter.exportProject(output, project, progress -> {}, () -> Thread.currentThread().isInterrupted());
+                        System.out.printf("%s -> %s (%.1f s)%n", projectFile.getName(), output.getPath(), (System.nanoTime() - t0) / 1e9);
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        System.err.println("Error renderizando " + projectFile + ": " + e.getMessage());
+                        e.printStackTrace();
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double minutes = (System.nanoTime() - start) / 60e9;
+        int done = projects.size() - failed.get();
+        System.out.printf("Rendered %d/%d songs in %.1f s (%.2f songs/minute, %d jobs)%n",
+                done, projects.size(), minutes * 60, done / minutes, Math.min(jobs, projects.size()));
+        return failed.get();
+    }
+
+    // Los .tfxp son proyectos binarios guardados desde la app; el resto, proyectos en texto
+    private static SongProject loadProject(File projectFile) throws IOException {
+        if (projectFile.getName().endsWith("." + ProjectFile.EXTENSION)) {
+            SongProject project = ProjectFile.open(projectFile);
+            ProjectFile.awaitSamples(project);
+            return project;
+        }
+        return ProjectLoader.loadText(projectFile);
+    }
+
+    private static File outputFileFor(File projectFile, File outDir) {
+        String name = projectFile.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        File dir = outDir != null ? outDir : projectFile.getAbsoluteFile().getParentFile();
+        return new File(dir, name + ".wav");
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage: HeadlessRenderer [--jobs N] [--out dir] [--bpm X] project.txt|project.tfxp [...]");
+    }
+}
@@ -3,21 +3,58 @@ package org.example.tunesfx.audio;
 import org.example.tunesfx.synth.Sintetizador;
 import org.example.tunesfx.utils.OpenALException;
 import org.lwjgl.openal.AL10;
+import org.lwjgl.openal.AL11;
 import org.lwjgl.openal.EXTDisconnect;
+import org.lwjgl.openal.SOFTCallbackBuffer;
+import org.lwjgl.openal.SOFTCallbackBufferType;
+import org.lwjgl.openal.SOFTSourceLatency;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.BufferUtils;
 import org.example.tunesfx.utils.Utils;
 
-import java.util.function.Supplier;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.lwjgl.openal.AL10.*;
 import static org.lwjgl.openal.ALC10.*;
 
+/**
+ * Salida de audio de un stream (mezclador de samples o sintetizador).
+ * Tiene dos modos, elegidos por {@link AudioEngine} al iniciar:
+ * - QUEUE: este hilo rellena una cola de buffers y duerme entre comprobaciones.
+ * - CALLBACK: el hilo del driver (AL_SOFT_callback_buffer) pide el audio cuando lo necesita
+ *   y este hilo solo vigila desconexiones y estadísticas.
+ * En ambos modos se mide la latencia y la carga de CPU del audio, y se publica un {@link AudioClock}
+ * con lo que se ha entregado y lo que falta por oírse (para pintar el playhead con lo que suena).
+ * El tamaño de bloque y el número de buffers salen del {@link LatencyProfile} activo,
+ * que se puede cambiar en caliente (o adaptar solo si hay underruns).
+ */
 public class Audio extends Thread {
+
+    /**
+     * Rellena el bloque que se va a encolar en OpenAL. Se llama desde el hilo de audio
+     * y no debe reservar memoria: el buffer es directo y se reutiliza.
+     */
+    @FunctionalInterface
+    public interface RenderCallback {
+        /**
+         * @param out buffer directo con capacidad para {@link #BUFFER_SIZE} frames (intercalados si es estéreo);
+         *            se escribe con put(index, value) desde la posición 0
+         * @param frames frames a escribir en este bloque (nunca más de {@link #BUFFER_SIZE})
+         * @return false si no hay nada que sonar (el hilo se detiene)
+         */
+        boolean render(ShortBuffer out, int frames);
+    }
     private volatile boolean initialized = false;
     // Reconexión automática: bandera para reiniciar desde el hilo de audio
     private volatile boolean needsReinit = false;
 
     // API para forzar reinicialización externa si fuera necesario
-    public synchronized void requestReinit() {
+    public void requestReinit() {
         needsReinit = true;
     }
 
@@ -25,16 +62,86 @@ public class Audio extends Thread {
         return initialized;
     }
 
+    // Máximos de todos los perfiles de latencia (los buffers se reservan con este tamaño)
     public static final int BUFFER_SIZE = 512;
     static final int BUFFER_COUNT = 8;
-    private final Supplier<short[]> bufferSupplier;
+    // En modo callback el hilo solo hace tareas de mantenimiento
+    private static final long HOUSEKEEPING_MILLIS = 100;
+    private static final long STATS_WINDOW_NANOS = 500_000_000L;
+
+    // Auto-adaptación: crecer tras XRUNS_TO_GROW underruns en XRUN_WINDOW, encoger tras STABLE_PERIOD sin ninguno
+    private static final int XRUNS_TO_GROW = 3;
+    private static final long XRUN_WINDOW_NANOS = 10_000_000_000L;
+    private static final long STABLE_PERIOD_NANOS = 30_000_000_000L;
+
+    private final RenderCallback renderCallback;
     private final int[] buffers = new int[BUFFER_COUNT];
+    private final int format;
+    private final int channels;
+    // Anillo de buffers directos: se entregan tal cual a alBufferData (sin copiar arrays del heap)
+    private final ShortBuffer[] ring = new ShortBuffer[BUFFER_COUNT];
+    private int ringIndex = 0;
+    // Reutilizado en cada comprobación de desconexión
+    private final IntBuffer connectedQuery = BufferUtils.createIntBuffer(1);
+    private final DoubleBuffer latencyQuery = BufferUtils.createDoubleBuffer(2);
+    private final LongBuffer offsetLatencyQuery = BufferUtils.createLongBuffer(2);
     private int source;
     private volatile boolean closed;
-    private volatile boolean running;
+    // Estado de reproducción en un solo long: el bit 0 dice si está sonando y el resto cuenta las peticiones
+    // de reproducción, para no perder una que llegue justo al parar. Así el hilo del driver para con un CAS
+    // sin tocar el monitor (que usa la UI al pedir reproducir)
+    private static final long RUNNING = 1;
+    private static final long REQUEST = 2;
+    private final AtomicLong playback = new AtomicLong();
+
+    // --- Perfil de latencia y underruns ---
+    private volatile LatencyProfile activeProfile = AudioEngine.getLatencyProfile();
+    private LatencyProfile selectedProfile = activeProfile;
+    private int queuedBuffers = 0;
+    // true mientras se está entregando audio sin pausas: si la fuente se para entonces, es que se quedó sin datos
+    private boolean streaming = false;
+    private volatile long underruns = 0;
+    private int xrunsInWindow = 0;
+    private long xrunWindowStart = 0;
+    private long lastXrunOrResize = 0;
+
+    // --- Modo callback ---
+    private volatile AudioEngine.OutputMode activeMode = AudioEngine.OutputMode.QUEUE;
+    private SOFTCallbackBufferType driverCallback;
+    private int callbackBuffer;
+    // Bloque ya mezclado pendiente de entregar al driver (en muestras, no bytes)
+    private int stagingPos = 0;
+    private int stagingLen = 0;
+
+    // --- Reloj ---
+    private final AudioClock clock = new AudioClock(Sintetizador.AudioInfo.SAMPLE_RATE);
+    // Frames entregados por el render (solo los bloques que sonaron, igual que el reloj del mezclador)
+    private long renderedFrames = 0;
+    // Frames que hay en cada buffer de la cola (los iniciales van vacíos) y el total encolado
+    private final int[] bufferFrames = new int[BUFFER_COUNT];
+    private int queuedFrames = 0;
+    // Latencia del dispositivo de la última consulta (el callback del driver no puede llamar a OpenAL)
+    private volatile double deviceLatencySeconds = 0;
 
-    public Audio(Supplier<short[]> bufferSupplier) {
-        this.bufferSupplier = bufferSupplier;
+    // --- Estadísticas ---
+    private long busyNanos = 0;
+    private long statsWindowStart = 0;
+    private volatile double cpuLoad = 0;
+    private volatile double latencyMillis = 0;
+
+    public Audio(RenderCallback renderCallback) {
+        this(renderCallback, false);
+    }
+
+    // stereo = true: el callback escribe muestras intercaladas (L, R) de BUFFER_SIZE frames
+    public Audio(RenderCallback renderCallback, boolean stereo) {
+        this.renderCallback = renderCallback;
+        this.format = stereo ? AL_FORMAT_STEREO16 : AL_FORMAT_MONO16;
+        this.channels = stereo ? 2 : 1;
+        int samplesPerBuffer = BUFFER_SIZE * channels;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            ring[i] = BufferUtils.createShortBuffer(samplesPerBuffer);
+        }
         start();
     }
 
@@ -42,23 +149,54 @@ public class Audio extends Thread {
         source = alGenSources();
         catchInternalException();
 
-        alGenBuffers(buffers);
+        selectedProfile = AudioEngine.getLatencyProfile();
+        activeProfile = selectedProfile;
+        streaming = false;
+        lastXrunOrResize = System.nanoTime();
+
+        activeMode = AudioEngine.getOutputMode();
+        if (activeMode == AudioEngine.OutputMode.CALLBACK) {
+            initCallbackMode();
+        } else {
+            initQueueMode();
+        }
+
+        alSourcePlay(source);
+        catchInternalException();
+        updateLatency();
+        initialized = true;
+    }
+
+    private void initQueueMode() {
+        queuedBuffers = activeProfile.getBufferCount();
+        queuedFrames = 0;
+        for (int i = 0; i < queuedBuffers; i++) {
+            buffers[i] = alGenBuffers();
+            bufferFrames[i] = 0;
+        }
         catchInternalException();
 
-        for (int i = 0; i < BUFFER_COUNT; i++) {
+        for (int i = 0; i < queuedBuffers; i++) {
             int buf = buffers[i];
             // Cargamos buffers vacíos iniciales
-            AL10.alBufferData(buf, AL_FORMAT_MONO16, new short[0], Sintetizador.AudioInfo.SAMPLE_RATE);
+            AL10.alBufferData(buf, format, new short[0], Sintetizador.AudioInfo.SAMPLE_RATE);
             alSourceQueueBuffers(source, buf);
         }
+    }
 
-        alSourcePlay(source);
+    private void initCallbackMode() {
+        stagingPos = 0;
+        stagingLen = 0;
+        driverCallback = SOFTCallbackBufferType.create((userPtr, data, numBytes) -> fillFromDriver(data, numBytes));
+        callbackBuffer = alGenBuffers();
+        SOFTCallbackBuffer.alBufferCallbackSOFT(callbackBuffer, format, Sintetizador.AudioInfo.SAMPLE_RATE, driverCallback, MemoryUtil.NULL);
+        catchInternalException();
+        alSourcei(source, AL_BUFFER, callbackBuffer);
         catchInternalException();
-        initialized = true;
     }
 
     public boolean isRunning() {
-        return running;
+        return (playback.get() & RUNNING) != 0;
     }
 
     @Override
@@ -78,39 +216,12 @@ public class Audio extends Thread {
             }
 
             try {
-                // Bloqueamos solo la condición de espera
-                synchronized (this) {
-                    while (!running && !closed) {
-                        Utils.handleProcedure(this::wait, true);
-                    }
-                }
-                if (closed) break;
-
-                // --- 1. DETECTAR DESCONEXIÓN ACTIVAMENTE ---
-                if (AudioEngine.isInitialized() && !isDeviceConnected()) {
-                    System.out.println("Dispositivo de audio desconectado. Reconectando automáticamente...");
-                    AudioCoordinator.requestReconnection("Dispositivo desconectado detectado.");
-                    continue; // Volvemos al inicio del bucle tras recuperar
+                updateLatencyProfile();
+                if (activeMode == AudioEngine.OutputMode.CALLBACK) {
+                    runHousekeeping();
+                } else {
+                    runQueueIteration();
                 }
-                // Procesamiento de buffers normal
-                int processedBufs = alGetSourcei(source, AL_BUFFERS_PROCESSED);
-                for (int i = 0; i < processedBufs; ++i) {
-                    short[] samples = bufferSupplier.get();
-                    if (samples == null) {
-                        running = false;
-                        break;
-                    }
-                    int oldBuffer = alSourceUnqueueBuffers(source);
-                    alBufferData(oldBuffer, AL_FORMAT_MONO16, samples, Sintetizador.AudioInfo.SAMPLE_RATE);
-                    alSourceQueueBuffers(source, oldBuffer);
-                    catchInternalException();
-                }
-
-                if (alGetSourcei(source, AL_SOURCE_STATE) != AL_PLAYING) {
-                    alSourcePlay(source);
-                }
-                catchInternalException();
-
             } catch (OpenALException e) {
                 // Si falla en medio de un proceso por culpa del OS, capturamos el error
                 // para evitar que el Thread muera y forzamos la reconexión.
@@ -123,12 +234,277 @@ public class Audio extends Thread {
         cleanupResources();
     }
 
+    // Modo cola: rellena los buffers procesados y duerme hasta la siguiente comprobación
+    private void runQueueIteration() {
+        // Bloqueamos solo la condición de espera
+        synchronized (this) {
+            while (!isRunning() && !closed) {
+                // Pausa normal (no había nada que sonar): al volver no cuenta como underrun
+                streaming = false;
+                Utils.handleProcedure(this::wait, true);
+            }
+        }
+        if (closed) return;
+        long start = System.nanoTime();
+
+        // --- 1. DETECTAR DESCONEXIÓN ACTIVAMENTE ---
+        if (AudioEngine.isInitialized() && !isDeviceConnected()) {
+            System.out.println("Dispositivo de audio desconectado. Reconectando automáticamente...");
+            AudioCoordinator.requestReconnection("Dispositivo desconectado detectado.");
+            return; // Volvemos al inicio del bucle tras recuperar
+        }
+        // Si la fuente se ha parado mientras le íbamos dando audio, se ha quedado sin datos
+        int state = alGetSourcei(source, AL_SOURCE_STATE);
+        if (state == AL_STOPPED && streaming) {
+            onUnderrun(start);
+        }
+
+        // Procesamiento de buffers normal
+        int frames = activeProfile.getBufferSize();
+        int processedBufs = alGetSourcei(source, AL_BUFFERS_PROCESSED);
+        for (int i = 0; i < processedBufs; ++i) {
+            long requestsSeen = playback.get();
+            ShortBuffer samples = ring[ringIndex];
+            samples.clear();
+            if (!renderCallback.render(samples, frames)) {
+                stopIfNoNewRequests(requestsSeen);
+                streaming = false;
+                break;
+            }
+            samples.limit(frames * channels);
+            streaming = true;
+            renderedFrames += frames;
+            ringIndex = (ringIndex + 1) % BUFFER_COUNT;
+            int oldBuffer = alSourceUnqueueBuffers(source);
+            alBufferData(oldBuffer, format, samples, Sintetizador.AudioInfo.SAMPLE_RATE);
+            alSourceQueueBuffers(source, oldBuffer);
+            catchInternalException();
+            trackQueuedFrames(oldBuffer, frames);
+        }
+
+        if (alGetSourcei(source, AL_SOURCE_STATE) != AL_PLAYING) {
+            alSourcePlay(source);
+        }
+        catchInternalException();
+        if (processedBufs > 0) {
+            updateLatency();
+        }
+        if (streaming) {
+            publishQueueClock();
+        }
+        accountBusyTime(start);
+
+        // Antes esto era un bucle activo que gastaba un núcleo entero: ahora esperamos medio buffer
+        LockSupport.parkNanos(frames * 1_000_000_000L / Sintetizador.AudioInfo.SAMPLE_RATE / 2);
+    }
+
+    // Modo callback: el driver pide el audio; aquí solo vigilamos el dispositivo y medimos
+    private void runHousekeeping() throws InterruptedException {
+        synchronized (this) {
+            if (!closed) wait(HOUSEKEEPING_MILLIS);
+        }
+        if (closed) return;
+
+        if (AudioEngine.isInitialized() && !isDeviceConnected()) {
+            System.out.println("Dispositivo de audio desconectado. Reconectando automáticamente...");
+            AudioCoordinator.requestReconnection("Dispositivo desconectado detectado.");
+            return;
+        }
+        if (alGetSourcei(source, AL_SOURCE_STATE) != AL_PLAYING) {
+            alSourcePlay(source);
+        }
+        catchInternalException();
+        updateLatency();
+    }
+
+    /**
+     * Llamado desde el hilo del driver de OpenAL Soft: copia numBytes de audio en data.
+     * Mezclamos bloques de BUFFER_SIZE frames y los entregamos por trozos, porque el driver
+     * puede pedir cualquier tamaño. Nunca devolvemos menos bytes de los pedidos (eso pararía
+     * la fuente): si no hay nada sonando se entrega silencio.
+     */
+    private int fillFromDriver(long data, int numBytes) {
+        long start = System.nanoTime();
+        ShortBuffer staging = ring[0];
+        int samplesNeeded = numBytes / 2;
+        int written = 0;
+        while (written < samplesNeeded) {
+            if (stagingPos >= stagingLen) {
+                long requestsSeen = playback.get();
+                int frames = activeProfile.getBufferSize();
+                staging.clear();
+                if (!renderCallback.render(staging, frames)) {
+                    stopIfNoNewRequests(requestsSeen);
+                    stagingPos = stagingLen = 0;
+                    MemoryUtil.memSet(data + written * 2L, 0, (long) (samplesNeeded - written) * 2);
+                    break;
+                }
+                stagingPos = 0;
+                stagingLen = frames * channels;
+                renderedFrames += frames;
+            }
+            int count = Math.min(stagingLen - stagingPos, samplesNeeded - written);
+            MemoryUtil.memCopy(MemoryUtil.memAddress(staging) + stagingPos * 2L, data + written * 2L, count * 2L);
+            stagingPos += count;
+            written += count;
+        }
+        // Lo entregado ahora se oye tras la latencia del dispositivo; lo que queda en staging, después
+        int stagedFrames = (stagingLen - stagingPos) / channels;
+        clock.publish(renderedFrames, stagedFrames + deviceLatencySeconds * Sintetizador.AudioInfo.SAMPLE_RATE, System.nanoTime());
+        accountBusyTime(start);
+        return numBytes;
+    }
+
+    // Latencia = audio que tenemos encolado/preparado + latencia propia del dispositivo (si se puede consultar)
+    private void updateLatency() {
+        double deviceSeconds = 0;
+        if (AudioEngine.isSourceLatencySupported() && source != 0) {
+            SOFTSourceLatency.alGetSourcedvSOFT(source, SOFTSourceLatency.AL_SEC_OFFSET_LATENCY_SOFT, latencyQuery);
+            deviceSeconds = latencyQuery.get(1);
+        }
+        deviceLatencySeconds = deviceSeconds;
+        // En modo callback, como mucho un bloque mezclado esperando a ser entregado
+        LatencyProfile profile = activeProfile;
+        int bufferedFrames = (activeMode == AudioEngine.OutputMode.CALLBACK)
+                ? profile.getBufferSize() : profile.getBufferCount() * profile.getBufferSize();
+        latencyMillis = bufferedFrames * 1000.0 / Sintetizador.AudioInfo.SAMPLE_RATE + deviceSeconds * 1000.0;
+    }
+
+    // El buffer que se acaba de volver a encolar ahora lleva frames (antes podía ir vacío o con otro tamaño)
+    private void trackQueuedFrames(int buffer, int frames) {
+        for (int i = 0; i < queuedBuffers; i++) {
+            if (buffers[i] == buffer) {
+                queuedFrames += frames - bufferFrames[i];
+                bufferFrames[i] = frames;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Modo cola: lo que falta por oírse es lo encolado menos lo que ya ha tocado la fuente (su offset dentro
+     * de la cola) más la latencia del dispositivo. Con AL_SOFT_source_latency las dos cosas salen de la
+     * misma consulta (offset en punto fijo 32.32 y latencia en nanosegundos), así no se desfasan entre sí.
+     */
+    private void publishQueueClock() {
+        long offset;
+        double deviceFrames = 0;
+        if (AudioEngine.isSourceLatencySupported()) {
+            SOFTSourceLatency.alGetSourcei64vSOFT(source, SOFTSourceLatency.AL_SAMPLE_OFFSET_LATENCY_SOFT, offsetLatencyQuery);
+            offset = offsetLatencyQuery.get(0) >> 32;
+            deviceFrames = offsetLatencyQuery.get(1) * Sintetizador.AudioInfo.SAMPLE_RATE / 1_000_000_000.0;
+        } else {
+            offset = alGetSourcei(source, AL11.AL_SAMPLE_OFFSET);
+        }
+        clock.publish(renderedFrames, queuedFrames - offset + deviceFrames, System.nanoTime());
+    }
+
+    // Carga de CPU = tiempo trabajando / tiempo real, en ventanas de medio segundo
+    private void accountBusyTime(long startNanos) {
+        long now = System.nanoTime();
+        busyNanos += now - startNanos;
+        if (statsWindowStart == 0) statsWindowStart = startNanos;
+        long elapsed = now - statsWindowStart;
+        if (elapsed >= STATS_WINDOW_NANOS) {
+            cpuLoad = (double) busyNanos / elapsed;
+            busyNanos = 0;
+            statsWindowStart = now;
+        }
+    }
+
+    private void onUnderrun(long now) {
+        underruns++;
+        lastXrunOrResize = now;
+        if (now - xrunWindowStart > XRUN_WINDOW_NANOS) {
+            xrunWindowStart = now;
+            xrunsInWindow = 0;
+        }
+        xrunsInWindow++;
+        System.err.println("[Audio] Underrun (" + underruns + ") con perfil " + activeProfile);
+    }
+
+    /**
+     * Decide qué perfil debe usar este stream: el elegido por el usuario o, con auto-adaptación,
+     * uno mayor tras varios underruns seguidos (y de vuelta hacia el elegido tras un rato estable).
+     */
+    private void updateLatencyProfile() {
+        LatencyProfile selected = AudioEngine.getLatencyProfile();
+        LatencyProfile target = activeProfile;
+        long now = System.nanoTime();
+
+        if (selected != selectedProfile) {
+            // El usuario ha cambiado el perfil: se aplica tal cual
+            selectedProfile = selected;
+            target = selected;
+        } else if (!AudioEngine.isAutoAdaptLatency()) {
+            target = selected;
+        } else if (xrunsInWindow >= XRUNS_TO_GROW && activeProfile.larger() != null) {
+            target = activeProfile.larger();
+        } else if (activeProfile.ordinal() > selected.ordinal() && now - lastXrunOrResize >= STABLE_PERIOD_NANOS) {
+            target = activeProfile.smaller();
+        }
+
+        if (target != activeProfile) {
+            applyLatencyProfile(target);
+            xrunsInWindow = 0;
+            lastXrunOrResize = now;
+        }
+    }
+
+    private void applyLatencyProfile(LatencyProfile profile) {
+        System.out.println("[Audio] Perfil de latencia: " + activeProfile + " -> " + profile);
+        activeProfile = profile;
+        if (activeMode == AudioEngine.OutputMode.CALLBACK) {
+            // El driver pide lo que necesita: solo cambia el tamaño de bloque del siguiente render
+            return;
+        }
+        // Modo cola: reconstruimos la cola con el nuevo número de buffers
+        alSourceStop(source);
+        alSourcei(source, AL_BUFFER, 0);
+        deleteQueueBuffers();
+        streaming = false;
+        initQueueMode();
+        alSourcePlay(source);
+        catchInternalException();
+        updateLatency();
+    }
+
+    public AudioEngine.OutputMode getActiveMode() {
+        return activeMode;
+    }
+
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public AudioClock getClock() {
+        return clock;
+    }
+
+    // Fracción (0..1) de un núcleo que consume este stream
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    public LatencyProfile getActiveProfile() {
+        return activeProfile;
+    }
+
+    // Veces que la fuente se ha quedado sin audio en modo cola
+    public long getUnderrunCount() {
+        return underruns;
+    }
+
+    public String getStatsSummary() {
+        return String.format("%s %s · latencia %.1f ms · CPU %.1f %% · underruns %d",
+                activeMode, activeProfile, latencyMillis, cpuLoad * 100.0, underruns);
+    }
+
     // Comprueba mediante la extensión de LWJGL si el hardware sigue físicamente ahí
     private boolean isDeviceConnected() {
         try {
-            int[] connected = new int[1];
-            alcGetIntegerv(AudioEngine.getDevice(), EXTDisconnect.ALC_CONNECTED, connected);
-            return connected[0] != ALC_FALSE;
+            alcGetIntegerv(AudioEngine.getDevice(), EXTDisconnect.ALC_CONNECTED, connectedQuery);
+            return connectedQuery.get(0) != ALC_FALSE;
         } catch (Exception e) {
             return false;
         }
@@ -156,15 +532,43 @@ public class Audio extends Thread {
             alDeleteSources(source);
             source = 0;
         }
-        if (buffers[0] != 0) {
-            alDeleteBuffers(buffers);
-            for (int i = 0; i < BUFFER_COUNT; i++) buffers[i] = 0;
+        deleteQueueBuffers();
+        if (callbackBuffer != 0) {
+            alDeleteBuffers(callbackBuffer);
+            callbackBuffer = 0;
+        }
+        // La fuente ya no existe, el driver no volverá a llamar al callback
+        if (driverCallback != null) {
+            driverCallback.free();
+            driverCallback = null;
         }
     }
 
-    public synchronized void triggerPlayBack() {
-        running = true;
-        notifyAll();
+    private void deleteQueueBuffers() {
+        for (int i = 0; i < queuedBuffers; i++) {
+            if (buffers[i] != 0) alDeleteBuffers(buffers[i]);
+            buffers[i] = 0;
+        }
+        queuedBuffers = 0;
+    }
+
+    public void triggerPlayBack() {
+        long state;
+        do {
+            state = playback.get();
+        } while (!playback.compareAndSet(state, (state + REQUEST) | RUNNING));
+        // El monitor solo despierta al hilo en modo cola cuando está parado esperando
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    // Solo paramos si nadie ha pedido reproducir mientras el render devolvía false: cualquier petición
+    // cambia el contador y el CAS falla. Sin locks, porque se llama desde el hilo del driver
+    private void stopIfNoNewRequests(long requestsSeen) {
+        if ((requestsSeen & RUNNING) != 0) {
+            playback.compareAndSet(requestsSeen, requestsSeen & ~RUNNING);
+        }
     }
 
     private void catchInternalException() {
@@ -173,4 +577,4 @@ public class Audio extends Thread {
             throw new OpenALException(err);
         }
     }
-}
\ No newline at end of file
+}
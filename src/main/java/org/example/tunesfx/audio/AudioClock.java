@@ -0,0 +1,69 @@
+package org.example.tunesfx.audio;
+
+/**
+ * Reloj de una salida de audio ({@link Audio}): cuántos frames ha entregado el render y cuántos de ellos
+ * todavía no han salido por el altavoz (lo encolado en OpenAL más la latencia del dispositivo).
+ * Lo escribe el hilo de audio tras cada entrega y lo lee la UI sin locks, para saber qué se está oyendo.
+ * <p>
+ * Los tres valores se publican juntos con un contador de secuencia (impar mientras se escriben):
+ * el lector repite si lo ha pillado a medias. No reserva memoria en ningún lado.
+ */
+public final class AudioClock {
+
+    private final double sampleRate;
+
+    private volatile long sequence = 0;
+    // Frames entregados por el render desde que se creó la salida
+    private volatile long renderedFrames = 0;
+    // De esos, los que aún no se oyen en el momento stampNanos
+    private volatile double pendingFrames = 0;
+    private volatile long stampNanos = 0;
+
+    public AudioClock(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    // Solo desde el hilo de audio
+    void publish(long renderedFrames, double pendingFrames, long nanos) {
+        long seq = sequence;
+        sequence = seq + 1;
+        this.renderedFrames = renderedFrames;
+        this.pendingFrames = Math.max(0, pendingFrames);
+        this.stampNanos = nanos;
+        sequence = seq + 2;
+    }
+
+    // Si el hilo de audio ya ha publicado alguna vez (sin OpenAL nunca lo hace)
+    public boolean isRunning() {
+        return sequence != 0;
+    }
+
+    /**
+     * Frame (del reloj del render) que suena en el instante nanos (System.nanoTime()). Entre publicaciones
+     * se extrapola al ritmo de la tarjeta, pero nunca pasa de lo ya entregado.
+     */
+    public double audibleFrame(long nanos) {
+        long rendered;
+        double pending;
+        long stamp;
+        long seq;
+        do {
+            seq = sequence;
+            rendered = renderedFrames;
+            pending = pendingFrames;
+            stamp = stampNanos;
+        } while ((seq & 1) != 0 || seq != sequence);
+
+        double elapsed = Math.max(0, nanos - stamp) * sampleRate / 1_000_000_000.0;
+        return Math.min(rendered, rendered - pending + elapsed);
+    }
+
+    // Lo que tarda en oírse un frame recién entregado (según la última publicación)
+    public double getPendingMillis() {
+        return pendingFrames * 1000.0 / sampleRate;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+}
@@ -3,6 +3,7 @@ package org.example.tunesfx.audio; // O el paquete que prefieras
 import org.lwjgl.openal.AL;
 import org.lwjgl.openal.ALC;
 import org.lwjgl.openal.ALCCapabilities;
+import org.lwjgl.openal.ALCapabilities;
 
 import java.nio.IntBuffer;
 
@@ -11,9 +12,21 @@ import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class AudioEngine {
 
+    /**
+     * Cómo se entrega el audio a OpenAL.
+     * QUEUE: nuestro hilo rellena una cola de buffers (funciona en cualquier OpenAL).
+     * CALLBACK: el hilo del driver nos pide el audio (extensión AL_SOFT_callback_buffer).
+     */
+    public enum OutputMode { QUEUE, CALLBACK }
+
     private static long device;
     private static long context;
     private static boolean isInitialized = false;
+    private static volatile OutputMode outputMode = OutputMode.QUEUE;
+    private static volatile boolean sourceLatencySupported = false;
+    // Perfil elegido por el usuario; con autoAdapt cada stream puede subir temporalmente a uno mayor
+    private static volatile LatencyProfile latencyProfile = LatencyProfile.SAFE;
+    private static volatile boolean autoAdaptLatency = false;
 
     public static void init() {
         if (isInitialized) return;
@@ -38,7 +51,8 @@ public class AudioEngine {
         alcMakeContextCurrent(context);
 
         // 5. Crear las capacidades de AL (Esto soluciona tu error)
-        AL.createCapabilities(deviceCaps);
+        ALCapabilities alCaps = AL.createCapabilities(deviceCaps);
+        detectOutputMode(alCaps);
 
         isInitialized = true;
         System.out.println("Motor de audio OpenAL inicializado correctamente.");
@@ -76,7 +90,7 @@ public class AudioEngine {
                     return false;
                 }
                 alcMakeContextCurrent(newContext);
-                AL.createCapabilities(deviceCaps);
+                detectOutputMode(AL.createCapabilities(deviceCaps));
                 device = newDevice;
                 context = newContext;
                 isInitialized = true;
@@ -108,7 +122,7 @@ public class AudioEngine {
                 return false;
             }
             alcMakeContextCurrent(newContext);
-            AL.createCapabilities(newDeviceCaps);
+            detectOutputMode(AL.createCapabilities(newDeviceCaps));
             device = newDevice;
             context = newContext;
             System.out.println("AudioEngine: switched device to " + deviceName);
@@ -119,6 +133,42 @@ public class AudioEngine {
         }
     }
 
+    // Elige el modo de salida según las extensiones del dispositivo.
+    // -Dtunesfx.audioOutput=queue fuerza la cola de buffers (útil para comparar modos)
+    private static void detectOutputMode(ALCapabilities caps) {
+        boolean forceQueue = "queue".equalsIgnoreCase(System.getProperty("tunesfx.audioOutput"));
+        outputMode = (caps.AL_SOFT_callback_buffer && !forceQueue) ? OutputMode.CALLBACK : OutputMode.QUEUE;
+        sourceLatencySupported = caps.AL_SOFT_source_latency;
+        System.out.println("Modo de salida de audio: " + outputMode);
+    }
+
+    public static OutputMode getOutputMode() {
+        return outputMode;
+    }
+
+    // AL_SOFT_source_latency: permite preguntar la latencia real del dispositivo
+    public static boolean isSourceLatencySupported() {
+        return sourceLatencySupported;
+    }
+
+    public static LatencyProfile getLatencyProfile() {
+        return latencyProfile;
+    }
+
+    // Se aplica en caliente: cada hilo de Audio reconstruye su cola en la siguiente vuelta
+    public static void setLatencyProfile(LatencyProfile profile) {
+        if (profile != null) latencyProfile = profile;
+    }
+
+    public static boolean isAutoAdaptLatency() {
+        return autoAdaptLatency;
+    }
+
+    // Si está activo, la cola crece tras varios underruns seguidos y vuelve a encoger cuando todo va estable
+    public static void setAutoAdaptLatency(boolean enabled) {
+        autoAdaptLatency = enabled;
+    }
+
     public static long getDevice() {
         return device;
     }
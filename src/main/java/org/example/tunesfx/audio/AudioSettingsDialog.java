@@ -12,6 +12,11 @@ import java.util.Optional;
 
 public class AudioSettingsDialog {
     public static String showDialog(Stage owner) {
+        return showDialog(owner, null);
+    }
+
+    // playhead: el de la playlist, para enseñar su deriva respecto al audio (puede ser null)
+    public static String showDialog(Stage owner, PlayheadClock playhead) {
         List<String> devices = AudioDeviceManager.enumerateOutputDevices();
         ComboBox<String> combo = new ComboBox<>();
         combo.setItems(FXCollections.observableArrayList(devices));
@@ -20,6 +25,24 @@ public class AudioSettingsDialog {
         VBox root = new VBox(10);
         root.setPadding(new Insets(12));
         root.getChildren().addAll(new Label("Select an audio output device:"), combo);
+
+        // Perfil de latencia: se aplica al momento, sin esperar a "Aplicar"
+        ComboBox<LatencyProfile> latencyCombo = new ComboBox<>(FXCollections.observableArrayList(LatencyProfile.values()));
+        latencyCombo.setValue(AudioEngine.getLatencyProfile());
+        latencyCombo.setOnAction(e -> AudioEngine.setLatencyProfile(latencyCombo.getValue()));
+        CheckBox autoAdapt = new CheckBox("Auto-adapt on underruns");
+        autoAdapt.setSelected(AudioEngine.isAutoAdaptLatency());
+        autoAdapt.setOnAction(e -> AudioEngine.setAutoAdaptLatency(autoAdapt.isSelected()));
+        root.getChildren().addAll(new Label("Latency (buffer size x buffers):"), latencyCombo, autoAdapt);
+
+        // Modo de salida, latencia y CPU del mezclador de samples (para comparar queue/callback)
+        Audio output = SamplePlayer.getMixer().getOutput();
+        if (output != null) {
+            root.getChildren().add(new Label("Sampler: " + output.getStatsSummary()));
+        }
+        if (playhead != null) {
+            root.getChildren().add(new Label("Playhead: " + playhead.getStatsSummary()));
+        }
         Dialog<String> dialog = new Dialog<>();
         dialog.setTitle("Output device");
         dialog.initOwner(owner);
@@ -0,0 +1,50 @@
+package org.example.tunesfx.audio;
+
+import org.example.tunesfx.synth.Sintetizador;
+
+/**
+ * Perfiles de latencia de la salida: tamaño de cada bloque (frames) y número de buffers en cola.
+ * Menos buffers y más pequeños = menos latencia, pero más riesgo de cortes (underruns).
+ */
+public enum LatencyProfile {
+    LOW(128, 3),
+    MEDIUM(256, 4),
+    SAFE(512, 8);
+
+    private final int bufferSize;
+    private final int bufferCount;
+
+    LatencyProfile(int bufferSize, int bufferCount) {
+        this.bufferSize = bufferSize;
+        this.bufferCount = bufferCount;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    // Audio encolado en el peor caso (todos los buffers llenos)
+    public double getLatencyMillis() {
+        return bufferSize * bufferCount * 1000.0 / Sintetizador.AudioInfo.SAMPLE_RATE;
+    }
+
+    // Siguiente perfil más seguro (null si ya es el mayor)
+    public LatencyProfile larger() {
+        int next = ordinal() + 1;
+        return next < values().length ? values()[next] : null;
+    }
+
+    // Siguiente perfil con menos latencia (null si ya es el menor)
+    public LatencyProfile smaller() {
+        return ordinal() > 0 ? values()[ordinal() - 1] : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d x %d (%.1f ms)", bufferSize, bufferCount, getLatencyMillis());
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.tunesfx.audio;
+
+/**
+ * Canal del mezclador (uno por fila del Channel Rack).
+ * Agrupa las voces que ha disparado la fila para poder limitar su polifonía,
+ * aplicar choke groups y pararlas todas (con VoiceMixer.stop).
+ */
+public class MixerChannel {
+    public static final int UNLIMITED = 0;
+    public static final int NO_CHOKE_GROUP = 0;
+    // Grupos de 1 a MAX_CHOKE_GROUPS (el mezclador tiene una lista por grupo)
+    public static final int MAX_CHOKE_GROUPS = 16;
+
+    private volatile int maxPolyphony = UNLIMITED;
+    private volatile int chokeGroup = NO_CHOKE_GROUP;
+
+    // Lista enlazada de voces activas del canal (de la más antigua a la más nueva).
+    // Solo la toca VoiceMixer desde el hilo de audio.
+    SampleVoice head;
+    SampleVoice tail;
+    int voiceCount = 0;
+
+    public int getMaxPolyphony() { return maxPolyphony; }
+
+    // 0 = sin límite
+    public void setMaxPolyphony(int maxPolyphony) { this.maxPolyphony = Math.max(UNLIMITED, maxPolyphony); }
+
+    public int getChokeGroup() { return chokeGroup; }
+
+    // Las voces de canales con el mismo grupo se cortan entre sí (p.ej. hi-hat cerrado/abierto). 0 = ninguno
+    public void setChokeGroup(int chokeGroup) {
+        if (chokeGroup < NO_CHOKE_GROUP || chokeGroup > MAX_CHOKE_GROUPS) {
+            throw new IllegalArgumentException("choke group out of range: " + chokeGroup);
+        }
+        this.chokeGroup = chokeGroup;
+    }
+}
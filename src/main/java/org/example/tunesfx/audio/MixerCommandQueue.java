@@ -0,0 +1,79 @@
+package org.example.tunesfx.audio;
+
+/**
+ * Cola sin locks de un productor y un consumidor (SPSC) para pasar órdenes de la UI al hilo de audio.
+ * Los comandos son objetos fijos de un array circular que se rellenan y se reutilizan, así que encolar
+ * no reserva memoria. El hilo de audio solo lee: nunca se queda esperando a la UI.
+ * <p>
+ * Si varios hilos de UI encolan a la vez se tienen que poner de acuerdo entre ellos (VoiceMixer lo hace
+ * con su propio lock, que el hilo de audio no toca nunca).
+ */
+final class MixerCommandQueue {
+
+    static final int TRIGGER = 0;
+    static final int STOP_ALL = 1;
+    // Para las voces de channel a startDelayFrames del principio del bloque
+    static final int STOP_CHANNEL = 2;
+
+    static final class Command {
+        int type;
+        MixerChannel channel;
+        Sample sample;
+        double pitch;
+        double volume;
+        double pan;
+        double attack;
+        double release;
+        double durationFactor;
+        int startDelayFrames;
+        int elapsedFrames;
+    }
+
+    private final Command[] slots;
+    private final int mask;
+
+    // Siguiente comando a leer (solo lo avanza el consumidor)
+    private volatile long head = 0;
+    // Siguiente hueco a escribir (solo lo avanza el productor)
+    private volatile long tail = 0;
+
+    /**
+     * @param capacity se redondea a la siguiente potencia de dos
+     */
+    MixerCommandQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Command[size];
+        for (int i = 0; i < size; i++) slots[i] = new Command();
+        mask = size - 1;
+    }
+
+    /**
+     * Productor: el hueco a rellenar, o null si la cola está llena. No es visible hasta {@link #publish()}.
+     */
+    Command claim() {
+        long t = tail;
+        if (t - head >= slots.length) return null;
+        return slots[(int) (t & mask)];
+    }
+
+    // Productor: hace visible el comando rellenado (la escritura volatile publica sus campos)
+    void publish() {
+        tail = tail + 1;
+    }
+
+    /**
+     * Consumidor: el siguiente comando, o null si no hay ninguno.
+     */
+    Command peek() {
+        long h = head;
+        if (h == tail) return null;
+        return slots[(int) (h & mask)];
+    }
+
+    // Consumidor: suelta el comando leído (sin quedarse con referencias a samples o canales)
+    void consumed(Command command) {
+        command.sample = null;
+        command.channel = null;
+        head = head + 1;
+    }
+}
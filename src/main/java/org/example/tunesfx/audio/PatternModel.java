@@ -0,0 +1,250 @@
+package org.example.tunesfx.audio;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Los pasos de una fila guardados por parámetro (un array primitivo para cada uno) y con los pasos
+ * activos en un bitset de un long. La UI (o los cargadores de proyectos) lo modifican; el hilo de audio
+ * solo lee {@link #snapshot()}, una foto inmutable que se publica entera en cada cambio, así que nunca
+ * bloquea ni ve un paso a medio escribir.
+ */
+public class PatternModel {
+    // Un bit por paso: tienen que caber en un long
+    public static final int NUM_STEPS = 64;
+
+    private static final StepData DEFAULTS = new StepData();
+
+    /**
+     * Foto inmutable del patrón. El número de versión crece con cada cambio, así que quien la lea
+     * puede saber si tiene que volver a pintar o recalcular algo.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final long activeSteps;
+        private final int[] semitoneOffset;
+        private final float[] pitchMultiplier;
+        private final double[] attack;
+        private final double[] release;
+        private final double[] volume;
+        private final double[] durationFactor;
+        private final double[] delay;
+        private final double[] pan;
+
+        private Snapshot(long version, PatternModel model) {
+            this.version = version;
+            this.activeSteps = model.activeSteps;
+            this.semitoneOffset = model.semitoneOffset.clone();
+            this.attack = model.attack.clone();
+            this.release = model.release.clone();
+            this.volume = model.volume.clone();
+            this.durationFactor = model.durationFactor.clone();
+            this.delay = model.delay.clone();
+            this.pan = model.pan.clone();
+            // El pitch se calcula aquí y no en cada disparo (mismo cálculo que StepData.getPitchMultiplier)
+            this.pitchMultiplier = new float[NUM_STEPS];
+            for (int i = 0; i < NUM_STEPS; i++) {
+                pitchMultiplier[i] = (float) Math.pow(2, semitoneOffset[i] / 12.0);
+            }
+        }
+
+        public long getVersion() { return version; }
+
+        // Bit i a 1 = paso i activo
+        public long getActiveSteps() { return activeSteps; }
+
+        public boolean isActive(int step) {
+            return step >= 0 && step < NUM_STEPS && (activeSteps & (1L << step)) != 0;
+        }
+
+        /**
+         * Índice del último paso activo, o -1 si la fila está vacía.
+         */
+        public int lastActiveStep() {
+            return PatternModel.lastActiveStep(activeSteps);
+        }
+
+        public int getSemitoneOffset(int step) { return semitoneOffset[step]; }
+        public float getPitchMultiplier(int step) { return pitchMultiplier[step]; }
+        public double getAttack(int step) { return attack[step]; }
+        public double getRelease(int step) { return release[step]; }
+        public double getVolume(int step) { return volume[step]; }
+        public double getDurationFactor(int step) { return durationFactor[step]; }
+        public double getDelay(int step) { return delay[step]; }
+        public double getPan(int step) { return pan[step]; }
+
+        /**
+         * El paso como StepData (una copia: cambiarla no cambia el patrón).
+         */
+        public StepData getStep(int step) {
+            StepData data = new StepData();
+            copyStep(step, data);
+            return data;
+        }
+
+        public void copyStep(int step, StepData out) {
+            out.setActive(isActive(step));
+            out.setSemitoneOffset(semitoneOffset[step]);
+            out.setAttack(attack[step]);
+            out.setRelease(release[step]);
+            out.setVolume(volume[step]);
+            out.setDurationFactor(durationFactor[step]);
+            out.setDelay(delay[step]);
+            out.setPan(pan[step]);
+        }
+    }
+
+    /**
+     * Último paso activo de un bitset de pasos (el OR de varias filas también vale), o -1 si está vacío.
+     */
+    public static int lastActiveStep(long activeSteps) {
+        return 63 - Long.numberOfLeadingZeros(activeSteps);
+    }
+
+    // Estado de escritura: solo se toca con el lock del modelo
+    private long activeSteps = 0;
+    private final int[] semitoneOffset = new int[NUM_STEPS];
+    private final double[] attack = new double[NUM_STEPS];
+    private final double[] release = new double[NUM_STEPS];
+    private final double[] volume = new double[NUM_STEPS];
+    private final double[] durationFactor = new double[NUM_STEPS];
+    private final double[] delay = new double[NUM_STEPS];
+    private final double[] pan = new double[NUM_STEPS];
+    private long version = 0;
+
+    private volatile Snapshot snapshot;
+    // Quien quiere enterarse de cada cambio (la canción, para recompilar). Copia al escribir, como los schedulers
+    private volatile Runnable[] listeners = new Runnable[0];
+
+    public PatternModel() {
+        Arrays.fill(semitoneOffset, DEFAULTS.getSemitoneOffset());
+        Arrays.fill(attack, DEFAULTS.getAttack());
+        Arrays.fill(release, DEFAULTS.getRelease());
+        Arrays.fill(volume, DEFAULTS.getVolume());
+        Arrays.fill(durationFactor, DEFAULTS.getDurationFactor());
+        Arrays.fill(delay, DEFAULTS.getDelay());
+        Arrays.fill(pan, DEFAULTS.getPan());
+        snapshot = new Snapshot(version, this);
+    }
+
+    /**
+     * La última foto publicada. Sin locks: se puede llamar desde el hilo de audio.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public StepData getStep(int step) {
+        return snapshot.getStep(step);
+    }
+
+    public synchronized void setActive(int step, boolean active) {
+        checkStep(step);
+        writeActive(step, active);
+        publish();
+    }
+
+    /**
+     * Enciende o apaga el paso y devuelve cómo queda.
+     */
+    public synchronized boolean toggle(int step) {
+        checkStep(step);
+        boolean active = (activeSteps & (1L << step)) == 0;
+        writeActive(step, active);
+        publish();
+        return active;
+    }
+
+    public synchronized void setStep(int step, StepData data) {
+        checkStep(step);
+        write(step, data);
+        publish();
+    }
+
+    /**
+     * Cambia un paso a través de un StepData (lo que ya saben hacer los menús y los cargadores).
+     */
+    public synchronized void editStep(int step, Consumer<StepData> edit) {
+        checkStep(step);
+        StepData data = snapshot.getStep(step);
+        edit.accept(data);
+        write(step, data);
+        publish();
+    }
+
+    /**
+     * Aplica el mismo cambio a todos los pasos y publica una sola foto.
+     */
+    public synchronized void editAll(Consumer<StepData> edit) {
+        StepData data = new StepData();
+        Snapshot current = snapshot;
+        for (int i = 0; i < NUM_STEPS; i++) {
+            current.copyStep(i, data);
+            edit.accept(data);
+            write(i, data);
+        }
+        publish();
+    }
+
+    public synchronized void copyFrom(PatternModel other) {
+        Snapshot source = other.snapshot();
+        activeSteps = source.activeSteps;
+        System.arraycopy(source.semitoneOffset, 0, semitoneOffset, 0, NUM_STEPS);
+        System.arraycopy(source.attack, 0, attack, 0, NUM_STEPS);
+        System.arraycopy(source.release, 0, release, 0, NUM_STEPS);
+        System.arraycopy(source.volume, 0, volume, 0, NUM_STEPS);
+        System.arraycopy(source.durationFactor, 0, durationFactor, 0, NUM_STEPS);
+        System.arraycopy(source.delay, 0, delay, 0, NUM_STEPS);
+        System.arraycopy(source.pan, 0, pan, 0, NUM_STEPS);
+        publish();
+    }
+
+    private void write(int step, StepData data) {
+        writeActive(step, data.isActive());
+        semitoneOffset[step] = data.getSemitoneOffset();
+        attack[step] = data.getAttack();
+        release[step] = data.getRelease();
+        volume[step] = data.getVolume();
+        durationFactor[step] = data.getDurationFactor();
+        delay[step] = data.getDelay();
+        pan[step] = data.getPan();
+    }
+
+    private void writeActive(int step, boolean active) {
+        if (active) activeSteps |= 1L << step;
+        else activeSteps &= ~(1L << step);
+    }
+
+    /**
+     * Se llama después de cada cambio publicado, en el hilo que lo hizo y con el lock del modelo cogido:
+     * tiene que ser algo rápido (marcar algo como sucio), nunca volver a escribir en el patrón.
+     */
+    public synchronized void addListener(Runnable listener) {
+        Runnable[] current = listeners;
+        Runnable[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = listener;
+        listeners = next;
+    }
+
+    public synchronized void removeListener(Runnable listener) {
+        Runnable[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                Runnable[] next = new Runnable[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                listeners = next;
+                return;
+            }
+        }
+    }
+
+    private void publish() {
+        snapshot = new Snapshot(++version, this);
+        for (Runnable listener : listeners) listener.run();
+    }
+
+    private static void checkStep(int step) {
+        if (step < 0 || step >= NUM_STEPS) throw new IndexOutOfBoundsException("step index out of range: " + step);
+    }
+}
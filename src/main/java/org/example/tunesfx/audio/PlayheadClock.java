@@ -0,0 +1,86 @@
+package org.example.tunesfx.audio;
+
+/**
+ * Posición que se pinta del playhead, pegada a la que se oye. Cada pulso de la UI recibe la estimación
+ * de lo que suena (reloj de audio menos latencia, ver {@link AudioClock}), que llega a saltos: OpenAL
+ * mueve su offset por periodos del dispositivo. En vez de copiarla, el playhead avanza a velocidad
+ * constante y se corrige poco a poco hacia ella; si la diferencia es grande (un loop, un seek) salta.
+ * <p>
+ * La deriva (lo pintado menos lo que suena) se mide en cada pulso y se puede consultar: la última,
+ * una media y la máxima desde el último {@link #reset()}. Se usa desde un solo hilo (el de FX),
+ * aunque los valores de deriva se pueden leer desde cualquiera.
+ */
+public class PlayheadClock {
+
+    // Más de esto de diferencia no se corrige suavemente: se salta
+    private static final double SNAP_MILLIS = 80;
+    // Parte del error que se corrige en cada pulso
+    private static final double CORRECTION = 0.2;
+    // Peso de cada pulso en la media de la deriva (unos 20 pulsos)
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    private boolean locked = false;
+    private double visualFrame;
+    private long lastNanos;
+
+    private volatile double driftMillis = 0;
+    private volatile double averageDriftMillis = 0;
+    private volatile double maxDriftMillis = 0;
+
+    /**
+     * @param nowNanos        instante del pulso (el de AnimationTimer.handle, en la base de System.nanoTime())
+     * @param audibleFrame    frame que suena en ese instante
+     * @param framesPerSecond ritmo al que avanza la posición
+     * @return frame a pintar
+     */
+    public double update(long nowNanos, double audibleFrame, double framesPerSecond) {
+        if (!locked) {
+            locked = true;
+            visualFrame = audibleFrame;
+            lastNanos = nowNanos;
+            driftMillis = 0;
+            return visualFrame;
+        }
+        double predicted = visualFrame + Math.max(0, nowNanos - lastNanos) * framesPerSecond / 1_000_000_000.0;
+        double error = audibleFrame - predicted;
+        if (Math.abs(error) * 1000.0 / framesPerSecond > SNAP_MILLIS) {
+            visualFrame = audibleFrame;
+        } else {
+            visualFrame = predicted + error * CORRECTION;
+        }
+        lastNanos = nowNanos;
+
+        double drift = (visualFrame - audibleFrame) * 1000.0 / framesPerSecond;
+        driftMillis = drift;
+        averageDriftMillis += (Math.abs(drift) - averageDriftMillis) * AVERAGE_WEIGHT;
+        maxDriftMillis = Math.max(maxDriftMillis, Math.abs(drift));
+        return visualFrame;
+    }
+
+    // El siguiente update se engancha directamente a la posición que llegue (al dar play, al parar...)
+    public void reset() {
+        locked = false;
+        driftMillis = 0;
+        averageDriftMillis = 0;
+        maxDriftMillis = 0;
+    }
+
+    // Deriva del último pulso en ms (positiva: el playhead va por delante de lo que se oye)
+    public double getDriftMillis() {
+        return driftMillis;
+    }
+
+    // Media del valor absoluto de la deriva en los últimos pulsos
+    public double getAverageDriftMillis() {
+        return averageDriftMillis;
+    }
+
+    public double getMaxDriftMillis() {
+        return maxDriftMillis;
+    }
+
+    public String getStatsSummary() {
+        return String.format("deriva %.1f ms · media %.1f ms · máx %.1f ms",
+                driftMillis, averageDriftMillis, maxDriftMillis);
+    }
+}
@@ -0,0 +1,243 @@
+package org.example.tunesfx.audio;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Índice espacial de los bloques de la playlist: por cada pista, un árbol de intervalos (un treap
+ * ordenado por compás de inicio donde cada nodo guarda el final más tardío de su subárbol).
+ * Encontrar el bloque bajo el ratón o todos los de un rectángulo cuesta O(log n + k) por pista,
+ * en vez de recorrer toda la canción.
+ * <p>
+ * Los PlaylistItem se pueden cambiar, pero después hay que llamar a {@link #update(PlaylistItem)}
+ * (el índice recuerda dónde lo tenía guardado). Los compases aquí van desde 0: un bloque ocupa
+ * [startBar - 1, startBar - 1 + durationBars). No es thread-safe: se usa desde el hilo de FX.
+ */
+public class PlaylistIndex {
+
+    private static final class Node {
+        final PlaylistItem item;
+        final long seq; // Desempata bloques que empiezan en el mismo compás (orden de llegada)
+        final int priority;
+        int track;
+        double start;
+        double end;
+        double maxEnd;
+        Node left, right;
+
+        Node(PlaylistItem item, long seq) {
+            this.item = item;
+            this.seq = seq;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+
+        int compareTo(double otherStart, long otherSeq) {
+            int byStart = Double.compare(start, otherStart);
+            return byStart != 0 ? byStart : Long.compare(seq, otherSeq);
+        }
+    }
+
+    // Raíz del árbol de cada pista (null si está vacía)
+    private final List<Node> roots = new ArrayList<>();
+    private final Map<PlaylistItem, Node> nodes = new IdentityHashMap<>();
+    private long nextSeq = 0;
+
+    public void add(PlaylistItem item) {
+        if (nodes.containsKey(item)) {
+            update(item);
+            return;
+        }
+        Node node = new Node(item, nextSeq++);
+        nodes.put(item, node);
+        insert(node);
+    }
+
+    public boolean remove(PlaylistItem item) {
+        Node node = nodes.remove(item);
+        if (node == null) return false;
+        setRoot(node.track, delete(root(node.track), node.start, node.seq));
+        return true;
+    }
+
+    /**
+     * Vuelve a colocar el bloque después de cambiarle el inicio, la duración o la pista.
+     * Es barato (O(log n)), así que se puede llamar en cada movimiento de un arrastre.
+     */
+    public void update(PlaylistItem item) {
+        Node node = nodes.get(item);
+        if (node == null) return;
+        if (node.track == item.getTrackIndex() && node.start == start(item) && node.end == end(item)) return;
+        setRoot(node.track, delete(root(node.track), node.start, node.seq));
+        node.left = null;
+        node.right = null;
+        insert(node);
+    }
+
+    public void clear() {
+        roots.clear();
+        nodes.clear();
+    }
+
+    public boolean contains(PlaylistItem item) {
+        return nodes.containsKey(item);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * El bloque de la pista que suena en ese compás, o null. Si hay varios solapados devuelve el que
+     * empieza más tarde (el que queda encima al pintarlos en orden).
+     */
+    public PlaylistItem clipAt(int track, double bar) {
+        Node node = findLast(root(track), bar);
+        return node != null ? node.item : null;
+    }
+
+    /**
+     * Visita, pista a pista y por orden de inicio, los bloques de las pistas [firstTrack, lastTrack]
+     * que pisan el rango de compases [fromBar, toBar).
+     */
+    public void query(int firstTrack, int lastTrack, double fromBar, double toBar, Consumer<PlaylistItem> visitor) {
+        int last = Math.min(lastTrack, roots.size() - 1);
+        for (int track = Math.max(0, firstTrack); track <= last; track++) {
+            visit(roots.get(track), fromBar, toBar, visitor);
+        }
+    }
+
+    public List<PlaylistItem> query(int firstTrack, int lastTrack, double fromBar, double toBar) {
+        List<PlaylistItem> result = new ArrayList<>();
+        query(firstTrack, lastTrack, fromBar, toBar, result::add);
+        return result;
+    }
+
+    /**
+     * Si algún bloque de la pista (salvo los de ignore, que puede ser null) pisa [fromBar, toBar).
+     */
+    public boolean overlaps(int track, double fromBar, double toBar, Set<PlaylistItem> ignore) {
+        return anyOverlap(root(track), fromBar, toBar, ignore);
+    }
+
+    // Compases desde 0, como los usa el índice
+    public static double start(PlaylistItem item) {
+        return item.getStartBar() - 1;
+    }
+
+    public static double end(PlaylistItem item) {
+        return start(item) + item.getDurationBars();
+    }
+
+    // --- Treap ---
+
+    private Node root(int track) {
+        return (track >= 0 && track < roots.size()) ? roots.get(track) : null;
+    }
+
+    private void setRoot(int track, Node root) {
+        while (roots.size() <= track) roots.add(null);
+        roots.set(track, root);
+    }
+
+    private void insert(Node node) {
+        PlaylistItem item = node.item;
+        node.track = Math.max(0, item.getTrackIndex());
+        node.start = start(item);
+        node.end = end(item);
+        node.maxEnd = node.end;
+        setRoot(node.track, insert(root(node.track), node));
+    }
+
+    private static Node insert(Node root, Node node) {
+        if (root == null) return node;
+        if (node.compareTo(root.start, root.seq) < 0) {
+            root.left = insert(root.left, node);
+            if (root.left.priority > root.priority) root = rotateRight(root);
+        } else {
+            root.right = insert(root.right, node);
+            if (root.right.priority > root.priority) root = rotateLeft(root);
+        }
+        fix(root);
+        return root;
+    }
+
+    private static Node delete(Node root, double start, long seq) {
+        if (root == null) return null;
+        int cmp = root.compareTo(start, seq);
+        if (cmp > 0) {
+            root.left = delete(root.left, start, seq);
+        } else if (cmp < 0) {
+            root.right = delete(root.right, start, seq);
+        } else {
+            // Se baja el nodo rotando hasta que tenga un solo hijo
+            if (root.left == null) return root.right;
+            if (root.right == null) return root.left;
+            if (root.left.priority > root.right.priority) {
+                root = rotateRight(root);
+                root.right = delete(root.right, start, seq);
+            } else {
+                root = rotateLeft(root);
+                root.left = delete(root.left, start, seq);
+            }
+        }
+        fix(root);
+        return root;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        fix(node);
+        fix(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        fix(node);
+        fix(right);
+        return right;
+    }
+
+    private static void fix(Node node) {
+        double maxEnd = node.end;
+        if (node.left != null) maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        if (node.right != null) maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        node.maxEnd = maxEnd;
+    }
+
+    // En orden; se poda todo subárbol que acaba antes de fromBar y todo lo que empieza en toBar o después
+    private static void visit(Node node, double fromBar, double toBar, Consumer<PlaylistItem> visitor) {
+        if (node == null || node.maxEnd <= fromBar) return;
+        visit(node.left, fromBar, toBar, visitor);
+        if (node.start >= toBar) return;
+        if (node.end > fromBar) visitor.accept(node.item);
+        visit(node.right, fromBar, toBar, visitor);
+    }
+
+    // Primero la derecha: así el primero que contiene bar es el de mayor inicio
+    private static Node findLast(Node node, double bar) {
+        if (node == null || node.maxEnd <= bar) return null;
+        if (node.start > bar) return findLast(node.left, bar);
+        Node found = findLast(node.right, bar);
+        if (found != null) return found;
+        if (node.end > bar) return node;
+        return findLast(node.left, bar);
+    }
+
+    private static boolean anyOverlap(Node node, double fromBar, double toBar, Set<PlaylistItem> ignore) {
+        if (node == null || node.maxEnd <= fromBar) return false;
+        if (anyOverlap(node.left, fromBar, toBar, ignore)) return true;
+        if (node.start >= toBar) return false;
+        if (node.end > fromBar && (ignore == null || !ignore.contains(node.item))) return true;
+        return anyOverlap(node.right, fromBar, toBar, ignore);
+    }
+}
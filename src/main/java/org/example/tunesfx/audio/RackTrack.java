@@ -0,0 +1,62 @@
+package org.example.tunesfx.audio;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Una fila del Channel Rack sin nada de JavaFX: nombre, sample y pasos.
+ * Es lo que usa el render headless (y cualquier cosa que no tenga la UI cargada).
+ */
+public class RackTrack implements SequencerTrack {
+    public static final int NUM_STEPS = PatternModel.NUM_STEPS;
+
+    private final String name;
+    private final PatternModel pattern = new PatternModel();
+    private final MixerChannel channel = new MixerChannel();
+    private volatile Sample sample;
+    // Archivo del que viene el sample (null si no viene de disco, p.ej. generado en el sintetizador)
+    private File sampleFile;
+    // Se completa con el primer sample asignado: al abrir un proyecto los samples se decodifican en paralelo
+    // y la fila puede mostrarse antes de que su audio esté cargado
+    private final CompletableFuture<Sample> sampleReady = new CompletableFuture<>();
+
+    public RackTrack(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setSample(Sample sample) {
+        this.sample = sample;
+        sampleReady.complete(sample);
+    }
+
+    public CompletableFuture<Sample> getSampleReady() {
+        return sampleReady;
+    }
+
+    public File getSampleFile() {
+        return sampleFile;
+    }
+
+    public void setSampleFile(File sampleFile) {
+        this.sampleFile = sampleFile;
+    }
+
+    @Override
+    public Sample getSample() {
+        return sample;
+    }
+
+    @Override
+    public MixerChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public PatternModel getPattern() {
+        return pattern;
+    }
+}
@@ -1,29 +1,60 @@
 package org.example.tunesfx.audio;
 
-import static org.lwjgl.openal.AL10.AL_NONE;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 
 public class Sample {
-    private final short[] data;
-    // Guardamos el ID del buffer de OpenAL para no subirlo 100 veces
-    private int openALBufferId = AL_NONE;
+    // Cómo se leen las muestras del segmento: 16 bits con signo, orden nativo (sin exigir alineación)
+    public static final ValueLayout.OfShort LAYOUT = ValueLayout.JAVA_SHORT_UNALIGNED;
+
+    // Las conversiones que hagan falta (p.ej. a float para exportar) se hacen una
+    // sola vez y se comparten a través de SampleCache
+    private final short[] data; // null si el audio vive fuera del heap
+    // Vista de solo lectura del audio: sobre el array o sobre memoria nativa (p.ej. un archivo mapeado)
+    private final MemorySegment segment;
+    private final int length;
 
     public Sample(short[] data) {
         this.data = data;
+        this.segment = MemorySegment.ofArray(data != null ? data : new short[0]).asReadOnly();
+        this.length = (data != null) ? data.length : 0;
     }
 
-    public short[] getData() {
-        return data;
+    /**
+     * Sample fuera del heap: PCM de 16 bits en orden nativo. El segmento tiene que vivir al menos
+     * lo mismo que el sample (usa Arena.ofAuto() o un mapeo de archivo con ella) porque el hilo de
+     * audio lo lee sin copiarlo.
+     */
+    public Sample(MemorySegment segment) {
+        this.data = null;
+        this.segment = segment.asReadOnly();
+        this.length = (int) Math.min(Integer.MAX_VALUE, segment.byteSize() / Short.BYTES);
     }
 
-    public int getLength() {
-        return (data != null) ? data.length : 0;
+    /**
+     * Vista de solo lectura del audio, esté donde esté. Es lo que leen los mezcladores.
+     */
+    public MemorySegment getSegment() {
+        return segment;
+    }
+
+    public boolean isOffHeap() {
+        return segment.isNative();
     }
 
-    public int getOpenALBufferId() {
-        return openALBufferId;
+    public short get(int index) {
+        return segment.getAtIndex(LAYOUT, index);
     }
 
-    public void setOpenALBufferId(int openALBufferId) {
-        this.openALBufferId = openALBufferId;
+    /**
+     * El audio como array. Si el sample está fuera del heap esto hace una copia:
+     * en el hilo de audio usa {@link #getSegment()}.
+     */
+    public short[] getData() {
+        return data != null ? data : segment.toArray(LAYOUT);
+    }
+
+    public int getLength() {
+        return length;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,133 @@
+package org.example.tunesfx.audio;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché de los datos de cada Sample ya convertidos a float (-1.0 a 1.0).
+ * Cada sample se convierte una sola vez y se comparte entre todos los que lo usan.
+ * Las entradas llevan un contador de referencias: solo se expulsan (LRU) las que
+ * nadie está usando y solo cuando se supera el presupuesto de memoria.
+ */
+public class SampleCache {
+
+    // Presupuesto por defecto (se puede cambiar con -Dtunesfx.sampleCacheMB=...)
+    private static final long DEFAULT_BUDGET_BYTES = Long.getLong("tunesfx.sampleCacheMB", 256L) * 1024 * 1024;
+
+    private static final SampleCache instance = new SampleCache(DEFAULT_BUDGET_BYTES);
+
+    public static SampleCache getInstance() {
+        return instance;
+    }
+
+    private static class Entry {
+        final MemorySegment source; // Audio del que se convirtió (si el Sample cambia de datos, la entrada no vale)
+        final float[] data;
+        int refCount;
+        boolean stale;
+
+        Entry(MemorySegment source, float[] data) {
+            this.source = source;
+            this.data = data;
+        }
+
+        long bytes() {
+            return (long) data.length * Float.BYTES;
+        }
+    }
+
+    // accessOrder = true: el orden de iteración va del menos al más recientemente usado
+    private final LinkedHashMap<Sample, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBudget;
+    private long usedBytes = 0;
+
+    public SampleCache(long memoryBudgetBytes) {
+        this.memoryBudget = memoryBudgetBytes;
+    }
+
+    /**
+     * Devuelve los datos en float del sample y suma una referencia.
+     * Cada acquire debe ir acompañado de un {@link #release(Sample)}.
+     */
+    public synchronized float[] acquire(Sample sample) {
+        MemorySegment source = sample.getSegment();
+        if (sample.getLength() == 0) return null;
+
+        Entry entry = entries.get(sample);
+        if (entry == null || entry.stale || entry.source != source) {
+            // Primera vez, o los datos del sample han cambiado: convertimos de nuevo.
+            // Quien aún tenga el array viejo lo sigue usando; las referencias se cuentan por sample.
+            Entry fresh = new Entry(source, toFloat(sample));
+            if (entry != null) {
+                fresh.refCount = entry.refCount;
+                usedBytes -= entry.bytes();
+            }
+            entry = fresh;
+            entries.put(sample, entry);
+            usedBytes += entry.bytes();
+        }
+        entry.refCount++;
+        evictIfNeeded();
+        return entry.data;
+    }
+
+    public synchronized void release(Sample sample) {
+        Entry entry = entries.get(sample);
+        if (entry == null || entry.refCount == 0) return;
+        entry.refCount--;
+        if (entry.refCount == 0 && entry.stale) {
+            remove(sample, entry);
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Marca el sample como inválido (se ha borrado o han cambiado sus datos).
+     * Si nadie lo está usando se libera ya; si no, al soltar la última referencia.
+     */
+    public synchronized void invalidate(Sample sample) {
+        Entry entry = entries.get(sample);
+        if (entry == null) return;
+        entry.stale = true;
+        if (entry.refCount == 0) remove(sample, entry);
+    }
+
+    public synchronized void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+        evictIfNeeded();
+    }
+
+    public synchronized long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<Sample, Entry>> it = entries.entrySet().iterator();
+        while (usedBytes > memoryBudget && it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.refCount == 0) {
+                usedBytes -= entry.bytes();
+                it.remove();
+            }
+        }
+    }
+
+    private void remove(Sample sample, Entry entry) {
+        if (entries.remove(sample) != null) {
+            usedBytes -= entry.bytes();
+        }
+    }
+
+    private static float[] toFloat(Sample sample) {
+        MemorySegment data = sample.getSegment();
+        float[] floatData = new float[sample.getLength()];
+        for (int i = 0; i < floatData.length; i++) floatData[i] = data.getAtIndex(Sample.LAYOUT, i) / 32768.0f;
+        return floatData;
+    }
+}
@@ -0,0 +1,200 @@
+package org.example.tunesfx.audio;
+
+import org.example.tunesfx.utils.AudioFileLoader;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Pool global de samples indexado por el hash de su contenido. Si dos filas cargan el mismo audio
+ * (el mismo kick.wav cinco veces, o una copia con otro nombre) comparten un único Sample, y con él
+ * su conversión a float de SampleCache. Cada fila suma una referencia con {@link #acquire(Sample)}
+ * y la suelta con {@link #release(Sample)}; al soltar la última el sample sale del pool.
+ */
+public class SamplePool {
+
+    private static final SamplePool instance = new SamplePool();
+
+    public static SamplePool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Números del pool en un momento dado.
+     *
+     * @param uniqueSamples samples distintos vivos
+     * @param references    referencias (filas) que los usan
+     * @param liveBytes     bytes de PCM que ocupan de verdad
+     * @param bytesSaved    bytes que ocuparían de más si cada referencia tuviera su propia copia
+     * @param dedupHits     veces que se ha reutilizado un sample en vez de guardar uno nuevo (acumulado)
+     */
+    public record Stats(int uniqueSamples, int references, long liveBytes, long bytesSaved, long dedupHits) {
+        @Override
+        public String toString() {
+            return String.format("%d samples, %d refs, %.1f MB live, %.1f MB saved, %d dedup hits",
+                    uniqueSamples, references, liveBytes / 1048576.0, bytesSaved / 1048576.0, dedupHits);
+        }
+    }
+
+    private static class Entry {
+        final String hash;
+        final Sample sample;
+        int refCount;
+
+        Entry(String hash, Sample sample) {
+            this.hash = hash;
+            this.sample = sample;
+        }
+
+        long bytes() {
+            return (long) sample.getLength() * Short.BYTES;
+        }
+    }
+
+    // Archivo ya cargado: si no ha cambiado no hace falta ni decodificarlo
+    private record FileRef(long lastModified, long size, String hash) {
+        boolean matches(File file) {
+            return file.lastModified() == lastModified && file.length() == size;
+        }
+    }
+
+    // Hash (y archivo) de un sample que aún nadie ha adquirido, para no calcularlo dos veces
+    private record Origin(String hash, String path, FileRef fileRef) {}
+
+    private final Map<String, Entry> byHash = new HashMap<>();
+    private final IdentityHashMap<Sample, Entry> bySample = new IdentityHashMap<>();
+    private final Map<String, FileRef> byPath = new HashMap<>();
+    private final WeakHashMap<Sample, Origin> pending = new WeakHashMap<>();
+    private long dedupHits = 0;
+
+    private SamplePool() {
+    }
+
+    /**
+     * Suma una referencia al sample. Si ya hay uno con el mismo audio devuelve ese (y este se puede tirar):
+     * usa siempre el sample que devuelve, no el que pasas.
+     */
+    public Sample acquire(Sample sample) {
+        if (sample == null) return null;
+        Origin origin;
+        synchronized (this) {
+            Entry entry = bySample.get(sample);
+            if (entry != null) {
+                entry.refCount++;
+                return sample;
+            }
+            origin = pending.remove(sample);
+        }
+
+        // El hash se calcula fuera del lock: para un sample largo tarda lo suyo
+        String hash = origin != null ? origin.hash() : hash(sample);
+        synchronized (this) {
+            if (origin != null && origin.path() != null) byPath.put(origin.path(), origin.fileRef());
+            Entry entry = byHash.get(hash);
+            if (entry == null) {
+                entry = new Entry(hash, sample);
+                byHash.put(hash, entry);
+                bySample.put(sample, entry);
+            } else if (entry.sample != sample) {
+                dedupHits++;
+            }
+            entry.refCount++;
+            return entry.sample;
+        }
+    }
+
+    /**
+     * Suelta una referencia. Con la última el sample sale del pool y de SampleCache.
+     */
+    public synchronized void release(Sample sample) {
+        if (sample == null) return;
+        Entry entry = bySample.get(sample);
+        if (entry == null || entry.refCount == 0) return;
+        entry.refCount--;
+        if (entry.refCount > 0) return;
+
+        byHash.remove(entry.hash);
+        bySample.remove(sample);
+        byPath.values().removeIf(ref -> ref.hash().equals(entry.hash));
+        SampleCache.getInstance().invalidate(sample);
+    }
+
+    /**
+     * Carga un archivo de audio sin sumar referencias. Si el archivo (o cualquier otro con el mismo audio)
+     * ya está en el pool devuelve ese sample; si el archivo no ha cambiado desde que se cargó, ni siquiera
+     * se vuelve a decodificar. Después hay que pasarlo por {@link #acquire(Sample)} para quedárselo.
+     */
+    public Sample load(File file) throws IOException, UnsupportedAudioFileException {
+        String path = file.getAbsolutePath();
+        synchronized (this) {
+            FileRef ref = byPath.get(path);
+            if (ref != null) {
+                Entry entry = byHash.get(ref.hash());
+                if (entry != null && ref.matches(file)) {
+                    dedupHits++;
+                    return entry.sample;
+                }
+                byPath.remove(path);
+            }
+        }
+
+        // Fecha y tamaño de antes de leerlo: si cambia mientras tanto, la próxima vez se vuelve a cargar
+        long lastModified = file.lastModified();
+        long size = file.length();
+        Sample sample = AudioFileLoader.load(file);
+        String hash = hash(sample);
+        FileRef ref = new FileRef(lastModified, size, hash);
+        synchronized (this) {
+            Entry entry = byHash.get(hash);
+            if (entry != null) {
+                // Mismo audio que otro archivo ya cargado
+                byPath.put(path, ref);
+                dedupHits++;
+                return entry.sample;
+            }
+            pending.put(sample, new Origin(hash, path, ref));
+        }
+        return sample;
+    }
+
+    public synchronized Stats getStats() {
+        int references = 0;
+        long liveBytes = 0;
+        long bytesSaved = 0;
+        for (Entry entry : byHash.values()) {
+            references += entry.refCount;
+            liveBytes += entry.bytes();
+            bytesSaved += (entry.refCount - 1) * entry.bytes();
+        }
+        return new Stats(byHash.size(), references, liveBytes, bytesSaved, dedupHits);
+    }
+
+    // SHA-256 del PCM. Se copia por trozos porque un segmento sobre short[] no se puede ver como ByteBuffer
+    private static String hash(Sample sample) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        MemorySegment segment = sample.getSegment();
+        long size = (long) sample.getLength() * Short.BYTES;
+        byte[] chunk = new byte[(int) Math.min(size, 64 * 1024)];
+        for (long offset = 0; offset < size; offset += chunk.length) {
+            int n = (int) Math.min(chunk.length, size - offset);
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset, chunk, 0, n);
+            digest.update(chunk, 0, n);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.tunesfx.audio;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Una voz del mezclador: reproduce un Sample con pitch, pan, volumen y
+ * envolvente (attack/release) propios. Las voces se crean una sola vez
+ * dentro de VoiceMixer y se reciclan en cada disparo.
+ */
+class SampleVoice {
+    // Fundido corto al cortar una voz (evita clics al hacer stop)
+    static final int STOP_FADE_SAMPLES = 64;
+
+    boolean active = false;
+    Sample sample;
+    // Audio del sample tal cual (heap o memoria nativa), sin copiarlo
+    MemorySegment data;
+    int dataLength;
+
+    // Posición de lectura en el sample (double para el resampleo del pitch)
+    double position;
+    double speed;
+
+    // Ganancias ya calculadas (volumen * pan)
+    float gainLeft;
+    float gainRight;
+
+    // Longitud final (durationFactor) y envolvente en muestras del sample
+    int targetLength;
+    int attackSamples;
+    int releaseSamples;
+    int releaseStart;
+
+    // Frames que faltan para empezar a sonar (delay del paso)
+    int startDelay;
+
+    // Fundido de salida al parar la voz (-1 = no se está parando)
+    int stopFade = -1;
+    // Frames (desde el principio del próximo bloque) hasta que empiece ese fundido (-1 = ninguno pendiente)
+    int stopDelay = -1;
+
+    // Nivel aproximado del último bloque (para robar la voz más silenciosa)
+    float level;
+
+    // --- Enlaces del mezclador (listas intrusivas, sin reservar memoria por disparo) ---
+    // Lista de voces activas en orden de disparo
+    SampleVoice prev, next;
+    // Lista de voces del mismo canal
+    MixerChannel channel;
+    SampleVoice channelPrev, channelNext;
+    // Lista de voces del mismo choke group
+    int chokeGroup;
+    SampleVoice groupPrev, groupNext;
+
+    void start(Sample sample, double pitch, double volume, double pan,
+               double attack, double release, double durationFactor, int startDelay, int elapsedFrames) {
+        this.sample = sample;
+        this.data = sample.getSegment();
+        this.dataLength = sample.getLength();
+        // Una voz que arranca a medias (al hacer seek) empieza donde iría si hubiera sonado desde el principio
+        this.position = Math.max(0, elapsedFrames) * pitch;
+        this.speed = pitch;
+        this.startDelay = Math.max(0, startDelay);
+        this.stopFade = -1;
+        this.stopDelay = -1;
+
+        // Panning lineal (-1.0 Izquierda, 0.0 Centro, 1.0 Derecha), igual que en AudioExporter
+        float p = (float) pan;
+        gainLeft = (float) volume * (p <= 0 ? 1.0f : 1.0f - p);
+        gainRight = (float) volume * (p >= 0 ? 1.0f : 1.0f + p);
+        level = Math.max(gainLeft, gainRight);
+
+        // Misma lógica de duración/envolvente que AudioDSP.applyEnvelope
+        int length = targetLength(dataLength, durationFactor);
+        targetLength = length;
+
+        int a = (int) (length * attack);
+        int r = (int) (length * release);
+        if (a + r > length) {
+            double factor = (double) length / (a + r);
+            a = (int) (a * factor);
+            r = (int) (r * factor);
+        }
+        attackSamples = a;
+        releaseSamples = r;
+        releaseStart = length - r;
+
+        active = true;
+    }
+
+    // Frames del sample que suenan con ese durationFactor
+    static int targetLength(int dataLength, double durationFactor) {
+        int length = (int) (dataLength * durationFactor);
+        if (length < 100) length = 100;
+        if (length > dataLength) length = dataLength;
+        return length;
+    }
+
+    void stop() {
+        if (active && stopFade < 0) {
+            stopFade = STOP_FADE_SAMPLES;
+        }
+    }
+
+    /**
+     * Para la voz dentro de frames frames contados desde el principio del bloque que se va a mezclar
+     * (con la misma precisión de muestra que el startDelay). Si para entonces aún no había empezado, no suena.
+     */
+    void stopAfter(int frames) {
+        if (!active || stopFade >= 0) return;
+        frames = Math.max(0, frames);
+        if (stopDelay < 0 || frames < stopDelay) stopDelay = frames;
+    }
+
+    // Si ya se está apagando o tiene un stop pendiente
+    boolean isStopping() {
+        return stopFade >= 0 || stopDelay >= 0;
+    }
+
+    void kill() {
+        active = false;
+        sample = null;
+        data = null;
+    }
+
+    /**
+     * Suma esta voz a los buffers de mezcla (estéreo separado).
+     */
+    void mixInto(float[] left, float[] right, int frames) {
+        // Frame del bloque en el que empieza un stop diferido (-1 si no cae en este bloque)
+        int stopAt = -1;
+        if (stopDelay >= 0) {
+            if (stopDelay < frames) {
+                stopAt = stopDelay;
+                stopDelay = -1;
+            } else {
+                stopDelay -= frames;
+            }
+        }
+
+        int i = 0;
+        if (startDelay > 0) {
+            if (stopAt >= 0 && stopAt <= startDelay) {
+                // La paran antes de que llegue a sonar
+                kill();
+                return;
+            }
+            int wait = Math.min(startDelay, frames);
+            startDelay -= wait;
+            i = wait;
+        }
+
+        final MemorySegment src = data;
+        final int last = Math.min(targetLength, dataLength - 1);
+        float envelope = 1.0f;
+        for (; i < frames; i++) {
+            int index = (int) position;
+            if (index >= last) {
+                kill();
+                return;
+            }
+            double frac = position - index;
+            float s1 = src.getAtIndex(Sample.LAYOUT, index);
+            float s2 = src.getAtIndex(Sample.LAYOUT, index + 1);
+            float raw = (float) (s1 + (s2 - s1) * frac) * (1.0f / 32768.0f);
+
+            if (i == stopAt && stopFade < 0) stopFade = STOP_FADE_SAMPLES;
+
+            envelope = 1.0f;
+            if (index < attackSamples) {
+                envelope = (float) (position / attackSamples);
+            } else if (index >= releaseStart && releaseSamples > 0) {
+                envelope = (float) ((targetLength - position) / releaseSamples);
+            }
+            if (stopFade >= 0) {
+                envelope *= (float) stopFade / STOP_FADE_SAMPLES;
+                if (stopFade-- == 0) {
+                    kill();
+                    return;
+                }
+            }
+
+            float value = raw * envelope;
+            left[i] += value * gainLeft;
+            right[i] += value * gainRight;
+
+            position += speed;
+        }
+        level = envelope * Math.max(gainLeft, gainRight);
+    }
+}
@@ -0,0 +1,15 @@
+package org.example.tunesfx.audio;
+
+/**
+ * Lo que el secuenciador necesita de una fila del Channel Rack.
+ * Se lee desde el hilo de audio, así que las implementaciones no deben tocar nodos de JavaFX.
+ */
+public interface SequencerTrack {
+    Sample getSample();
+
+    // Canal del mezclador de la fila (polifonía, choke group, stop)
+    MixerChannel getChannel();
+
+    // Pasos de la fila. El hilo de audio solo lee getPattern().snapshot(), que nunca bloquea
+    PatternModel getPattern();
+}
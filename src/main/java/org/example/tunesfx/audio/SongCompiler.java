@@ -0,0 +1,208 @@
+package org.example.tunesfx.audio;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+
+/**
+ * Convierte la playlist y los patrones del rack en una {@link SongTimeline}. Guarda lo que compiló de
+ * cada bloque, así que al volver a compilar solo rehace los bloques que han cambiado (se han movido,
+ * redimensionado, cambiado de fila o su patrón tiene otra versión) y luego mezcla los trozos ya ordenados.
+ * Si no ha cambiado nada devuelve la misma timeline. No es thread-safe: cada hilo con su compilador.
+ */
+public class SongCompiler {
+
+    // Los mismos tiempos que ha usado siempre el exportador (float, para que los frames salgan idénticos)
+    static final float SAMPLE_RATE = 44100.0f;
+    private static final int ORDER_STRIDE = PatternModel.NUM_STEPS + 1;
+
+    // Eventos de un bloque, ya ordenados. Los datos para ver si sigue valiendo van aparte
+    private static final class Chunk {
+        final String patternName;
+        final int startBar;
+        final double durationBars;
+        final SequencerTrack track;
+        final PatternModel.Snapshot pattern;
+        final double bpm;
+
+        final long[] frames;
+        final int[] steps;
+        final long startFrame;
+        final long endFrame;
+
+        Chunk(PlaylistItem item, SequencerTrack track, PatternModel.Snapshot pattern, double bpm) {
+            this.patternName = item.getPatternName();
+            this.startBar = item.getStartBar();
+            this.durationBars = item.getDurationBars();
+            this.track = track;
+            this.pattern = pattern;
+            this.bpm = bpm;
+
+            double secondsPerBar = secondsPerBar(bpm);
+            double secondsPerStep = 60.0 / bpm / 4.0;
+            double blockStartTime = (startBar - 1) * secondsPerBar;
+            double blockEndTime = blockStartTime + (durationBars * secondsPerBar);
+            startFrame = (long) (blockStartTime * SAMPLE_RATE);
+            endFrame = (long) (blockEndTime * SAMPLE_RATE);
+
+            long active = pattern.getActiveSteps();
+            int count = Long.bitCount(active);
+            long[] eventFrames = new long[count + 1];
+            int[] eventSteps = new int[count + 1];
+            int n = 0;
+            for (long bits = active; bits != 0; bits &= bits - 1) {
+                int step = Long.numberOfTrailingZeros(bits);
+                double absTime = blockStartTime + step * secondsPerStep;
+                // Los pasos que caen después del final del bloque no suenan
+                if (absTime >= blockEndTime) break;
+                eventFrames[n] = (long) (absTime * SAMPLE_RATE);
+                eventSteps[n] = step;
+                n++;
+            }
+            // El fin del bloque nunca va antes que sus disparos
+            eventFrames[n] = endFrame;
+            eventSteps[n] = SongTimeline.CLIP_END;
+            n++;
+            this.frames = n == eventFrames.length ? eventFrames : Arrays.copyOf(eventFrames, n);
+            this.steps = n == eventSteps.length ? eventSteps : Arrays.copyOf(eventSteps, n);
+        }
+
+        boolean matches(PlaylistItem item, SequencerTrack track, PatternModel.Snapshot pattern, double bpm) {
+            return this.track == track
+                    && this.pattern == pattern
+                    && this.bpm == bpm
+                    && this.startBar == item.getStartBar()
+                    && this.durationBars == item.getDurationBars()
+                    && Objects.equals(this.patternName, item.getPatternName());
+        }
+    }
+
+    // Posición de la mezcla dentro de un trozo
+    private static final class Cursor {
+        final Chunk chunk;
+        final int clip;
+        int position = 0;
+
+        Cursor(Chunk chunk, int clip) {
+            this.chunk = chunk;
+            this.clip = clip;
+        }
+
+        long frame() { return chunk.frames[position]; }
+        int step() { return chunk.steps[position]; }
+        // Fines de bloque antes que disparos; después, orden de la playlist
+        int order() { return clip * ORDER_STRIDE + (step() == SongTimeline.CLIP_END ? PatternModel.NUM_STEPS : step()); }
+    }
+
+    private Map<PlaylistItem, Chunk> chunks = new IdentityHashMap<>();
+    private List<Chunk> lastChunks = List.of();
+    private SongTimeline last;
+    private int chunksRebuilt = 0;
+
+    /**
+     * Compila la canción. Las filas se buscan por nombre con patterns (null si no existe: ese bloque no suena).
+     */
+    public SongTimeline compile(List<PlaylistItem> playlist, Function<String, ? extends SequencerTrack> patterns, double bpm) {
+        Map<PlaylistItem, Chunk> next = new IdentityHashMap<>();
+        List<Chunk> ordered = new ArrayList<>(playlist.size());
+        int rebuilt = 0;
+        for (PlaylistItem item : playlist) {
+            SequencerTrack track = patterns.apply(item.getPatternName());
+            if (track == null) continue;
+            PatternModel.Snapshot pattern = track.getPattern().snapshot();
+            Chunk chunk = chunks.get(item);
+            if (chunk == null || !chunk.matches(item, track, pattern, bpm)) {
+                chunk = new Chunk(item, track, pattern, bpm);
+                rebuilt++;
+            }
+            next.put(item, chunk);
+            ordered.add(chunk);
+        }
+        chunks = next;
+        chunksRebuilt += rebuilt;
+
+        // Mismos trozos en el mismo orden: la timeline anterior sigue valiendo
+        if (last != null && rebuilt == 0 && sameChunks(ordered, lastChunks)) return last;
+        lastChunks = ordered;
+        last = merge(ordered, bpm);
+        return last;
+    }
+
+    /**
+     * Compilación suelta (sin aprovechar nada de antes), p.ej. para exportar desde otro hilo.
+     */
+    public static SongTimeline compileOnce(List<PlaylistItem> playlist, Function<String, ? extends SequencerTrack> patterns, double bpm) {
+        return new SongCompiler().compile(playlist, patterns, bpm);
+    }
+
+    // Cuántos bloques se han tenido que recompilar desde que se creó (para ver que lo incremental funciona)
+    public int getChunksRebuilt() {
+        return chunksRebuilt;
+    }
+
+    static double secondsPerBar(double bpm) {
+        return 60.0 / bpm * 4.0;
+    }
+
+    private static boolean sameChunks(List<Chunk> a, List<Chunk> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) return false;
+        }
+        return true;
+    }
+
+    // Mezcla de k trozos ordenados con un heap: O(n log k)
+    private static SongTimeline merge(List<Chunk> ordered, double bpm) {
+        int total = 0;
+        for (Chunk chunk : ordered) total += chunk.frames.length;
+
+        long[] frames = new long[total];
+        int[] steps = new int[total];
+        int[] orders = new int[total];
+        int[] clips = new int[total];
+        SequencerTrack[] clipTracks = new SequencerTrack[ordered.size()];
+        PatternModel.Snapshot[] clipPatterns = new PatternModel.Snapshot[ordered.size()];
+        long[] clipStartFrames = new long[ordered.size()];
+        long[] clipEndFrames = new long[ordered.size()];
+        long[][] clipEventFrames = new long[ordered.size()][];
+        int[][] clipEventSteps = new int[ordered.size()][];
+
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, ordered.size()), (a, b) -> {
+            int byFrame = Long.compare(a.frame(), b.frame());
+            if (byFrame != 0) return byFrame;
+            boolean aEnd = a.step() == SongTimeline.CLIP_END;
+            boolean bEnd = b.step() == SongTimeline.CLIP_END;
+            if (aEnd != bEnd) return aEnd ? -1 : 1;
+            return Integer.compare(a.order(), b.order());
+        });
+        for (int clip = 0; clip < ordered.size(); clip++) {
+            Chunk chunk = ordered.get(clip);
+            clipTracks[clip] = chunk.track;
+            clipPatterns[clip] = chunk.pattern;
+            clipStartFrames[clip] = chunk.startFrame;
+            clipEndFrames[clip] = chunk.endFrame;
+            clipEventFrames[clip] = chunk.frames;
+            clipEventSteps[clip] = chunk.steps;
+            heap.add(new Cursor(chunk, clip));
+        }
+
+        int n = 0;
+        while (!heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            frames[n] = cursor.frame();
+            steps[n] = cursor.step();
+            orders[n] = cursor.order();
+            clips[n] = cursor.clip;
+            n++;
+            if (++cursor.position < cursor.chunk.frames.length) heap.add(cursor);
+        }
+        return new SongTimeline(bpm, frames, steps, orders, clips, clipTracks, clipPatterns,
+                clipStartFrames, clipEndFrames, clipEventFrames, clipEventSteps);
+    }
+}
@@ -0,0 +1,314 @@
+package org.example.tunesfx.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reproduce la canción compilada ({@link SongTimeline}) dirigido por el reloj de audio, igual que
+ * {@link StepSequencer} con el rack: en cada bloque del mezclador dispara los eventos que caen dentro,
+ * con su frame exacto. La UI le pasa una timeline nueva cuando cambia algo y solo lee la posición.
+ * <p>
+ * Se puede saltar a cualquier punto ({@link #seekBars(double)}) y repetir una región
+ * ({@link #setLoopRegion(double, double)}). Al empezar a sonar en mitad de la canción, las notas que
+ * ya deberían estar sonando arrancan a medias, como si se hubiera llegado ahí tocando.
+ * <p>
+ * {@link #getPosition()} es lo que ya se ha mezclado, que va por delante de lo que se oye. Para pintar el
+ * playhead con lo que suena, {@link #audiblePosition(double)} traduce un frame del reloj del mezclador
+ * (el que da {@link AudioClock}) al frame de la canción que sonaba entonces.
+ */
+public class SongPlayer implements VoiceMixer.BlockScheduler {
+
+    private static final long NO_SEEK = -1;
+
+    private volatile SongTimeline timeline;
+    private volatile boolean playing = false;
+    // Peticiones de la UI que atiende el hilo de audio en el siguiente bloque
+    private volatile boolean resumeRequested = false;
+    private volatile boolean silenceRequested = false;
+    private final AtomicLong seekTarget = new AtomicLong(NO_SEEK);
+    // Al llegar aquí (en compases) vuelve al principio
+    private volatile int loopBars = 0;
+    // Región de loop en compases (desde 0). Si no es válida se usa la de loopBars
+    private volatile double loopStartBar = 0;
+    private volatile double loopEndBar = 0;
+    // Posición en frames de la canción (la escribe el hilo de audio al final de cada bloque)
+    private volatile long position = 0;
+
+    // Correspondencia reloj del mezclador -> canción, la escribe el hilo de audio en cada bloque.
+    // Contador de secuencia impar mientras se escribe (como en AudioClock)
+    private volatile long mapSequence = 0;
+    private volatile long mapMixerFrame = 0;   // final del último bloque, en frames del mezclador
+    private volatile long mapSongFrame = 0;    // posición de la canción en ese frame
+    // Último salto (loop, seek o play): en qué frame del mezclador y dónde estaba la canción justo antes
+    private volatile long jumpMixerFrame = Long.MIN_VALUE;
+    private volatile long jumpSongFrame = 0;
+    private volatile boolean jumpFromPlaying = false; // Antes del salto avanzaba (loop, seek) o estaba parada (play)
+
+    // Estado del hilo de audio
+    private SongTimeline current;
+    private int cursor = 0;
+    private long playedPosition = 0;
+    private boolean wasPlaying = false;
+
+    public void setTimeline(SongTimeline timeline) {
+        this.timeline = timeline;
+    }
+
+    public SongTimeline getTimeline() {
+        return timeline;
+    }
+
+    public void setLoopBars(int loopBars) {
+        this.loopBars = loopBars;
+    }
+
+    /**
+     * Repite de startBar a endBar (compases desde 0; pueden tener decimales).
+     */
+    public void setLoopRegion(double startBar, double endBar) {
+        loopStartBar = startBar;
+        loopEndBar = endBar;
+    }
+
+    // Sin región: vuelve a repetir todo el lienzo (loopBars)
+    public void clearLoopRegion() {
+        loopStartBar = 0;
+        loopEndBar = 0;
+    }
+
+    public boolean hasLoopRegion() {
+        return loopEndBar > loopStartBar;
+    }
+
+    public double getLoopStartBar() {
+        return loopStartBar;
+    }
+
+    public double getLoopEndBar() {
+        return loopEndBar;
+    }
+
+    public void play() {
+        if (!playing) resumeRequested = true;
+        playing = true;
+    }
+
+    public void pause() {
+        if (playing) silenceRequested = true;
+        playing = false;
+    }
+
+    // Para y vuelve al principio
+    public void stop() {
+        playing = false;
+        silenceRequested = true;
+        resumeRequested = false;
+        seekTo(0);
+    }
+
+    /**
+     * Salta a la posición dada (en compases desde 0). Si está sonando sigue desde ahí sin cortes; si no,
+     * el próximo play empieza ahí. Necesita una timeline para saber los frames por compás.
+     */
+    public void seekBars(double bars) {
+        SongTimeline tl = timeline;
+        if (tl == null) return;
+        seekTo((long) (Math.max(0, bars) * tl.getFramesPerBar()));
+    }
+
+    public void seekTo(long frame) {
+        // La posición se publica ya para que la UI la vea aunque el audio esté parado
+        position = frame;
+        seekTarget.set(frame);
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Frame de la canción que sonaba en ese frame del mezclador (ver {@link VoiceMixer#getClock()}).
+     * Sirve para frames algo anteriores al último bloque mezclado: lo que tarda el audio en oírse.
+     * Si entre medias hubo un salto (fin de loop, seek) se tiene en cuenta el último.
+     */
+    public double audiblePosition(double mixerFrame) {
+        long seq;
+        long mixerEnd;
+        long songEnd;
+        long jumpAt;
+        long jumpFrom;
+        boolean jumpPlaying;
+        do {
+            seq = mapSequence;
+            mixerEnd = mapMixerFrame;
+            songEnd = mapSongFrame;
+            jumpAt = jumpMixerFrame;
+            jumpFrom = jumpSongFrame;
+            jumpPlaying = jumpFromPlaying;
+        } while ((seq & 1) != 0 || seq != mapSequence);
+
+        double behind = Math.max(0, mixerEnd - mixerFrame);
+        if (mixerFrame >= jumpAt) return Math.max(0, songEnd - behind);
+        // Antes del salto: lo que sonaba al llegar a él (o donde estaba parada)
+        return jumpPlaying ? Math.max(0, jumpFrom - (jumpAt - mixerFrame)) : jumpFrom;
+    }
+
+    // Posición en compases (desde 0), con los bpm de la timeline actual
+    public double getPositionBars() {
+        SongTimeline tl = timeline;
+        return tl == null ? 0 : position / tl.getFramesPerBar();
+    }
+
+    @Override
+    public boolean scheduleBlock(VoiceMixer mixer, long blockStartFrame, int frames) {
+        long pos = playedPosition;
+        if (silenceRequested) {
+            silenceRequested = false;
+            if (current != null) silence(mixer, current, pos, 0);
+        }
+        long target = seekTarget.getAndSet(NO_SEEK);
+        boolean seeked = target != NO_SEEK;
+        // Salto de este bloque (para audiblePosition)
+        long jumpAt = Long.MIN_VALUE;
+        long jumpFrom = pos;
+        if (seeked) {
+            if (playing && current != null) silence(mixer, current, pos, 0);
+            jumpAt = blockStartFrame;
+            pos = target;
+            playedPosition = pos;
+        }
+        if (!playing) {
+            wasPlaying = false;
+            return false;
+        }
+
+        SongTimeline tl = timeline;
+        if (tl == null) return true;
+        if (tl != current) {
+            // Timeline nueva: si han cambiado los bpm seguimos en el mismo sitio de la canción (en compases)
+            if (current != null && current.getBpm() != tl.getBpm() && !seeked) {
+                jumpAt = blockStartFrame;
+                jumpFrom = pos;
+                pos = (long) (pos / current.getFramesPerBar() * tl.getFramesPerBar());
+            }
+            current = tl;
+            cursor = tl.firstAtOrAfter(pos);
+        } else if (seeked) {
+            cursor = tl.firstAtOrAfter(pos);
+        }
+        if (seeked || resumeRequested) {
+            resumeRequested = false;
+            resume(mixer, tl, pos, 0);
+            if (!wasPlaying) {
+                // Estaba parada: hasta este bloque lo que "sonaba" era la posición donde arranca
+                jumpAt = blockStartFrame;
+                jumpFrom = pos;
+            }
+        }
+        boolean jumpPlaying = wasPlaying;
+        wasPlaying = true;
+
+        long loopStart = 0;
+        long loopEnd = loopBars > 0 ? (long) (loopBars * tl.getFramesPerBar()) : Long.MAX_VALUE;
+        double startBar = loopStartBar;
+        double endBar = loopEndBar;
+        if (endBar > startBar && (long) (endBar * tl.getFramesPerBar()) > (long) (startBar * tl.getFramesPerBar())) {
+            loopStart = (long) (startBar * tl.getFramesPerBar());
+            loopEnd = (long) (endBar * tl.getFramesPerBar());
+        }
+
+        int done = 0;
+        while (done < frames) {
+            if (pos >= loopEnd) {
+                // Vuelta al inicio del loop en el mismo bloque: lo que sonaba al final se corta y lo que
+                // suena al principio de la región arranca a medias, sin hueco
+                silence(mixer, tl, loopEnd - 1, done);
+                jumpAt = blockStartFrame + done;
+                jumpFrom = loopEnd;
+                jumpPlaying = true;
+                pos = loopStart;
+                cursor = tl.firstAtOrAfter(pos);
+                resume(mixer, tl, pos, done);
+            }
+            long segmentEnd = Math.min(pos + (frames - done), loopEnd);
+            for (; cursor < tl.size() && tl.getFrame(cursor) < segmentEnd; cursor++) {
+                fire(mixer, tl, cursor, done + (int) (tl.getFrame(cursor) - pos));
+            }
+            done += (int) (segmentEnd - pos);
+            pos = segmentEnd;
+        }
+        playedPosition = pos;
+        // Si la UI ha pedido un seek mientras tanto, su posición manda
+        if (seekTarget.get() == NO_SEEK) position = pos;
+        publishMap(blockStartFrame + frames, pos, jumpAt, jumpFrom, jumpPlaying);
+        return true;
+    }
+
+    private void publishMap(long mixerFrame, long songFrame, long jumpAt, long jumpFrom, boolean jumpPlaying) {
+        long seq = mapSequence;
+        mapSequence = seq + 1;
+        mapMixerFrame = mixerFrame;
+        mapSongFrame = songFrame;
+        if (jumpAt != Long.MIN_VALUE) {
+            jumpMixerFrame = jumpAt;
+            jumpSongFrame = jumpFrom;
+            jumpFromPlaying = jumpPlaying;
+        }
+        mapSequence = seq + 2;
+    }
+
+    // Corta las filas de los bloques que suenan en frame, a offset frames del bloque
+    private static void silence(VoiceMixer mixer, SongTimeline tl, long frame, int offset) {
+        for (int i = tl.nextClipSoundingAt(frame, 0); i >= 0; i = tl.nextClipSoundingAt(frame, i + 1)) {
+            mixer.stop(tl.getClipTrack(tl.getClipByStart(i)).getChannel(), offset);
+        }
+    }
+
+    /**
+     * Empieza a sonar en pos (a offset frames del bloque): los pasos que se dispararon antes de pos en los
+     * bloques que siguen sonando arrancan con el tiempo que llevarían ya sonando. Los que caen en pos
+     * o después los dispara el bucle normal.
+     */
+    private static void resume(VoiceMixer mixer, SongTimeline tl, long pos, int offset) {
+        for (int i = tl.nextClipSoundingAt(pos, 0); i >= 0; i = tl.nextClipSoundingAt(pos, i + 1)) {
+            int clip = tl.getClipByStart(i);
+            SequencerTrack track = tl.getClipTrack(clip);
+            Sample sample = track.getSample();
+            if (sample == null) continue;
+            PatternModel.Snapshot pattern = tl.getClipPattern(clip);
+            int count = tl.firstClipEventAtOrAfter(clip, pos);
+            for (int e = 0; e < count; e++) {
+                int step = tl.getClipEventStep(clip, e);
+                long soundStart = tl.getClipEventFrame(clip, e) + (long) (pattern.getDelay(step) * tl.getFramesPerStep());
+                long elapsed = pos - soundStart;
+                if (elapsed > Integer.MAX_VALUE) continue;
+                // Con delay puede que aún no haya empezado a sonar: se dispara con la espera que le queda
+                int delay = elapsed < 0 ? (int) -elapsed : 0;
+                mixer.trigger(track.getChannel(), sample, pattern.getPitchMultiplier(step), pattern.getVolume(step),
+                        pattern.getPan(step), pattern.getAttack(step), pattern.getRelease(step),
+                        pattern.getDurationFactor(step), offset + delay, (int) Math.max(0, elapsed));
+            }
+        }
+    }
+
+    private static void fire(VoiceMixer mixer, SongTimeline tl, int event, int offset) {
+        SequencerTrack track = tl.getTrack(event);
+        if (tl.isClipEnd(event)) {
+            // Fin del bloque: las voces de su fila se cortan justo en ese frame (como al exportar), no al
+            // principio del bloque de audio; las de delay que empiezan antes del final sí suenan
+            mixer.stop(track.getChannel(), offset);
+            return;
+        }
+        Sample sample = track.getSample();
+        if (sample == null) return;
+        PatternModel.Snapshot pattern = tl.getPattern(event);
+        int step = tl.getStep(event);
+        int delayFrames = (int) (pattern.getDelay(step) * tl.getFramesPerStep());
+        mixer.trigger(track.getChannel(), sample, pattern.getPitchMultiplier(step), pattern.getVolume(step),
+                pattern.getPan(step), pattern.getAttack(step), pattern.getRelease(step),
+                pattern.getDurationFactor(step), offset + delayFrames);
+    }
+}
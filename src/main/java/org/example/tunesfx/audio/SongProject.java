@@ -0,0 +1,37 @@
+package org.example.tunesfx.audio;
+
+import org.example.tunesfx.synth.SynthPatch;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Una canción completa sin UI: tempo, filas del rack (por nombre), bloques de la playlist
+ * y (si lo hay) el patch del sintetizador.
+ */
+public class SongProject {
+    private double bpm = 120.0;
+    private final Map<String, RackTrack> tracks = new LinkedHashMap<>();
+    private final List<PlaylistItem> playlist = new ArrayList<>();
+    private SynthPatch synthPatch;
+
+    public double getBpm() { return bpm; }
+    public void setBpm(double bpm) { this.bpm = bpm; }
+
+    public Map<String, RackTrack> getTracks() { return tracks; }
+    public List<PlaylistItem> getPlaylist() { return playlist; }
+
+    public SynthPatch getSynthPatch() { return synthPatch; }
+    public void setSynthPatch(SynthPatch synthPatch) { this.synthPatch = synthPatch; }
+
+    public RackTrack addTrack(String name) {
+        return tracks.computeIfAbsent(name, RackTrack::new);
+    }
+
+    // Mismo papel que ChannelRackController.findRowController para el exportador
+    public RackTrack findTrack(String name) {
+        return tracks.get(name);
+    }
+}
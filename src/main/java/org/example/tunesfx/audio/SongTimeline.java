@@ -0,0 +1,164 @@
+package org.example.tunesfx.audio;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * La canción ya compilada (ver {@link SongCompiler}): todos los eventos de la playlist en un solo array
+ * ordenado por frame. Es inmutable, así que el hilo de audio la puede leer sin locks mientras la UI
+ * compila la siguiente.
+ * <p>
+ * Hay dos tipos de evento: el disparo de un paso activo de un bloque y el final de un bloque
+ * (donde se paran las voces de su fila). En el mismo frame van primero los finales y luego los disparos,
+ * y entre disparos, el orden de la playlist (el del render en serie del exportador).
+ */
+public final class SongTimeline {
+    // Valor de step de un evento de fin de bloque
+    public static final int CLIP_END = -1;
+
+    private final double bpm;
+    private final double framesPerBar;
+    private final double framesPerStep;
+
+    // Un evento por índice (struct-of-arrays)
+    private final long[] frames;
+    private final int[] steps;   // paso del patrón, o CLIP_END
+    private final int[] orders;  // orden en la playlist: bloque * (NUM_STEPS + 1) + paso
+    private final int[] clips;   // índice en los arrays de bloques
+
+    // Datos de cada bloque compilado (por orden de la playlist)
+    private final SequencerTrack[] clipTracks;
+    private final PatternModel.Snapshot[] clipPatterns;
+    private final long[] clipStartFrames;
+    private final long[] clipEndFrames;
+    // Eventos de cada bloque por separado (ordenados; el último es su CLIP_END)
+    private final long[][] clipEventFrames;
+    private final int[][] clipEventSteps;
+
+    // Bloques ordenados por inicio, vistos como un árbol de intervalos implícito (como el de PlaylistIndex,
+    // pero fijo): el nodo del rango [lo, hi) es su mitad, y subtreeMaxEnd guarda el final más tardío de
+    // ese rango. Con eso se encuentran los bloques que suenan en un frame sin mirar los que ya acabaron
+    private final int[] clipsByStart;
+    private final long[] clipStartByStart;
+    private final long[] subtreeMaxEnd;
+
+    SongTimeline(double bpm, long[] frames, int[] steps, int[] orders, int[] clips,
+                 SequencerTrack[] clipTracks, PatternModel.Snapshot[] clipPatterns,
+                 long[] clipStartFrames, long[] clipEndFrames, long[][] clipEventFrames, int[][] clipEventSteps) {
+        this.bpm = bpm;
+        this.framesPerBar = SongCompiler.secondsPerBar(bpm) * SongCompiler.SAMPLE_RATE;
+        this.framesPerStep = StepSequencer.stepFrames(bpm);
+        this.frames = frames;
+        this.steps = steps;
+        this.orders = orders;
+        this.clips = clips;
+        this.clipTracks = clipTracks;
+        this.clipPatterns = clipPatterns;
+        this.clipStartFrames = clipStartFrames;
+        this.clipEndFrames = clipEndFrames;
+        this.clipEventFrames = clipEventFrames;
+        this.clipEventSteps = clipEventSteps;
+
+        Integer[] order = new Integer[clipStartFrames.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingLong(clip -> clipStartFrames[clip]));
+        clipsByStart = new int[order.length];
+        clipStartByStart = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            clipsByStart[i] = order[i];
+            clipStartByStart[i] = clipStartFrames[order[i]];
+        }
+        subtreeMaxEnd = new long[order.length];
+        buildMaxEnd(0, order.length);
+    }
+
+    // Rellena subtreeMaxEnd del rango [lo, hi) y devuelve su máximo
+    private long buildMaxEnd(int lo, int hi) {
+        if (lo >= hi) return Long.MIN_VALUE;
+        int mid = (lo + hi) >>> 1;
+        long maxEnd = Math.max(clipEndFrames[clipsByStart[mid]], Math.max(buildMaxEnd(lo, mid), buildMaxEnd(mid + 1, hi)));
+        subtreeMaxEnd[mid] = maxEnd;
+        return maxEnd;
+    }
+
+    public double getBpm() { return bpm; }
+    public double getFramesPerBar() { return framesPerBar; }
+    public double getFramesPerStep() { return framesPerStep; }
+
+    public int size() { return frames.length; }
+
+    public long getFrame(int event) { return frames[event]; }
+    public boolean isClipEnd(int event) { return steps[event] == CLIP_END; }
+    public int getStep(int event) { return steps[event]; }
+    public int getOrder(int event) { return orders[event]; }
+    public SequencerTrack getTrack(int event) { return clipTracks[clips[event]]; }
+    public PatternModel.Snapshot getPattern(int event) { return clipPatterns[clips[event]]; }
+    public int getClip(int event) { return clips[event]; }
+    public long getClipEndFrame(int event) { return clipEndFrames[clips[event]]; }
+
+    // --- Por bloque (índice en el orden de la playlist) ---
+
+    public int getClipCount() { return clipTracks.length; }
+    public SequencerTrack getClipTrack(int clip) { return clipTracks[clip]; }
+    public PatternModel.Snapshot getClipPattern(int clip) { return clipPatterns[clip]; }
+    public long getClipStart(int clip) { return clipStartFrames[clip]; }
+    public long getClipEnd(int clip) { return clipEndFrames[clip]; }
+    public int getClipEventCount(int clip) { return clipEventFrames[clip].length; }
+    public long getClipEventFrame(int clip, int index) { return clipEventFrames[clip][index]; }
+    public int getClipEventStep(int clip, int index) { return clipEventSteps[clip][index]; }
+
+    /**
+     * Siguiente bloque que suena en frame (empieza en frame o antes y acaba después), empezando a buscar
+     * en la posición from del orden por inicio (ver {@link #getClipByStart(int)}). Devuelve su posición,
+     * o -1 si no hay más. Para recorrerlos todos:
+     * <pre>for (int i = tl.nextClipSoundingAt(frame, 0); i >= 0; i = tl.nextClipSoundingAt(frame, i + 1))</pre>
+     * Cada llamada es O(log n): solo baja por las ramas donde algún bloque llega a frame, así que los que
+     * ya acabaron no se miran. Sin reservar memoria (se usa desde el hilo de audio).
+     */
+    public int nextClipSoundingAt(long frame, int from) {
+        return nextSounding(0, clipsByStart.length, from, frame);
+    }
+
+    private int nextSounding(int lo, int hi, int from, long frame) {
+        if (lo >= hi || hi <= from) return -1;
+        int mid = (lo + hi) >>> 1;
+        // Nadie del rango llega a frame, o todos empiezan después
+        if (subtreeMaxEnd[mid] <= frame || clipStartByStart[lo] > frame) return -1;
+        int found = nextSounding(lo, mid, from, frame);
+        if (found >= 0) return found;
+        if (clipStartByStart[mid] > frame) return -1;
+        if (mid >= from && clipEndFrames[clipsByStart[mid]] > frame) return mid;
+        return nextSounding(mid + 1, hi, from, frame);
+    }
+
+    public int getClipByStart(int index) { return clipsByStart[index]; }
+
+    /**
+     * Primer evento del bloque en el frame dado o después (dentro de los eventos del propio bloque).
+     */
+    public int firstClipEventAtOrAfter(int clip, long frame) {
+        long[] clipFrames = clipEventFrames[clip];
+        int low = 0;
+        int high = clipFrames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (clipFrames[mid] < frame) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Primer evento en el frame dado o después (size() si no hay ninguno). Búsqueda binaria: O(log n).
+     */
+    public int firstAtOrAfter(long frame) {
+        int low = 0;
+        int high = frames.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (frames[mid] < frame) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+}
@@ -68,4 +68,16 @@ public class StepData {
     public double getPan() { return pan; }
 
     public void setPan(double pan) { this.pan = pan; }
-}
\ No newline at end of file
+
+    // Copia todos los parámetros de otro paso (al guardar/abrir proyectos)
+    public void copyFrom(StepData other) {
+        this.active = other.active;
+        this.semitoneOffset = other.semitoneOffset;
+        this.attack = other.attack;
+        this.release = other.release;
+        this.volume = other.volume;
+        this.durationFactor = other.durationFactor;
+        this.delay = other.delay;
+        this.pan = other.pan;
+    }
+}
@@ -0,0 +1,146 @@
+package org.example.tunesfx.audio;
+
+import org.example.tunesfx.synth.Sintetizador;
+
+import java.util.Arrays;
+
+/**
+ * Secuenciador de pasos dirigido por el reloj de audio.
+ * En lugar de un Timeline de JavaFX, calcula en qué frame exacto cae cada paso y
+ * dispara las voces con ese desplazamiento dentro del bloque que está mezclando
+ * {@link VoiceMixer}. La UI solo observa {@link #getCurrentStep()}.
+ */
+public class StepSequencer implements VoiceMixer.BlockScheduler {
+
+    public static final int DEFAULT_LOOP_STEPS = 16;
+
+    // Copia-al-escribir con array volátil: recorrerlo en el hilo de audio no crea iteradores
+    private volatile SequencerTrack[] tracks = new SequencerTrack[0];
+
+    private volatile boolean playing = false;
+    private volatile boolean restartRequested = false;
+    private volatile double bpm = 120.0;
+    private volatile int currentStep = -1;
+
+    // Estado del hilo de audio. El frame de cada paso se calcula desde un origen (paso n = origen + n * paso)
+    // en lugar de ir sumando la duración del paso, que con bpm no redondos acumula error de redondeo
+    private double originFrame;
+    private double originBpm;
+    private long stepsFromOrigin;
+    private double nextStepFrame;
+    private int nextStep;
+
+    public synchronized void addTrack(SequencerTrack track) {
+        SequencerTrack[] current = tracks;
+        SequencerTrack[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = track;
+        tracks = next;
+    }
+
+    public synchronized void removeTrack(SequencerTrack track) {
+        SequencerTrack[] current = tracks;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == track) {
+                SequencerTrack[] next = new SequencerTrack[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                tracks = next;
+                return;
+            }
+        }
+    }
+
+    public void setBpm(double bpm) {
+        this.bpm = bpm;
+    }
+
+    public void start() {
+        restartRequested = true;
+        playing = true;
+    }
+
+    public void stop() {
+        playing = false;
+        currentStep = -1;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    // Último paso que se ha programado en el audio (-1 si está parado)
+    public int getCurrentStep() {
+        return currentStep;
+    }
+
+    // Duración de un paso (semicorchea) en frames
+    public static double stepFrames(double bpm) {
+        return Sintetizador.AudioInfo.SAMPLE_RATE * 60.0 / bpm / 4.0;
+    }
+
+    @Override
+    public boolean scheduleBlock(VoiceMixer mixer, long blockStartFrame, int frames) {
+        if (!playing) return false;
+
+        if (restartRequested) {
+            restartRequested = false;
+            originFrame = blockStartFrame;
+            originBpm = bpm;
+            stepsFromOrigin = 0;
+            nextStepFrame = blockStartFrame;
+            nextStep = 0;
+        }
+        double currentBpm = bpm;
+        if (currentBpm != originBpm) {
+            // Cambio de tempo: el paso pendiente se queda donde estaba y se cuenta desde ahí
+            originFrame = nextStepFrame;
+            originBpm = currentBpm;
+            stepsFromOrigin = 0;
+        }
+        double stepFrames = stepFrames(currentBpm);
+
+        long blockEndFrame = blockStartFrame + frames;
+        while ((long) nextStepFrame < blockEndFrame) {
+            int step = nextStep;
+            int offset = (int) ((long) nextStepFrame - blockStartFrame);
+
+            // Una foto del patrón por fila: los pasos activos de todas las filas (OR de sus bitsets)
+            // dan además el final del bucle sin recorrer los pasos
+            long activeSteps = 0;
+            SequencerTrack[] currentTracks = tracks;
+            for (SequencerTrack track : currentTracks) {
+                PatternModel.Snapshot pattern = track.getPattern().snapshot();
+                activeSteps |= pattern.getActiveSteps();
+                if (!pattern.isActive(step)) continue;
+                Sample sample = track.getSample();
+                if (sample == null) continue;
+
+                // El delay del paso también se resuelve en frames exactos
+                int delayFrames = (int) (pattern.getDelay(step) * stepFrames);
+                mixer.trigger(track.getChannel(), sample, pattern.getPitchMultiplier(step), pattern.getVolume(step),
+                        pattern.getPan(step), pattern.getAttack(step), pattern.getRelease(step),
+                        pattern.getDurationFactor(step), offset + delayFrames);
+            }
+
+            currentStep = step;
+            nextStep = (step >= loopLimit(activeSteps)) ? 0 : step + 1;
+            stepsFromOrigin++;
+            nextStepFrame = originFrame + stepsFromOrigin * stepFrames;
+        }
+        return true;
+    }
+
+    /**
+     * Último paso del bucle: el último paso activo de todas las filas,
+     * redondeado al final de su tiempo (múltiplo de 4 pasos).
+     */
+    private static int loopLimit(long activeSteps) {
+        int maxActiveStep = PatternModel.lastActiveStep(activeSteps);
+
+        if (maxActiveStep == -1) return DEFAULT_LOOP_STEPS - 1;
+        int loopLimit = maxActiveStep;
+        int remainder = (loopLimit + 1) % 4;
+        if (remainder != 0) loopLimit += (4 - remainder);
+        return loopLimit;
+    }
+}
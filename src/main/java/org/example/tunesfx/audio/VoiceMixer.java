@@ -0,0 +1,486 @@
+package org.example.tunesfx.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Mezclador software de samples.
+ * Tiene un número fijo de voces creadas al principio y las mezcla todas en un
+ * único stream estéreo que se envía por la cola de buffers de {@link Audio}.
+ * Disparar un sample no crea hilos ni objetos de OpenAL: solo recicla una voz.
+ *
+ * Las voces libres están en una pila (coger/soltar es O(1)) y las activas en una
+ * lista enlazada por orden de disparo, además de en la lista de su {@link MixerChannel}
+ * y de su choke group. Si no quedan voces libres se roba una según {@link StealPolicy}.
+ * La voz robada no se corta en seco (daría un clic): sigue sonando hasta el frame en que arranca la nueva,
+ * que va en una voz de reserva, y desde ahí se apaga con su fundido de stop.
+ *
+ * Todo eso solo lo toca el hilo que mezcla ({@link #render(float[], float[], int)}), que no coge ningún
+ * lock: los disparos que llegan desde otros hilos (la UI) se encolan en una {@link MixerCommandQueue}
+ * y se aplican al principio del siguiente bloque. Los de los schedulers, que corren dentro del render,
+ * se aplican directamente.
+ */
+public class VoiceMixer {
+
+    public static final int MAX_VOICES = 64;
+    // Voces de más para que las robadas puedan hacer su fundido mientras suena la nueva
+    private static final int STEAL_RESERVE = 16;
+
+    public enum StealPolicy { OLDEST, QUIETEST }
+
+    /**
+     * Se ejecuta en el hilo de audio justo antes de mezclar cada bloque.
+     * Permite disparar voces con precisión de muestra dentro del bloque
+     * (startDelayFrames = frame del evento - blockStartFrame).
+     */
+    public interface BlockScheduler {
+        /**
+         * @return true si el scheduler necesita que el stream siga corriendo aunque no haya voces
+         */
+        boolean scheduleBlock(VoiceMixer mixer, long blockStartFrame, int frames);
+    }
+
+    private final SampleVoice[] voices = new SampleVoice[MAX_VOICES + STEAL_RESERVE];
+    private final SampleVoice[] freeVoices = new SampleVoice[MAX_VOICES + STEAL_RESERVE];
+    private int freeCount = 0;
+
+    // Voces activas de la más antigua (head) a la más nueva (tail)
+    private SampleVoice activeHead;
+    private SampleVoice activeTail;
+
+    // Primera/última voz activa de cada choke group (índice = número de grupo)
+    private final SampleVoice[] groupHeads = new SampleVoice[MixerChannel.MAX_CHOKE_GROUPS + 1];
+    private final SampleVoice[] groupTails = new SampleVoice[MixerChannel.MAX_CHOKE_GROUPS + 1];
+
+    private volatile StealPolicy stealPolicy = StealPolicy.OLDEST;
+
+    // Órdenes de la UI para el hilo de audio. Los productores se sincronizan con commandLock
+    private static final int COMMAND_QUEUE_SIZE = 256;
+    private final MixerCommandQueue commands = new MixerCommandQueue(COMMAND_QUEUE_SIZE);
+    private final Object commandLock = new Object();
+    // Hilo que está mezclando (o el último que mezcló): sus disparos no pasan por la cola
+    private volatile Thread renderThread;
+    private volatile int activeVoices = 0;
+
+    private final float[] mixLeft = new float[Audio.BUFFER_SIZE];
+    private final float[] mixRight = new float[Audio.BUFFER_SIZE];
+
+    // Reloj de audio: frames mezclados desde que se creó el mezclador (solo lo avanza el render)
+    private volatile long framePosition = 0;
+    private volatile BlockScheduler[] schedulers = new BlockScheduler[0];
+
+    private final Audio audio;
+
+    public VoiceMixer() {
+        this(true);
+    }
+
+    /**
+     * @param realtime false para un mezclador offline (sin hilo de Audio ni OpenAL),
+     *                 que se avanza llamando a {@link #render(float[], float[], int)}
+     */
+    public VoiceMixer(boolean realtime) {
+        for (int i = 0; i < voices.length; i++) {
+            voices[i] = new SampleVoice();
+            freeVoices[freeCount++] = voices[i];
+        }
+        audio = realtime ? new Audio(this::renderInto, true) : null;
+    }
+
+    /**
+     * Dispara un sample en una voz libre (o roba una si están todas ocupadas).
+     * @param channel canal de la fila que dispara (puede ser null)
+     * @param startDelayFrames frames de espera antes de empezar a sonar
+     */
+    public void trigger(MixerChannel channel, Sample sample, double pitch, double volume, double pan,
+                        double attack, double release, double durationFactor, int startDelayFrames) {
+        trigger(channel, sample, pitch, volume, pan, attack, release, durationFactor, startDelayFrames, 0);
+    }
+
+    /**
+     * Igual, pero la voz empieza como si llevara elapsedFrames sonando (para retomar notas al hacer seek).
+     * Si con eso ya habría terminado no se dispara nada.
+     * <p>
+     * Desde el hilo de audio (un scheduler) la voz se arranca ya; desde cualquier otro se encola
+     * y arranca al principio del siguiente bloque.
+     */
+    public void trigger(MixerChannel channel, Sample sample, double pitch, double volume, double pan,
+                        double attack, double release, double durationFactor, int startDelayFrames,
+                        int elapsedFrames) {
+        if (sample == null || sample.getLength() < 2) return;
+        if (elapsedFrames > 0) {
+            int end = Math.min(SampleVoice.targetLength(sample.getLength(), durationFactor), sample.getLength() - 1);
+            if (elapsedFrames * pitch >= end) return;
+        }
+
+        if (Thread.currentThread() == renderThread) {
+            startVoice(channel, sample, pitch, volume, pan, attack, release, durationFactor, startDelayFrames, elapsedFrames);
+            return;
+        }
+        synchronized (commandLock) {
+            MixerCommandQueue.Command command = commands.claim();
+            if (command == null) {
+                System.err.println("VoiceMixer: cola de comandos llena, se descarta un disparo");
+                return;
+            }
+            command.type = MixerCommandQueue.TRIGGER;
+            command.channel = channel;
+            command.sample = sample;
+            command.pitch = pitch;
+            command.volume = volume;
+            command.pan = pan;
+            command.attack = attack;
+            command.release = release;
+            command.durationFactor = durationFactor;
+            command.startDelayFrames = startDelayFrames;
+            command.elapsedFrames = elapsedFrames;
+            commands.publish();
+        }
+        wakeUp();
+    }
+
+    // Solo desde el hilo de audio
+    private void startVoice(MixerChannel channel, Sample sample, double pitch, double volume, double pan,
+                            double attack, double release, double durationFactor, int startDelayFrames,
+                            int elapsedFrames) {
+        SampleVoice voice;
+        if (channel != null && channel.getMaxPolyphony() != MixerChannel.UNLIMITED
+                && channel.voiceCount >= channel.getMaxPolyphony()) {
+            // La fila ya está en su límite de polifonía: se apaga su voz más antigua
+            voice = replace(channel.head, startDelayFrames);
+        } else if (freeCount > STEAL_RESERVE) {
+            voice = freeVoices[--freeCount];
+        } else {
+            // Ya suenan MAX_VOICES: se roba una (si todas se están apagando ya, basta con la reserva)
+            SampleVoice victim = (stealPolicy == StealPolicy.QUIETEST) ? findQuietestVoice() : findOldestVoice();
+            voice = (victim != null) ? replace(victim, startDelayFrames) : takeReserve();
+        }
+
+        // MixerChannel ya solo admite grupos de 0 a MAX_CHOKE_GROUPS
+        int chokeGroup = (channel != null) ? channel.getChokeGroup() : MixerChannel.NO_CHOKE_GROUP;
+        if (chokeGroup != MixerChannel.NO_CHOKE_GROUP) {
+            choke(chokeGroup, channel, startDelayFrames);
+        }
+
+        voice.start(sample, pitch, volume, pan, attack, release, durationFactor, startDelayFrames, elapsedFrames);
+        link(voice, channel, chokeGroup);
+    }
+
+    public void trigger(MixerChannel channel, Sample sample, StepData stepData, int startDelayFrames) {
+        trigger(channel, sample, stepData.getPitchMultiplier(), stepData.getVolume(), stepData.getPan(),
+                stepData.getAttack(), stepData.getRelease(), stepData.getDurationFactor(), startDelayFrames);
+    }
+
+    /**
+     * Para (con un fundido corto) todas las voces de un canal. Desde fuera del hilo de audio va por la
+     * misma cola que los disparos, así que respeta el orden: lo disparado antes se para y lo de después no.
+     */
+    public void stop(MixerChannel channel) {
+        stop(channel, 0);
+    }
+
+    /**
+     * Para las voces del canal a offsetFrames del principio del bloque que se está mezclando, con precisión
+     * de muestra: las que ya suenan siguen hasta ahí y hacen su fundido, las que tenían un delay que acaba
+     * antes también llegan a sonar, y las que empezarían después no suenan. Las voces que se disparen
+     * después de esta llamada (el bloque siguiente de la misma fila) no se tocan.
+     * <p>
+     * Desde cualquier otro hilo se encola (las listas de voces solo las toca el hilo de audio) y el offset
+     * cuenta desde el principio del bloque en el que se aplica.
+     */
+    public void stop(MixerChannel channel, int offsetFrames) {
+        if (channel == null) return;
+        if (Thread.currentThread() == renderThread) {
+            stopChannelVoices(channel, offsetFrames);
+            return;
+        }
+        synchronized (commandLock) {
+            MixerCommandQueue.Command command = commands.claim();
+            if (command == null) {
+                System.err.println("VoiceMixer: cola de comandos llena, se descarta un stop");
+                return;
+            }
+            command.type = MixerCommandQueue.STOP_CHANNEL;
+            command.channel = channel;
+            command.startDelayFrames = offsetFrames;
+            commands.publish();
+        }
+        wakeUp();
+    }
+
+    private void stopChannelVoices(MixerChannel channel, int offsetFrames) {
+        for (SampleVoice voice = channel.head; voice != null; voice = voice.channelNext) {
+            voice.stopAfter(offsetFrames);
+        }
+    }
+
+    public void stopAll() {
+        if (Thread.currentThread() == renderThread) {
+            stopAllVoices();
+            return;
+        }
+        synchronized (commandLock) {
+            MixerCommandQueue.Command command = commands.claim();
+            if (command == null) {
+                System.err.println("VoiceMixer: cola de comandos llena, se descarta un stopAll");
+                return;
+            }
+            command.type = MixerCommandQueue.STOP_ALL;
+            commands.publish();
+        }
+        wakeUp();
+    }
+
+    private void stopAllVoices() {
+        for (SampleVoice voice = activeHead; voice != null; voice = voice.next) {
+            voice.stop();
+        }
+    }
+
+    // Voces ocupadas al acabar el último bloque
+    public int getActiveVoices() {
+        return activeVoices;
+    }
+
+    public void setStealPolicy(StealPolicy stealPolicy) {
+        this.stealPolicy = stealPolicy;
+    }
+
+    public StealPolicy getStealPolicy() {
+        return stealPolicy;
+    }
+
+    // Copia al escribir: el render lee el array volatile tal cual, sin coger este lock
+    public synchronized void addScheduler(BlockScheduler scheduler) {
+        BlockScheduler[] current = schedulers;
+        BlockScheduler[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = scheduler;
+        schedulers = next;
+    }
+
+    public synchronized void removeScheduler(BlockScheduler scheduler) {
+        BlockScheduler[] current = schedulers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == scheduler) {
+                BlockScheduler[] next = new BlockScheduler[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+                schedulers = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Despierta el hilo de audio (si ya estaba sonando no hace nada).
+     */
+    public void wakeUp() {
+        if (audio != null) {
+            audio.triggerPlayBack();
+        }
+    }
+
+    // Salida de audio en tiempo real (null en un mezclador offline)
+    public Audio getOutput() {
+        return audio;
+    }
+
+    /**
+     * Reloj de la salida en tiempo real (null en un mezclador offline). Cuenta los mismos frames que
+     * {@link #getFramePosition()}, así que sirve para saber qué bloque del mezclador se está oyendo.
+     */
+    public AudioClock getClock() {
+        return audio != null ? audio.getClock() : null;
+    }
+
+    public long getFramePosition() {
+        return framePosition;
+    }
+
+    // Aplica lo que haya encolado la UI desde el bloque anterior
+    private void drainCommands() {
+        MixerCommandQueue.Command command;
+        while ((command = commands.peek()) != null) {
+            if (command.type == MixerCommandQueue.TRIGGER) {
+                startVoice(command.channel, command.sample, command.pitch, command.volume, command.pan,
+                        command.attack, command.release, command.durationFactor,
+                        command.startDelayFrames, command.elapsedFrames);
+            } else if (command.type == MixerCommandQueue.STOP_ALL) {
+                stopAllVoices();
+            } else if (command.type == MixerCommandQueue.STOP_CHANNEL) {
+                stopChannelVoices(command.channel, command.startDelayFrames);
+            }
+            commands.consumed(command);
+        }
+    }
+
+    // Corta todas las voces del grupo que no sean del canal que acaba de disparar, justo cuando empieza
+    // a sonar la nueva (startDelayFrames), igual que en replace: hasta entonces siguen sonando
+    private void choke(int chokeGroup, MixerChannel channel, int startDelayFrames) {
+        for (SampleVoice voice = groupHeads[chokeGroup]; voice != null; voice = voice.groupNext) {
+            if (voice.channel != channel) {
+                voice.stopAfter(startDelayFrames);
+            }
+        }
+    }
+
+    /**
+     * Voz nueva en lugar de victim: la robada se apaga con su fundido de stop justo cuando arranca la nueva
+     * (startDelayFrames), fuera de su canal y de su choke group (ya no cuenta para la polifonía), y la nueva
+     * sale de las libres. Si la robada no iba a sonar antes que la nueva, o no queda ni una voz libre,
+     * se corta en seco y se reutiliza.
+     */
+    private SampleVoice replace(SampleVoice victim, int startDelayFrames) {
+        if (victim.startDelay >= startDelayFrames || freeCount == 0) {
+            release(victim);
+            return freeVoices[--freeCount];
+        }
+        victim.stopAfter(startDelayFrames);
+        unlinkChannel(victim);
+        unlinkGroup(victim);
+        return freeVoices[--freeCount];
+    }
+
+    private SampleVoice takeReserve() {
+        if (freeCount == 0) release(activeHead);
+        return freeVoices[--freeCount];
+    }
+
+    // La más antigua que no se esté apagando ya (null si se están apagando todas)
+    private SampleVoice findOldestVoice() {
+        for (SampleVoice voice = activeHead; voice != null; voice = voice.next) {
+            if (!voice.isStopping()) return voice;
+        }
+        return null;
+    }
+
+    // La más silenciosa que no se esté apagando ya (null si se están apagando todas)
+    private SampleVoice findQuietestVoice() {
+        SampleVoice quietest = null;
+        for (SampleVoice voice = activeHead; voice != null; voice = voice.next) {
+            if (voice.isStopping()) continue;
+            if (quietest == null || voice.level < quietest.level) quietest = voice;
+        }
+        return quietest;
+    }
+
+    private void link(SampleVoice voice, MixerChannel channel, int chokeGroup) {
+        voice.prev = activeTail;
+        voice.next = null;
+        if (activeTail != null) activeTail.next = voice; else activeHead = voice;
+        activeTail = voice;
+
+        voice.channel = channel;
+        voice.channelPrev = null;
+        voice.channelNext = null;
+        if (channel != null) {
+            voice.channelPrev = channel.tail;
+            if (channel.tail != null) channel.tail.channelNext = voice; else channel.head = voice;
+            channel.tail = voice;
+            channel.voiceCount++;
+        }
+
+        voice.chokeGroup = chokeGroup;
+        voice.groupPrev = null;
+        voice.groupNext = null;
+        if (chokeGroup != MixerChannel.NO_CHOKE_GROUP) {
+            voice.groupPrev = groupTails[chokeGroup];
+            if (groupTails[chokeGroup] != null) groupTails[chokeGroup].groupNext = voice; else groupHeads[chokeGroup] = voice;
+            groupTails[chokeGroup] = voice;
+        }
+    }
+
+    // Saca la voz de todas las listas y la devuelve a la pila de libres. O(1)
+    private void release(SampleVoice voice) {
+        if (voice.prev != null) voice.prev.next = voice.next; else activeHead = voice.next;
+        if (voice.next != null) voice.next.prev = voice.prev; else activeTail = voice.prev;
+        voice.prev = voice.next = null;
+
+        unlinkChannel(voice);
+        unlinkGroup(voice);
+
+        voice.kill();
+        freeVoices[freeCount++] = voice;
+    }
+
+    private void unlinkChannel(SampleVoice voice) {
+        MixerChannel channel = voice.channel;
+        if (channel != null) {
+            if (voice.channelPrev != null) voice.channelPrev.channelNext = voice.channelNext; else channel.head = voice.channelNext;
+            if (voice.channelNext != null) voice.channelNext.channelPrev = voice.channelPrev; else channel.tail = voice.channelPrev;
+            channel.voiceCount--;
+        }
+        voice.channel = null;
+        voice.channelPrev = voice.channelNext = null;
+    }
+
+    private void unlinkGroup(SampleVoice voice) {
+        int group = voice.chokeGroup;
+        if (group != MixerChannel.NO_CHOKE_GROUP) {
+            if (voice.groupPrev != null) voice.groupPrev.groupNext = voice.groupNext; else groupHeads[group] = voice.groupNext;
+            if (voice.groupNext != null) voice.groupNext.groupPrev = voice.groupPrev; else groupTails[group] = voice.groupPrev;
+        }
+        voice.chokeGroup = MixerChannel.NO_CHOKE_GROUP;
+        voice.groupPrev = voice.groupNext = null;
+    }
+
+    /**
+     * Mezcla el siguiente bloque de frames en left/right (se sobrescriben).
+     * Primero aplica lo encolado por la UI y ejecuta los schedulers para que disparen sus eventos
+     * dentro del bloque. No coge ningún lock; solo se puede llamar desde un hilo a la vez.
+     * @return false si no hay nada sonando ni ningún scheduler activo (bloque en silencio)
+     */
+    public boolean render(float[] left, float[] right, int frames) {
+        Thread current = Thread.currentThread();
+        if (renderThread != current) renderThread = current;
+        drainCommands();
+
+        boolean keepRunning = false;
+        for (BlockScheduler scheduler : schedulers) {
+            keepRunning |= scheduler.scheduleBlock(this, framePosition, frames);
+        }
+
+        Arrays.fill(left, 0, frames, 0f);
+        Arrays.fill(right, 0, frames, 0f);
+        if (activeHead == null && !keepRunning) {
+            activeVoices = 0;
+            return false;
+        }
+
+        SampleVoice voice = activeHead;
+        while (voice != null) {
+            SampleVoice next = voice.next;
+            voice.mixInto(left, right, frames);
+            if (!voice.active) release(voice);
+            voice = next;
+        }
+        framePosition += frames;
+        activeVoices = voices.length - freeCount;
+        return true;
+    }
+
+    /**
+     * Callback del hilo de Audio: mezcla un bloque estéreo intercalado (L, R, L, R...)
+     * directamente en el buffer directo que se entrega a OpenAL.
+     * Devuelve false cuando no queda nada sonando para que el hilo se detenga.
+     * (Package-private para poder probarlo sin OpenAL.)
+     */
+    boolean renderInto(ShortBuffer out, int frames) {
+        if (!render(mixLeft, mixRight, frames)) {
+            return false;
+        }
+
+        for (int i = 0, j = 0; i < frames; i++) {
+            out.put(j++, toShort(mixLeft[i]));
+            out.put(j++, toShort(mixRight[i]));
+        }
+        return true;
+    }
+
+    private static short toShort(float sample) {
+        // Clamping para no desbordar el short
+        if (sample > 1.0f) sample = 1.0f;
+        else if (sample < -1.0f) sample = -1.0f;
+        return (short) (sample * Short.MAX_VALUE);
+    }
+}
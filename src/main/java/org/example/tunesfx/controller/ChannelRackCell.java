@@ -0,0 +1,122 @@
+package org.example.tunesfx.controller;
+
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Set;
+import java.util.function.IntSupplier;
+
+/**
+ * Celda del Channel Rack. El ListView solo crea las que caben en pantalla y las va reutilizando al hacer
+ * scroll, así que una fila no tiene nodos mientras no se ve. La UI se monta una vez por celda, en código
+ * (lo mismo que había en ChannelRackRow.fxml), y al cambiar de fila solo se reenganchan nombre, mute y pasos.
+ */
+public class ChannelRackCell extends ListCell<ChannelRackRowController> {
+
+    public static final double ROW_HEIGHT = 49;
+
+    private static final String BUTTON_STYLE = "-fx-background-color: #041200;";
+    private static final String MUTE_ON_STYLE = "-fx-text-fill: black; -fx-font-weight: normal; -fx-background-color: #ffffff";
+    private static final Font BUTTON_FONT = Font.font("OCR A Extended", 12);
+
+    private final HBox root;
+    private final Button muteButton;
+    private final Label nameLabel = new Label();
+    private final StepStrip stepStrip = new StepStrip();
+    // Paso actual del rack, para que una celda recién reutilizada salga ya con el playhead
+    private final IntSupplier playhead;
+    // Celdas que ahora mismo muestran una fila (las que hay que mover al avanzar el playhead).
+    // La celda se apunta al recibir una fila y se borra al quedarse vacía
+    private final Set<ChannelRackCell> liveCells;
+
+    private final ChangeListener<Boolean> muteListener = (obs, oldVal, newVal) -> paintMute(newVal);
+
+    public ChannelRackCell(IntSupplier playhead, Set<ChannelRackCell> liveCells) {
+        this.playhead = playhead;
+        this.liveCells = liveCells;
+
+        Button deleteButton = rowButton("X");
+        deleteButton.setOnAction(e -> { if (getItem() != null) getItem().handleDeleteRow(); });
+        HBox.setMargin(deleteButton, new Insets(0, 10, 0, 10));
+        Button playButton = rowButton("P");
+        playButton.setOnAction(e -> { if (getItem() != null) getItem().handlePlayRow(); });
+        HBox.setMargin(playButton, new Insets(0, 10, 0, 0));
+        muteButton = rowButton("M");
+        muteButton.setOnAction(e -> { if (getItem() != null) getItem().handleMuteRow(); });
+        HBox.setMargin(muteButton, new Insets(0, 10, 0, 0));
+
+        nameLabel.setMinWidth(80);
+        nameLabel.setPrefWidth(80);
+        nameLabel.setStyle("-fx-text-fill: white; -fx-font-weight: bold;");
+        nameLabel.setOnMouseClicked(e -> { if (getItem() != null) getItem().handleLabelClick(e); });
+
+        HBox controls = new HBox(deleteButton, playButton, muteButton, nameLabel);
+        controls.setAlignment(Pos.CENTER);
+        controls.setPrefSize(62, 47);
+        controls.setPadding(new Insets(0, 0, 0, 10));
+        controls.setStyle("-fx-background-color: #082900; -fx-background-radius: 5;");
+        HBox.setMargin(controls, new Insets(7, 0, 7, 5));
+
+        stepStrip.setOnMouseClicked(e -> { if (getItem() != null) getItem().handleStepClick(e); });
+
+        root = new HBox(5, controls, stepStrip);
+        root.setAlignment(Pos.CENTER_LEFT);
+        root.setPrefHeight(ROW_HEIGHT);
+        root.setStyle("-fx-background-color: #4a4a4a; -fx-border-color: #202020; -fx-border-width: 1;");
+
+        getStyleClass().add("channel-rack-cell");
+        setText(null);
+    }
+
+    private static Button rowButton(String text) {
+        Button button = new Button(text);
+        button.setMnemonicParsing(false);
+        button.setStyle(BUTTON_STYLE);
+        button.setTextFill(Color.WHITE);
+        button.setFont(BUTTON_FONT);
+        return button;
+    }
+
+    @Override
+    protected void updateItem(ChannelRackRowController row, boolean empty) {
+        ChannelRackRowController old = getItem();
+        if (old != null) {
+            // Se suelta la fila anterior (la celda se reutiliza para otra o se queda vacía)
+            old.detachStrip(stepStrip);
+            old.muteProperty().removeListener(muteListener);
+            nameLabel.textProperty().unbind();
+        }
+        super.updateItem(row, empty);
+
+        if (empty || row == null) {
+            liveCells.remove(this);
+            setGraphic(null);
+            return;
+        }
+        liveCells.add(this);
+        nameLabel.textProperty().bind(row.trackNameProperty());
+        row.muteProperty().addListener(muteListener);
+        paintMute(row.muteProperty().get());
+        row.attachStrip(stepStrip);
+        stepStrip.setPlayhead(playhead.getAsInt());
+        setGraphic(root);
+    }
+
+    /**
+     * Mueve el playhead de la celda (-1 lo quita). Solo se repintan las dos casillas que cambian.
+     */
+    public void setPlayhead(int step) {
+        stepStrip.setPlayhead(step);
+    }
+
+    private void paintMute(boolean muted) {
+        muteButton.setStyle(muted ? MUTE_ON_STYLE : BUTTON_STYLE);
+    }
+}
@@ -1,59 +1,74 @@
 package org.example.tunesfx.controller;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.PauseTransition;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
 import javafx.scene.control.Spinner;
-import javafx.scene.layout.HBox;
-import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import javafx.util.Duration;
+import org.example.tunesfx.audio.RackTrack;
 import org.example.tunesfx.audio.Sample;
 import org.example.tunesfx.audio.SampleBank;
+import org.example.tunesfx.audio.SamplePool;
 import org.example.tunesfx.audio.SamplePlayer;
-import org.example.tunesfx.audio.StepData;
-import org.example.tunesfx.utils.AudioFileLoader;
+import org.example.tunesfx.audio.StepSequencer;
 import org.example.tunesfx.utils.GlobalState;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 public class ChannelRackController {
 
     @FXML private Button btnEncenderRitmo;
     @FXML private Button btnNuevaPista;
-    @FXML private VBox rackContainer;
+    // Lista virtualizada: solo existen las celdas que se ven y se reutilizan al hacer scroll
+    @FXML private ListView<ChannelRackRowController> rackList;
     @FXML private Spinner<Integer> spinnerBPM;
 
-    // Lógica del secuenciador
-    private Timeline sequencerTimeline;
+    // Lógica del secuenciador: el tiempo lo lleva el hilo de audio (StepSequencer),
+    // la UI solo observa en qué paso está para pintar el playhead
+    private StepSequencer sequencer;
+    private AnimationTimer playheadTimer;
     private boolean isPlaying = false;
-    private static double referenciaBPM = 120.0; // Beats Por Minuto
 
     private static final int NUM_STEPS = ChannelRackRowController.NUM_STEPS;
     private int currentStep = -1;
-    private List<ChannelRackRowController> allRows = new ArrayList<>();
-    private java.util.Map<ChannelRackRowController, List<PauseTransition>> activeSchedulers = new java.util.HashMap<>();
+    private final ObservableList<ChannelRackRowController> allRows = FXCollections.observableArrayList();
+    // Las celdas que muestran una fila ahora mismo (pocas: las que caben en pantalla). Débil: si el ListView
+    // tira una celda sin vaciarla antes, no se queda aquí para siempre
+    private final Set<ChannelRackCell> liveCells = Collections.newSetFromMap(new WeakHashMap<>());
+    // Avisa de cualquier cambio que afecte a la canción: filas nuevas o borradas, nombres y pasos
+    private Runnable onSongChanged;
+    private final Runnable patternListener = this::songChanged;
 
     @FXML
     public void initialize() {
         GlobalState.setChannelRackController(this);
 
         GlobalState.bpmProperty().addListener((obs, oldVal, newVal) -> {
-            updateSequencerRate(newVal.doubleValue());
+            sequencer.setBpm(newVal.doubleValue());
         });
 
+        rackList.setItems(allRows);
+        allRows.addListener((ListChangeListener<ChannelRackRowController>) change -> songChanged());
+        rackList.setFixedCellSize(ChannelRackCell.ROW_HEIGHT + 5);
+        rackList.setCellFactory(list -> new ChannelRackCell(() -> currentStep, liveCells));
+
         initializeSequencer();
         SampleBank.getInstance().setOnSampleSaved(this::addNewRow);
     }
@@ -73,9 +88,8 @@ public class ChannelRackController {
 
         if (file != null) {
             try {
-                short[] data = AudioFileLoader.loadSample(file);
-                Sample externalSample = new Sample(data);
-                addNewRow(externalSample);
+                Sample externalSample = SamplePool.getInstance().load(file);
+                addNewRow(externalSample, file);
             } catch (IOException | UnsupportedAudioFileException e) {
                 e.printStackTrace();
             }
@@ -83,81 +97,104 @@ public class ChannelRackController {
     }
 
     private void initializeSequencer() {
+        sequencer = new StepSequencer();
         // Usamos el valor inicial de GlobalState
-        double currentBpm = GlobalState.getBpm();
-        double beatDurationMillis = 60000.0 / 120.0; // Mantenemos 120 como base de escala
-        double stepDurationMillis = beatDurationMillis / 4.0;
-
-        sequencerTimeline = new Timeline();
-        sequencerTimeline.setCycleCount(Animation.INDEFINITE);
-
-        KeyFrame keyFrame = new KeyFrame(Duration.millis(stepDurationMillis), e -> runSequencerStep());
-        sequencerTimeline.getKeyFrames().add(keyFrame);
-
-        // Sincronizar velocidad inicial
-        updateSequencerRate(currentBpm);
+        sequencer.setBpm(GlobalState.getBpm());
+        SamplePlayer.getMixer().addScheduler(sequencer);
+
+        // Una vez por pulso de FX leemos la posición del secuenciador y movemos el playhead
+        playheadTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                updatePlayhead(sequencer.getCurrentStep());
+            }
+        };
     }
 
-    private void updateSequencerRate(double newBPM) {
-        if (sequencerTimeline == null) return;
-        // El rate es relativo a la base de 120 BPM
-        double newRate = newBPM / 120.0;
-        sequencerTimeline.setRate(newRate);
+    public void addNewRow(Sample sample) {
+        addNewRow(sample, null);
     }
 
-    public void addNewRow(Sample sample) {
+    public void addNewRow(Sample sample, File sampleFile) {
         Platform.runLater(() -> {
             if (sample == null) return;
-            try {
-                FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/example/tunesfx/ChannelRackRow.fxml"));
-                HBox newRowNode = loader.load();
-                ChannelRackRowController rowController = loader.getController();
-                rowController.setSample(sample);
-                rowController.setOnDelete(() -> {
-                    allRows.remove(rowController);
-                    rackContainer.getChildren().remove(newRowNode);
-                });
-                allRows.add(rowController);
-                rackContainer.getChildren().add(newRowNode);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            ChannelRackRowController rowController = createRow();
+            rowController.setSample(sample);
+            rowController.setSampleFile(sampleFile);
+        });
+    }
+
+    // Crea una fila nueva, la registra en el secuenciador y la añade al rack (sin nodos: eso es cosa de las celdas)
+    private ChannelRackRowController createRow() {
+        ChannelRackRowController rowController = newRow();
+        allRows.add(rowController);
+        return rowController;
+    }
+
+    private ChannelRackRowController newRow() {
+        ChannelRackRowController rowController = new ChannelRackRowController();
+        rowController.getPattern().addListener(patternListener);
+        rowController.trackNameProperty().addListener((obs, oldName, newName) -> songChanged());
+        rowController.setOnDelete(() -> {
+            rowController.getPattern().removeListener(patternListener);
+            allRows.remove(rowController);
+            sequencer.removeTrack(rowController);
+            rowController.releaseSample();
         });
+        sequencer.addTrack(rowController);
+        return rowController;
     }
 
-    private void runSequencerStep() {
-        int maxActiveStep = -1;
+    /**
+     * Sustituye todas las filas por las de un proyecto. Crear una fila ya no cuesta nada (no hay FXML y
+     * solo se montan las celdas visibles), así que van todas de golpe; cada una recibe su sample cuando
+     * termina de decodificarse, y el rack se puede usar mientras el resto del proyecto sigue cargando.
+     */
+    public void loadProject(Collection<RackTrack> tracks) {
+        stopSequencer();
         for (ChannelRackRowController row : allRows) {
-            int rowLastStep = row.getLastActiveStepIndex();
-            if (rowLastStep > maxActiveStep) maxActiveStep = rowLastStep;
+            row.getPattern().removeListener(patternListener);
+            sequencer.removeTrack(row);
+            row.releaseSample();
         }
 
-        int loopLimit = (maxActiveStep == -1) ? 15 : maxActiveStep;
-        if (maxActiveStep != -1) {
-            int remainder = (loopLimit + 1) % 4;
-            if (remainder != 0) loopLimit += (4 - remainder);
+        List<ChannelRackRowController> rows = new ArrayList<>(tracks.size());
+        for (RackTrack track : tracks) {
+            ChannelRackRowController row = newRow();
+            row.applyTrack(track);
+            // El sample es volatile en la fila: se puede asignar desde el hilo que lo decodifica
+            track.getSampleReady().whenComplete((sample, error) -> {
+                if (error != null) {
+                    System.err.println("No se pudo cargar el sample de la pista " + track.getName());
+                    error.printStackTrace();
+                } else {
+                    row.setSample(sample);
+                }
+            });
+            rows.add(row);
         }
+        // Un solo cambio en la lista: el ListView se recoloca una vez
+        allRows.setAll(rows);
+    }
 
-        int prevStep = currentStep;
-        if (currentStep >= loopLimit) currentStep = 0;
-        else currentStep++;
-
-        double currentBPM = GlobalState.getBpm();
-        double stepDuration = (60000.0 / currentBPM) / 4.0;
-
+    /**
+     * Copia de las filas actuales sin JavaFX (para guardar el proyecto).
+     */
+    public List<RackTrack> snapshotTracks() {
+        List<RackTrack> tracks = new ArrayList<>(allRows.size());
         for (ChannelRackRowController row : allRows) {
-            if (prevStep != -1) row.clearPlayhead(prevStep);
-            if (currentStep == 0 && prevStep > 0) row.clearPlayhead(prevStep);
-
-            row.setPlayhead(currentStep);
+            tracks.add(row.toTrack());
+        }
+        return tracks;
+    }
 
-            StepData stepData = row.getStepData(currentStep);
-            if (stepData != null && stepData.isActive()) {
-                Sample sampleToPlay = row.getSample();
-                if (sampleToPlay != null) {
-                    SamplePlayer.playStep(sampleToPlay, stepData, stepDuration);
-                }
-            }
+    private void updatePlayhead(int step) {
+        // Una pasada por pulso y solo por las celdas que muestran una fila: cada una repinta en su
+        // canvas las dos casillas que cambian. Cuesta lo mismo con 10 filas que con 500
+        if (step == currentStep) return;
+        currentStep = step;
+        for (ChannelRackCell cell : liveCells) {
+            cell.setPlayhead(step);
         }
     }
 
@@ -169,120 +206,44 @@ public class ChannelRackController {
         }
         else {
             if (allRows.isEmpty()) return;
-            sequencerTimeline.play();
+            sequencer.start();
+            SamplePlayer.getMixer().wakeUp();
+            playheadTimer.start();
             isPlaying = true;
             btnEncenderRitmo.setStyle("-fx-background-color: #797979");
         }
     }
 
     private void stopSequencer() {
-        sequencerTimeline.stop();
+        sequencer.stop();
+        playheadTimer.stop();
         isPlaying = false;
-        for (ChannelRackRowController row : allRows) {
-            if (currentStep != -1) row.clearPlayhead(currentStep);
-        }
-        currentStep = -1;
+        updatePlayhead(-1);
     }
 
-    // Busca una fila por nombre y reproduce su sample (como un One-Shot)
-    public void playSoundByName(String rowName) {
-        for (ChannelRackRowController row : allRows) {
-
-            // Asumo que tienes un getter para el nombre. Si no, usa el label.
-            // Ojo: Asegúrate de que row.getTrackName() existe.
-            if (row.getTrackName().equals(rowName)) {
-                schedulePatternPlayback(row);
-                return;
-            }
-        }
-        System.out.println("No se encontró la pista: " + rowName);
-    }
-
-    // Busca una fila por nombre y detiene su reproducción
-    public void stopSoundByName(String rowName) {
-        for (ChannelRackRowController row : allRows) {
-            if (row.getTrackName().equals(rowName)) {
-                // Aquí llamaremos al método que cancela el audio
-                stopPatternPlayback(row);
-                return;
-            }
-        }
-    }
-
-    private void schedulePatternPlayback(ChannelRackRowController row) {
-        double bpm = GlobalState.getBpm();
-        double stepDurationMillis = (60000.0 / bpm) / 4.0;
-        Sample sample = row.getSample();
-        if (sample == null) return;
-
-        // Preparamos la lista para esta fila
-        List<PauseTransition> rowTransitions = new ArrayList<>();
-        activeSchedulers.put(row, rowTransitions);
-
-        for (int i = 0; i < row.getStepCount(); i++) {
-            StepData stepData = row.getCombinedStepData(i);
-            if (stepData != null && stepData.isActive()) {
-                double delay = i * stepDurationMillis;
-                PauseTransition scheduler = new PauseTransition(Duration.millis(delay));
-
-                rowTransitions.add(scheduler); // <--- REGISTRAMOS
-
-                final StepData finalStepData = stepData;
-                scheduler.setOnFinished(e -> {
-                    SamplePlayer.playStep(sample, finalStepData, stepDurationMillis);
-                    rowTransitions.remove(scheduler); // Limpieza al terminar
-                });
-                scheduler.play();
-            }
-        }
+    public void addTrackFromLibrary(String name, File audioFile) {
+        ChannelRackRowController rowController = createRow();
+        rowController.setTrackName(name);
+        rowController.loadSample(audioFile);
     }
 
-    private void stopPatternPlayback(ChannelRackRowController row) {
-        // 1. Cancelar todos los temporizadores pendientes (evita que suenen pasos futuros)
-        List<PauseTransition> transitions = activeSchedulers.get(row);
-        if (transitions != null) {
-            for (PauseTransition pt : transitions) {
-                pt.stop();
-            }
-            transitions.clear();
-            activeSchedulers.remove(row);
-        }
-
-        // 2. Detener el audio que esté sonando actualmente en esa fila
-        // Para esto, necesitamos que SamplePlayer sepa qué fuente detener.
-        SamplePlayer.stopSample(row.getSample());
+    /**
+     * Se llama desde el hilo que haga el cambio (los pasos se pueden editar desde cualquiera):
+     * solo debe marcar la canción como pendiente de recompilar.
+     */
+    public void setOnSongChanged(Runnable onSongChanged) {
+        this.onSongChanged = onSongChanged;
     }
 
-    public void addTrackFromLibrary(String name, File audioFile) {
-        FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/example/tunesfx/ChannelRackRow.fxml")); // Asegúrate de que la ruta del FXML es correcta, a veces es views/ChannelRackRow.fxml
-        try {
-            Parent rowNode = loader.load();
-            ChannelRackRowController rowController = loader.getController();
-
-            // 1. Configurar nombre
-            rowController.setTrackName(name);
-
-            // 2. Cargar el sonido
-            rowController.loadSample(audioFile);
-
-            // 3. Añadir al contenedor visual
-            rackContainer.getChildren().add(rowNode);
-
-            // 4. Registrar controlador
-            rowController.setOnDelete(() -> {
-                allRows.remove(rowController);
-                rackContainer.getChildren().remove(rowNode);
-            });
-            allRows.add(rowController);
-
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    private void songChanged() {
+        Runnable callback = onSongChanged;
+        if (callback != null) callback.run();
     }
 
     // Método para apagar todo si cierran la ventana
     public void shutdown() {
         stopSequencer();
+        SamplePlayer.getMixer().removeScheduler(sequencer);
     }
 
     public ChannelRackRowController findRowController(String name) {
@@ -293,4 +254,16 @@ public class ChannelRackController {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Filas por nombre (la primera si hay varias con el mismo, igual que findRowController).
+     * Para el compilador de la canción, que busca la fila de cada bloque de la playlist.
+     */
+    public Map<String, ChannelRackRowController> rowsByName() {
+        Map<String, ChannelRackRowController> rows = new HashMap<>();
+        for (ChannelRackRowController row : allRows) {
+            rows.putIfAbsent(row.getTrackName(), row);
+        }
+        return rows;
+    }
+}
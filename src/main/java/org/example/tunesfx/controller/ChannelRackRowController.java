@@ -1,99 +1,100 @@
 package org.example.tunesfx.controller;
 
-import javafx.event.ActionEvent;
-import javafx.fxml.FXML;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
+import org.example.tunesfx.audio.MixerChannel;
+import org.example.tunesfx.audio.PatternModel;
+import org.example.tunesfx.audio.RackTrack;
 import org.example.tunesfx.audio.Sample;
+import org.example.tunesfx.audio.SamplePool;
+import org.example.tunesfx.audio.SequencerTrack;
 import org.example.tunesfx.audio.StepData;
-import org.example.tunesfx.utils.AudioFileLoader;
 import org.example.tunesfx.utils.GlobalState;
 
 import javax.sound.sampled.UnsupportedAudioFileException;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
-
-public class ChannelRackRowController {
-
-    @FXML private Button playRowButtom;
-    @FXML private Button muteRowButtom;
-    @FXML private Button deleteRowButton;
-    @FXML private Label trackNameLabel;
-    @FXML private Button stepBtn1, stepBtn2, stepBtn3, stepBtn4;
-    @FXML private Button stepBtn5, stepBtn6, stepBtn7, stepBtn8;
-    @FXML private Button stepBtn9, stepBtn10, stepBtn11, stepBtn12;
-    @FXML private Button stepBtn13, stepBtn14, stepBtn15, stepBtn16;
-    @FXML private Button stepBtn17, stepBtn18, stepBtn19, stepBtn20;
-    @FXML private Button stepBtn21, stepBtn22, stepBtn23, stepBtn24;
-    @FXML private Button stepBtn25, stepBtn26, stepBtn27, stepBtn28;
-    @FXML private Button stepBtn29, stepBtn30, stepBtn31, stepBtn32;
-    @FXML private Button stepBtn33, stepBtn34, stepBtn35, stepBtn36;
-    @FXML private Button stepBtn37, stepBtn38, stepBtn39, stepBtn40;
-    @FXML private Button stepBtn41, stepBtn42, stepBtn43, stepBtn44;
-    @FXML private Button stepBtn45, stepBtn46, stepBtn47, stepBtn48;
-    @FXML private Button stepBtn49, stepBtn50, stepBtn51, stepBtn52;
-    @FXML private Button stepBtn53, stepBtn54, stepBtn55, stepBtn56;
-    @FXML private Button stepBtn57, stepBtn58, stepBtn59, stepBtn60;
-    @FXML private Button stepBtn61, stepBtn62, stepBtn63, stepBtn64;
-    // Lista para acceder a los botones por índice
-    private List<Button> stepButtons;
+
+/**
+ * Una fila del Channel Rack: sus pasos, su sample y su canal, y lo que hacen sus botones y menús.
+ * Ya no carga un FXML ni tiene nodos propios: el rack es una lista virtualizada y la fila solo se pinta
+ * mientras se ve, en una {@link ChannelRackCell} reutilizada. La celda le presta su {@link StepStrip}
+ * mientras la muestra (ver {@link #attachStrip(StepStrip)}).
+ */
+public class ChannelRackRowController implements SequencerTrack {
+
+    // Nombre de la fila (la celda que la muestra lo enlaza a su label)
+    private final StringProperty trackName = new SimpleStringProperty("Sample");
+    // Los pasos de la celda que muestra la fila ahora mismo (null si no se ve)
+    private StepStrip stepStrip;
+    // Los pasos de la fila, fuera de los botones: la UI los cambia y el secuenciador lee sus fotos
+    private final PatternModel pattern = new PatternModel();
 
     // El sample que esta fila debe reproducir
-    private Sample mySample;
+    private volatile Sample mySample;
+    // Fila borrada: ya no acepta samples (los de un proyecto pueden llegar tarde, desde otro hilo)
+    private boolean disposed = false;
+    // Archivo del que salió el sample (para guardarlo como referencia en el proyecto)
+    private File sampleFile;
+    // Canal del mezclador: límite de polifonía y choke group de la fila
+    private final MixerChannel channel = new MixerChannel();
 
     private Runnable deleteCallback;
-    private boolean mute = false;
-
-    public static final int NUM_STEPS = 64;
-
-    @FXML
-    public void initialize() {
-        stepButtons = Arrays.asList(
-                stepBtn1, stepBtn2, stepBtn3, stepBtn4, stepBtn5, stepBtn6, stepBtn7, stepBtn8,
-                stepBtn9, stepBtn10, stepBtn11, stepBtn12, stepBtn13, stepBtn14, stepBtn15, stepBtn16,
-                stepBtn17, stepBtn18, stepBtn19, stepBtn20, stepBtn21, stepBtn22, stepBtn23, stepBtn24,
-                stepBtn25, stepBtn26, stepBtn27, stepBtn28, stepBtn29, stepBtn30, stepBtn31, stepBtn32,
-                stepBtn33, stepBtn34, stepBtn35, stepBtn36, stepBtn37, stepBtn38, stepBtn39, stepBtn40,
-                stepBtn41, stepBtn42, stepBtn43, stepBtn44, stepBtn45, stepBtn46, stepBtn47, stepBtn48,
-                stepBtn49, stepBtn50, stepBtn51, stepBtn52, stepBtn53, stepBtn54, stepBtn55, stepBtn56,
-                stepBtn57, stepBtn58, stepBtn59, stepBtn60, stepBtn61, stepBtn62, stepBtn63, stepBtn64
-        );
-
-        for (Button btn : stepButtons) {
-            btn.setUserData(new StepData());
-            btn.setOnMouseClicked(this::handleMouseClick);
-        }
+    private final BooleanProperty mute = new SimpleBooleanProperty(false);
+
+    public static final int NUM_STEPS = PatternModel.NUM_STEPS;
+
+    /**
+     * La celda que empieza a mostrar la fila le deja su canvas de pasos (y lo pinta con este patrón).
+     */
+    public void attachStrip(StepStrip strip) {
+        stepStrip = strip;
+        strip.setPattern(pattern);
     }
 
-    private void handleMouseClick(MouseEvent event) {
-        Button clickedButton = (Button) event.getSource();
-        StepData data = (StepData) clickedButton.getUserData();
+    // La celda pasa a mostrar otra fila: solo se suelta si sigue siendo la nuestra
+    public void detachStrip(StepStrip strip) {
+        if (stepStrip == strip) stepStrip = null;
+    }
+
+    // Repinta los pasos si la fila se está viendo (si no, ya se pintarán al volver a verse)
+    private void refreshSteps() {
+        if (stepStrip != null) stepStrip.refresh();
+    }
+
+    /**
+     * Clic en los pasos de la celda que muestra esta fila.
+     */
+    public void handleStepClick(MouseEvent event) {
+        if (stepStrip == null) return;
+        int step = stepStrip.stepAt(event.getX(), event.getY());
+        if (step == -1) return; // Clic en el hueco entre dos pasos
 
         if (event.getButton() == MouseButton.PRIMARY) {
             // --- CLICK IZQUIERDO: Encender/Apagar ---
-            boolean newState = !data.isActive();
-            data.setActive(newState);
-
-            if (newState) {
-                clickedButton.getStyleClass().add("step-button-on");
-            } else {
-                clickedButton.getStyleClass().remove("step-button-on");
-            }
+            pattern.toggle(step);
+            refreshSteps();
 
         } else if (event.getButton() == MouseButton.SECONDARY) {
             // --- CLICK DERECHO: Menú de Tono ---
-            showMenu(clickedButton, data, event.getScreenX(), event.getScreenY());
+            showMenu(stepStrip, step, event.getScreenX(), event.getScreenY());
         }
     }
 
     // MENÚ DE STEPS
 
-    private void showMenu(Button btn, StepData data, double x, double y) {
+    private void showMenu(Node anchor, int step, double x, double y) {
+        // Valores iniciales de los sliders; los cambios van directos al patrón
+        StepData data = pattern.getStep(step);
         ContextMenu menu = new ContextMenu();
         menu.getStyleClass().add("context-menu");
 
@@ -102,8 +103,8 @@ public class ChannelRackRowController {
 
         MenuItem resetItem = new MenuItem("Reset (Original)");
         resetItem.setOnAction(e -> {
-            data.setSemitoneOffset(0);
-            updateButtonText(btn, data);
+            pattern.editStep(step, d -> d.setSemitoneOffset(0));
+            refreshSteps();
         });
         pitchMenu.getItems().add(resetItem);
 
@@ -112,9 +113,11 @@ public class ChannelRackRowController {
             final int offset = i;
             MenuItem item = new MenuItem((offset > 0 ? "+" : "") + offset + " Semi");
             item.setOnAction(e -> {
-                data.setSemitoneOffset(offset);
-                updateButtonText(btn, data);
-                if (!data.isActive()) { data.setActive(true); btn.getStyleClass().add("step-button-on"); }
+                pattern.editStep(step, d -> {
+                    d.setSemitoneOffset(offset);
+                    d.setActive(true);
+                });
+                refreshSteps();
             });
             pitchMenu.getItems().add(item);
         }
@@ -127,7 +130,7 @@ public class ChannelRackRowController {
         attackSlider.setShowTickLabels(false);
         Label attackLabel = new Label("Attack: " + String.format("%.2f", data.getAttack()));
         attackSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setAttack(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setAttack(newVal.doubleValue()));
             attackLabel.setText("Attack: " + String.format("%.2f", newVal));
         });
 
@@ -141,7 +144,7 @@ public class ChannelRackRowController {
         Slider releaseSlider = new Slider(0, 0.5, data.getRelease()); // Máx 50% del sample
         Label releaseLabel = new Label("Release: " + String.format("%.2f", data.getRelease()));
         releaseSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setRelease(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setRelease(newVal.doubleValue()));
             releaseLabel.setText("Release: " + String.format("%.2f", newVal));
         });
 
@@ -155,7 +158,7 @@ public class ChannelRackRowController {
         Slider volSlider = new Slider(0, 1.0, data.getVolume());
         Label volLabel = new Label("Volume: " + (int)(data.getVolume()*100) + "%");
         volSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setVolume(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setVolume(newVal.doubleValue()));
             volLabel.setText("Vol: " + (int)(newVal.doubleValue()*100) + "%");
         });
 
@@ -165,7 +168,7 @@ public class ChannelRackRowController {
         volItem.setHideOnClick(false);
         menu.getItems().add(volItem);
 
-        menu.show(btn, x, y);
+        menu.show(anchor, x, y);
 
         // --- SECCIÓN 5: DURACIÓN (Slider) ---
         // Rango: 0.01 (1%) a 1.0 (100%)
@@ -173,7 +176,7 @@ public class ChannelRackRowController {
         Label durationLabel = new Label("Duration: " + (int)(data.getDurationFactor()*100) + "%");
 
         durationSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setDurationFactor(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setDurationFactor(newVal.doubleValue()));
             durationLabel.setText("Duración: " + (int)(newVal.doubleValue()*100) + "%");
         });
 
@@ -190,7 +193,7 @@ public class ChannelRackRowController {
         delayLabel.setStyle("-fx-text-fill: white;");
 
         delaySlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setDelay(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setDelay(newVal.doubleValue()));
             delayLabel.setText("Delay: " + (int)(newVal.doubleValue()*100) + "%");
         });
 
@@ -210,7 +213,7 @@ public class ChannelRackRowController {
         panLabel.setStyle("-fx-text-fill: white;");
 
         panSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
-            data.setPan(newVal.doubleValue());
+            pattern.editStep(step, d -> d.setPan(newVal.doubleValue()));
             panLabel.setText(formatPanLabel(newVal.doubleValue()));
         });
 
@@ -222,32 +225,21 @@ public class ChannelRackRowController {
         menu.getItems().add(panItem);
     }
 
-    // Pequeña ayuda visual: poner un numerito en el botón si tiene pitch
-    private void updateButtonText(Button btn, StepData data) {
-        int offset = data.getSemitoneOffset();
-        if (offset == 0) {
-            btn.setText("");
-        } else {
-            btn.setText(String.valueOf(offset));
-            btn.setStyle("-fx-font-size: 9px; -fx-padding: 0;");
-        }
-    }
-
     public void handleLabelClick(MouseEvent event) {
         // Detectar Click Derecho (Secundario)
         if (event.getButton() == MouseButton.SECONDARY) {
-            showTrackSettingsMenu(event.getScreenX(), event.getScreenY());
+            showTrackSettingsMenu((Node) event.getSource(), event.getScreenX(), event.getScreenY());
         }
     }
 
     // MENÚ GENERAL
 
-    private void showTrackSettingsMenu(double x, double y) {
+    private void showTrackSettingsMenu(Node anchor, double x, double y) {
         ContextMenu menu = new ContextMenu();
         menu.getStyleClass().add("context-menu"); // Usar tu estilo CSS existente
 
         // --- PARTE 1: RENOMBRAR (Tu código anterior mejorado) ---
-        TextField renameField = new TextField(trackNameLabel.getText());
+        TextField renameField = new TextField(trackName.get());
         renameField.setPromptText("Renombrar pista...");
         renameField.setStyle("-fx-background-color: #333333; -fx-text-fill: white;"); // Estilo oscuro
 
@@ -265,7 +257,7 @@ public class ChannelRackRowController {
         renameField.setOnAction(e -> {
             String newName = renameField.getText();
             if (newName != null && !newName.trim().isEmpty()) {
-                trackNameLabel.setText(newName.trim());
+                trackName.set(newName.trim());
                 menu.hide();
             }
         });
@@ -273,7 +265,7 @@ public class ChannelRackRowController {
         menu.getItems().add(new SeparatorMenuItem());
 
         // Obtenemos los datos del primer paso para poner los valores iniciales de los sliders
-        StepData referenceData = (StepData) stepBtn1.getUserData();
+        StepData referenceData = pattern.getStep(0);
 
         // 1. Botón Enviar a Playlist
         MenuItem sendToPlaylistItem = new MenuItem("Send to Playlist as Pattern");
@@ -283,10 +275,10 @@ public class ChannelRackRowController {
             // Si no, usamos el texto actual del Label.
             String nameToSend = renameField.getText().trim();
             if (nameToSend.isEmpty()) {
-                nameToSend = trackNameLabel.getText();
+                nameToSend = trackName.get();
             } else {
                 // Aprovechamos para actualizar el label si el usuario escribió algo y no dio Enter
-                trackNameLabel.setText(nameToSend);
+                trackName.set(nameToSend);
             }
 
             // Enviamos a la ventana principal usando el puente
@@ -302,6 +294,31 @@ public class ChannelRackRowController {
         menu.getItems().add(sendToPlaylistItem);
         menu.getItems().add(new SeparatorMenuItem());
 
+        // --- PARTE 1.5: VOCES (polifonía y choke group) ---
+        Menu polyMenu = new Menu("Polyphony");
+        ToggleGroup polyGroup = new ToggleGroup();
+        for (int limit : new int[] {MixerChannel.UNLIMITED, 1, 2, 4, 8}) {
+            RadioMenuItem item = new RadioMenuItem(limit == MixerChannel.UNLIMITED ? "Unlimited" : limit + " voices");
+            item.setToggleGroup(polyGroup);
+            item.setSelected(channel.getMaxPolyphony() == limit);
+            item.setOnAction(e -> channel.setMaxPolyphony(limit));
+            polyMenu.getItems().add(item);
+        }
+        menu.getItems().add(polyMenu);
+
+        Menu chokeMenu = new Menu("Choke group");
+        ToggleGroup chokeToggle = new ToggleGroup();
+        for (int group = MixerChannel.NO_CHOKE_GROUP; group <= 8; group++) {
+            final int g = group;
+            RadioMenuItem item = new RadioMenuItem(g == MixerChannel.NO_CHOKE_GROUP ? "None" : "Group " + g);
+            item.setToggleGroup(chokeToggle);
+            item.setSelected(channel.getChokeGroup() == g);
+            item.setOnAction(e -> channel.setChokeGroup(g));
+            chokeMenu.getItems().add(item);
+        }
+        menu.getItems().add(chokeMenu);
+        menu.getItems().add(new SeparatorMenuItem());
+
         // --- PARTE 2: CONTROLES GLOBALES ---
 
         // 2.1 PITCH GLOBAL
@@ -384,7 +401,7 @@ public class ChannelRackRowController {
             applyToAllSteps(d -> d.setPan(val));
         });
         addSliderToMenu(menu, panLabel, panSlider);
-        menu.show(trackNameLabel, x, y);
+        menu.show(anchor, x, y);
         renameField.requestFocus();
     }
     // Pequeño helper para no repetir el código de añadir sliders al menú
@@ -397,12 +414,11 @@ public class ChannelRackRowController {
         menu.getItems().add(item);
     }
     /**
-     * Método público para el PrincipalController.
-     * Ya no miramos el estilo CSS, miramos el objeto de datos.
+     * Los pasos de la fila. Ya no miramos el estilo CSS ni los botones, miramos el patrón.
      */
-    public StepData getStepData(int step) {
-        if (step < 0 || step >= stepButtons.size()) return null;
-        return (StepData) stepButtons.get(step).getUserData();
+    @Override
+    public PatternModel getPattern() {
+        return pattern;
     }
     /**
      * El PrincipalController usará esto para decirnos
@@ -414,8 +430,7 @@ public class ChannelRackRowController {
     /**
      * Se llama cuando se pulsa el botón 'X' de esta fila.
      */
-    @FXML
-    private void handleDeleteRow() {
+    public void handleDeleteRow() {
         if (deleteCallback != null) {
             deleteCallback.run();
         } else {
@@ -426,77 +441,74 @@ public class ChannelRackRowController {
      * El controlador principal llamará a esto para asignar un sample a esta fila.
      */
     public void setSample(Sample sample) {
-        this.mySample = sample;
-        // Opcional: poner un nombre
-        // this.trackNameLabel.setText("Sample " + sample.hashCode());
+        // Pasa por el pool: si otra fila ya tiene este mismo audio, las dos comparten el Sample
+        Sample pooled = SamplePool.getInstance().acquire(sample);
+        Sample old;
+        synchronized (this) {
+            if (disposed) {
+                // La fila se borró mientras el sample se decodificaba
+                SamplePool.getInstance().release(pooled);
+                return;
+            }
+            old = mySample;
+            this.mySample = pooled;
+        }
+        SamplePool.getInstance().release(old);
+    }
+
+    /**
+     * Suelta el sample al borrar la fila (si era la última que lo usaba, sale del pool y de la caché).
+     */
+    public void releaseSample() {
+        Sample old;
+        synchronized (this) {
+            disposed = true;
+            old = mySample;
+            mySample = null;
+        }
+        SamplePool.getInstance().release(old);
     }
     /**
      * Devuelve el sample asignado a esta fila.
      */
+    @Override
     public Sample getSample() {
         return mySample;
     }
+    @Override
+    public MixerChannel getChannel() {
+        return channel;
+    }
     /**
      * Comprueba si un paso específico está "encendido".
      */
     public boolean isStepOn(int step) {
-        if (step < 0 || step >= stepButtons.size()) return false;
-        return stepButtons.get(step).getStyleClass().contains("step-button-on");
-    }
-    /**
-     * Resalta el botón del paso actual (playhead).
-     */
-    public void setPlayhead(int step) {
-        if (step < 0 || step >= stepButtons.size()) return;
-        stepButtons.get(step).getStyleClass().add("step-button-playhead");
-    }
-    /**
-     * Limpia el resaltado del playhead del botón.
-     */
-    public void clearPlayhead(int step) {
-        if (step < 0 || step >= stepButtons.size()) return;
-        stepButtons.get(step).getStyleClass().remove("step-button-playhead");
+        return pattern.snapshot().isActive(step);
     }
     /**
      * Devuelve el índice del último paso activo en esta fila.
      * Si no hay ninguno, devuelve -1.
      */
     public int getLastActiveStepIndex() {
-        // Recorremos de atrás hacia adelante (desde el paso 63 hasta el 0)
-        for (int i = stepButtons.size() - 1; i >= 0; i--) {
-            StepData data = getStepData(i);
-            if (data != null && data.isActive()) {
-                return i;
-            }
-        }
-        return -1; // Fila vacía
+        // Sale del bitset de pasos activos, sin recorrerlos
+        return pattern.snapshot().lastActiveStep();
     }
     /**
      * Helper para aplicar un cambio a TODOS los pasos de la fila.
      */
     private void applyToAllSteps(java.util.function.Consumer<StepData> action) {
-        for (Button btn : stepButtons) {
-            StepData data = (StepData) btn.getUserData();
-            if (data != null) {
-                action.accept(data);
-                // Si cambias el Pitch, hay que actualizar el texto del botón visualmente
-                // (Esta comprobación es específica para el pitch, pero no hace daño aquí)
-                updateButtonText(btn, data);
-            }
-        }
+        // Un solo cambio en el patrón (el secuenciador nunca ve la fila a medias)
+        pattern.editAll(action);
+        // El canvas se repinta entero una vez (con el pitch nuevo de cada paso)
+        refreshSteps();
     }
 
-    // Método para obtener la configuración combinada (Knobs + Step específico)
-    public StepData getCombinedStepData(int stepIndex) {
-        StepData step = getStepData(stepIndex);
-        if (step == null || !step.isActive()) return null;
-        return step;
+    public void setTrackName(String name) {
+        trackName.set(name);
     }
 
-    public void setTrackName(String name) {
-        if (this.trackNameLabel != null) {
-            this.trackNameLabel.setText(name);
-        }
+    public StringProperty trackNameProperty() {
+        return trackName;
     }
 
     /**
@@ -506,12 +518,10 @@ public class ChannelRackRowController {
         if (file == null) return;
 
         try {
-            // Usamos tu utilidad existente AudioFileLoader
-            short[] data = AudioFileLoader.loadSample(file);
-
-            // Creamos el sample y lo asignamos
-            Sample newSample = new Sample(data);
+            // Si el archivo ya lo tiene otra fila se reutiliza su sample sin volver a decodificarlo
+            Sample newSample = SamplePool.getInstance().load(file);
             this.setSample(newSample);
+            this.sampleFile = file;
 
         } catch (IOException | UnsupportedAudioFileException e) {
             System.err.println("Error al cargar el sample en la fila: " + file.getName());
@@ -519,6 +529,40 @@ public class ChannelRackRowController {
         }
     }
 
+    public File getSampleFile() {
+        return sampleFile;
+    }
+
+    public void setSampleFile(File sampleFile) {
+        this.sampleFile = sampleFile;
+    }
+
+    /**
+     * Copia nombre, pasos y canal de una fila de proyecto. El sample no: llega cuando termina de
+     * decodificarse (RackTrack.getSampleReady()).
+     */
+    public void applyTrack(RackTrack track) {
+        setTrackName(track.getName());
+        sampleFile = track.getSampleFile();
+        channel.setMaxPolyphony(track.getChannel().getMaxPolyphony());
+        channel.setChokeGroup(track.getChannel().getChokeGroup());
+        pattern.copyFrom(track.getPattern());
+        refreshSteps();
+    }
+
+    /**
+     * Foto de la fila sin JavaFX (para guardar el proyecto).
+     */
+    public RackTrack toTrack() {
+        RackTrack track = new RackTrack(getTrackName());
+        track.setSample(mySample);
+        track.setSampleFile(sampleFile);
+        track.getChannel().setMaxPolyphony(channel.getMaxPolyphony());
+        track.getChannel().setChokeGroup(channel.getChokeGroup());
+        track.getPattern().copyFrom(pattern);
+        return track;
+    }
+
     // Método para saber cuántos pasos tiene la fila
     public int getStepCount() {
         return NUM_STEPS;
@@ -531,36 +575,33 @@ public class ChannelRackRowController {
     }
 
     public String getTrackName() {
-        return trackNameLabel.getText();
+        return trackName.get();
     }
 
-    public void handleMuteRow(ActionEvent actionEvent) {
-        if (mute) {
+    public void handleMuteRow() {
+        if (mute.get()) {
             applyToAllSteps(d -> d.setVolume(1));
-            mute = false;
-            muteRowButtom.setStyle("-fx-text-fill: white; -fx-font-weight: bold;-fx-background-color: #041200");
+            mute.set(false);
         } else {
             applyToAllSteps(d -> d.setVolume(0));
-            mute = true;
-            muteRowButtom.setStyle("-fx-text-fill: black; -fx-font-weight: normal; -fx-background-color: #ffffff");
+            mute.set(true);
         }
     }
 
-    public void handlePlayRow(ActionEvent actionEvent) {
-        if (mySample == null || mySample.getData() == null) {
+    // La celda pinta el botón M según esto
+    public ReadOnlyBooleanProperty muteProperty() {
+        return mute;
+    }
+
+    public void handlePlayRow() {
+        if (mySample == null || mySample.getLength() == 0) {
             System.out.println("No hay sample cargado en esta fila.");
             return;
         }
-        new Thread(() -> {
-            try {
-                StepData previewData = new StepData();
-                previewData.setVolume(1.0);
-                previewData.setSemitoneOffset(0);
-                org.example.tunesfx.audio.SamplePlayer.playStep(mySample, previewData,mySample.getData().length);
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+        // El mezclador no bloquea: podemos disparar la preview directamente desde el hilo de FX
+        StepData previewData = new StepData();
+        previewData.setVolume(1.0);
+        previewData.setSemitoneOffset(0);
+        org.example.tunesfx.audio.SamplePlayer.playStep(channel, mySample, previewData, mySample.getLength());
     }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package org.example.tunesfx.controller;
+
+/**
+ * Cuentas de la rejilla de la playlist que no dependen de JavaFX: qué nivel de detalle se pinta con
+ * cada zoom, cada cuántos compases va una marca y en qué pista cae una coordenada.
+ * Todo en coordenadas de contenido (píxeles desde el principio de la canción, sin scroll).
+ */
+final class PlaylistGrid {
+
+    static final int STEPS_PER_BAR = 16;
+    static final int BEATS_PER_BAR = 4;
+
+    // Separación mínima para dibujar un nivel de la rejilla (pasos, beats) y para poner números en la regla
+    static final double MIN_STEP_SPACING = 12;
+    static final double MIN_LINE_SPACING = 6;
+    static final double MIN_LABEL_SPACING = 40;
+
+    private PlaylistGrid() {
+    }
+
+    // Con mucho zoom se ven los pasos...
+    static boolean showsSteps(double barWidth) {
+        return barWidth / STEPS_PER_BAR >= MIN_STEP_SPACING;
+    }
+
+    // ...con algo menos los beats, y si no solo los compases
+    static boolean showsBeats(double barWidth) {
+        return barWidth / BEATS_PER_BAR >= MIN_LINE_SPACING;
+    }
+
+    // En la regla, números de beat (1.2, 1.3...) además de los de compás
+    static boolean showsBeatLabels(double barWidth) {
+        return barWidth / BEATS_PER_BAR >= MIN_LABEL_SPACING;
+    }
+
+    // Cada cuántos compases (potencia de 2) hay que marcar para que queden al menos minSpacing píxeles
+    static long barsPerMark(double barWidth, double minSpacing) {
+        long every = 1;
+        while (every * barWidth < minSpacing) every *= 2;
+        return every;
+    }
+
+    /**
+     * Scroll horizontal que deja en anchorX (coordenada de la vista) el mismo punto de la canción
+     * al pasar de oldBarWidth a newBarWidth píxeles por compás. Sin recortar al rango del scroll.
+     */
+    static double scrollAfterZoom(double scroll, double anchorX, double oldBarWidth, double newBarWidth) {
+        double anchorBar = (anchorX + scroll) / oldBarWidth;
+        return anchorBar * newBarWidth - anchorX;
+    }
+
+    // Pista en esa altura, o -1 si cae fuera de las que hay
+    static int trackAt(double contentY, double trackHeight, int trackCount) {
+        int track = (int) Math.floor(contentY / trackHeight);
+        return (track >= 0 && track < trackCount) ? track : -1;
+    }
+
+    // Primera pista que toca la franja que empieza en fromY (0 si está por encima)
+    static int firstTrackFrom(double fromY, double trackHeight) {
+        return Math.max(0, (int) Math.floor(fromY / trackHeight));
+    }
+
+    // Última pista que toca la franja que acaba en toY (como mucho la última que hay)
+    static int lastTrackTo(double toY, double trackHeight, int trackCount) {
+        return Math.min(trackCount - 1, (int) Math.floor(toY / trackHeight));
+    }
+}
@@ -0,0 +1,909 @@
+package org.example.tunesfx.controller;
+
+import javafx.application.Platform;
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.Cursor;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import org.example.tunesfx.audio.PlaylistIndex;
+import org.example.tunesfx.audio.PlaylistItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * La playlist dibujada en canvas: regla de tiempo, cabeceras de pista y rejilla con los bloques.
+ * Los canvas miden lo que se ve en pantalla (no la canción entera) y solo se pinta lo visible; fuera de
+ * scroll y zoom solo se repinta la zona que ha cambiado (el cursor, el bloque que se arrastra...).
+ * Los clics se resuelven contra los bloques (PlaylistItem, en un {@link PlaylistIndex}), no hay un nodo por bloque.
+ * <p>
+ * Con el zoom (Ctrl + rueda) la rejilla pasa de compases a beats y a pasos según el espacio que haya.
+ * Selección: arrastrando en un hueco (rectángulo), o Ctrl/Shift + clic en un bloque. Los seleccionados se
+ * mueven juntos; Ctrl + D los duplica detrás, Supr los borra, Ctrl + A selecciona todo y Esc deselecciona.
+ */
+public class PlaylistView extends Region {
+
+    public static final double RULER_HEIGHT = 30;
+    public static final double HEADER_WIDTH = 120;
+    public static final double TRACK_HEIGHT = 40;
+    // Zoom en píxeles por compás (160 = 4 celdas de 40, lo que medía antes)
+    public static final double DEFAULT_BAR_WIDTH = 160;
+    private static final double MIN_BAR_WIDTH = 4;
+    private static final double MAX_BAR_WIDTH = 2560;
+    private static final double ZOOM_STEP = 1.15;
+
+    private static final double RESIZE_MARGIN = 10.0; // Píxeles del borde derecho para redimensionar
+    private static final double DRAG_TOLERANCE_PX = 5.0;
+
+    private static final Color GRID_BACKGROUND = Color.web("#1A1A1A");
+    private static final Color TRACK_LINE = Color.web("#222222");
+    private static final Color STEP_LINE = Color.web("#202020");
+    private static final Color BEAT_LINE = Color.web("#2A2A2A");
+    private static final Color BAR_LINE = Color.web("#3A3A3A");
+    private static final Color CLIP_FILL = Color.web("#4a4a4a");
+    private static final Color CLIP_BORDER = Color.web("#666666");
+    private static final Color CLIP_SELECTED_FILL = Color.web("#5a5a5a");
+    private static final Color CLIP_SELECTED_BORDER = Color.web("#FFB74D");
+    private static final Color BAND_FILL = Color.color(1, 1, 1, 0.08);
+    private static final Color BAND_BORDER = Color.web("#bbbbbb");
+    private static final Color LOOP_FILL = Color.web("#4FC3F7", 0.12);
+    private static final Color LOOP_BORDER = Color.web("#4FC3F7", 0.6);
+    private static final Color PLAYHEAD = Color.color(1, 0, 0, 0.8);
+    private static final Color RULER_BACKGROUND = Color.web("#2D2D2D");
+    private static final Color RULER_BORDER = Color.web("#121212");
+    private static final Color RULER_TEXT = Color.web("#888888");
+    private static final Color RULER_TICK = Color.web("#444444");
+    private static final Color HEADER_EVEN = Color.web("#262626");
+    private static final Color HEADER_ODD = Color.web("#232323");
+    private static final Color HEADER_TEXT = Color.web("#aaaaaa");
+    private static final Font CLIP_FONT = Font.font("System", FontWeight.BOLD, 10);
+    private static final Font RULER_FONT = Font.font(10);
+    private static final Font HEADER_FONT = Font.font(12);
+
+    private final Canvas ruler = new Canvas();
+    private final Canvas headers = new Canvas();
+    private final Canvas grid = new Canvas();
+    private final ScrollBar hBar = new ScrollBar();
+    private final ScrollBar vBar = new ScrollBar();
+    private final ContextMenu trackMenu = new ContextMenu();
+
+    // Modelo: nombres de pista y los bloques en su índice (por pista y compás)
+    private int numBars = 400;
+    private final List<String> trackNames = new ArrayList<>();
+    private final PlaylistIndex index = new PlaylistIndex();
+    private final Set<PlaylistItem> selection = Collections.newSetFromMap(new IdentityHashMap<>());
+    private double barWidth = DEFAULT_BAR_WIDTH;
+    private double playheadBars = 0;
+    private int loopStartBar = 0;
+    private int loopEndBar = 0; // Sin loop si no es mayor que loopStartBar
+
+    // Callbacks hacia el controlador
+    private BiConsumer<Integer, Integer> onCellClicked;
+    private Consumer<PlaylistItem> onClipAdded;
+    private Consumer<PlaylistItem> onClipRemoved;
+    // Un bloque que ya estaba se ha movido o cambiado de tamaño (en cada paso del arrastre)
+    private Consumer<PlaylistItem> onClipChanged;
+    private DoubleConsumer onSeek;
+    private BiConsumer<Integer, Integer> onLoopRegion;
+    private Runnable onLoopCleared;
+    private IntConsumer onTrackRename;
+
+    // Ratón en la rejilla. Al mover o redimensionar se cambian los bloques de verdad (ajustados a la rejilla)
+    // en cada paso del arrastre, y el índice con ellos
+    private enum DragMode { NONE, CLICK, BAND, MOVE, RESIZE }
+    private DragMode dragMode = DragMode.NONE;
+    private double mouseAnchorX;
+    private double mouseAnchorY;
+    private PlaylistItem resizeItem;
+    // Inicio y pista de cada seleccionado al empezar a moverlos, y el desplazamiento aplicado
+    private final Map<PlaylistItem, int[]> moveOrigins = new IdentityHashMap<>();
+    private int movedBars = 0;
+    private int movedTracks = 0;
+    // Rectángulo de selección (coordenadas de contenido)
+    private double bandX;
+    private double bandY;
+    // Ratón en la regla (arrastre del loop con el botón derecho)
+    private double loopDragStartX = -1;
+    private int previewLoopStart = 0;
+    private int previewLoopEnd = 0;
+    private int menuTrack = -1;
+
+    // Repintado: la zona sucia de la rejilla (en coordenadas del canvas) se junta en un rectángulo
+    // y se pinta una vez en el siguiente pulso
+    private boolean redrawScheduled = false;
+    private boolean gridFullyDirty = true;
+    private boolean rulerDirty = true;
+    private boolean headersDirty = true;
+    private double dirtyMinX = Double.POSITIVE_INFINITY;
+    private double dirtyMinY = Double.POSITIVE_INFINITY;
+    private double dirtyMaxX = Double.NEGATIVE_INFINITY;
+    private double dirtyMaxY = Double.NEGATIVE_INFINITY;
+
+    public PlaylistView() {
+        hBar.setOrientation(Orientation.HORIZONTAL);
+        vBar.setOrientation(Orientation.VERTICAL);
+        hBar.valueProperty().addListener((obs, oldVal, newVal) -> {
+            rulerDirty = true;
+            invalidateAll();
+        });
+        vBar.valueProperty().addListener((obs, oldVal, newVal) -> {
+            headersDirty = true;
+            invalidateAll();
+        });
+        getChildren().addAll(ruler, headers, grid, hBar, vBar);
+        setStyle("-fx-background-color: #1A1A1A;");
+
+        MenuItem renameItem = new MenuItem("Rename track");
+        renameItem.setOnAction(e -> {
+            if (onTrackRename != null && menuTrack >= 0) onTrackRename.accept(menuTrack);
+        });
+        trackMenu.getItems().add(renameItem);
+
+        addEventHandler(ScrollEvent.SCROLL, this::handleScroll);
+        addEventHandler(KeyEvent.KEY_PRESSED, this::handleKey);
+        setFocusTraversable(true);
+        setupGridMouse();
+        setupRulerMouse();
+        setupHeaderMouse();
+        setNumTracks(40);
+    }
+
+    // =============================================================
+    // MODELO
+    // =============================================================
+
+    public void setNumBars(int numBars) {
+        this.numBars = numBars;
+        rulerDirty = true;
+        requestLayout();
+        invalidateAll();
+    }
+
+    public int getNumBars() {
+        return numBars;
+    }
+
+    public void setNumTracks(int numTracks) {
+        while (trackNames.size() < numTracks) {
+            trackNames.add("Track " + (trackNames.size() + 1));
+        }
+        while (trackNames.size() > numTracks) {
+            trackNames.remove(trackNames.size() - 1);
+        }
+        headersDirty = true;
+        requestLayout();
+        invalidateAll();
+    }
+
+    public int getNumTracks() {
+        return trackNames.size();
+    }
+
+    public String getTrackName(int track) {
+        return trackNames.get(track);
+    }
+
+    public void setTrackName(int track, String name) {
+        trackNames.set(track, name);
+        headersDirty = true;
+        scheduleRedraw();
+    }
+
+    public void addClip(PlaylistItem item) {
+        index.add(item);
+        invalidateClip(item);
+    }
+
+    public void removeClip(PlaylistItem item) {
+        index.remove(item);
+        selection.remove(item);
+        invalidateClip(item);
+    }
+
+    public void clearClips() {
+        index.clear();
+        selection.clear();
+        dragMode = DragMode.NONE;
+        invalidateAll();
+    }
+
+    public PlaylistIndex getIndex() {
+        return index;
+    }
+
+    public Set<PlaylistItem> getSelection() {
+        return Collections.unmodifiableSet(selection);
+    }
+
+    /**
+     * El bloque que hay en ese punto de la rejilla (coordenadas de contenido), o null.
+     * Si hay varios solapados gana el de encima (el último que se pinta).
+     */
+    public PlaylistItem clipAt(double contentX, double contentY) {
+        int track = PlaylistGrid.trackAt(contentY, TRACK_HEIGHT, trackNames.size());
+        if (track < 0) return null;
+        return index.clipAt(track, contentX / barWidth);
+    }
+
+    // Posición del cursor en compases desde 0. Solo se repintan las dos franjas (la vieja y la nueva)
+    public void setPlayheadBars(double bars) {
+        if (bars == playheadBars) return;
+        invalidatePlayhead();
+        playheadBars = bars;
+        invalidatePlayhead();
+    }
+
+    public void setLoopRegion(int startBar, int endBar) {
+        loopStartBar = startBar;
+        loopEndBar = endBar;
+        rulerDirty = true;
+        invalidateAll();
+    }
+
+    public void clearLoopRegion() {
+        setLoopRegion(0, 0);
+    }
+
+    public double getBarWidth() {
+        return barWidth;
+    }
+
+    /**
+     * Cambia el zoom (píxeles por compás) dejando quieto el punto de la rejilla que hay en anchorX.
+     */
+    public void setBarWidth(double width, double anchorX) {
+        width = Math.max(MIN_BAR_WIDTH, Math.min(MAX_BAR_WIDTH, width));
+        if (width == barWidth) return;
+        double scroll = PlaylistGrid.scrollAfterZoom(hBar.getValue(), anchorX, barWidth, width);
+        barWidth = width;
+        updateScrollBars();
+        hBar.setValue(clamp(scroll, 0, hBar.getMax()));
+        rulerDirty = true;
+        invalidateAll();
+    }
+
+    public void setOnCellClicked(BiConsumer<Integer, Integer> onCellClicked) { this.onCellClicked = onCellClicked; }
+    public void setOnClipAdded(Consumer<PlaylistItem> onClipAdded) { this.onClipAdded = onClipAdded; }
+    public void setOnClipRemoved(Consumer<PlaylistItem> onClipRemoved) { this.onClipRemoved = onClipRemoved; }
+    public void setOnClipChanged(Consumer<PlaylistItem> onClipChanged) { this.onClipChanged = onClipChanged; }
+    public void setOnSeek(DoubleConsumer onSeek) { this.onSeek = onSeek; }
+    public void setOnLoopRegion(BiConsumer<Integer, Integer> onLoopRegion) { this.onLoopRegion = onLoopRegion; }
+    public void setOnLoopCleared(Runnable onLoopCleared) { this.onLoopCleared = onLoopCleared; }
+    public void setOnTrackRename(IntConsumer onTrackRename) { this.onTrackRename = onTrackRename; }
+
+    // =============================================================
+    // LAYOUT Y SCROLL
+    // =============================================================
+
+    @Override
+    protected void layoutChildren() {
+        double barSize = hBar.prefHeight(-1);
+        double vBarSize = vBar.prefWidth(-1);
+        double gridWidth = Math.max(0, getWidth() - HEADER_WIDTH - vBarSize);
+        double gridHeight = Math.max(0, getHeight() - RULER_HEIGHT - barSize);
+
+        ruler.relocate(HEADER_WIDTH, 0);
+        headers.relocate(0, RULER_HEIGHT);
+        grid.relocate(HEADER_WIDTH, RULER_HEIGHT);
+        hBar.resizeRelocate(HEADER_WIDTH, RULER_HEIGHT + gridHeight, gridWidth, barSize);
+        vBar.resizeRelocate(HEADER_WIDTH + gridWidth, RULER_HEIGHT, vBarSize, gridHeight);
+
+        if (grid.getWidth() != gridWidth || grid.getHeight() != gridHeight) {
+            ruler.setWidth(gridWidth);
+            ruler.setHeight(RULER_HEIGHT);
+            headers.setWidth(HEADER_WIDTH);
+            headers.setHeight(gridHeight);
+            grid.setWidth(gridWidth);
+            grid.setHeight(gridHeight);
+            rulerDirty = true;
+            headersDirty = true;
+            invalidateAll();
+        }
+        updateScrollBars();
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return 800;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return 600;
+    }
+
+    private void updateScrollBars() {
+        updateScrollBar(hBar, numBars * barWidth, grid.getWidth(), barWidth / 4);
+        updateScrollBar(vBar, trackNames.size() * TRACK_HEIGHT, grid.getHeight(), TRACK_HEIGHT);
+    }
+
+    private static void updateScrollBar(ScrollBar bar, double content, double viewport, double unit) {
+        double max = Math.max(0, content - viewport);
+        bar.setMin(0);
+        bar.setMax(max);
+        bar.setVisibleAmount(content > 0 ? max * viewport / content : 0);
+        bar.setUnitIncrement(unit);
+        bar.setBlockIncrement(viewport * 0.9);
+        bar.setDisable(max == 0);
+        if (bar.getValue() > max) bar.setValue(max);
+    }
+
+    private void handleScroll(ScrollEvent event) {
+        if (event.isControlDown()) {
+            // Zoom alrededor del ratón
+            double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+            setBarWidth(barWidth * factor, event.getX() - HEADER_WIDTH);
+        } else if (event.isShiftDown() || event.getDeltaX() != 0) {
+            double delta = event.getDeltaX() != 0 ? event.getDeltaX() : event.getDeltaY();
+            hBar.setValue(clamp(hBar.getValue() - delta, 0, hBar.getMax()));
+        } else {
+            vBar.setValue(clamp(vBar.getValue() - event.getDeltaY(), 0, vBar.getMax()));
+        }
+        event.consume();
+    }
+
+    // =============================================================
+    // RATÓN
+    // =============================================================
+
+    private void setupGridMouse() {
+        grid.setOnMouseMoved(e -> {
+            double x = e.getX() + hBar.getValue();
+            PlaylistItem item = clipAt(x, e.getY() + vBar.getValue());
+            if (item == null) {
+                grid.setCursor(Cursor.DEFAULT);
+            } else if (x > clipRight(item) - RESIZE_MARGIN) {
+                // Cerca del borde derecho: redimensionar
+                grid.setCursor(Cursor.H_RESIZE);
+            } else {
+                grid.setCursor(Cursor.HAND);
+            }
+        });
+        grid.setOnMousePressed(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            requestFocus();
+            double x = e.getX() + hBar.getValue();
+            double y = e.getY() + vBar.getValue();
+            mouseAnchorX = x;
+            mouseAnchorY = y;
+            PlaylistItem item = clipAt(x, y);
+            if (item == null) {
+                dragMode = DragMode.CLICK;
+                bandX = x;
+                bandY = y;
+            } else if (e.isShortcutDown() || e.isShiftDown()) {
+                // Añadir o quitar de la selección
+                if (!selection.remove(item)) selection.add(item);
+                invalidateClip(item);
+                dragMode = DragMode.NONE;
+            } else {
+                if (!selection.contains(item)) select(List.of(item));
+                if (x > clipRight(item) - RESIZE_MARGIN) {
+                    dragMode = DragMode.RESIZE;
+                    resizeItem = item;
+                } else {
+                    dragMode = DragMode.MOVE;
+                    moveOrigins.clear();
+                    for (PlaylistItem selected : selection) {
+                        moveOrigins.put(selected, new int[]{selected.getStartBar(), selected.getTrackIndex()});
+                    }
+                    movedBars = 0;
+                    movedTracks = 0;
+                }
+            }
+        });
+        grid.setOnMouseDragged(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            double x = e.getX() + hBar.getValue();
+            double y = e.getY() + vBar.getValue();
+            switch (dragMode) {
+                case MOVE -> dragSelection(x, y);
+                case RESIZE -> dragResize(x);
+                case CLICK, BAND -> {
+                    if (dragMode == DragMode.CLICK
+                            && Math.abs(x - mouseAnchorX) < DRAG_TOLERANCE_PX && Math.abs(y - mouseAnchorY) < DRAG_TOLERANCE_PX) {
+                        return;
+                    }
+                    invalidateBand();
+                    dragMode = DragMode.BAND;
+                    bandX = x;
+                    bandY = y;
+                    invalidateBand();
+                }
+                default -> { }
+            }
+        });
+        grid.setOnMouseReleased(e -> {
+            if (e.getButton() != MouseButton.PRIMARY) return;
+            if (dragMode == DragMode.CLICK) {
+                // Clic (no arrastre) en un hueco de la rejilla
+                clearSelection();
+                int bar = (int) (mouseAnchorX / barWidth);
+                int track = (int) (mouseAnchorY / TRACK_HEIGHT);
+                if (onCellClicked != null && bar < numBars && track < trackNames.size()) {
+                    onCellClicked.accept(bar, track);
+                }
+            } else if (dragMode == DragMode.BAND) {
+                invalidateBand();
+                List<PlaylistItem> inBand = index.query(
+                        (int) Math.floor(Math.min(mouseAnchorY, bandY) / TRACK_HEIGHT),
+                        (int) Math.floor(Math.max(mouseAnchorY, bandY) / TRACK_HEIGHT),
+                        Math.min(mouseAnchorX, bandX) / barWidth, Math.max(mouseAnchorX, bandX) / barWidth);
+                if (e.isShortcutDown() || e.isShiftDown()) {
+                    selection.addAll(inBand);
+                    inBand.forEach(this::invalidateClip);
+                } else {
+                    select(inBand);
+                }
+            }
+            dragMode = DragMode.NONE;
+            resizeItem = null;
+        });
+        // Clic derecho en un bloque: borrarlo
+        grid.addEventFilter(MouseEvent.MOUSE_CLICKED, e -> {
+            if (e.getButton() != MouseButton.SECONDARY) return;
+            PlaylistItem item = clipAt(e.getX() + hBar.getValue(), e.getY() + vBar.getValue());
+            if (item == null) return;
+            deleteClip(item);
+            e.consume();
+        });
+    }
+
+    // Mueve toda la selección por compases y pistas enteros, sin salirse del lienzo
+    private void dragSelection(double x, double y) {
+        int bars = (int) Math.round((x - mouseAnchorX) / barWidth);
+        int trackDelta = (int) Math.round((y - mouseAnchorY) / TRACK_HEIGHT);
+        int minStart = Integer.MAX_VALUE;
+        int minTrack = Integer.MAX_VALUE;
+        int maxTrack = Integer.MIN_VALUE;
+        for (int[] origin : moveOrigins.values()) {
+            minStart = Math.min(minStart, origin[0]);
+            minTrack = Math.min(minTrack, origin[1]);
+            maxTrack = Math.max(maxTrack, origin[1]);
+        }
+        bars = Math.max(bars, 1 - minStart);
+        trackDelta = Math.max(-minTrack, Math.min(trackNames.size() - 1 - maxTrack, trackDelta));
+        if (bars == movedBars && trackDelta == movedTracks) return;
+        movedBars = bars;
+        movedTracks = trackDelta;
+        for (Map.Entry<PlaylistItem, int[]> entry : moveOrigins.entrySet()) {
+            PlaylistItem item = entry.getKey();
+            invalidateClip(item);
+            item.setStartBar(entry.getValue()[0] + bars);
+            item.setTrackIndex(entry.getValue()[1] + trackDelta);
+            index.update(item);
+            invalidateClip(item);
+            if (onClipChanged != null) onClipChanged.accept(item);
+        }
+    }
+
+    // Ancho ajustado a beats (mínimo 1)
+    private void dragResize(double x) {
+        PlaylistItem item = resizeItem;
+        double beatWidth = barWidth / 4;
+        int numBeats = Math.max(1, (int) Math.round((x - clipLeft(item)) / beatWidth));
+        if (numBeats / 4.0 == item.getDurationBars()) return;
+        invalidateClip(item);
+        item.setDurationBars(numBeats / 4.0);
+        index.update(item);
+        invalidateClip(item);
+        if (onClipChanged != null) onClipChanged.accept(item);
+    }
+
+    private void handleKey(KeyEvent e) {
+        if (e.getCode() == KeyCode.DELETE || e.getCode() == KeyCode.BACK_SPACE) {
+            for (PlaylistItem item : new ArrayList<>(selection)) deleteClip(item);
+        } else if (e.isShortcutDown() && e.getCode() == KeyCode.D) {
+            duplicateSelection();
+        } else if (e.isShortcutDown() && e.getCode() == KeyCode.A) {
+            select(index.query(0, trackNames.size() - 1, 0, numBars));
+        } else if (e.getCode() == KeyCode.ESCAPE) {
+            clearSelection();
+        } else {
+            return;
+        }
+        e.consume();
+    }
+
+    /**
+     * Copia la selección justo detrás de sí misma (en compases enteros). Si ahí pisaría algún bloque,
+     * se va corriendo otro tanto hasta que quepa o se acabe el lienzo. La copia queda seleccionada.
+     */
+    private void duplicateSelection() {
+        if (selection.isEmpty()) return;
+        double from = Double.MAX_VALUE;
+        double to = -Double.MAX_VALUE;
+        for (PlaylistItem item : selection) {
+            from = Math.min(from, PlaylistIndex.start(item));
+            to = Math.max(to, PlaylistIndex.end(item));
+        }
+        int span = Math.max(1, (int) Math.ceil(to - from));
+        int offset = span;
+        while (to + offset <= numBars && collides(offset)) offset += span;
+        if (to + offset > numBars) return;
+
+        List<PlaylistItem> copies = new ArrayList<>(selection.size());
+        for (PlaylistItem item : selection) {
+            PlaylistItem copy = new PlaylistItem(item.getPatternName(), item.getStartBar() + offset, item.getTrackIndex());
+            copy.setDurationBars(item.getDurationBars());
+            copies.add(copy);
+        }
+        for (PlaylistItem copy : copies) {
+            addClip(copy);
+            if (onClipAdded != null) onClipAdded.accept(copy);
+        }
+        select(copies);
+    }
+
+    private boolean collides(int offset) {
+        for (PlaylistItem item : selection) {
+            if (index.overlaps(item.getTrackIndex(), PlaylistIndex.start(item) + offset,
+                    PlaylistIndex.end(item) + offset, null)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deleteClip(PlaylistItem item) {
+        removeClip(item);
+        if (onClipRemoved != null) onClipRemoved.accept(item);
+    }
+
+    private void select(List<PlaylistItem> items) {
+        clearSelection();
+        selection.addAll(items);
+        items.forEach(this::invalidateClip);
+    }
+
+    private void clearSelection() {
+        selection.forEach(this::invalidateClip);
+        selection.clear();
+    }
+
+    private void setupRulerMouse() {
+        // Clic izquierdo: saltar a ese beat. Arrastre con el derecho: región de loop (clic sin arrastrar la quita)
+        ruler.setOnMousePressed(e -> {
+            double x = Math.max(0, e.getX() + hBar.getValue());
+            if (e.getButton() == MouseButton.PRIMARY) {
+                int beat = (int) (x / (barWidth / 4));
+                if (onSeek != null) onSeek.accept(beat / 4.0);
+            } else if (e.getButton() == MouseButton.SECONDARY) {
+                loopDragStartX = x;
+            }
+        });
+        ruler.setOnMouseDragged(e -> {
+            if (e.getButton() != MouseButton.SECONDARY || loopDragStartX < 0) return;
+            double x = e.getX() + hBar.getValue();
+            if (Math.abs(x - loopDragStartX) < DRAG_TOLERANCE_PX) return;
+            loopBarsFromDrag(x);
+            setLoopRegion(previewLoopStart, previewLoopEnd);
+        });
+        ruler.setOnMouseReleased(e -> {
+            if (e.getButton() != MouseButton.SECONDARY || loopDragStartX < 0) return;
+            double x = e.getX() + hBar.getValue();
+            if (Math.abs(x - loopDragStartX) < DRAG_TOLERANCE_PX) {
+                clearLoopRegion();
+                if (onLoopCleared != null) onLoopCleared.run();
+            } else {
+                loopBarsFromDrag(x);
+                setLoopRegion(previewLoopStart, previewLoopEnd);
+                if (onLoopRegion != null) onLoopRegion.accept(previewLoopStart, previewLoopEnd);
+            }
+            loopDragStartX = -1;
+        });
+    }
+
+    // Compases [inicio, fin) que cubre el arrastre, ajustados a compases enteros
+    private void loopBarsFromDrag(double x) {
+        double from = Math.max(0, Math.min(loopDragStartX, x));
+        double to = Math.max(loopDragStartX, x);
+        previewLoopStart = (int) (from / barWidth);
+        previewLoopEnd = Math.min(numBars, Math.max(previewLoopStart + 1, (int) Math.ceil(to / barWidth)));
+    }
+
+    private void setupHeaderMouse() {
+        headers.setOnMouseClicked(e -> {
+            int track = trackAt(e.getY());
+            // Doble clic también renombra
+            if (track >= 0 && e.getClickCount() == 2 && e.getButton() == MouseButton.PRIMARY && onTrackRename != null) {
+                onTrackRename.accept(track);
+            }
+        });
+        headers.setOnContextMenuRequested(e -> {
+            menuTrack = trackAt(e.getY());
+            if (menuTrack >= 0) trackMenu.show(headers, e.getScreenX(), e.getScreenY());
+        });
+    }
+
+    private int trackAt(double canvasY) {
+        return PlaylistGrid.trackAt(canvasY + vBar.getValue(), TRACK_HEIGHT, trackNames.size());
+    }
+
+    private double clipLeft(PlaylistItem item) {
+        return (item.getStartBar() - 1) * barWidth;
+    }
+
+    private double clipRight(PlaylistItem item) {
+        return clipLeft(item) + item.getDurationBars() * barWidth;
+    }
+
+    // =============================================================
+    // REPINTADO
+    // =============================================================
+
+    private void invalidateAll() {
+        gridFullyDirty = true;
+        scheduleRedraw();
+    }
+
+    private void invalidateClip(PlaylistItem item) {
+        invalidateContent(clipLeft(item), item.getTrackIndex() * TRACK_HEIGHT,
+                item.getDurationBars() * barWidth, TRACK_HEIGHT);
+    }
+
+    private void invalidateBand() {
+        invalidateContent(Math.min(mouseAnchorX, bandX), Math.min(mouseAnchorY, bandY),
+                Math.abs(bandX - mouseAnchorX), Math.abs(bandY - mouseAnchorY));
+    }
+
+    private void invalidatePlayhead() {
+        invalidateContent(playheadBars * barWidth - 2, vBar.getValue(), 4, grid.getHeight());
+    }
+
+    // Marca como sucia una zona de la rejilla en coordenadas de contenido (se pasa a las del canvas)
+    private void invalidateContent(double x, double y, double width, double height) {
+        double minX = x - hBar.getValue() - 1;
+        double minY = y - vBar.getValue() - 1;
+        double maxX = minX + width + 2;
+        double maxY = minY + height + 2;
+        // Fuera de la vista no hay nada que repintar
+        if (maxX < 0 || maxY < 0 || minX > grid.getWidth() || minY > grid.getHeight()) return;
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+        scheduleRedraw();
+    }
+
+    private void scheduleRedraw() {
+        if (redrawScheduled) return;
+        redrawScheduled = true;
+        Platform.runLater(this::redraw);
+    }
+
+    private void redraw() {
+        redrawScheduled = false;
+        if (rulerDirty) {
+            rulerDirty = false;
+            drawRuler();
+        }
+        if (headersDirty) {
+            headersDirty = false;
+            drawHeaders();
+        }
+        if (gridFullyDirty) {
+            drawGrid(0, 0, grid.getWidth(), grid.getHeight());
+        } else if (dirtyMaxX > dirtyMinX && dirtyMaxY > dirtyMinY) {
+            drawGrid(Math.max(0, Math.floor(dirtyMinX)), Math.max(0, Math.floor(dirtyMinY)),
+                    Math.min(grid.getWidth(), Math.ceil(dirtyMaxX)), Math.min(grid.getHeight(), Math.ceil(dirtyMaxY)));
+        }
+        gridFullyDirty = false;
+        dirtyMinX = Double.POSITIVE_INFINITY;
+        dirtyMinY = Double.POSITIVE_INFINITY;
+        dirtyMaxX = Double.NEGATIVE_INFINITY;
+        dirtyMaxY = Double.NEGATIVE_INFINITY;
+    }
+
+    // Pinta la rejilla solo dentro de [x0, x1) x [y0, y1) (coordenadas del canvas)
+    private void drawGrid(double x0, double y0, double x1, double y1) {
+        if (x1 <= x0 || y1 <= y0) return;
+        GraphicsContext g = grid.getGraphicsContext2D();
+        double scrollX = hBar.getValue();
+        double scrollY = vBar.getValue();
+        double height = grid.getHeight();
+
+        // El fondo va antes del clip: si cubre todo el canvas, JavaFX descarta los comandos pendientes
+        g.setFill(GRID_BACKGROUND);
+        g.fillRect(x0, y0, x1 - x0, y1 - y0);
+        g.save();
+        g.beginPath();
+        g.rect(x0, y0, x1 - x0, y1 - y0);
+        g.clip();
+
+        // Líneas verticales según el zoom (de arriba a abajo del canvas, para que el punteado no cambie)
+        drawVerticalLines(g, x0 + scrollX, x1 + scrollX, scrollX, height);
+
+        // Separación de pistas
+        int firstTrack = PlaylistGrid.firstTrackFrom(y0 + scrollY, TRACK_HEIGHT);
+        int lastTrack = PlaylistGrid.lastTrackTo(y1 + scrollY, TRACK_HEIGHT, trackNames.size());
+        g.setStroke(TRACK_LINE);
+        g.setLineWidth(1);
+        double contentRight = numBars * barWidth - scrollX;
+        for (int t = firstTrack; t <= lastTrack; t++) {
+            double y = Math.floor((t + 1) * TRACK_HEIGHT - scrollY) - 0.5;
+            g.strokeLine(x0, y, Math.min(x1, contentRight), y);
+        }
+
+        if (loopEndBar > loopStartBar) {
+            double lx = loopStartBar * barWidth - scrollX;
+            double lw = (loopEndBar - loopStartBar) * barWidth;
+            g.setFill(LOOP_FILL);
+            g.fillRect(lx, 0, lw, height);
+            g.setStroke(LOOP_BORDER);
+            g.strokeRect(lx + 0.5, 0.5, lw - 1, height - 1);
+        }
+
+        // Bloques de las pistas visibles que caen en la zona (consulta al índice)
+        g.setFont(CLIP_FONT);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.CENTER);
+        index.query(firstTrack, lastTrack, (x0 + scrollX) / barWidth, (x1 + scrollX) / barWidth, item -> {
+            boolean selected = selection.contains(item);
+            drawClip(g, item.getPatternName(), clipLeft(item) - scrollX, item.getTrackIndex() * TRACK_HEIGHT - scrollY,
+                    item.getDurationBars() * barWidth, selected ? CLIP_SELECTED_FILL : CLIP_FILL,
+                    selected ? CLIP_SELECTED_BORDER : CLIP_BORDER);
+        });
+
+        if (dragMode == DragMode.BAND) {
+            double bx = Math.min(mouseAnchorX, bandX) - scrollX;
+            double by = Math.min(mouseAnchorY, bandY) - scrollY;
+            g.setFill(BAND_FILL);
+            g.fillRect(bx, by, Math.abs(bandX - mouseAnchorX), Math.abs(bandY - mouseAnchorY));
+            g.setStroke(BAND_BORDER);
+            g.setLineWidth(1);
+            g.strokeRect(Math.floor(bx) + 0.5, Math.floor(by) + 0.5, Math.abs(bandX - mouseAnchorX), Math.abs(bandY - mouseAnchorY));
+        }
+
+        double px = playheadBars * barWidth - scrollX;
+        g.setStroke(PLAYHEAD);
+        g.setLineWidth(2);
+        g.strokeLine(px, 0, px, height);
+        g.restore();
+    }
+
+    private void drawVerticalLines(GraphicsContext g, double fromX, double toX, double scrollX, double height) {
+        toX = Math.min(toX, numBars * barWidth);
+        double stepWidth = barWidth / 16;
+        double beatWidth = barWidth / 4;
+        g.setLineWidth(1);
+        if (PlaylistGrid.showsSteps(barWidth)) {
+            g.setStroke(STEP_LINE);
+            for (long i = (long) (fromX / stepWidth); i * stepWidth <= toX; i++) {
+                if (i % 4 != 0) strokeVertical(g, i * stepWidth - scrollX, height);
+            }
+        }
+        if (PlaylistGrid.showsBeats(barWidth)) {
+            g.setStroke(BEAT_LINE);
+            g.setLineDashes(2, 2);
+            for (long i = (long) (fromX / beatWidth); i * beatWidth <= toX; i++) {
+                if (i % 4 != 0) strokeVertical(g, i * beatWidth - scrollX, height);
+            }
+            g.setLineDashes(null);
+        }
+        // Con poco zoom, una línea cada 2, 4, 8... compases
+        long every = PlaylistGrid.barsPerMark(barWidth, PlaylistGrid.MIN_LINE_SPACING);
+        g.setStroke(BAR_LINE);
+        for (long i = (long) (fromX / barWidth) / every * every; i * barWidth <= toX; i += every) {
+            strokeVertical(g, i * barWidth - scrollX, height);
+        }
+    }
+
+    private static void strokeVertical(GraphicsContext g, double x, double height) {
+        double px = Math.floor(x) + 0.5;
+        g.strokeLine(px, 0, px, height);
+    }
+
+
+    private void drawClip(GraphicsContext g, String name, double x, double y, double width, Color fill, Color border) {
+        g.setFill(fill);
+        g.fillRoundRect(x, y, width, TRACK_HEIGHT, 8, 8);
+        g.setStroke(border);
+        g.setLineWidth(1);
+        g.strokeRoundRect(x + 0.5, y + 0.5, width - 1, TRACK_HEIGHT - 1, 8, 8);
+        // El nombre solo si cabe algo
+        if (width >= 24 && name != null) {
+            g.save();
+            g.beginPath();
+            g.rect(x + 2, y, width - 4, TRACK_HEIGHT);
+            g.clip();
+            g.setFill(Color.WHITE);
+            g.fillText(name, x + width / 2, y + TRACK_HEIGHT / 2);
+            g.restore();
+        }
+    }
+
+    private void drawRuler() {
+        GraphicsContext g = ruler.getGraphicsContext2D();
+        double width = ruler.getWidth();
+        double scrollX = hBar.getValue();
+        g.setFill(RULER_BACKGROUND);
+        g.fillRect(0, 0, width, RULER_HEIGHT);
+        if (loopEndBar > loopStartBar) {
+            g.setFill(LOOP_BORDER);
+            g.fillRect(loopStartBar * barWidth - scrollX, RULER_HEIGHT - 6, (loopEndBar - loopStartBar) * barWidth, 6);
+        }
+
+        double fromX = scrollX;
+        double toX = Math.min(scrollX + width, numBars * barWidth);
+        double beatWidth = barWidth / 4;
+        g.setLineWidth(1);
+        g.setStroke(RULER_TICK);
+        if (PlaylistGrid.showsBeats(barWidth)) {
+            for (long i = (long) (fromX / beatWidth); i * beatWidth <= toX; i++) {
+                double x = Math.floor(i * beatWidth - scrollX) + 0.5;
+                g.strokeLine(x, RULER_HEIGHT - (i % 4 == 0 ? 12 : 6), x, RULER_HEIGHT);
+            }
+        }
+
+        // Números de compás (1, 2, 3...), o de cada 2, 4, 8... si no caben; con mucho zoom también los beats
+        long every = PlaylistGrid.barsPerMark(barWidth, PlaylistGrid.MIN_LABEL_SPACING);
+        g.setFont(RULER_FONT);
+        g.setFill(RULER_TEXT);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.TOP);
+        for (long i = (long) (fromX / barWidth) / every * every; i * barWidth <= toX && i < numBars; i += every) {
+            double x = Math.floor(i * barWidth - scrollX) + 0.5;
+            g.strokeLine(x, 0, x, RULER_HEIGHT);
+            g.fillText(String.valueOf(i + 1), x + 3, 3);
+            if (PlaylistGrid.showsBeatLabels(barWidth)) {
+                for (int beat = 1; beat < 4; beat++) {
+                    g.fillText((i + 1) + "." + (beat + 1), x + beat * beatWidth + 3, 3);
+                }
+            }
+        }
+        g.setStroke(RULER_BORDER);
+        g.strokeLine(0, RULER_HEIGHT - 0.5, width, RULER_HEIGHT - 0.5);
+    }
+
+    private void drawHeaders() {
+        GraphicsContext g = headers.getGraphicsContext2D();
+        double height = headers.getHeight();
+        double scrollY = vBar.getValue();
+        g.setFill(HEADER_EVEN);
+        g.fillRect(0, 0, HEADER_WIDTH, height);
+
+        int firstTrack = PlaylistGrid.firstTrackFrom(scrollY, TRACK_HEIGHT);
+        int lastTrack = PlaylistGrid.lastTrackTo(scrollY + height, TRACK_HEIGHT, trackNames.size());
+        g.setFont(HEADER_FONT);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.CENTER);
+        g.setLineWidth(1);
+        for (int t = firstTrack; t <= lastTrack; t++) {
+            double y = t * TRACK_HEIGHT - scrollY;
+            // Estilo alterno para facilitar la lectura
+            g.setFill(t % 2 == 0 ? HEADER_EVEN : HEADER_ODD);
+            g.fillRect(0, y, HEADER_WIDTH, TRACK_HEIGHT);
+            g.setStroke(GRID_BACKGROUND);
+            g.strokeLine(0, Math.floor(y + TRACK_HEIGHT) - 0.5, HEADER_WIDTH, Math.floor(y + TRACK_HEIGHT) - 0.5);
+            g.setFill(HEADER_TEXT);
+            g.fillText(trackNames.get(t), 10, y + TRACK_HEIGHT / 2);
+        }
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
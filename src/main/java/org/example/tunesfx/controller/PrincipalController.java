@@ -1,9 +1,8 @@
 package org.example.tunesfx.controller;
 
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -16,70 +15,57 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCodeCombination;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.GridPane;
-import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Line;
 import javafx.stage.Stage;
-import javafx.util.Duration;
+import org.example.tunesfx.audio.AudioClock;
 import org.example.tunesfx.audio.AudioCoordinator;
 import org.example.tunesfx.audio.AudioSettingsDialog;
+import org.example.tunesfx.audio.PlayheadClock;
 import org.example.tunesfx.audio.PlaylistItem;
+import org.example.tunesfx.audio.RackTrack;
+import org.example.tunesfx.audio.SamplePlayer;
+import org.example.tunesfx.audio.SongCompiler;
+import org.example.tunesfx.audio.SongPlayer;
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.audio.SongTimeline;
 import org.example.tunesfx.utils.AudioExporter;
 import org.example.tunesfx.utils.GlobalState;
+import org.example.tunesfx.utils.ProjectFile;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class PrincipalController {
     @FXML private Button btnAjustes;
     @FXML private TreeView libraryTreeView;
-    @FXML private Spinner bpmSpinner;
+    @FXML private Spinner<Double> bpmSpinner;
     @FXML private Button btnStopSong;
     @FXML private Button btnPlaySong;
-    @FXML private GridPane playlistGrid;
     @FXML private ListView patternListView; // lista de patterns
-    @FXML private ScrollPane playlistScrollPane;
     @FXML private Button openChannelRackButton;
     @FXML private Button btnSalir;
     @FXML private Button openSynthButton;
-    @FXML private HBox timelineHeader;
-    @FXML private VBox trackHeadersContainer;
-    @FXML private Pane playlistGridContent;
+    @FXML private PlaylistView playlistView; // Regla, pistas y bloques (dibujado en canvas)
 
     private Stage rackStage;
     private List<PlaylistItem> songData = new ArrayList<>();
-    private Line playheadLine; // La línea visual del cursor
-    private Timeline songTimeline; // El "reloj" maestro de la Playlist
-    private double currentPlayheadX = 0; // Posición X actual del cursor
-    private double previousPlayheadX = 0; // Para recordar dónde estábamos antes
-
-    // Variables para el diseño de la rejilla
-    private final int CELL_WIDTH = 40;   // Ancho de cada celda de tiempo (1 compás o beat)
-    private final int TRACK_HEIGHT = 40; // Alto de cada pista
+    // La canción suena desde el hilo de audio (SongPlayer); la UI solo la recompila y pinta el cursor
+    private final SongCompiler songCompiler = new SongCompiler();
+    private SongPlayer songPlayer;
+    private AnimationTimer songPlayheadTimer;
+    // Algo de la canción ha cambiado (bloques, filas, pasos o tempo) y falta recompilarla
+    private volatile boolean songDirty = true;
+    // El cursor que se pinta mientras suena: lo que se oye (reloj de audio menos latencia), suavizado
+    private final PlayheadClock playheadClock = new PlayheadClock();
+
+    // Tamaño del lienzo de la playlist
     private final int NUM_TRACKS = 40;   // Pistas iniciales
     private final int NUM_BARS = 400;    // Compases iniciales
 
-    // Variables para la gestión del ratón en la Playlist
-    private double mouseAnchorX;
-    private double mouseAnchorY;
-    private double initialLayoutX;
-    private double initialLayoutY;
-    private boolean isResizing = false;
-    private final double RESIZE_MARGIN = 10.0; // Píxeles del borde derecho para redimensionar
-    // Detección de click vs drag en la rejilla de la Playlist
-    private double gridPressedX;
-    private double gridPressedY;
-    private boolean gridPressed = false;
-    private static final double DRAG_TOLERANCE_PX = 5.0;
-    private long lastBlockCreationTime = 0;
-    private int lastBlockCol = -1;
-    private int lastBlockRow = -1;
-
     @FXML
     public void initialize() {
         GlobalState.setPrincipalController(this);
@@ -89,7 +75,8 @@ public class PrincipalController {
         bpmSpinner.setValueFactory(bpmFactory);
         // Cuando el spinner cambie, actualizamos el GlobalState
         bpmSpinner.valueProperty().addListener((obs, oldVal, newVal) -> {
-            GlobalState.setBpm((Double) newVal);
+            GlobalState.setBpm(newVal);
+            markSongDirty();
         });
 
         // Shortcuts del teclado
@@ -109,14 +96,15 @@ public class PrincipalController {
         // Acción para el botón de cambiar dispositivo
         btnAjustes.setOnAction(event -> {
             Stage stage = (Stage) btnAjustes.getScene().getWindow();
-            String chosen = AudioSettingsDialog.showDialog(stage);
+            String chosen = AudioSettingsDialog.showDialog(stage, playheadClock);
             if (chosen != null && !chosen.isEmpty()) {
                 AudioCoordinator.switchToDevice(chosen);
             }
         });
         setupPlaylist();
         enablePatternPainting();
-        initializeSongTimeline();
+        enableTimelineTransport();
+        initializeSongPlayer();
         setupPatternListViewContextMenu();
         setupLibrary();
     }
@@ -137,6 +125,12 @@ public class PrincipalController {
             synthScene.setOnKeyPressed(synthController::handleKeyPressed);
             synthScene.setOnKeyReleased(synthController::handleKeyReleased);
 
+            // Al cerrar la ventana nos quedamos con su patch (para guardarlo en el proyecto o reabrirla igual)
+            synthStage.setOnHidden(e -> {
+                GlobalState.setSynthPatch(synthController.getPatch());
+                if (GlobalState.getSynthController() == synthController) GlobalState.setSynthController(null);
+            });
+
             synthStage.setTitle("Synth");
 //            synthStage.initStyle(StageStyle.UNDECORATED);
             synthStage.setScene(synthScene);
@@ -158,6 +152,8 @@ public class PrincipalController {
                 FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/example/tunesfx/ChannelRackView.fxml"));
                 Pane rackRoot = loader.load();
                 ChannelRackController rackController = loader.getController();
+                rackController.setOnSongChanged(this::markSongDirty);
+                markSongDirty();
 
                 rackStage = new Stage();
                 setWindowIcon(rackStage);
@@ -197,23 +193,26 @@ public class PrincipalController {
 
     @FXML
     private void handlePlaySong() {
-        if (songTimeline == null) initializeSongTimeline();
+        if (songPlayer == null) initializeSongPlayer();
 
-        if (songTimeline.getStatus() == Animation.Status.RUNNING) {
-            songTimeline.pause();
+        if (songPlayer.isPlaying()) {
+            songPlayer.pause();
+            songPlayheadTimer.stop();
         } else {
-            songTimeline.play();
+            refreshSongTimelineIfDirty();
+            songPlayer.play();
+            SamplePlayer.getMixer().wakeUp();
+            playheadClock.reset();
+            songPlayheadTimer.start();
         }
     }
 
     @FXML
     private void handleStopSong() {
-        if (songTimeline != null) {
-            songTimeline.stop();
-            currentPlayheadX = 0;
-            previousPlayheadX = 0;
-            playheadLine.setStartX(0);
-            playheadLine.setEndX(0);
+        if (songPlayer != null) {
+            songPlayer.stop();
+            songPlayheadTimer.stop();
+            playlistView.setPlayheadBars(0);
             btnPlaySong.setStyle("-fx-background-color: #424242;");
         }
     }
@@ -225,128 +224,78 @@ public class PrincipalController {
     }
 
     private void setupPlaylist() {
-        timelineHeader.getChildren().clear();
-        trackHeadersContainer.getChildren().clear();
-        playlistGridContent.getChildren().clear();
-        // Ajustar el tamaño total del lienzo de la rejilla
-        double totalWidth = NUM_BARS * CELL_WIDTH;
-        double totalHeight = NUM_TRACKS * TRACK_HEIGHT;
-        playlistGridContent.setMinWidth(totalWidth);
-        playlistGridContent.setPrefSize(totalWidth, totalHeight);
-        // --- 1. GENERAR TIMELINE (Eje X) ---
-        for (int i = 1; i <= NUM_BARS; i++) {
-            Label barLabel = new Label(String.valueOf(i));
-            barLabel.setPrefWidth(CELL_WIDTH);
-            barLabel.setMinWidth(CELL_WIDTH);
-            barLabel.setAlignment(Pos.CENTER);
-            // Estilo: Texto gris y borde derecho suave
-            barLabel.setStyle("-fx-text-fill: #888888; -fx-font-size: 10px; -fx-border-color: #333333; -fx-border-width: 0 1 0 0;");
-            timelineHeader.getChildren().add(barLabel);
-            // Línea vertical en la rejilla (para cada compás)
-            Line vLine = new Line(i * CELL_WIDTH, 0, i * CELL_WIDTH, totalHeight);
-            vLine.setStroke(Color.web("#2A2A2A")); // Color de la rejilla vertical
-            vLine.getStrokeDashArray().addAll(2d, 2d); // Opcional: línea punteada
-            playlistGridContent.getChildren().add(vLine);
-        }
-
-        // --- 2. GENERAR TRACK HEADERS (Eje Y) ---
-        for (int j = 0; j < NUM_TRACKS; j++) {
-            // Etiqueta del Track
-            Label trackLabel = new Label("Track " + (j + 1));
-            trackLabel.setPrefHeight(TRACK_HEIGHT);
-            trackLabel.setMinHeight(TRACK_HEIGHT);
-            trackLabel.setMaxWidth(Double.MAX_VALUE);
-            trackLabel.setPadding(new Insets(0, 0, 0, 10)); // Margen izquierdo
-            trackLabel.setAlignment(Pos.CENTER_LEFT);
-            // Estilo alterno para facilitar la lectura
-            String bg = (j % 2 == 0) ? "#262626" : "#232323";
-            trackLabel.setStyle("-fx-text-fill: #aaaaaa; -fx-background-color: " + bg + "; -fx-border-color: #1A1A1A; -fx-border-width: 0 0 1 0;");
-            // Menú contextual para el track
-            ContextMenu trackMenu = new ContextMenu();
-            MenuItem renameItem = new MenuItem("Rename track");
-
-            renameItem.setOnAction(e -> {
-                TextInputDialog dialog = new TextInputDialog(trackLabel.getText());
-                dialog.setTitle("Rename");
-                dialog.setHeaderText(null);
-                dialog.setContentText("New name:");
-                dialog.setGraphic(null);
-                try {
-                    DialogPane dialogPane = dialog.getDialogPane();
-                    String css = this.getClass().getResource("styles.css").toExternalForm();
-                    dialogPane.getStylesheets().add(css);
-                    dialogPane.getStyleClass().add("my-dialog");
-                } catch (Exception ex) {
-                }
-                dialog.showAndWait().ifPresent(newName -> {
-                    if (!newName.trim().isEmpty()) {
-                        trackLabel.setText(newName);
-                    }
-                });
-            });
-
-            trackMenu.getItems().add(renameItem);
-            trackLabel.setContextMenu(trackMenu);
-            // Permitir renombrar también con DOBLE CLIC
-            trackLabel.setOnMouseClicked(e -> {
-                if (e.getClickCount() == 2 && e.getButton() == javafx.scene.input.MouseButton.PRIMARY) {
-                    renameItem.fire();
-                }
-            });
-            trackHeadersContainer.getChildren().add(trackLabel);
-            // Línea horizontal en la rejilla (separando pistas)
-            Line hLine = new Line(0, (j + 1) * TRACK_HEIGHT, totalWidth, (j + 1) * TRACK_HEIGHT);
-            hLine.setStroke(Color.web("#1A1A1A")); // Color de separación de pistas
+        playlistView.setNumBars(NUM_BARS);
+        playlistView.setNumTracks(NUM_TRACKS);
+        // Borrar o duplicar bloques en la playlist también cambia la canción
+        playlistView.setOnClipRemoved(item -> {
+            songData.remove(item);
+            markSongDirty();
+        });
+        playlistView.setOnClipAdded(item -> {
+            songData.add(item);
+            markSongDirty();
+        });
+        playlistView.setOnClipChanged(item -> markSongDirty());
+        playlistView.setOnTrackRename(this::renameTrack);
+    }
 
-            playlistGridContent.getChildren().add(hLine);
+    private void renameTrack(int track) {
+        TextInputDialog dialog = new TextInputDialog(playlistView.getTrackName(track));
+        dialog.setTitle("Rename");
+        dialog.setHeaderText(null);
+        dialog.setContentText("New name:");
+        dialog.setGraphic(null);
+        try {
+            DialogPane dialogPane = dialog.getDialogPane();
+            String css = this.getClass().getResource("styles.css").toExternalForm();
+            dialogPane.getStylesheets().add(css);
+            dialogPane.getStyleClass().add("my-dialog");
+        } catch (Exception ex) {
         }
-        playheadLine = new Line(0, 0, 0, totalHeight);
-        playheadLine.setStroke(Color.RED); // Color clásico de playhead
-        playheadLine.setStrokeWidth(2);
-        playheadLine.setOpacity(0.8);
-        playheadLine.setMouseTransparent(true); // Para que no interfiera con los clics en la rejilla
-
-        playlistGridContent.getChildren().add(playheadLine);
+        dialog.showAndWait().ifPresent(newName -> {
+            if (!newName.trim().isEmpty()) {
+                playlistView.setTrackName(track, newName);
+            }
+        });
     }
 
     private void enablePatternPainting() {
-        // Distinguir click vs drag para evitar bloques duplicados
-        playlistGridContent.setOnMousePressed(event -> {
-            if (event.getButton() != javafx.scene.input.MouseButton.PRIMARY) return;
-            gridPressedX = event.getX();
-            gridPressedY = event.getY();
-            gridPressed = true;
-        });
-        playlistGridContent.setOnMouseReleased(event -> {
-            if (event.getButton() != javafx.scene.input.MouseButton.PRIMARY) return;
-            if (!gridPressed) return;
-            double dx = Math.abs(event.getX() - gridPressedX);
-            double dy = Math.abs(event.getY() - gridPressedY);
-            if (dx < DRAG_TOLERANCE_PX && dy < DRAG_TOLERANCE_PX) {
-                String selectedPattern = (String) patternListView.getSelectionModel().getSelectedItem();
-                if (selectedPattern != null) {
-                    int colIndex = (int) (gridPressedX / (CELL_WIDTH * 4));
-                    int rowIndex = (int) (gridPressedY / TRACK_HEIGHT);
-                    // Debounce para evitar duplicados
-                    long now = System.currentTimeMillis();
-                    if (colIndex == lastBlockCol && rowIndex == lastBlockRow
-                            && (now - lastBlockCreationTime) < 150) {
-                        gridPressed = false;
-                        return;
-                    }
-                    lastBlockCol = colIndex;
-                    lastBlockRow = rowIndex;
-                    lastBlockCreationTime = now;
-                    double snapX = colIndex * (CELL_WIDTH * 4);
-                    double snapY = rowIndex * TRACK_HEIGHT;
-                    createClip(selectedPattern, snapX, snapY);
-                }
+        // Clic en un hueco de la rejilla: bloque nuevo con el pattern seleccionado
+        playlistView.setOnCellClicked((bar, track) -> {
+            String selectedPattern = (String) patternListView.getSelectionModel().getSelectedItem();
+            if (selectedPattern != null) {
+                createClip(selectedPattern, bar, track);
             }
-            gridPressed = false;
         });
     }
 
-    private void createClip(String patternName, double x, double y) {
+    /**
+     * Regla de tiempo: clic izquierdo para saltar a ese beat (sonando o no), arrastre con el derecho
+     * para marcar una región de loop (por compases) y clic derecho sin arrastrar para quitarla.
+     */
+    private void enableTimelineTransport() {
+        playlistView.setOnSeek(this::seekSong);
+        playlistView.setOnLoopRegion((startBar, endBar) -> {
+            if (songPlayer == null) initializeSongPlayer();
+            songPlayer.setLoopRegion(startBar, endBar);
+        });
+        playlistView.setOnLoopCleared(() -> {
+            if (songPlayer != null) songPlayer.clearLoopRegion();
+        });
+    }
+
+    // Salta a esa posición (en compases desde 0). Si no está sonando, el próximo play empieza ahí
+    private void seekSong(double bars) {
+        if (songPlayer == null) initializeSongPlayer();
+        refreshSongTimelineIfDirty();
+        songPlayer.seekBars(bars);
+        // Sonando, el cursor llega al sitio nuevo cuando se oye (lo mueve el timer); parado, va ya
+        if (songPlayer.isPlaying()) SamplePlayer.getMixer().wakeUp();
+        else updatePlayhead();
+    }
+
+    // bar desde 0: el bloque empieza en el compás bar + 1
+    private void createClip(String patternName, int bar, int trackIndex) {
         // 1. LÓGICA DE CÁLCULO DE LONGITUD
         int durationBars = 1;
 
@@ -361,230 +310,86 @@ public class PrincipalController {
             }
         }
 
-        // --- EL AJUSTE DE ESCALA ---
-        // Si durationBars es 1, queremos que ocupe 4 celdas (CELL_WIDTH * 4)
-        // para que llegue hasta el número "1" (o cubra el espacio del compás 1)
-        double initialWidth = durationBars * (CELL_WIDTH * 4);
-
         // 2. Crear datos lógicos
-        // Nota: El startBar ahora debería calcularse dividiendo por (CELL_WIDTH * 4)
-        // si quieres que el "snap" sea por compases completos
-        int colIndex = (int) (x / (CELL_WIDTH * 4));
-        double snapX = colIndex * (CELL_WIDTH * 4);
-
-        int trackIndex = (int) (y / TRACK_HEIGHT);
-        PlaylistItem item = new PlaylistItem(patternName, colIndex + 1, trackIndex);
+        PlaylistItem item = new PlaylistItem(patternName, bar + 1, trackIndex);
         item.setDurationBars(durationBars);
-        songData.add(item);
-
-        // 3. Crear contenedor visual
-        javafx.scene.layout.StackPane clipContainer = new javafx.scene.layout.StackPane();
-
-        // Forzamos el ancho multiplicado por 4
-        clipContainer.setMinWidth(initialWidth);
-        clipContainer.setPrefWidth(initialWidth);
-        clipContainer.setMaxWidth(initialWidth);
-
-        clipContainer.setPrefHeight(TRACK_HEIGHT);
-        clipContainer.setLayoutX(snapX); // Usamos el snapX corregido
-        clipContainer.setLayoutY(y);
-        clipContainer.setUserData(item);
-
-        // Estilo y label (igual que antes)
-        clipContainer.setStyle("-fx-background-color: #4a4a4a; -fx-background-radius: 4; -fx-border-color: #666666; -fx-border-width: 1;");
-        Label nameLabel = new Label(patternName);
-        nameLabel.setStyle("-fx-text-fill: white; -fx-font-size: 10px; -fx-font-weight: bold;");
-        clipContainer.getChildren().add(nameLabel);
-
-        // =============================================================
-        // LÓGICA DE INTERACCIÓN (MOUSE EVENTS)
-        // =============================================================
-
-        // --- 1. MOUSE MOVED (Cambiar cursor) ---
-        clipContainer.setOnMouseMoved(e -> {
-            // Si estamos cerca del borde derecho, cambiamos cursor a redimensionar
-            if (e.getX() > clipContainer.getWidth() - RESIZE_MARGIN) {
-                clipContainer.setCursor(javafx.scene.Cursor.H_RESIZE);
-            } else {
-                clipContainer.setCursor(javafx.scene.Cursor.HAND);
-            }
-        });
-        // --- 2. MOUSE PRESSED (Iniciar acción) ---
-        clipContainer.setOnMousePressed(e -> {
-            if (e.getButton() == javafx.scene.input.MouseButton.PRIMARY) {
-                // Guardamos posición inicial
-                mouseAnchorX = e.getSceneX();
-                mouseAnchorY = e.getSceneY();
-                initialLayoutX = clipContainer.getLayoutX();
-                initialLayoutY = clipContainer.getLayoutY();
-                // Detectar si vamos a redimensionar o a mover
-                isResizing = (e.getX() > clipContainer.getWidth() - RESIZE_MARGIN);
-                // Traer al frente para que no quede detrás de otros bloques al mover
-                clipContainer.toFront();
-                e.consume();
-            }
-        });
-        // --- 3. MOUSE DRAGGED (Arrastrar) ---
-        clipContainer.setOnMouseDragged(e -> {
-            if (e.getButton() == javafx.scene.input.MouseButton.PRIMARY) {
-                if (isResizing) {
-                    // MODO REDIMENSIONAR
-                    // Calculamos nuevo ancho basado en la posición del ratón dentro del nodo
-                    double newWidth = e.getX();
-                    clipContainer.setMaxWidth(newWidth);
-                    // Mínimo 1 celda de ancho
-                    if (newWidth < CELL_WIDTH) newWidth = CELL_WIDTH;
-                    clipContainer.setPrefWidth(newWidth);
-                } else {
-                    // MODO MOVER
-                    double dragX = e.getSceneX() - mouseAnchorX;
-                    double dragY = e.getSceneY() - mouseAnchorY;
-
-                    clipContainer.setLayoutX(initialLayoutX + dragX);
-                    clipContainer.setLayoutY(initialLayoutY + dragY);
-                }
-                e.consume();
-            }
-        });
-        // --- 4. MOUSE RELEASED (Soltar y Ajustar a Rejilla - SNAP) ---
-        clipContainer.setOnMouseReleased(e -> {
-            if (e.getButton() == javafx.scene.input.MouseButton.PRIMARY) {
-                // Definimos cuánto mide un compás visualmente
-                double barWidth = CELL_WIDTH * 4;
-
-                if (isResizing) {
-                    // Ajustar ANCHO a la rejilla de BEATS en lugar de compases enteros
-                    double currentWidth = clipContainer.getPrefWidth();
-
-                    // Calculamos cuántos "beats" (celdas individuales) ocupa
-                    int numBeats = (int) Math.round(currentWidth / CELL_WIDTH);
-                    if (numBeats < 1) numBeats = 1; // Mínimo 1 beat de ancho
+        addClip(item);
+    }
 
-                    // Redimensionamos visualmente el clip
-                    double snappedWidth = numBeats * CELL_WIDTH;
-                    clipContainer.setPrefWidth(snappedWidth);
-                    clipContainer.setMinWidth(snappedWidth);
-                    clipContainer.setMaxWidth(snappedWidth);
+    // Añade el bloque a la canción y a la playlist (también al abrir un proyecto)
+    private void addClip(PlaylistItem item) {
+        songData.add(item);
+        playlistView.addClip(item);
+        markSongDirty();
+    }
 
-                    // ACTUALIZAR LÓGICA: Si 4 beats son 1 compás, la duración es numBeats / 4.0
-                    item.setDurationBars(numBeats / 4.0);
+    private void initializeSongPlayer() {
+        songPlayer = new SongPlayer();
+        // Al final del lienzo vuelve al principio
+        songPlayer.setLoopBars(NUM_BARS);
+        SamplePlayer.getMixer().addScheduler(songPlayer);
 
-                } else {
-                    // Ajustar POSICIÓN a la rejilla de COMPASES
-                    double rawX = clipContainer.getLayoutX();
-                    double rawY = clipContainer.getLayoutY();
-
-                    // Snap X (Usamos un nombre diferente para evitar el error de "already defined")
-                    int finalCol = (int) Math.round(rawX / barWidth);
-                    if (finalCol < 0) finalCol = 0;
-                    double snappedX = finalCol * barWidth;
-
-                    // Snap Y (Track)
-                    int finalRow = (int) Math.round(rawY / TRACK_HEIGHT);
-                    if (finalRow < 0) finalRow = 0;
-                    if (finalRow >= NUM_TRACKS) finalRow = NUM_TRACKS - 1;
-                    double snappedY = finalRow * TRACK_HEIGHT;
-
-                    // Aplicar posición ajustada
-                    clipContainer.setLayoutX(snappedX);
-                    clipContainer.setLayoutY(snappedY);
-
-                    // ACTUALIZAR DATOS LÓGICOS
-                    item.setStartBar(finalCol + 1);
-                    item.setTrackIndex(finalRow);
-                }
-            }
-        });
-        // --- 5. CLICK DERECHO (Borrar) ---
-        // Usamos Filter para capturarlo antes que otros eventos si fuera necesario
-        clipContainer.addEventFilter(javafx.scene.input.MouseEvent.MOUSE_CLICKED, e -> {
-            if (e.getButton() == javafx.scene.input.MouseButton.SECONDARY) {
-                // Borrar de la vista
-                playlistGridContent.getChildren().remove(clipContainer);
-                // Borrar de la memoria
-                songData.remove(item);
-                e.consume();
+        // Una vez por pulso de FX solo se mueve el cursor: la canción se recompila cuando cambia algo
+        songPlayheadTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                updatePlayhead(now);
             }
-        });
-        // Añadir al lienzo
-        playlistGridContent.getChildren().add(clipContainer);
+        };
     }
 
-    private void initializeSongTimeline() {
-        // Definimos la resolución: Queremos que el cursor se actualice suavemente.
-        // Una actualización cada 20ms (50 FPS) es suficiente.
-        songTimeline = new Timeline(new KeyFrame(Duration.millis(20), e -> {
-            updatePlayhead();
-        }));
-        songTimeline.setCycleCount(Animation.INDEFINITE);
+    /**
+     * Marca la canción como cambiada y deja la recompilación para el hilo de FX. Se puede llamar desde
+     * cualquier hilo y muchas veces seguidas (un arrastre, un editAll): mientras siga pendiente no se
+     * encola otra, así que una ráfaga de cambios se recompila una sola vez.
+     */
+    private void markSongDirty() {
+        if (songDirty) return;
+        songDirty = true;
+        Platform.runLater(this::refreshSongTimelineIfDirty);
     }
 
-    private void updatePlayhead() {
-        double bpm = GlobalState.getBpm();
-        double oldX = currentPlayheadX;
-
-        // 1. La velocidad sigue igual.
-        // Si CELL_WIDTH (40px) es 1 Beat, a 120 BPM recorrerá 80 píxeles por segundo.
-        // Por lo tanto, tardará exactamente 2 segundos en recorrer 1 compás (160px). ¡Perfecto!
-        double pixelsPerTick = ((bpm / 60.0) * CELL_WIDTH) / 50.0;
-
-        currentPlayheadX += pixelsPerTick;
-
-        // 2. DETECCIÓN DE COLISIÓN (Trigger)
-        checkCollisions(oldX, currentPlayheadX);
-
-        // 3. Loop (Vuelta al principio)
-        // ¡CAMBIO AQUÍ! El final del lienzo ahora es 4 veces más largo.
-        double totalWidth = NUM_BARS * (CELL_WIDTH * 4);
-        if (currentPlayheadX >= totalWidth) {
-            currentPlayheadX = 0;
-            previousPlayheadX = 0;
-        }
-
-        // 4. Actualizar visual
-        playheadLine.setStartX(currentPlayheadX);
-        playheadLine.setEndX(currentPlayheadX);
+    // Sin reproductor no hay nada que recompilar: queda pendiente para el play o el seek
+    private void refreshSongTimelineIfDirty() {
+        if (songDirty && songPlayer != null) refreshSongTimeline();
     }
 
-    private void checkCollisions(double oldX, double newX) {
-        // Definimos visualmente cuánto mide el compás entero
-        double barWidth = CELL_WIDTH * 4;
-
-        // Recorremos todos los bloques de la canción
-        for (PlaylistItem item : songData) {
-
-            double itemStartX = (item.getStartBar() - 1) * barWidth;
-            // Calculamos dónde termina exactamente este bloque usando la duración precisa
-            double itemEndX = itemStartX + (item.getDurationBars() * barWidth);
-
-            // ¿El playhead acaba de ENTRAR en el bloque? -> PLAY
-            if (itemStartX >= oldX && itemStartX < newX) {
-                triggerPattern(item);
-            }
-
-            // ¿El playhead acaba de SALIR del bloque? -> STOP
-            if (itemEndX >= oldX && itemEndX < newX) {
-                stopPattern(item);
-            }
-        }
+    /**
+     * Vuelve a compilar la canción. Solo se rehacen los bloques que han cambiado; si no ha cambiado nada
+     * el compilador devuelve la misma timeline y el reproductor sigue donde estaba.
+     */
+    private void refreshSongTimeline() {
+        // Antes de compilar: un cambio que llegue mientras tanto la vuelve a marcar
+        songDirty = false;
+        ChannelRackController rack = GlobalState.getChannelRackController();
+        Map<String, ChannelRackRowController> rows = (rack != null) ? rack.rowsByName() : Map.of();
+        songPlayer.setTimeline(songCompiler.compile(songData, rows::get, GlobalState.getBpm()));
     }
 
-    // MÉTODO PARA PARAR EL PATRÓN
-    private void stopPattern(PlaylistItem item) {
-        ChannelRackController rack = GlobalState.getChannelRackController();
-        if (rack != null) {
-            rack.stopSoundByName(item.getPatternName());
-        }
+    private void updatePlayhead() {
+        // Parado: la posición del reproductor tal cual (en compases)
+        playlistView.setPlayheadBars(songPlayer.getPositionBars());
     }
 
-    private void triggerPattern(PlaylistItem item) {
-        // Pedimos al Channel Rack que suene
-        ChannelRackController rack = GlobalState.getChannelRackController();
-        if (rack != null) {
-            // Sonido
-            rack.playSoundByName(item.getPatternName());
+    /**
+     * Un pulso sonando: el cursor va a lo que se oye en este instante. El reloj de audio dice qué frame del
+     * mezclador está saliendo ya por el altavoz (descontando lo encolado y la latencia del dispositivo),
+     * el reproductor lo traduce a la canción y PlayheadClock lo suaviza y mide la deriva.
+     */
+    private void updatePlayhead(long now) {
+        AudioClock clock = SamplePlayer.getMixer().getClock();
+        SongTimeline timeline = songPlayer.getTimeline();
+        if (!songPlayer.isPlaying() || clock == null || !clock.isRunning() || timeline == null) {
+            // Sin reloj de audio (sin OpenAL) nos quedamos con lo mezclado
+            playheadClock.reset();
+            updatePlayhead();
+            return;
         }
+        double audible = songPlayer.audiblePosition(clock.audibleFrame(now));
+        double frame = playheadClock.update(now, audible, clock.getSampleRate());
+        playlistView.setPlayheadBars(frame / timeline.getFramesPerBar());
     }
+
     // Menú contextual de la lista de patterns
     private void setupPatternListViewContextMenu() {
         patternListView.setCellFactory(lv -> {
@@ -628,30 +433,149 @@ public class PrincipalController {
         if (file != null) {
             double bpm = GlobalState.getBpm();
             ChannelRackController rack = GlobalState.getChannelRackController(); // Obtenemos el rack
-            new Thread(() -> {
-                try {
-                    AudioExporter.exportSong(file, songData, bpm, rack);
-                    Platform.runLater(() -> {
-                        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                        alert.setContentText("Exported song to " + file.getAbsolutePath());
-                        alert.setHeaderText("Your song has been succesfully exported.");
-                        alert.setTitle("Successful export");
-                        alert.getDialogPane().setGraphic(null);
-                        alert.showAndWait();
-                    });
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Platform.runLater(() -> {
-                        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                        alert.setContentText("An error has occurred while exporting your song");
-                        alert.setHeaderText("Exporting error.");
-                        alert.setTitle("Error");
-                        alert.getDialogPane().setGraphic(null);
-                        alert.showAndWait();
-                    });
+            // Copia de la playlist: se puede seguir editando mientras se exporta
+            List<PlaylistItem> playlist = new ArrayList<>(songData);
+
+            // El render va en paralelo en otro hilo; el Task nos da el progreso y la cancelación
+            Task<Void> exportTask = new Task<>() {
+                @Override
+                protected Void call() throws Exception {
+                    AudioExporter.exportSong(file, playlist, bpm, rack::findRowController,
+                            progress -> updateProgress(progress, 1.0), this::isCancelled);
+                    return null;
                 }
-            }).start();
+            };
+
+            ProgressBar progressBar = new ProgressBar();
+            progressBar.setPrefWidth(300);
+            progressBar.progressProperty().bind(exportTask.progressProperty());
+            Button cancelButton = new Button("Cancel");
+            cancelButton.setOnAction(e -> exportTask.cancel());
+            VBox progressRoot = new VBox(10, new Label("Exporting " + file.getName() + "..."), progressBar, cancelButton);
+            progressRoot.setPadding(new Insets(12));
+            progressRoot.setAlignment(Pos.CENTER);
+            Stage progressStage = new Stage();
+            progressStage.setTitle("Exporting");
+            progressStage.initOwner(btnPlaySong.getScene().getWindow());
+            progressStage.setScene(new Scene(progressRoot));
+            progressStage.setOnCloseRequest(e -> exportTask.cancel());
+
+            exportTask.setOnSucceeded(e -> {
+                progressStage.close();
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setContentText("Exported song to " + file.getAbsolutePath());
+                alert.setHeaderText("Your song has been succesfully exported.");
+                alert.setTitle("Successful export");
+                alert.getDialogPane().setGraphic(null);
+                alert.showAndWait();
+            });
+            // Al cancelar no se escribe el archivo, solo cerramos la ventana
+            exportTask.setOnCancelled(e -> progressStage.close());
+            exportTask.setOnFailed(e -> {
+                progressStage.close();
+                exportTask.getException().printStackTrace();
+                Alert alert = new Alert(Alert.AlertType.INFORMATION);
+                alert.setContentText("An error has occurred while exporting your song");
+                alert.setHeaderText("Exporting error.");
+                alert.setTitle("Error");
+                alert.getDialogPane().setGraphic(null);
+                alert.showAndWait();
+            });
+
+            progressStage.show();
+            new Thread(exportTask, "TunesFX-Export").start();
+        }
+    }
+
+    // Guardar el proyecto (.tfxp)
+    @FXML
+    private void handleSaveProject(ActionEvent event) {
+        javafx.stage.FileChooser fileChooser = new javafx.stage.FileChooser();
+        fileChooser.setTitle("Save project");
+        fileChooser.getExtensionFilters().add(
+                new javafx.stage.FileChooser.ExtensionFilter("TunesFX project", "*." + ProjectFile.EXTENSION)
+        );
+        fileChooser.setInitialFileName("my_hydra_project." + ProjectFile.EXTENSION);
+        File file = fileChooser.showSaveDialog(btnPlaySong.getScene().getWindow());
+        if (file == null) return;
+
+        SongProject project = new SongProject();
+        project.setBpm(GlobalState.getBpm());
+        project.getPlaylist().addAll(songData);
+        project.setSynthPatch(GlobalState.getSynthPatch());
+        ChannelRackController rack = GlobalState.getChannelRackController();
+        if (rack != null) {
+            for (RackTrack track : rack.snapshotTracks()) {
+                project.getTracks().putIfAbsent(track.getName(), track);
+            }
         }
+
+        try {
+            ProjectFile.save(file, project, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setContentText("An error has occurred while saving your project");
+            alert.setHeaderText("Saving error.");
+            alert.setTitle("Error");
+            alert.getDialogPane().setGraphic(null);
+            alert.showAndWait();
+        }
+    }
+
+    // Abrir un proyecto (.tfxp): la cabecera se lee al momento y los samples van llegando en segundo plano
+    @FXML
+    private void handleOpenProject(ActionEvent event) {
+        javafx.stage.FileChooser fileChooser = new javafx.stage.FileChooser();
+        fileChooser.setTitle("Open project");
+        fileChooser.getExtensionFilters().add(
+                new javafx.stage.FileChooser.ExtensionFilter("TunesFX project", "*." + ProjectFile.EXTENSION)
+        );
+        File file = fileChooser.showOpenDialog(btnPlaySong.getScene().getWindow());
+        if (file == null) return;
+
+        SongProject project;
+        try {
+            project = ProjectFile.open(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setContentText("An error has occurred while opening " + file.getName());
+            alert.setHeaderText("Opening error.");
+            alert.setTitle("Error");
+            alert.getDialogPane().setGraphic(null);
+            alert.showAndWait();
+            return;
+        }
+        loadProject(project);
+    }
+
+    private void loadProject(SongProject project) {
+        handleStopSong();
+        // Quitamos los bloques de la canción anterior
+        playlistView.clearClips();
+        songData.clear();
+        markSongDirty();
+        patternListView.getItems().clear();
+
+        bpmSpinner.getValueFactory().setValue(project.getBpm());
+        for (PlaylistItem item : project.getPlaylist()) {
+            addClip(item);
+            addPatternFromSample(item.getPatternName());
+        }
+
+        if (project.getSynthPatch() != null) {
+            GlobalState.setSynthPatch(project.getSynthPatch());
+            SintetizadorController synth = GlobalState.getSynthController();
+            if (synth != null) synth.applyPatch(project.getSynthPatch());
+        }
+
+        // Las filas solo existen con la ventana del rack abierta
+        if (rackStage == null) {
+            handleOpenChannelRack(null);
+        }
+        ChannelRackController rack = GlobalState.getChannelRackController();
+        if (rack != null) rack.loadProject(project.getTracks().values());
     }
 
     // Librería de samples
@@ -2,6 +2,7 @@ package org.example.tunesfx.controller;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
 import javafx.collections.FXCollections;
@@ -10,11 +11,16 @@ import javafx.scene.control.SpinnerValueFactory;
 import org.example.tunesfx.synth.Filter;
 import org.example.tunesfx.synth.Oscilator;
 import org.example.tunesfx.synth.Sintetizador;
+import org.example.tunesfx.synth.SynthPatch;
 import org.example.tunesfx.synth.WaveViewer;
 import org.example.tunesfx.audio.Sample;
 import org.example.tunesfx.audio.SampleBank;
 import javafx.scene.control.*;
 import org.example.tunesfx.synth.LFO;
+import org.example.tunesfx.utils.GlobalState;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 public class SintetizadorController {
     @FXML private Slider adsrAttackSlider;
@@ -23,6 +29,7 @@ public class SintetizadorController {
     @FXML private Slider adsrReleaseSlider;
     @FXML private Pane rootPane;
     @FXML private Spinner<Double> sampleLengthSpinner;
+    @FXML private Spinner<Integer> polyphonySpinner;
     @FXML private Button guardarSample;
     @FXML private Oscilator oscilador1;
     @FXML private Oscilator oscilador2;
@@ -46,6 +53,8 @@ public class SintetizadorController {
 
     private Oscilator[] oscillators;
     private Sintetizador logic;
+    // Qué nota disparó cada tecla física (al soltar, getText() suele venir vacío)
+    private final Map<KeyCode, Character> pressedKeys = new EnumMap<>(KeyCode.class);
     @FXML
     public void initialize() {
         guardarSample.setText("Save sample");
@@ -76,9 +85,82 @@ public class SintetizadorController {
         });
         sampleLengthSpinner.setValueFactory(valueFactory);
         guardarSample.setOnAction(e -> handleSaveSample());
+// Número máximo de voces (notas a la vez) del sintetizador
+        polyphonySpinner.setValueFactory(new SpinnerValueFactory.IntegerSpinnerValueFactory(
+                1, Sintetizador.MAX_POLYPHONY, Sintetizador.DEFAULT_POLYPHONY));
+        polyphonySpinner.valueProperty().addListener((obs, oldVal, newVal) -> logic.setMaxVoices(newVal));
         configurarFiltro();
         configurarLFO();
         configurarADSR();
+
+        // Si hay un patch guardado (ventana anterior o proyecto abierto), lo recuperamos
+        SynthPatch savedPatch = GlobalState.getSynthPatch();
+        if (savedPatch != null) applyPatch(savedPatch);
+        GlobalState.setSynthController(this);
+    }
+
+    /**
+     * Foto de todos los controles del sintetizador (para guardar el proyecto).
+     */
+    public SynthPatch getPatch() {
+        SynthPatch patch = new SynthPatch();
+        for (int i = 0; i < oscillators.length; i++) {
+            oscillators[i].toPatch(patch.getOscillator(i));
+        }
+        patch.setAttack(adsrAttackSlider.getValue());
+        patch.setDecay(adsrDecaySlider.getValue());
+        patch.setSustain(adsrSustainSlider.getValue());
+        patch.setRelease(adsrReleaseSlider.getValue());
+        patch.setFilterType(filterTypeCombo.getValue());
+        patch.setFilterCutoff(filterCutoffSlider.getValue());
+        patch.setFilterResonance(filterResonanceSlider.getValue());
+        patch.setLfoWaveform(lfoWaveformCombo.getValue());
+        patch.setLfoTarget(lfoTargetCombo.getValue());
+        patch.setLfoRate(lfoRateSlider.getValue());
+        patch.setLfoAmount(lfoAmountSlider.getValue());
+        patch.setPolyphony(polyphonySpinner.getValue());
+        patch.setSampleLengthSeconds(sampleLengthSpinner.getValue());
+        return patch;
+    }
+
+    /**
+     * Pone los controles como dice el patch; los listeners ya se encargan de pasarlo a la lógica.
+     */
+    public void applyPatch(SynthPatch patch) {
+        for (int i = 0; i < oscillators.length; i++) {
+            oscillators[i].applyPatch(patch.getOscillator(i));
+        }
+        adsrAttackSlider.setValue(patch.getAttack());
+        adsrDecaySlider.setValue(patch.getDecay());
+        adsrSustainSlider.setValue(patch.getSustain());
+        adsrReleaseSlider.setValue(patch.getRelease());
+        // Primero el tipo: al cambiarlo el filtro pisa los sliders con sus valores por defecto
+        filterTypeCombo.setValue(patch.getFilterType());
+        filterCutoffSlider.setValue(patch.getFilterCutoff());
+        filterResonanceSlider.setValue(patch.getFilterResonance());
+        lfoWaveformCombo.setValue(patch.getLfoWaveform());
+        lfoTargetCombo.setValue(patch.getLfoTarget());
+        lfoRateSlider.setValue(patch.getLfoRate());
+        lfoAmountSlider.setValue(patch.getLfoAmount());
+        polyphonySpinner.getValueFactory().setValue(patch.getPolyphony());
+        sampleLengthSpinner.getValueFactory().setValue(patch.getSampleLengthSeconds());
+
+        // Si un control ya tenía ese valor su listener no salta: lo pasamos a la lógica a mano
+        var adsr = logic.getAdsr();
+        adsr.setAttackTime(patch.getAttack());
+        adsr.setDecayTime(patch.getDecay());
+        adsr.setSustainLevel(patch.getSustain());
+        adsr.setReleaseTime(patch.getRelease());
+        logic.setTipoFiltro(patch.getFilterType());
+        logic.setFiltroActivado(patch.getFilterType() != Filter.Tipo.OFF);
+        logic.setFrecuenciaCorteFiltro(patch.getFilterCutoff());
+        logic.setResonanciaFiltro(patch.getFilterResonance());
+        logic.setLFWaveform(patch.getLfoWaveform());
+        logic.setLFOTarget(patch.getLfoTarget());
+        logic.setLFOActivado(patch.getLfoTarget() != LFO.Target.NONE);
+        logic.setLFORate(patch.getLfoRate());
+        logic.setLFOAmount(patch.getLfoAmount());
+        logic.setMaxVoices(patch.getPolyphony());
     }
 
     private void configurarADSR() {
@@ -228,9 +310,6 @@ public class SintetizadorController {
         double durationSeconds = sampleLengthSpinner.getValue();
         int sampleLength = (int) (durationSeconds * Sintetizador.AudioInfo.SAMPLE_RATE);
 
-        // Activamos la nota virtualmente para que el ADSR empiece en ATTACK
-        logic.getAdsr().noteOn();
-
         // Si quieres que el release empiece justo antes de acabar el sample:
         // Calculamos en qué muestra debería soltarse la tecla (ej. 80% de la duración)
         int releaseStartSample = (int) (sampleLength * 0.8);
@@ -254,12 +333,17 @@ public class SintetizadorController {
             }
         }
         if (keyString.length() == 1) {
+            pressedKeys.put(e.getCode(), keyString.charAt(0));
             logic.onKeyPressed(keyString.charAt(0));
         }
         e.consume();
     }
 
     public void handleKeyReleased(KeyEvent e) {
-        logic.onKeyReleased();
+        // Cada tecla suelta solo su nota (el sintetizador es polifónico)
+        Character keyChar = pressedKeys.remove(e.getCode());
+        if (keyChar != null) {
+            logic.onKeyReleased(keyChar);
+        }
     }
 }
\ No newline at end of file
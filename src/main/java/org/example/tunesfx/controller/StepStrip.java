@@ -0,0 +1,123 @@
+package org.example.tunesfx.controller;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import org.example.tunesfx.audio.PatternModel;
+
+/**
+ * Los pasos de una fila del rack pintados en un solo canvas (antes eran 64 botones con su CSS).
+ * Se pinta desde la foto del {@link PatternModel}: si su versión no ha cambiado no se redibuja nada,
+ * y al mover el playhead solo se repintan la celda que lo pierde y la que lo gana.
+ * Los clics se traducen a índice de paso con {@link #stepAt(double, double)}.
+ */
+public class StepStrip extends Canvas {
+
+    // Mismas medidas que los botones de antes: 20 px de celda y 5 de separación
+    public static final double CELL_WIDTH = 20;
+    public static final double CELL_HEIGHT = 25;
+    public static final double CELL_GAP = 5;
+    public static final double STRIP_HEIGHT = 47;
+
+    private static final Color ROW_BACKGROUND = Color.web("#4a4a4a");
+    private static final Color STEP_OFF = Color.web("#3d3d3d");
+    private static final Color STEP_OFF_BORDER = Color.web("#505050");
+    private static final Color STEP_ON = Color.web("#03ab10");
+    private static final Color STEP_ON_BORDER = Color.web("#00ff17");
+    private static final Color PLAYHEAD_BORDER = Color.WHITE;
+    private static final Font OFFSET_FONT = Font.font(9);
+
+    private PatternModel pattern;
+    // Lo que hay pintado ahora mismo
+    private PatternModel.Snapshot drawn;
+    private int playhead = -1;
+
+    public StepStrip() {
+        super(PatternModel.NUM_STEPS * (CELL_WIDTH + CELL_GAP), STRIP_HEIGHT);
+    }
+
+    public void setPattern(PatternModel pattern) {
+        this.pattern = pattern;
+        drawn = null;
+        refresh();
+    }
+
+    /**
+     * Redibuja si el patrón ha cambiado desde la última vez (comparando versiones, no pasos).
+     */
+    public void refresh() {
+        if (pattern == null) return;
+        PatternModel.Snapshot snapshot = pattern.snapshot();
+        if (drawn != null && drawn.getVersion() == snapshot.getVersion()) return;
+        drawn = snapshot;
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.setFill(ROW_BACKGROUND);
+        gc.fillRect(0, 0, getWidth(), getHeight());
+        for (int step = 0; step < PatternModel.NUM_STEPS; step++) {
+            drawCell(gc, step);
+        }
+    }
+
+    /**
+     * Mueve el playhead (-1 para quitarlo). Lo llama el rack una vez por pulso para todas las filas.
+     */
+    public void setPlayhead(int step) {
+        if (step < 0 || step >= PatternModel.NUM_STEPS) step = -1;
+        // Si el patrón ha cambiado se repinta entero y ya sale con el playhead nuevo
+        int old = playhead;
+        playhead = step;
+        if (pattern != null && drawn != null && drawn.getVersion() != pattern.snapshot().getVersion()) {
+            refresh();
+            return;
+        }
+        if (step == old || drawn == null) return;
+        GraphicsContext gc = getGraphicsContext2D();
+        if (old != -1) drawCell(gc, old);
+        if (step != -1) drawCell(gc, step);
+    }
+
+    /**
+     * El paso bajo el punto (coordenadas del canvas), o -1 si cae en un hueco entre celdas.
+     */
+    public int stepAt(double x, double y) {
+        if (x < 0 || y < 0 || y >= getHeight()) return -1;
+        int step = (int) (x / (CELL_WIDTH + CELL_GAP));
+        if (step >= PatternModel.NUM_STEPS) return -1;
+        if (x - step * (CELL_WIDTH + CELL_GAP) >= CELL_WIDTH) return -1;
+        return step;
+    }
+
+    private void drawCell(GraphicsContext gc, int step) {
+        double x = step * (CELL_WIDTH + CELL_GAP);
+        double y = Math.floor((getHeight() - CELL_HEIGHT) / 2);
+        // Se limpia algo más que la celda: el borde del playhead se sale un poco
+        gc.setFill(ROW_BACKGROUND);
+        gc.fillRect(x - 1, y - 1, CELL_WIDTH + 2, CELL_HEIGHT + 2);
+
+        boolean on = drawn.isActive(step);
+        gc.setFill(on ? STEP_ON : STEP_OFF);
+        gc.fillRect(x, y, CELL_WIDTH, CELL_HEIGHT);
+        if (step == playhead) {
+            gc.setStroke(PLAYHEAD_BORDER);
+            gc.setLineWidth(2);
+            gc.strokeRect(x + 1, y + 1, CELL_WIDTH - 2, CELL_HEIGHT - 2);
+        } else {
+            gc.setStroke(on ? STEP_ON_BORDER : STEP_OFF_BORDER);
+            gc.setLineWidth(1);
+            gc.strokeRect(x + 0.5, y + 0.5, CELL_WIDTH - 1, CELL_HEIGHT - 1);
+        }
+
+        // Pequeña ayuda visual: el numerito del pitch si lo tiene
+        int offset = drawn.getSemitoneOffset(step);
+        if (offset != 0) {
+            gc.setFill(on ? Color.BLACK : Color.WHITE);
+            gc.setFont(OFFSET_FONT);
+            gc.setTextAlign(TextAlignment.CENTER);
+            gc.setTextBaseline(VPos.CENTER);
+            gc.fillText(String.valueOf(offset), x + CELL_WIDTH / 2, y + CELL_HEIGHT / 2);
+        }
+    }
+}
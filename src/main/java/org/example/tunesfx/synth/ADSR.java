@@ -1,5 +1,7 @@
 package org.example.tunesfx.synth;
 
+import java.util.Arrays;
+
 public class ADSR {
     public enum State { IDLE, ATTACK, DECAY, SUSTAIN, RELEASE }
 
@@ -26,8 +28,10 @@ public class ADSR {
         attackRate = 1.0 / (attackTimeMs * sampleRate / 1000.0);
         // Decremento por muestra para ir de 1 al Sustain en el tiempo especificado
         decayRate = (1.0 - sustainLevel) / (decayTimeMs * sampleRate / 1000.0);
-        // Decremento por muestra para ir del Sustain a 0
-        releaseRate = sustainLevel / (releaseTimeMs * sampleRate / 1000.0);
+        // Decremento por muestra para ir a 0 (desde el nivel actual si ya estamos en release,
+        // así una nota soltada en el attack/decay o con sustain 0 también se apaga en releaseTime)
+        double releaseFrom = (state == State.RELEASE) ? currentLevel : sustainLevel;
+        releaseRate = Math.max(releaseFrom, 0.001) / (releaseTimeMs * sampleRate / 1000.0);
     }
 
     public void noteOn() {
@@ -73,7 +77,74 @@ public class ADSR {
         return currentLevel;
     }
 
+    /**
+     * Versión por bloques de getNextEnvelope(): escribe frames valores de la envolvente en out.
+     * Cada tramo (attack, decay, release) es una rampa lineal, así que se rellena con un bucle
+     * sin dependencias entre muestras (vectorizable) hasta justo antes del cambio de estado;
+     * la muestra del cambio se calcula con getNextEnvelope() para que el resultado sea el mismo.
+     */
+    public void process(float[] out, int offset, int frames) {
+        int i = offset;
+        final int end = offset + frames;
+        while (i < end) {
+            switch (state) {
+                case ATTACK:
+                    i = ramp(out, i, end, 1.0 - currentLevel, attackRate);
+                    break;
+                case DECAY:
+                    i = ramp(out, i, end, currentLevel - sustainLevel, -decayRate);
+                    break;
+                case RELEASE:
+                    i = ramp(out, i, end, currentLevel, -releaseRate);
+                    break;
+                case SUSTAIN:
+                    currentLevel = sustainLevel;
+                    Arrays.fill(out, i, end, (float) sustainLevel);
+                    return;
+                case IDLE:
+                    currentLevel = 0.0;
+                    Arrays.fill(out, i, end, 0f);
+                    return;
+            }
+            // Muestra en la que se llega al objetivo del tramo: cambia de estado
+            if (i < end) {
+                out[i++] = (float) getNextEnvelope();
+            }
+        }
+    }
+
+    // Rellena la rampa mientras no se alcance el objetivo (distance = lo que falta, rate con signo)
+    private int ramp(float[] out, int start, int end, double distance, double rate) {
+        double step = Math.abs(rate);
+        if (step <= 0 || distance <= 0) return start;
+        // Muestras k = 1..n con level + k*rate sin llegar al objetivo
+        int n = (int) Math.min(end - start, Math.max(0, Math.ceil(distance / step) - 1));
+        final double level = currentLevel;
+        for (int k = 0; k < n; k++) {
+            out[start + k] = (float) (level + (k + 1) * rate);
+        }
+        currentLevel = level + n * rate;
+        return start + n;
+    }
+
     public boolean isIdle() { return state == State.IDLE; }
+    public boolean isReleasing() { return state == State.RELEASE; }
+    public double getLevel() { return currentLevel; }
+
+    // Copia los tiempos de otra envolvente (la de la UI hace de plantilla para cada voz)
+    public void copySettingsFrom(ADSR other) {
+        this.attackTimeMs = other.attackTimeMs;
+        this.decayTimeMs = other.decayTimeMs;
+        this.sustainLevel = other.sustainLevel;
+        this.releaseTimeMs = other.releaseTimeMs;
+        calculateRates();
+    }
+
+    // Corta en seco (voz robada o reciclada)
+    public void reset() {
+        state = State.IDLE;
+        currentLevel = 0.0;
+    }
 
     // Setters para la UI
     public void setAttackTime(double ms) { this.attackTimeMs = Math.max(1, ms); calculateRates(); }
@@ -98,6 +98,18 @@ public class Filter {
         this.b2 = a2_tmp / a0_tmp;
     }
 
+    /**
+     * Copia tipo, corte y resonancia de otro filtro (el de la UI hace de plantilla para cada voz).
+     * Solo recalcula coeficientes si algo ha cambiado, porque se llama a control rate.
+     */
+    public void copySettingsFrom(Filter other) {
+        if (tipo == other.tipo && frecuenciaCorte == other.frecuenciaCorte && resonancia == other.resonancia) return;
+        this.tipo = other.tipo;
+        this.frecuenciaCorte = other.frecuenciaCorte;
+        this.resonancia = other.resonancia;
+        calcularCoeficientes();
+    }
+
     public double procesar(double entrada) {
         if (tipo == Tipo.OFF) return entrada;
 
@@ -114,6 +126,28 @@ public class Filter {
         return salida;
     }
 
+    /**
+     * Versión por bloques de procesar(): filtra buffer[offset..offset+frames) in situ.
+     * El tipo y los coeficientes se leen una vez por bloque y el historial va en variables locales.
+     */
+    public void process(float[] buffer, int offset, int frames) {
+        if (tipo == Tipo.OFF) return;
+
+        final double c0 = a0, c1 = a1, c2 = a2, d1 = b1, d2 = b2;
+        double hx1 = x1, hx2 = x2, hy1 = y1, hy2 = y2;
+        final int end = offset + frames;
+        for (int i = offset; i < end; i++) {
+            double entrada = buffer[i];
+            double salida = (c0 * entrada) + (c1 * hx1) + (c2 * hx2) - (d1 * hy1) - (d2 * hy2);
+            hx2 = hx1;
+            hx1 = entrada;
+            hy2 = hy1;
+            hy1 = salida;
+            buffer[i] = (float) salida;
+        }
+        x1 = hx1; x2 = hx2; y1 = hy1; y2 = hy2;
+    }
+
     public void reset() {
         x1 = x2 = y1 = y2 = 0;
     }
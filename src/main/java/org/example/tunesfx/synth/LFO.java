@@ -63,6 +63,18 @@ public class LFO {
 //        return baseValue + (mod * modulationRange);
 //    }
 
+    /**
+     * Copia forma de onda, destino, velocidad y cantidad de otro LFO, y empieza desde el principio
+     * (para el render offline, que no debe mover la fase del LFO que suena en directo).
+     */
+    public void copySettingsFrom(LFO other) {
+        this.waveform = other.waveform;
+        this.target = other.target;
+        this.rate = other.rate;
+        this.amount = other.amount;
+        reset();
+    }
+
 // Getters y Setters
     public Waveform getWaveform() { return waveform; }
     public void setWaveform(Waveform waveform) {
@@ -0,0 +1,67 @@
+package org.example.tunesfx.synth;
+
+/**
+ * Cola sin locks de un productor y un consumidor (SPSC) para pasar las notas del teclado al hilo de audio
+ * del sintetizador, igual que MixerCommandQueue en el mezclador. Los eventos son objetos fijos de un array
+ * circular que se reutilizan, así que tocar no reserva memoria y el hilo de audio nunca espera a la UI.
+ * <p>
+ * Si varios hilos encolan a la vez se tienen que poner de acuerdo entre ellos (Sintetizador lo hace
+ * con su propio lock, que el hilo de audio no toca nunca).
+ */
+final class NoteQueue {
+
+    static final int NOTE_ON = 0;
+    static final int NOTE_OFF = 1;
+
+    static final class Event {
+        int type;
+        char key;
+        double frequency;
+    }
+
+    private final Event[] slots;
+    private final int mask;
+
+    // Siguiente evento a leer (solo lo avanza el consumidor)
+    private volatile long head = 0;
+    // Siguiente hueco a escribir (solo lo avanza el productor)
+    private volatile long tail = 0;
+
+    /**
+     * @param capacity se redondea a la siguiente potencia de dos
+     */
+    NoteQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Event[size];
+        for (int i = 0; i < size; i++) slots[i] = new Event();
+        mask = size - 1;
+    }
+
+    /**
+     * Productor: el hueco a rellenar, o null si la cola está llena. No es visible hasta {@link #publish()}.
+     */
+    Event claim() {
+        long t = tail;
+        if (t - head >= slots.length) return null;
+        return slots[(int) (t & mask)];
+    }
+
+    // Productor: hace visible el evento rellenado (la escritura volatile publica sus campos)
+    void publish() {
+        tail = tail + 1;
+    }
+
+    /**
+     * Consumidor: el siguiente evento, o null si no hay ninguno.
+     */
+    Event peek() {
+        long h = head;
+        if (h == tail) return null;
+        return slots[(int) (h & mask)];
+    }
+
+    // Consumidor: suelta el evento leído
+    void consumed() {
+        head = head + 1;
+    }
+}
@@ -18,15 +18,24 @@ public class Oscilator extends HBox {
     private WaveTable waveTable = WaveTable.Sine;
 
     // --- LÓGICA UNISON ---
-    private static final int MAX_VOICES = 7;
+    public static final int MAX_UNISON_VOICES = 7;
+    // Conversión de la fase (en muestras de tabla, [0, WaveTable.SIZE)) a punto fijo de 32 bits y vuelta
+    private static final double PHASE_TO_FIXED = 4294967296.0 / WaveTable.SIZE;
+    private static final double FIXED_TO_PHASE = WaveTable.SIZE / 4294967296.0;
     private int activeVoices = 1;
     private double detuneAmount = 0.0; // 0.0 a 0.5 (aprox medio semitono)
 
-    // Usamos double para mayor precisión en la afinación (microtonalidad para unison)
-    private double[] voiceIndices = new double[MAX_VOICES];
-    private double[] voiceStepSizes = new double[MAX_VOICES];
+    // Multiplicador de frecuencia de cada voz del unison (detune) y del tono del oscilador.
+    // El oscilador solo guarda los parámetros: las fases viven en cada voz del sintetizador (SynthVoice)
+    private final double[] unisonRatios = new double[MAX_UNISON_VOICES];
+    private double toneMultiplier = 1.0;
 
+    // Fases propias para usar el oscilador suelto, sin SynthVoice (getNextSample y process(out, offset, frames))
     private double keyFrequency;
+    private final double[] ownPhases = new double[MAX_UNISON_VOICES];
+    private final double[] ownSteps = new double[MAX_UNISON_VOICES];
+    private final float[] oneSample = new float[1];
+
     private int toneOffset;
     private int volume = 100;
 
@@ -120,7 +129,7 @@ public class Oscilator extends HBox {
     private void inicializarOscilador() {
         keyFrequency = 440.0;
         toneOffset = 0;
-        Arrays.fill(voiceIndices, 0.0);
+        Arrays.fill(ownPhases, 0.0);
         recalculateVoices();
     }
 
@@ -133,38 +142,7 @@ public class Oscilator extends HBox {
 
     public void resetPhase() {
         // Reiniciamos todas las voces a fase 0
-        Arrays.fill(voiceIndices, 0.0);
-    }
-
-    public double getNextSample() {
-        // Si este oscilador está silenciado, no emite señal
-        if (muted) return 0.0;
-        double totalSample = 0;
-        float[] table = waveTable.getSamples();
-        int tableSize = WaveTable.SIZE;
-
-        for (int i = 0; i < activeVoices; i++) {
-            // Obtenemos el índice actual (casteamos a int para leer el array)
-            int index = (int) voiceIndices[i];
-
-            // Sumamos la muestra
-            totalSample += table[index];
-
-            // Avanzamos el índice de esta voz específica
-            voiceIndices[i] += voiceStepSizes[i];
-
-            // Loop de la tabla (Wrap around)
-            if (voiceIndices[i] >= tableSize) {
-                voiceIndices[i] -= tableSize;
-            }
-        }
-
-        // Normalización: Dividimos por la cantidad de voces activas para mantener energía estable
-        // evitando saturación (clipping).
-        double divisor = activeVoices > 0 ? activeVoices : 1;
-        double normalizedSample = totalSample / divisor;
-
-        return normalizedSample * getVolumenMultiplier();
+        Arrays.fill(ownPhases, 0.0);
     }
 
     public void setKeyFrequency(double frequency) {
@@ -173,37 +151,140 @@ public class Oscilator extends HBox {
     }
 
     /**
-     * Calcula los pasos (velocidad) de cada voz del Unison
+     * Siguiente muestra del oscilador suelto (a la frecuencia de setKeyFrequency). Es lo mismo que
+     * {@link #process(float[], int, int)} con un bloque de una muestra; para mucho audio mejor por bloques.
+     */
+    public double getNextSample() {
+        oneSample[0] = 0f;
+        process(ownPhases, ownSteps, oneSample, 0, 1);
+        return oneSample[0];
+    }
+
+    /**
+     * Suma a out[offset..offset+frames) la señal del oscilador suelto, con sus propias fases
+     * (las que avanza getNextSample). Las voces del sintetizador usan la versión con phases y steps.
+     * @return false si está silenciado (no ha sumado nada)
+     */
+    public boolean process(float[] out, int offset, int frames) {
+        return process(ownPhases, ownSteps, out, offset, frames);
+    }
+
+    /**
+     * Calcula el multiplicador de frecuencia de cada voz del Unison (y el del tono).
+     * Las voces del sintetizador lo leen a control rate, así que cambiarlo afecta también a las notas que suenan.
      */
     private void recalculateVoices() {
-        double baseRate = (double) WaveTable.SIZE / Sintetizador.AudioInfo.SAMPLE_RATE;
-        double baseFreqWithTone = keyFrequency * Math.pow(2, getToneOffset());
+        toneMultiplier = Math.pow(2, getToneOffset());
 
         // Si solo hay 1 voz, es la frecuencia pura
-        if (activeVoices == 1) {
-            voiceStepSizes[0] = baseFreqWithTone * baseRate;
-            return;
+        if (activeVoices <= 1) {
+            unisonRatios[0] = 1.0;
+        } else {
+            // Si hay Unison, distribuimos las voces alrededor de la frecuencia central
+            for (int i = 0; i < activeVoices; i++) {
+                // Calculamos un factor de "spread" entre -1.0 y 1.0
+                // Ej con 3 voces: -1.0, 0.0, 1.0
+                double spread = -1.0 + (2.0 * i / (activeVoices - 1));
+
+                // Aplicamos el detune.
+                // spread * detuneAmount es cuántos semitonos desafinamos
+                unisonRatios[i] = Math.pow(2, (spread * detuneAmount) / 12.0); // Dividido por 12 para que sea sutil
+            }
         }
 
-        // Si hay Unison, distribuimos las voces alrededor de la frecuencia central
-        for (int i = 0; i < activeVoices; i++) {
-            // Calculamos un factor de "spread" entre -1.0 y 1.0
-            // Ej con 3 voces: -1.0, 0.0, 1.0
-            double spread = -1.0 + (2.0 * i / (activeVoices - 1));
-
-            // Aplicamos el detune.
-            // spread * detuneAmount es cuántos semitonos desafinamos
-            double detuneMultiplier = Math.pow(2, (spread * detuneAmount) / 12.0); // Dividido por 12 para que sea sutil
-
-            double detunedFreq = baseFreqWithTone * detuneMultiplier;
-            voiceStepSizes[i] = detunedFreq * baseRate;
+        // Pasos de tabla del oscilador suelto
+        double baseStep = keyFrequency * toneMultiplier * WaveTable.SIZE / Sintetizador.AudioInfo.SAMPLE_RATE;
+        int unison = getUnisonVoices();
+        for (int i = 0; i < unison; i++) {
+            ownSteps[i] = baseStep * unisonRatios[i];
         }
     }
 
     // --- Getters y Setters ---
 
     public void setUpdateCallback(Runnable updateCallback) { this.updateCallback = updateCallback; }
-    private double getVolumenMultiplier() { return volume / 100.0; }
+    double getVolumenMultiplier() { return volume / 100.0; }
+
+    /**
+     * Suma a out[offset..offset+frames) la señal de este oscilador para una voz del sintetizador.
+     * Las fases y pasos de cada voz del unison los guarda la voz (SynthVoice); aquí solo se leen los parámetros
+     * una vez por bloque y se hace un bucle corto por cada voz del unison.
+     * Cada voz del unison lee el mipmap band-limited que toca a su paso (sin aliasing en notas agudas)
+     * con interpolación lineal.
+     * @return false si está silenciado (no ha sumado nada)
+     */
+    boolean process(double[] phases, double[] steps, float[] out, int offset, int frames) {
+        if (muted) return false;
+        final WaveTable wave = waveTable;
+        final int unison = getUnisonVoices();
+        // Normalización por voces del unison para no saturar
+        final float gain = (float) (getVolumenMultiplier() / unison);
+        final int end = offset + frames;
+        for (int u = 0; u < unison; u++) {
+            final float[] table = wave.getMipLevel(WaveTable.mipLevelFor(steps[u]));
+            phases[u] = addTable(table, phases[u], steps[u], gain, out, offset, end);
+        }
+        return true;
+    }
+
+    /**
+     * Suma a out[offset..end) una tabla de mipmap leída desde phase con paso step (en muestras de la tabla
+     * original) e interpolación lineal. Devuelve la fase al final. (Package-private para el benchmark.)
+     */
+    static double addTable(float[] table, double phase, double step, float gain, float[] out, int offset, int end) {
+        // Dentro del bloque la fase va en punto fijo de 32 bits (una vuelta = 2^32): el wrap sale gratis
+        // con el desbordamiento del int y los bits altos son el índice en la tabla del nivel
+        final int indexBits = Integer.numberOfTrailingZeros(table.length - 1);
+        final int shift = 32 - indexBits;
+        final int fixedStep = (int) Math.round(step * PHASE_TO_FIXED);
+        int fixedPhase = (int) (long) (phase * PHASE_TO_FIXED);
+        for (int i = offset; i < end; i++) {
+            int index = fixedPhase >>> shift;
+            // Parte fraccionaria metida en la mantisa de un float en [1, 2): más barato que convertir int -> float
+            float frac = Float.intBitsToFloat(0x3F800000 | ((fixedPhase << indexBits) >>> 9)) - 1f;
+            float s0 = table[index];
+            out[i] += (s0 + (table[index + 1] - s0) * frac) * gain;
+            fixedPhase += fixedStep;
+        }
+        return (fixedPhase & 0xFFFFFFFFL) * FIXED_TO_PHASE;
+    }
+
+    /**
+     * Copia el estado del oscilador en un patch (para guardarlo en el proyecto).
+     */
+    public void toPatch(SynthPatch.OscillatorPatch patch) {
+        patch.setWaveTable(waveTable);
+        patch.setToneOffset(toneOffset);
+        patch.setVolume(volume);
+        patch.setUnisonVoices(activeVoices);
+        patch.setDetune(detuneAmount);
+        patch.setMuted(muted);
+    }
+
+    /**
+     * Pone el oscilador (y sus controles) como dice el patch.
+     */
+    public void applyPatch(SynthPatch.OscillatorPatch patch) {
+        toneOffset = Math.max(-TONE_OFFSET_LIMIT, Math.min(TONE_OFFSET_LIMIT, patch.getToneOffset()));
+        volume = Math.max(0, Math.min(100, patch.getVolume()));
+        waveFormComboBox.setValue(patch.getWaveTable());
+        waveTable = patch.getWaveTable();
+        unisonVoicesSlider.setValue(patch.getUnisonVoices());
+        unisonDetuneSlider.setValue(patch.getDetune());
+        activeVoices = patch.getUnisonVoices();
+        detuneAmount = patch.getDetune();
+        if (muteCheckBox != null) muteCheckBox.setSelected(patch.isMuted());
+        muted = patch.isMuted();
+        recalculateVoices();
+        toneValueLabel.setText("x" + String.format("%.2f", getToneOffset()));
+        volumeParameter.setText(" " + volume + "%");
+        if (updateCallback != null) updateCallback.run();
+    }
+
+    // --- Parámetros que lee el motor de audio (sin reservar memoria) ---
+    int getUnisonVoices() { return Math.max(1, Math.min(activeVoices, MAX_UNISON_VOICES)); }
+    double getUnisonRatio(int voice) { return unisonRatios[voice]; }
+    double getToneMultiplier() { return toneMultiplier; }
     private double getToneOffset() { return toneOffset / 100d; }
 
     // Para la visualización gráfica (simplificada, solo muestra la voz central o suma)
@@ -3,6 +3,8 @@ package org.example.tunesfx.synth;
 import org.example.tunesfx.audio.Audio;
 import org.example.tunesfx.utils.Utils;
 
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 
 public class Sintetizador {
@@ -14,20 +16,45 @@ public class Sintetizador {
     // --- Componentes ---
     private Oscilator[] oscillators;
     private WaveViewer waveViewer;
+    // filtro y adsr son las plantillas que edita la UI: cada voz copia sus valores
     private Filter filtro;
     private LFO lfo;
     private ADSR adsr = new ADSR();
-    private boolean noteIsPressed = false;
+
+    // --- Polifonía ---
+    public static final int MAX_POLYPHONY = 32;
+    public static final int DEFAULT_POLYPHONY = 16;
+    private final SynthVoice[] voices = new SynthVoice[MAX_POLYPHONY];
+    private volatile int maxVoices = DEFAULT_POLYPHONY;
+    private long noteCounter = 0;
+    // Voz aparte para generar samples (no interfiere con lo que suena en directo)
+    private final SynthVoice offlineVoice;
+    // El render offline solo se espera a sí mismo: nunca coge nada que use el hilo de audio
+    private final Object offlineLock = new Object();
+
+    // --- Notas del teclado hacia el hilo de audio ---
+    // El hilo de audio las aplica al principio de cada bloque, sin locks. Los hilos que tocan se ponen
+    // de acuerdo entre ellos con noteLock (el hilo de audio no lo coge nunca)
+    private static final int NOTE_QUEUE_SIZE = 256;
+    private final NoteQueue notes = new NoteQueue(NOTE_QUEUE_SIZE);
+    private final Object noteLock = new Object();
+
+    // --- Presupuesto de CPU ---
+    // Si un bloque tarda más que esta fracción de su duración real, se corta una voz
+    private volatile double cpuBudget = 0.75;
+    private volatile long shedVoices = 0;
 
     // --- Estados ---
-    private boolean filtroActivado = false; // Por defecto false para coincidir con UI
-    private boolean lfoActivado = false;
+    private volatile boolean filtroActivado = false; // Por defecto false para coincidir con UI
+    private volatile boolean lfoActivado = false;
 
     // --- Variables para Modulación Estable (Evitar drift) ---
-    private double baseFilterCutoff = 1000.0;
-    private double baseFilterResonance = 0.5;
-    private double lfoVolumeGain = 1.0; // Multiplicador de volumen (1.0 = normal)
-    private double currentBaseFrequency = 440.0;
+    private volatile double baseFilterCutoff = 1000.0;
+    private volatile double baseFilterResonance = 0.5;
+    // Última nota tocada (la que se usa al generar un sample)
+    private volatile double currentBaseFrequency = 440.0;
+    // LFO del directo: solo lo avanza el hilo de audio
+    private final Modulation live;
 
     // --- Rangos de Modulación ---
     private static final double LFO_CUTOFF_RANGE = 3000.0;
@@ -41,21 +68,15 @@ public class Sintetizador {
     private int controlCounter = 0;
     private static final int CONTROL_RATE_SAMPLES = 64;
 
+    // Buffers de trabajo del render por bloques (creados una vez)
+    private final float[] mixBuffer = new float[Audio.BUFFER_SIZE];
+    private final float[] voiceBuffer = new float[CONTROL_RATE_SAMPLES];
+    private final float[] envelopeBuffer = new float[CONTROL_RATE_SAMPLES];
+
     private Runnable updateCallback;
 
     // --- Hilo de Audio ---
-    private final Audio hiloAudio = new Audio(() -> {
-        // Solo paramos si no hay tecla pulsada Y el ADSR ya se calló
-        if (!noteIsPressed && adsr.isIdle()) {
-            return null;
-        }
-        short[] s = new short[Audio.BUFFER_SIZE];
-        for (int i = 0; i < Audio.BUFFER_SIZE; i++) {
-            double d = nextSample();
-            s[i] = (short) (Short.MAX_VALUE * d);
-        }
-        return s;
-    });
+    private final Audio hiloAudio = new Audio(this::renderBlock);
 
     static {
         final char[] PIANO_KEYS = "-<zsxdcvgbhnjmq2w3er5t6y7ui9o0p".toCharArray();
@@ -72,6 +93,12 @@ public class Sintetizador {
 
         this.filtro = new Filter();
         this.lfo = new LFO();
+        this.live = new Modulation(lfo, filtro);
+
+        for (int i = 0; i < MAX_POLYPHONY; i++) {
+            voices[i] = new SynthVoice(oscillators.length);
+        }
+        offlineVoice = new SynthVoice(oscillators.length);
 
         // Configura los osciladores en el waveViewer
         this.waveViewer.setOscillators(this.oscillators);
@@ -90,141 +117,314 @@ public class Sintetizador {
 
     // --- LÓGICA DE AUDIO PRINCIPAL ---
 
-    public void setFrequency(double frequency) {
-        for (Oscilator osc : oscillators) {
-            osc.setKeyFrequency(frequency);
+    /**
+     * Callback del hilo de Audio: mezcla todas las voces activas en el buffer nativo.
+     * No reserva memoria: voces, fases y filtros están creados de antemano.
+     */
+    private boolean renderBlock(ShortBuffer out, int frames) {
+        applyNotes();
+        // Solo paramos cuando todas las voces se han callado
+        if (!hasActiveVoices()) {
+            return false;
+        }
+        long start = System.nanoTime();
+        // Trozos de como mucho CONTROL_RATE_SAMPLES: el trabajo de control rate (LFO, afinación,
+        // coeficientes del filtro) se hace entre trozos y nunca dentro de los bucles por muestra
+        int done = 0;
+        while (done < frames) {
+            if (controlCounter >= CONTROL_RATE_SAMPLES) {
+                controlCounter = 0;
+                live.update(CONTROL_RATE_SAMPLES);
+                for (SynthVoice voice : voices) {
+                    if (voice.active) voice.updateControl(oscillators, live.pitchMultiplier, filtro);
+                }
+            }
+            int chunk = Math.min(frames - done, CONTROL_RATE_SAMPLES - controlCounter);
+            Arrays.fill(mixBuffer, done, done + chunk, 0f);
+            double gain = live.volumeGain();
+            for (SynthVoice voice : voices) {
+                if (voice.active) {
+                    voice.render(oscillators, mixBuffer, done, chunk, gain, filtroActivado, voiceBuffer, envelopeBuffer);
+                }
+            }
+            controlCounter += chunk;
+            done += chunk;
+        }
+
+        for (int i = 0; i < frames; i++) {
+            // Clamping para no desbordar el short (igual que el mezclador de samples)
+            float mix = mixBuffer[i];
+            if (mix > 1.0f) mix = 1.0f;
+            else if (mix < -1.0f) mix = -1.0f;
+            out.put(i, (short) (Short.MAX_VALUE * mix));
         }
+        enforceCpuBudget(System.nanoTime() - start, frames);
+        return true;
     }
 
-    public double nextSample() {
-        if (controlCounter++ >= CONTROL_RATE_SAMPLES) {
-            controlCounter = 0;
-            if (lfoActivado && lfo.getTarget() != LFO.Target.NONE) {
-                // Pasamos las 64 muestras al LFO
-                aplicarModulacionLFO(CONTROL_RATE_SAMPLES);
-            } else {
-                lfoVolumeGain = 1.0;
-            }
+    private boolean hasActiveVoices() {
+        for (SynthVoice voice : voices) {
+            if (voice.active) return true;
         }
+        return false;
+    }
 
-        double totalSample = 0;
-        int activeOscs = 0;
-        for (Oscilator osc : oscillators) {
-            if (!osc.isMuted()) {
-                totalSample += osc.getNextSample();
-                activeOscs++;
+    /**
+     * Presupuesto duro de CPU: si el bloque ha tardado más de cpuBudget * su duración real,
+     * cortamos una voz (la misma que se robaría) para no provocar underruns. No en seco: se apaga con un
+     * fundido corto en el bloque siguiente, así que pasarse del presupuesto no suena a clic.
+     */
+    private void enforceCpuBudget(long elapsedNanos, int frames) {
+        double blockNanos = frames * 1_000_000_000.0 / AudioInfo.SAMPLE_RATE;
+        if (elapsedNanos > blockNanos * cpuBudget) {
+            SynthVoice victim = findVoiceToSteal(MAX_POLYPHONY);
+            if (victim != null) {
+                victim.fadeOut();
+                shedVoices++;
             }
         }
+    }
 
-        double muestraMezclada = activeOscs > 0 ? totalSample / activeOscs : 0.0;
+    // Primera voz libre dentro del límite de polifonía
+    private SynthVoice findFreeVoice() {
+        int limit = maxVoices;
+        for (int i = 0; i < limit; i++) {
+            if (!voices[i].active) return voices[i];
+        }
+        return null;
+    }
 
-        // APLICAR ADSR
-        double envolvente = adsr.getNextEnvelope();
-        muestraMezclada *= envolvente;
+    // Robo de voces: primero la más antigua ya soltada (en release), si no la más antigua.
+    // Las que ya se están apagando a la fuerza no cuentan (se acaban solas en unas pocas muestras):
+    // null si no queda ninguna más
+    private SynthVoice findVoiceToSteal(int limit) {
+        SynthVoice oldestReleased = null;
+        SynthVoice oldest = null;
+        for (int i = 0; i < limit; i++) {
+            SynthVoice voice = voices[i];
+            if (!voice.active || voice.isFading()) continue;
+            if (voice.isReleased() && (oldestReleased == null || voice.startOrder < oldestReleased.startOrder)) {
+                oldestReleased = voice;
+            }
+            if (oldest == null || voice.startOrder < oldest.startOrder) {
+                oldest = voice;
+            }
+        }
+        return (oldestReleased != null) ? oldestReleased : oldest;
+    }
 
-        if (lfoActivado && lfo.getTarget() == LFO.Target.OSC_VOLUME) {
-            muestraMezclada *= lfoVolumeGain;
+    /**
+     * Estado del LFO global a control rate: su fase, el filtro que modula y los multiplicadores de volumen
+     * y pitch que salen de él. El directo tiene el suyo (lo avanza solo el hilo de audio) y cada render
+     * offline crea otro, así que generar un sample no mueve la fase ni la afinación de lo que suena.
+     */
+    private final class Modulation {
+        final LFO lfo;
+        final Filter filter;
+        double volumeGain = 1.0; // Multiplicador de volumen (1.0 = normal)
+        double pitchMultiplier = 1.0; // Multiplicador de frecuencia del LFO de pitch (1.0 = normal)
+
+        Modulation(LFO lfo, Filter filter) {
+            this.lfo = lfo;
+            this.filter = filter;
         }
 
-        if (filtroActivado) {
-            muestraMezclada = filtro.procesar(muestraMezclada);
+        // Parámetros globales a control rate (LFO)
+        void update(int samples) {
+            if (lfoActivado && lfo.getTarget() != LFO.Target.NONE) {
+                aplicarModulacionLFO(samples);
+            } else {
+                clear();
+            }
         }
 
-        return muestraMezclada;
-    }
+        double volumeGain() {
+            return (lfoActivado && lfo.getTarget() == LFO.Target.OSC_VOLUME) ? volumeGain : 1.0;
+        }
 
-    private void aplicarModulacionLFO(int samples) {
-        // Obtenemos un valor entre -Amount y +Amount
-        double modValue = lfo.getModulationValue(samples);
-
-        switch (lfo.getTarget()) {
-            case FILTER_CUTOFF:
-                // Modulamos sobre la base establecida por el slider
-                double modulatedCutoff = baseFilterCutoff + (modValue * LFO_CUTOFF_RANGE);
-                modulatedCutoff = Math.max(20, Math.min(20000, modulatedCutoff));
-                filtro.setFrecuenciaCorte(modulatedCutoff);
-                break;
-
-            case FILTER_RESONANCE:
-                // Modulamos sobre la base establecida por el slider
-                double modulatedResonance = baseFilterResonance + (modValue * LFO_RESONANCE_RANGE);
-                modulatedResonance = Math.max(0.1, Math.min(1.0, modulatedResonance));
-                filtro.setResonancia(modulatedResonance);
-                break;
-
-            case OSC_VOLUME:
-                // Efecto Tremolo: oscila el volumen alrededor de 1.0
-                // (1.0 - rango) a 1.0
-                // Hacemos que sea unipolar (0 a 1) o bipolar dependiendo del gusto.
-                // Aquí simplemente restamos ganancia según el LFO.
-                double volMod = (modValue * LFO_VOLUME_RANGE);
-                // Aseguramos que el volumen esté entre 0.0 y 1.0
-                lfoVolumeGain = Math.max(0.0, Math.min(1.0, 1.0 - Math.abs(volMod)));
-                break;
-
-            case PITCH:
-                // 1. Calculamos cuántos semitonos nos movemos (ej: +3.5 semitonos)
-                double pitchModSemitones = modValue * LFO_PITCH_RANGE;
-
-                // 2. Fórmula musical: Multiplicador de frecuencia = 2^(semitonos / 12)
-                double pitchMultiplier = Math.pow(2.0, pitchModSemitones / 12.0);
-
-                // 3. Calculamos la nueva frecuencia sobre la BASE, no sobre la anterior
-                double modulatedFreq = currentBaseFrequency * pitchMultiplier;
-
-                // 4. Se la mandamos a los osciladores
-                for (Oscilator osc : oscillators) {
-                    osc.setKeyFrequency(modulatedFreq);
-                }
-                break;
+        void clear() {
+            volumeGain = 1.0;
+            pitchMultiplier = 1.0;
+        }
 
-            case NONE:
-                break;
+        private void aplicarModulacionLFO(int samples) {
+            // Obtenemos un valor entre -Amount y +Amount
+            double modValue = lfo.getModulationValue(samples);
+
+            switch (lfo.getTarget()) {
+                case FILTER_CUTOFF:
+                    // Modulamos sobre la base establecida por el slider
+                    double modulatedCutoff = baseFilterCutoff + (modValue * LFO_CUTOFF_RANGE);
+                    modulatedCutoff = Math.max(20, Math.min(20000, modulatedCutoff));
+                    filter.setFrecuenciaCorte(modulatedCutoff);
+                    break;
+
+                case FILTER_RESONANCE:
+                    // Modulamos sobre la base establecida por el slider
+                    double modulatedResonance = baseFilterResonance + (modValue * LFO_RESONANCE_RANGE);
+                    modulatedResonance = Math.max(0.1, Math.min(1.0, modulatedResonance));
+                    filter.setResonancia(modulatedResonance);
+                    break;
+
+                case OSC_VOLUME:
+                    // Efecto Tremolo: oscila el volumen alrededor de 1.0
+                    // (1.0 - rango) a 1.0
+                    // Hacemos que sea unipolar (0 a 1) o bipolar dependiendo del gusto.
+                    // Aquí simplemente restamos ganancia según el LFO.
+                    double volMod = (modValue * LFO_VOLUME_RANGE);
+                    // Aseguramos que el volumen esté entre 0.0 y 1.0
+                    volumeGain = Math.max(0.0, Math.min(1.0, 1.0 - Math.abs(volMod)));
+                    break;
+
+                case PITCH:
+                    // 1. Calculamos cuántos semitonos nos movemos (ej: +3.5 semitonos)
+                    double pitchModSemitones = modValue * LFO_PITCH_RANGE;
+
+                    // 2. Fórmula musical: Multiplicador de frecuencia = 2^(semitonos / 12)
+                    double pitchMultiplier = Math.pow(2.0, pitchModSemitones / 12.0);
+
+                    // 3. Cada voz lo aplica sobre SU frecuencia base, no sobre la anterior
+                    this.pitchMultiplier = pitchMultiplier;
+                    break;
+
+                case NONE:
+                    break;
+            }
         }
     }
 
     /**
-     * Genera un bloque de audio para guardar (WAV)
+     * Genera un bloque de audio para guardar (WAV): una nota con la última frecuencia tocada,
+     * en una voz propia para no cortar lo que esté sonando.
      */
     public short[] generateSample(int numSamples) {
-        for (Oscilator osc : oscillators) {
-            osc.resetPhase();
-        }
-        // Reseteamos filtro y LFO para que la grabación empiece limpia
-        filtro.reset();
-        lfo.reset();
-
-        short[] s = new short[numSamples];
-        for (int i = 0; i < numSamples; i++) {
-            double d = nextSample();
-            s[i] = (short) (Short.MAX_VALUE * d);
+        synchronized (offlineLock) {
+            // LFO y filtro propios, copiados de la UI: la grabación empieza limpia (LFO desde el principio,
+            // voz con fases y filtro a cero) y el LFO del directo sigue por donde iba
+            LFO offlineLfo = new LFO();
+            offlineLfo.copySettingsFrom(lfo);
+            Filter offlineFilter = new Filter();
+            offlineFilter.copySettingsFrom(filtro);
+            Modulation modulation = new Modulation(offlineLfo, offlineFilter);
+            float[] offlineVoiceBuffer = new float[CONTROL_RATE_SAMPLES];
+            float[] offlineEnvelopeBuffer = new float[CONTROL_RATE_SAMPLES];
+
+            offlineVoice.kill();
+            offlineVoice.noteOn('\0', currentBaseFrequency, 0, adsr);
+
+            short[] s = new short[numSamples];
+            float[] chunkBuffer = new float[CONTROL_RATE_SAMPLES];
+            for (int done = 0; done < numSamples; done += CONTROL_RATE_SAMPLES) {
+                int chunk = Math.min(CONTROL_RATE_SAMPLES, numSamples - done);
+                modulation.update(CONTROL_RATE_SAMPLES);
+                offlineVoice.updateControl(oscillators, modulation.pitchMultiplier, offlineFilter);
+                Arrays.fill(chunkBuffer, 0f);
+                offlineVoice.render(oscillators, chunkBuffer, 0, chunk, modulation.volumeGain(), filtroActivado,
+                        offlineVoiceBuffer, offlineEnvelopeBuffer);
+                for (int i = 0; i < chunk; i++) {
+                    s[done + i] = (short) (Short.MAX_VALUE * chunkBuffer[i]);
+                }
+            }
+            offlineVoice.kill();
+            return s;
         }
-        return s;
     }
 
     // --- MANEJO DE TECLADO ---
 
     public void onKeyPressed(char keyChar) {
-        if (!KEY_FREQUENCIES.containsKey(keyChar)) {
+        Double frequency = KEY_FREQUENCIES.get(keyChar);
+        if (frequency == null) {
             return;
         }
         // Guardamos la nota original pulsada
-        currentBaseFrequency = KEY_FREQUENCIES.get(keyChar);
-        setFrequency(currentBaseFrequency);
-
-        noteIsPressed = true;
-        adsr.noteOn(); // (Asumiendo que ya pusiste el código del ADSR)
+        currentBaseFrequency = frequency;
+        if (!sendNote(NoteQueue.NOTE_ON, keyChar, frequency)) return;
 
-        if (hiloAudio.isInitialized() && !hiloAudio.isRunning()) {
+        // Siempre, aunque parezca que ya está sonando: si el hilo de audio está a punto de parar (no tenía
+        // voces cuando miró), la petición nueva hace que siga y llegue a aplicar esta nota
+        if (hiloAudio.isInitialized()) {
             hiloAudio.triggerPlayBack();
         }
     }
 
-    public void onKeyReleased() {
-        noteIsPressed = false;
-        adsr.noteOff(); // Iniciamos el Release (el audio sigue sonando hasta que se apague)
+    public void onKeyReleased(char keyChar) {
+        sendNote(NoteQueue.NOTE_OFF, keyChar, 0);
+    }
+
+    // Encola la nota para el hilo de audio (false si la cola está llena y se ha descartado)
+    private boolean sendNote(int type, char key, double frequency) {
+        synchronized (noteLock) {
+            NoteQueue.Event event = notes.claim();
+            if (event == null) {
+                System.err.println("Sintetizador: cola de notas llena, se descarta una nota");
+                return false;
+            }
+            event.type = type;
+            event.key = key;
+            event.frequency = frequency;
+            notes.publish();
+        }
+        return true;
+    }
+
+    // Solo desde el hilo de audio: aplica las notas que han llegado desde el último bloque
+    private void applyNotes() {
+        NoteQueue.Event event;
+        while ((event = notes.peek()) != null) {
+            if (event.type == NoteQueue.NOTE_ON) {
+                noteOn(event.key, event.frequency);
+            } else {
+                noteOff(event.key);
+            }
+            notes.consumed();
+        }
     }
 
+    private void noteOn(char keyChar, double frequency) {
+        // Autorepetición del teclado: si la tecla ya está sonando no hacemos nada
+        for (SynthVoice voice : voices) {
+            if (voice.active && voice.key == keyChar && !voice.isReleased()) {
+                return;
+            }
+        }
+
+        SynthVoice voice = findFreeVoice();
+        if (voice == null) {
+            voice = findVoiceToSteal(maxVoices);
+        }
+        if (voice == null) {
+            // Todas se están apagando por el presupuesto de CPU: la nota no entra
+            return;
+        }
+        voice.noteOn(keyChar, frequency, ++noteCounter, adsr);
+        voice.updateControl(oscillators, live.pitchMultiplier, filtro);
+    }
+
+    private void noteOff(char keyChar) {
+        // Iniciamos el Release de esa nota (sigue sonando hasta que se apague)
+        for (SynthVoice voice : voices) {
+            if (voice.active && voice.key == keyChar) {
+                voice.noteOff();
+            }
+        }
+    }
+
+    // --- POLIFONÍA ---
+    public void setMaxVoices(int maxVoices) {
+        this.maxVoices = Math.max(1, Math.min(MAX_POLYPHONY, maxVoices));
+    }
+    public int getMaxVoices() { return maxVoices; }
+
+    // Fracción (0..1] del tiempo real de cada bloque que puede gastar el sintetizador
+    public void setCpuBudget(double cpuBudget) {
+        this.cpuBudget = Math.max(0.05, Math.min(1.0, cpuBudget));
+    }
+    public double getCpuBudget() { return cpuBudget; }
+
+    // Voces cortadas por pasarse del presupuesto de CPU
+    public long getShedVoiceCount() { return shedVoices; }
+
     // Y un getter para la UI:
     public ADSR getAdsr() { return adsr; }
 
@@ -268,9 +468,7 @@ public class Sintetizador {
             // Restaurar valores base al apagar LFO
             filtro.setFrecuenciaCorte(baseFilterCutoff);
             filtro.setResonancia(baseFilterResonance);
-            lfoVolumeGain = 1.0;
-
-            setFrequency(currentBaseFrequency);
+            live.clear();
         }
     }
 
@@ -290,9 +488,7 @@ public class Sintetizador {
         if (lfoActivado) {
             filtro.setFrecuenciaCorte(baseFilterCutoff);
             filtro.setResonancia(baseFilterResonance);
-            lfoVolumeGain = 1.0;
-
-            setFrequency(currentBaseFrequency);
+            live.clear();
         }
         lfo.setTarget(target);
     }
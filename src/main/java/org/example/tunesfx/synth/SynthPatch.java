@@ -0,0 +1,93 @@
+package org.example.tunesfx.synth;
+
+/**
+ * Todos los ajustes del sintetizador (osciladores, ADSR, filtro, LFO, voces) sin nada de UI.
+ * Lo rellena SintetizadorController desde sus controles y lo aplica al revés al abrir un proyecto.
+ */
+public class SynthPatch {
+    public static final int NUM_OSCILLATORS = 5;
+
+    /**
+     * Ajustes de un oscilador.
+     */
+    public static class OscillatorPatch {
+        private WaveTable waveTable = WaveTable.Sine;
+        private int toneOffset = 0;
+        private int volume = 100;
+        private int unisonVoices = 1;
+        private double detune = 0.0;
+        private boolean muted = false;
+
+        public WaveTable getWaveTable() { return waveTable; }
+        public void setWaveTable(WaveTable waveTable) { this.waveTable = waveTable; }
+        public int getToneOffset() { return toneOffset; }
+        public void setToneOffset(int toneOffset) { this.toneOffset = toneOffset; }
+        public int getVolume() { return volume; }
+        public void setVolume(int volume) { this.volume = volume; }
+        public int getUnisonVoices() { return unisonVoices; }
+        public void setUnisonVoices(int unisonVoices) { this.unisonVoices = unisonVoices; }
+        public double getDetune() { return detune; }
+        public void setDetune(double detune) { this.detune = detune; }
+        public boolean isMuted() { return muted; }
+        public void setMuted(boolean muted) { this.muted = muted; }
+    }
+
+    private final OscillatorPatch[] oscillators = new OscillatorPatch[NUM_OSCILLATORS];
+
+    // ADSR (ms y nivel de sustain 0..1)
+    private double attack = 10;
+    private double decay = 100;
+    private double sustain = 0.7;
+    private double release = 200;
+
+    private Filter.Tipo filterType = Filter.Tipo.OFF;
+    private double filterCutoff = 1000;
+    private double filterResonance = 0.5;
+
+    // Target NONE = LFO apagado
+    private LFO.Waveform lfoWaveform = LFO.Waveform.SINE;
+    private LFO.Target lfoTarget = LFO.Target.NONE;
+    private double lfoRate = 1.0;
+    private double lfoAmount = 0.5;
+
+    private int polyphony = Sintetizador.DEFAULT_POLYPHONY;
+    private double sampleLengthSeconds = 1.0;
+
+    public SynthPatch() {
+        for (int i = 0; i < NUM_OSCILLATORS; i++) {
+            oscillators[i] = new OscillatorPatch();
+        }
+    }
+
+    public OscillatorPatch getOscillator(int index) { return oscillators[index]; }
+
+    public double getAttack() { return attack; }
+    public void setAttack(double attack) { this.attack = attack; }
+    public double getDecay() { return decay; }
+    public void setDecay(double decay) { this.decay = decay; }
+    public double getSustain() { return sustain; }
+    public void setSustain(double sustain) { this.sustain = sustain; }
+    public double getRelease() { return release; }
+    public void setRelease(double release) { this.release = release; }
+
+    public Filter.Tipo getFilterType() { return filterType; }
+    public void setFilterType(Filter.Tipo filterType) { this.filterType = filterType; }
+    public double getFilterCutoff() { return filterCutoff; }
+    public void setFilterCutoff(double filterCutoff) { this.filterCutoff = filterCutoff; }
+    public double getFilterResonance() { return filterResonance; }
+    public void setFilterResonance(double filterResonance) { this.filterResonance = filterResonance; }
+
+    public LFO.Waveform getLfoWaveform() { return lfoWaveform; }
+    public void setLfoWaveform(LFO.Waveform lfoWaveform) { this.lfoWaveform = lfoWaveform; }
+    public LFO.Target getLfoTarget() { return lfoTarget; }
+    public void setLfoTarget(LFO.Target lfoTarget) { this.lfoTarget = lfoTarget; }
+    public double getLfoRate() { return lfoRate; }
+    public void setLfoRate(double lfoRate) { this.lfoRate = lfoRate; }
+    public double getLfoAmount() { return lfoAmount; }
+    public void setLfoAmount(double lfoAmount) { this.lfoAmount = lfoAmount; }
+
+    public int getPolyphony() { return polyphony; }
+    public void setPolyphony(int polyphony) { this.polyphony = polyphony; }
+    public double getSampleLengthSeconds() { return sampleLengthSeconds; }
+    public void setSampleLengthSeconds(double sampleLengthSeconds) { this.sampleLengthSeconds = sampleLengthSeconds; }
+}
@@ -0,0 +1,150 @@
+package org.example.tunesfx.synth;
+
+import java.util.Arrays;
+
+/**
+ * Una voz del sintetizador polifónico: una nota con sus propias fases de oscilador
+ * (también las del unison), su ADSR y el estado de su filtro.
+ * Los parámetros (forma de onda, detune, volumen, tiempos del ADSR, corte del filtro...)
+ * se leen de los Oscilator y de las plantillas de la UI; la voz solo guarda estado.
+ * Se crean todas al principio en Sintetizador y se reciclan, así que no se reserva memoria al tocar.
+ */
+class SynthVoice {
+
+    // Fundido corto al cortar una voz a la fuerza (como el stop de SampleVoice): sin clic
+    static final int STOP_FADE_SAMPLES = 64;
+
+    // Paso de tabla por Hz: WaveTable.SIZE / SAMPLE_RATE
+    private static final double TABLE_STEP_PER_HZ = (double) WaveTable.SIZE / Sintetizador.AudioInfo.SAMPLE_RATE;
+
+    final ADSR adsr = new ADSR();
+    final Filter filter = new Filter();
+
+    // [oscilador][voz del unison]
+    private final double[][] phases;
+    private final double[][] steps;
+
+    boolean active = false;
+    char key;
+    double frequency;
+    // Orden de disparo (para robar la voz más antigua)
+    long startOrder;
+    // Muestras que le quedan al fundido de salida forzado (-1 = no se está cortando)
+    private int stopFade = -1;
+
+    SynthVoice(int numOscillators) {
+        phases = new double[numOscillators][Oscilator.MAX_UNISON_VOICES];
+        steps = new double[numOscillators][Oscilator.MAX_UNISON_VOICES];
+    }
+
+    /**
+     * Empieza una nota. Si la voz estaba sonando (robada) se mantienen las fases y el nivel
+     * del ADSR, que vuelve a atacar desde donde estaba: así no hay clic al robarla.
+     */
+    void noteOn(char key, double frequency, long startOrder, ADSR envelopeTemplate) {
+        if (!active) {
+            for (double[] oscPhases : phases) {
+                Arrays.fill(oscPhases, 0.0);
+            }
+            filter.reset();
+            adsr.reset();
+        }
+        this.key = key;
+        this.frequency = frequency;
+        this.startOrder = startOrder;
+        stopFade = -1;
+        adsr.copySettingsFrom(envelopeTemplate);
+        adsr.noteOn();
+        active = true;
+    }
+
+    void noteOff() {
+        if (active && !adsr.isReleasing()) {
+            adsr.noteOff();
+        }
+    }
+
+    // Ya se ha soltado la tecla (está en el release)
+    boolean isReleased() {
+        return adsr.isReleasing();
+    }
+
+    // Se apaga con un fundido de STOP_FADE_SAMPLES muestras, pase lo que pase con su envolvente
+    void fadeOut() {
+        if (active && stopFade < 0) stopFade = STOP_FADE_SAMPLES;
+    }
+
+    // Ya tiene un fundido forzado en marcha
+    boolean isFading() {
+        return stopFade >= 0;
+    }
+
+    void kill() {
+        active = false;
+        stopFade = -1;
+        adsr.reset();
+    }
+
+    /**
+     * Recalcula a control rate los pasos de tabla (afinación, unison, LFO de pitch) y el filtro.
+     */
+    void updateControl(Oscilator[] oscillators, double pitchMultiplier, Filter filterTemplate) {
+        double baseStep = frequency * pitchMultiplier * TABLE_STEP_PER_HZ;
+        for (int o = 0; o < oscillators.length; o++) {
+            Oscilator osc = oscillators[o];
+            double oscStep = baseStep * osc.getToneMultiplier();
+            int unison = osc.getUnisonVoices();
+            double[] oscSteps = steps[o];
+            for (int u = 0; u < unison; u++) {
+                oscSteps[u] = oscStep * osc.getUnisonRatio(u);
+            }
+        }
+        filter.copySettingsFrom(filterTemplate);
+    }
+
+    /**
+     * Suma frames muestras de esta voz a mix[offset..] (mezcla de osciladores * ADSR, y filtro si está activo).
+     * Todo va por bloques: osciladores, envolvente y filtro recorren el bloque entero cada uno.
+     * @param voiceBuffer y envelopeBuffer: buffers de trabajo de al menos frames muestras
+     */
+    void render(Oscilator[] oscillators, float[] mix, int offset, int frames, double volumeGain, boolean filterOn,
+                float[] voiceBuffer, float[] envelopeBuffer) {
+        Arrays.fill(voiceBuffer, 0, frames, 0f);
+        int activeOscs = 0;
+        for (int o = 0; o < oscillators.length; o++) {
+            if (oscillators[o].process(phases[o], steps[o], voiceBuffer, 0, frames)) {
+                activeOscs++;
+            }
+        }
+
+        adsr.process(envelopeBuffer, 0, frames);
+        final float gain = activeOscs > 0 ? (float) (volumeGain / activeOscs) : 0f;
+        for (int i = 0; i < frames; i++) {
+            voiceBuffer[i] *= envelopeBuffer[i] * gain;
+        }
+        if (filterOn) {
+            filter.process(voiceBuffer, 0, frames);
+        }
+        boolean faded = false;
+        if (stopFade >= 0) {
+            // Fundido lineal hasta cero; lo que quede del trozo ya es silencio
+            for (int i = 0; i < frames; i++) {
+                if (stopFade > 0) {
+                    voiceBuffer[i] *= (float) stopFade / STOP_FADE_SAMPLES;
+                    stopFade--;
+                } else {
+                    voiceBuffer[i] = 0f;
+                    faded = true;
+                }
+            }
+        }
+        for (int i = 0; i < frames; i++) {
+            mix[offset + i] += voiceBuffer[i];
+        }
+        if (faded) {
+            kill();
+        } else if (adsr.isIdle()) {
+            active = false;
+        }
+    }
+}
@@ -5,7 +5,19 @@ public enum WaveTable {
     Sine, Square, Saw, Triangle, Pulse25, Organ, Noise;
 
     public static final int SIZE = 8192;
+
+    // --- MIPMAPS BAND-LIMITED ---
+    // Nivel k: solo armónicos hasta SIZE / 2^(k+1). Con un paso de tabla <= 2^k el armónico más alto
+    // queda por debajo de Nyquist, así que las notas agudas no generan aliasing (sin sobremuestrear).
+    public static final int MIP_LEVELS = 13; // el último nivel es solo la fundamental
+    // Muestras por armónico de cada nivel: los niveles altos tienen pocos armónicos y usan tablas
+    // más pequeñas (caben en caché), pero con margen suficiente para que la interpolación lineal sea limpia
+    private static final int OVERSAMPLING = 8;
+    private static final int MIN_LEVEL_SIZE = 64;
+
     private final float[] samples = new float[SIZE];
+    // Cada nivel tiene levelSize(k) + 1 muestras: la última repite la primera para interpolar sin comprobar el wrap
+    private final float[][] mipLevels = new float[MIP_LEVELS][];
 
     static {
         final double FUND_FREQ = 1d / (SIZE / (double) Sintetizador.AudioInfo.SAMPLE_RATE);
@@ -29,9 +41,105 @@ public enum WaveTable {
             // Noise: Ruido aleatorio entre -1.0 y 1.0
             Noise.samples[i] = (float) (Math.random() * 2d - 1d);
         }
+
+        for (WaveTable table : values()) {
+            table.buildMipLevels();
+        }
     }
 
     public float[] getSamples() {
         return samples;
     }
-}
\ No newline at end of file
+
+    /**
+     * Tabla band-limited para un nivel: levelSize(level) + 1 muestras, la última igual a la primera.
+     * Una fase en [0, SIZE) se lee en la posición fase * levelSize(level) / SIZE.
+     */
+    public float[] getMipLevel(int level) {
+        return mipLevels[level];
+    }
+
+    public static int levelSize(int level) {
+        int maxHarmonic = SIZE >> (level + 1);
+        return Math.max(MIN_LEVEL_SIZE, Math.min(SIZE, maxHarmonic * OVERSAMPLING));
+    }
+
+    /**
+     * Nivel de mipmap para un paso de tabla (muestras de tabla que se avanzan por muestra de salida):
+     * el menor k con step <= 2^k.
+     */
+    public static int mipLevelFor(double step) {
+        if (step <= 1.0) return 0;
+        int level = Math.getExponent(step); // floor(log2(step))
+        if (step > Math.scalb(1.0, level)) level++;
+        return Math.min(level, MIP_LEVELS - 1);
+    }
+
+    /**
+     * Genera los niveles con la FFT de la tabla original: se quitan los armónicos de cada nivel
+     * y se vuelve al dominio del tiempo. Solo se hace una vez, al cargar la clase.
+     */
+    private void buildMipLevels() {
+        double[] spectrumRe = new double[SIZE];
+        double[] spectrumIm = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) spectrumRe[i] = samples[i];
+        fft(spectrumRe, spectrumIm, false);
+
+        for (int level = 0; level < MIP_LEVELS; level++) {
+            int maxHarmonic = SIZE >> (level + 1);
+            int size = levelSize(level);
+            double[] re = new double[size];
+            double[] im = new double[size];
+            // Copiamos los armónicos que caben en el nivel (escalados al nuevo tamaño de tabla)
+            double scale = (double) size / SIZE;
+            for (int bin = 0; bin < size; bin++) {
+                // Los bins k y size - k son el mismo armónico (señal real)
+                int harmonic = Math.min(bin, size - bin);
+                if (harmonic > maxHarmonic) continue;
+                int sourceBin = (bin <= size / 2) ? harmonic : SIZE - harmonic;
+                re[bin] = spectrumRe[sourceBin] * scale;
+                im[bin] = spectrumIm[sourceBin] * scale;
+            }
+            fft(re, im, true);
+
+            float[] table = new float[size + 1];
+            for (int i = 0; i < size; i++) table[i] = (float) re[i];
+            table[size] = table[0];
+            mipLevels[level] = table;
+        }
+    }
+
+    // FFT radix-2 in situ (SIZE es potencia de 2). inverse = true incluye la división por n
+    private static void fft(double[] re, double[] im, boolean inverse) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                double tr = re[i]; re[i] = re[j]; re[j] = tr;
+                double ti = im[i]; im[i] = im[j]; im[j] = ti;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            double angle = 2 * Math.PI / len * (inverse ? 1 : -1);
+            double wRe = Math.cos(angle), wIm = Math.sin(angle);
+            for (int i = 0; i < n; i += len) {
+                double curRe = 1.0, curIm = 0.0;
+                for (int k = 0; k < len / 2; k++) {
+                    int a = i + k, b = i + k + len / 2;
+                    double vRe = re[b] * curRe - im[b] * curIm;
+                    double vIm = re[b] * curIm + im[b] * curRe;
+                    re[b] = re[a] - vRe; im[b] = im[a] - vIm;
+                    re[a] += vRe; im[a] += vIm;
+                    double nextRe = curRe * wRe - curIm * wIm;
+                    curIm = curRe * wIm + curIm * wRe;
+                    curRe = nextRe;
+                }
+            }
+        }
+        if (inverse) {
+            for (int i = 0; i < n; i++) { re[i] /= n; im[i] /= n; }
+        }
+    }
+}
@@ -1,22 +1,124 @@
 package org.example.tunesfx.utils;
 
-import org.example.tunesfx.controller.ChannelRackController;
-import org.example.tunesfx.controller.ChannelRackRowController;
+import org.example.tunesfx.audio.PatternModel;
 import org.example.tunesfx.audio.PlaylistItem;
 import org.example.tunesfx.audio.Sample;
+import org.example.tunesfx.audio.SampleCache;
+import org.example.tunesfx.audio.SequencerTrack;
+import org.example.tunesfx.audio.SongCompiler;
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.audio.SongTimeline;
 import org.example.tunesfx.audio.StepData;
 
-import javax.sound.sampled.*;
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 public class AudioExporter {
 
     private static final float SAMPLE_RATE = 44100.0f;
     private static final int CHANNELS = 2;
 
-    public static void exportSong(File outputFile, List<PlaylistItem> playlist, double bpm, ChannelRackController rackController) throws Exception {
+    // --- RENDER EN PARALELO ---
+    // La canción se parte en trozos de tiempo que se renderizan en un ForkJoinPool. Cada trozo escribe solo
+    // en su rango del buffer y suma los golpes en el mismo orden que el render en serie, así que el
+    // resultado es idéntico bit a bit (las sumas de float de cada muestra se hacen en el mismo orden).
+    private static final int SLICE_FRAMES = 16384;
+    // Trozos por tarea hoja (menos tareas = menos overhead, pero hay que dejar trabajo para repartir)
+    private static final int SLICES_PER_TASK = 1;
+
+    // --- EXPORTACIÓN EN STREAMING ---
+    // No se guarda la canción entera: se renderiza una ventana de trozos, se escribe al WAV y se reutiliza
+    // el buffer. La memoria no depende de lo larga que sea la canción (~4 MB de ventana + 2 MB de PCM).
+    private static final int WINDOW_SLICES = 32;
+    private static final int WINDOW_LENGTH = WINDOW_SLICES * SLICE_FRAMES * CHANNELS;
+
+    /**
+     * Un paso activo de la playlist ya resuelto: dónde empieza, qué audio suena y hasta dónde puede escribir.
+     * Se calculan todos antes de renderizar (en el hilo que exporta, que es el que toca los controladores).
+     * Las posiciones son índices absolutos en la canción (intercalado L/R), en long para pasar de 2 GB.
+     */
+    private static final class Hit {
+        final int order;                // orden en el render en serie (el de las sumas)
+        final long startIndex;
+        final long endIndex;            // cota superior (exclusiva) de lo que puede llegar a escribir
+        final float[] source;
+        final float speed;
+        final long blockEndFrameIndex;
+
+        // Parámetros del diseño de sonido, calculados una vez
+        final float volume;
+        final float leftPanGain;
+        final float rightPanGain;
+        final int targetSamples;
+        final int attackSamples;
+        final int releaseSamples;
+
+        // Estado que se arrastra entre ventanas: por dónde va la voz al principio de la ventana actual
+        long cursor;
+        double readIndex = 0;
+        boolean finished = false;
+
+        Hit(int order, long startIndex, long endIndex, float[] source, float speed, StepData stepData, long blockEndFrameIndex) {
+            this.order = order;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.source = source;
+            this.speed = speed;
+            this.blockEndFrameIndex = blockEndFrameIndex;
+            this.cursor = startIndex;
+
+            // 1. Extraer los parámetros de tu diseño de sonido
+            volume = (float) stepData.getVolume();
+            float pan = (float) stepData.getPan();
+            double attack = stepData.getAttack();   // De 0.0 a 0.5
+            double release = stepData.getRelease(); // De 0.0 a 0.5
+            double durationFactor = stepData.getDurationFactor(); // De 0.1 a 1.0
+
+            // 2. Lógica de Panning (Estéreo)
+            // -1.0 es Izquierda 100%, 0.0 es Centro, 1.0 es Derecha 100%
+            leftPanGain = pan <= 0 ? 1.0f : 1.0f - pan;
+            rightPanGain = pan >= 0 ? 1.0f : 1.0f + pan;
+
+            // 3. Lógica de Duración y Envolvente (Attack/Release)
+            // Acortamos el sample en base a la duración elegida
+            targetSamples = (int) (source.length * durationFactor);
+            // Cuántos "píxeles" de audio tardará en hacer los fundidos
+            attackSamples = (int) (targetSamples * attack);
+            releaseSamples = (int) (targetSamples * release);
+        }
+    }
+
+    public static void exportSong(File outputFile, List<PlaylistItem> playlist, double bpm,
+                                  Function<String, ? extends SequencerTrack> patterns) throws Exception {
+        exportSong(outputFile, playlist, bpm, patterns, progress -> {}, () -> false);
+    }
+
+    // Para el render headless: el proyecto ya trae las filas sin UI
+    public static void exportProject(File outputFile, SongProject project, DoubleConsumer progress, BooleanSupplier cancelled) throws Exception {
+        exportSong(outputFile, project.getPlaylist(), project.getBpm(), project::findTrack, progress, cancelled);
+    }
+
+    /**
+     * Exporta la canción a WAV.
+     * @param patterns busca la fila del rack de cada bloque de la playlist por su nombre (null si no existe);
+     *                 no hace falta que sea un controlador de JavaFX
+     * @param progress recibe el progreso (0..1); se llama desde los hilos del render
+     * @param cancelled se consulta a menudo; si devuelve true se lanza CancellationException y se borra el archivo a medias
+     */
+    public static void exportSong(File outputFile, List<PlaylistItem> playlist, double bpm, Function<String, ? extends SequencerTrack> patterns,
+                                  DoubleConsumer progress, BooleanSupplier cancelled) throws Exception {
 
         // --- CALIBRACIÓN DE TIEMPO ---
         // 1. Duración de un solo tiempo (una negra)
@@ -25,9 +127,6 @@ public class AudioExporter {
         // 2. La rejilla representa compases enteros (4 negras)
         double secondsPerBar = secondsPerBeat * 4.0;
 
-        // 3. Duración de un paso (Step) del Channel Rack (1 paso = 0.25 beats)
-        double secondsPerStep = secondsPerBeat / 4.0;
-
         // --- CÁLCULO DE DURACIÓN TOTAL ---
         int maxColumn = 0;
         for (PlaylistItem item : playlist) {
@@ -35,96 +134,226 @@ public class AudioExporter {
         }
         // Añadimos un margen de 2 compases (para que las colas de sonido no se corten abruptamente)
         double totalSeconds = (maxColumn + 2) * secondsPerBar;
-        int totalFrames = (int) (totalSeconds * SAMPLE_RATE);
-        float[] mixBuffer = new float[totalFrames * CHANNELS];
-
-        // --- PROCESAR PLAYLIST ---
-        for (PlaylistItem item : playlist) {
-            ChannelRackRowController row = rackController.findRowController(item.getPatternName());
-
-            if (row != null && row.getSample() != null) {
-                float[] sourceAudio = convertSampleToFloat(row.getSample());
+        long totalFrames = (long) (totalSeconds * SAMPLE_RATE);
+        long mixLength = totalFrames * CHANNELS;
+
+        // Cada sample se convierte a float una sola vez aunque aparezca en muchos bloques
+        SampleCache cache = SampleCache.getInstance();
+        Map<Sample, float[]> acquired = new IdentityHashMap<>();
+
+        boolean writing = false;
+        boolean completed = false;
+        try {
+            // --- PROCESAR PLAYLIST ---
+            // La canción compilada ya trae los pasos ordenados en el tiempo; cada golpe guarda su orden
+            // en el render en serie (el de la playlist) para sumar siempre igual. Luego se renderizan en paralelo
+            SongTimeline timeline = SongCompiler.compileOnce(playlist, patterns, bpm);
+            List<Hit> hits = new ArrayList<>();
+            for (int e = 0; e < timeline.size(); e++) {
+                if ((e & 1023) == 0 && cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+                if (timeline.isClipEnd(e)) continue;
+                Sample sample = timeline.getTrack(e).getSample();
+                if (sample == null) continue;
+                float[] sourceAudio = acquired.computeIfAbsent(sample, cache::acquire);
                 if (sourceAudio == null) continue;
 
-                double blockStartTime = (item.getStartBar() - 1) * secondsPerBar;
-
-                // Calculamos cuándo termina visualmente este bloque
-                double blockEndTime = blockStartTime + (item.getDurationBars() * secondsPerBar);
-                // Convertimos ese tiempo de fin a índices del array (multiplicado por 2 por el Estéreo)
-                int blockEndFrameIndex = (int) (blockEndTime * SAMPLE_RATE) * CHANNELS;
-
-                int stepsInRow = row.getStepCount();
+                PatternModel.Snapshot pattern = timeline.getPattern(e);
+                int step = timeline.getStep(e);
+                StepData stepData = pattern.getStep(step);
+                float pitchFactor = pattern.getPitchMultiplier(step);
+                // Convertimos los frames a índices del array (multiplicado por 2 por el Estéreo)
+                long bufferIndex = timeline.getFrame(e) * CHANNELS;
+                long blockEndFrameIndex = timeline.getClipEndFrame(e) * CHANNELS;
+
+                long endIndex = estimateEndIndex(bufferIndex, sourceAudio, pitchFactor, stepData,
+                        blockEndFrameIndex, mixLength);
+                if (endIndex > bufferIndex) {
+                    hits.add(new Hit(timeline.getOrder(e), bufferIndex, endIndex, sourceAudio, pitchFactor, stepData, blockEndFrameIndex));
+                }
+            }
 
-                for (int i = 0; i < stepsInRow; i++) {
-                    StepData stepData = row.getCombinedStepData(i);
+            writing = true;
+            try (WavStreamWriter writer = new WavStreamWriter(outputFile, (int) SAMPLE_RATE, CHANNELS, WINDOW_LENGTH)) {
+                renderStreaming(writer, hits, mixLength, progress, cancelled);
+            }
+            completed = true;
+        } finally {
+            for (Sample sample : acquired.keySet()) cache.release(sample);
+            // Si se cancela o falla a medias no dejamos un WAV cortado
+            if (writing && !completed && outputFile.exists() && !outputFile.delete()) {
+                System.err.println("No se pudo borrar la exportación incompleta: " + outputFile);
+            }
+        }
+        progress.accept(1.0);
+    }
 
-                    if (stepData != null && stepData.isActive()) {
-                        double stepDelay = i * secondsPerStep;
-                        double absTime = blockStartTime + stepDelay;
+    // Cota de hasta dónde puede escribir un golpe (no hace falta que sea exacta, solo que no se quede corta)
+    private static long estimateEndIndex(long startIndex, float[] source, float speed, StepData stepData,
+                                         long blockEndFrameIndex, long mixLength) {
+        int targetSamples = (int) (source.length * stepData.getDurationFactor());
+        double readable = Math.min(targetSamples, source.length - 1);
+        long frames = (long) Math.ceil(readable / speed) + 1;
+        long end = startIndex + frames * CHANNELS;
+        return Math.min(end, Math.min(blockEndFrameIndex, mixLength));
+    }
 
-                        // Si este paso empieza DESPUÉS de que el bloque haya terminado, lo ignoramos por completo.
-                        if (absTime >= blockEndTime) {
-                            continue;
+    /**
+     * Renderiza la canción ventana a ventana y la va escribiendo. En cada ventana:
+     * 1. Cada golpe activo (en paralelo) avanza su estado por la ventana y apunta por dónde va al principio de cada trozo.
+     * 2. Los trozos (en paralelo) mezclan los golpes desde ese estado, en el orden del render en serie.
+     * El estado al final de la ventana se arrastra a la siguiente.
+     */
+    private static void renderStreaming(WavStreamWriter writer, List<Hit> hits, long mixLength,
+                                        DoubleConsumer progress, BooleanSupplier cancelled) throws Exception {
+        // Golpes por orden de inicio para ir metiéndolos en la ventana que toque
+        Hit[] byStart = hits.toArray(new Hit[0]);
+        Arrays.sort(byStart, Comparator.comparingLong(hit -> hit.startIndex));
+        int nextHit = 0;
+
+        // Golpes que tocan la ventana actual, en el orden del render en serie
+        List<Hit> active = new ArrayList<>();
+        float[] window = new float[WINDOW_LENGTH];
+        SliceStates states = new SliceStates();
+        int sliceLength = SLICE_FRAMES * CHANNELS;
+
+        for (long windowStart = 0; windowStart < mixLength; windowStart += WINDOW_LENGTH) {
+            if (cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+            long windowEnd = Math.min(windowStart + WINDOW_LENGTH, mixLength);
+            int windowLength = (int) (windowEnd - windowStart);
+            int sliceCount = (windowLength + sliceLength - 1) / sliceLength;
+
+            boolean added = false;
+            while (nextHit < byStart.length && byStart[nextHit].startIndex < windowEnd) {
+                active.add(byStart[nextHit++]);
+                added = true;
+            }
+            if (added) active.sort(Comparator.comparingInt(hit -> hit.order));
+            states.ensureCapacity(active.size());
+
+            // 1. Estado de cada golpe al principio de cada trozo (y al final de la ventana)
+            final long start = windowStart;
+            parallelFor(active.size(), 16, a -> {
+                Hit hit = active.get(a);
+                long i = hit.cursor;
+                double readIndex = hit.readIndex;
+                int base = a * STATE_STRIDE;
+                for (int s = 0; s <= sliceCount; s++) {
+                    long boundary = Math.min(start + (long) s * sliceLength, windowEnd);
+                    for (; i < boundary; i += 2) {
+                        if (isFinished(hit, i, readIndex, mixLength)) {
+                            Arrays.fill(states.cursors, base + s, base + sliceCount + 1, FINISHED);
+                            return;
                         }
-
-                        int startFrameIndex = (int) (absTime * SAMPLE_RATE);
-                        int bufferIndex = startFrameIndex * CHANNELS;
-
-                        float pitchFactor = (float) Math.pow(2, stepData.getSemitoneOffset() / 12.0);
-                        float volume = (float) stepData.getVolume();
-
-                        // Le pasamos el límite exacto al mezclador
-                        mixSampleWithResampling(mixBuffer, bufferIndex, sourceAudio, pitchFactor, stepData, blockEndFrameIndex);
+                        readIndex += hit.speed;
                     }
+                    states.cursors[base + s] = i;
+                    states.readIndexes[base + s] = readIndex;
+                }
+            });
+
+            // 2. Mezcla de los trozos
+            Arrays.fill(window, 0, windowLength, 0f);
+            parallelFor(sliceCount, SLICES_PER_TASK, s -> {
+                if (cancelled.getAsBoolean()) return;
+                long sliceEnd = Math.min(start + (long) (s + 1) * sliceLength, windowEnd);
+                for (int a = 0; a < active.size(); a++) {
+                    Hit hit = active.get(a);
+                    long cursor = states.cursors[a * STATE_STRIDE + s];
+                    if (cursor == FINISHED || hit.startIndex >= sliceEnd) continue;
+                    mixSampleWithResampling(window, start, hit, cursor, states.readIndexes[a * STATE_STRIDE + s], sliceEnd, mixLength);
+                }
+            });
+            if (cancelled.getAsBoolean()) throw new CancellationException("Export cancelled");
+
+            // Arrastramos el estado al final de la ventana y quitamos los golpes que ya han acabado
+            for (int a = 0; a < active.size(); a++) {
+                Hit hit = active.get(a);
+                long cursor = states.cursors[a * STATE_STRIDE + sliceCount];
+                if (cursor == FINISHED) {
+                    hit.finished = true;
+                } else {
+                    hit.cursor = cursor;
+                    hit.readIndex = states.readIndexes[a * STATE_STRIDE + sliceCount];
                 }
             }
-        }
+            active.removeIf(hit -> hit.finished || hit.endIndex <= windowEnd);
 
-        saveToFile(outputFile, mixBuffer, totalFrames);
+            writer.write(window, windowLength);
+            progress.accept(0.99 * windowEnd / mixLength);
+        }
     }
 
-    private static void mixSampleWithResampling(float[] mixBuffer, int startIndex, float[] source, float speed, StepData stepData, int blockEndFrameIndex) {
-        // 1. Extraer los parámetros de tu diseño de sonido
-        float volume = (float) stepData.getVolume();
-        float pan = (float) stepData.getPan();
-        double attack = stepData.getAttack();   // De 0.0 a 0.5
-        double release = stepData.getRelease(); // De 0.0 a 0.5
-        double durationFactor = stepData.getDurationFactor(); // De 0.1 a 1.0
+    // Estado de los golpes activos al principio de cada trozo: [golpe activo * STATE_STRIDE + trozo]
+    private static final int STATE_STRIDE = WINDOW_SLICES + 1;
+    private static final long FINISHED = -1;
 
-        // 2. Lógica de Panning (Estéreo)
-        // -1.0 es Izquierda 100%, 0.0 es Centro, 1.0 es Derecha 100%
-        float leftPanGain = pan <= 0 ? 1.0f : 1.0f - pan;
-        float rightPanGain = pan >= 0 ? 1.0f : 1.0f + pan;
+    private static final class SliceStates {
+        long[] cursors = new long[0];
+        double[] readIndexes = new double[0];
 
-        // 3. Lógica de Duración y Envolvente (Attack/Release)
-        int totalSourceSamples = source.length;
-        // Acortamos el sample en base a la duración elegida
-        int targetSamples = (int) (totalSourceSamples * durationFactor);
+        void ensureCapacity(int hits) {
+            int needed = hits * STATE_STRIDE;
+            if (cursors.length < needed) {
+                int size = Math.max(needed, cursors.length * 2);
+                cursors = new long[size];
+                readIndexes = new double[size];
+            }
+        }
+    }
 
-        // Cuántos "píxeles" de audio tardará en hacer los fundidos
-        int attackSamples = (int) (targetSamples * attack);
-        int releaseSamples = (int) (targetSamples * release);
+    // Reparte body(0..count) en el ForkJoinPool, en tareas de como mucho grain índices
+    private static void parallelFor(int count, int grain, IntConsumer body) {
+        if (count == 0) return;
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                run(0, count);
+            }
 
-        double readIndex = 0;
+            private void run(int from, int to) {
+                if (to - from > grain) {
+                    int mid = (from + to) >>> 1;
+                    invokeAll(new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            run(from, mid);
+                        }
+                    }, new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            run(mid, to);
+                        }
+                    });
+                    return;
+                }
+                for (int k = from; k < to; k++) body.accept(k);
+            }
+        });
+    }
 
-        // El salto es de 2 en 2 porque el buffer final es Estéreo (i = Izquierda, i+1 = Derecha)
-        for (int i = startIndex; i < mixBuffer.length; i += 2) {
+    /**
+     * Mezcla un golpe desde el estado (i, readIndex) hasta sliceEnd, en buffer (la ventana que empieza en bufferStart).
+     * El estado viene del render de la ventana, que lo avanza con la misma suma de doubles que el render de una pasada,
+     * así que cada trozo calcula exactamente las mismas muestras. No modifica el golpe: varios trozos lo leen a la vez.
+     */
+    private static void mixSampleWithResampling(float[] buffer, long bufferStart, Hit hit, long i, double readIndex,
+                                                long sliceEnd, long mixLength) {
+        final float[] source = hit.source;
+        final int targetSamples = hit.targetSamples;
+        final int attackSamples = hit.attackSamples;
+        final int releaseSamples = hit.releaseSamples;
 
-            // Si el índice actual supera el final del bloque visual, paramos de escribir.
-            if (i >= blockEndFrameIndex) {
-                break;
-            }
+        // El salto es de 2 en 2 porque el buffer final es Estéreo (i = Izquierda, i+1 = Derecha)
+        for (; i < sliceEnd; i += 2) {
 
-            // Si llegamos a la duración recortada, dejamos de pintar el sonido
-            if (readIndex >= targetSamples || i + 1 >= mixBuffer.length) {
+            // Si el índice actual supera el final del bloque visual o la duración recortada, paramos de escribir.
+            if (isFinished(hit, i, readIndex, mixLength)) {
                 break;
             }
 
             int indexInt = (int) readIndex;
             double frac = readIndex - indexInt;
 
-            if (indexInt + 1 >= source.length) break;
-
             // Leer el audio original con interpolación (Pitch)
             float s1 = source[indexInt];
             float s2 = source[indexInt + 1];
@@ -142,35 +371,22 @@ public class AudioExporter {
             }
 
             // 5. Aplicar volumen general y la envolvente al sample crudo
-            float processedSample = rawSample * volume * envelope;
+            float processedSample = rawSample * hit.volume * envelope;
 
             // 6. Escribir en el archivo (Separando Izquierda y Derecha)
-            mixBuffer[i] += processedSample * leftPanGain;       // Canal Izquierdo (L)
-            mixBuffer[i + 1] += processedSample * rightPanGain;  // Canal Derecho (R)
+            int local = (int) (i - bufferStart);
+            buffer[local] += processedSample * hit.leftPanGain;       // Canal Izquierdo (L)
+            buffer[local + 1] += processedSample * hit.rightPanGain;  // Canal Derecho (R)
 
-            readIndex += speed;
+            readIndex += hit.speed;
         }
     }
 
-    private static float[] convertSampleToFloat(Sample sample) {
-        short[] data = sample.getData();
-        if (data == null) return null;
-        float[] floatData = new float[data.length];
-        for (int i = 0; i < data.length; i++) floatData[i] = data[i] / 32768.0f;
-        return floatData;
-    }
-
-    private static void saveToFile(File outputFile, float[] mixBuffer, int totalFrames) throws Exception {
-        byte[] outputBytes = new byte[mixBuffer.length * 2];
-        int byteIndex = 0;
-        for (float sample : mixBuffer) {
-            float clamped = Math.max(-1.0f, Math.min(1.0f, sample * 0.8f));
-            short s = (short) (clamped * 32767);
-            outputBytes[byteIndex++] = (byte) (s & 0xFF);
-            outputBytes[byteIndex++] = (byte) ((s >> 8) & 0xFF);
-        }
-        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
-        AudioInputStream audioStream = new AudioInputStream(new ByteArrayInputStream(outputBytes), format, totalFrames);
-        AudioSystem.write(audioStream, AudioFileFormat.Type.WAVE, outputFile);
+    // Las condiciones de parada del render de siempre: fin del bloque, del sample recortado o de la canción
+    private static boolean isFinished(Hit hit, long i, double readIndex, long mixLength) {
+        return i >= hit.blockEndFrameIndex
+                || readIndex >= hit.targetSamples
+                || i + 1 >= mixLength
+                || (int) readIndex + 1 >= hit.source.length;
     }
-}
\ No newline at end of file
+}
@@ -1,17 +1,59 @@
 package org.example.tunesfx.utils;
 
+import org.example.tunesfx.audio.Sample;
+
 import javax.sound.sampled.*;
 import java.io.File;
 import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 public class AudioFileLoader {
 
+    // Con -Dtunesfx.offHeapSamples=true los samples cargados de disco viven fuera del heap (mapeados desde la caché)
+    private static final boolean OFF_HEAP_SAMPLES = Boolean.getBoolean("tunesfx.offHeapSamples");
+
+    /**
+     * Carga un archivo de audio como Sample. Si están activados los samples fuera del heap, el audio se queda
+     * mapeado desde la caché en disco (PcmDiskCache) y no ocupa heap ni hace falta copiarlo para reproducirlo.
+     */
+    public static Sample load(File file) throws IOException, UnsupportedAudioFileException {
+        if (!OFF_HEAP_SAMPLES) return new Sample(loadSample(file));
+
+        MemorySegment mapped = PcmDiskCache.isEnabled() ? PcmDiskCache.getInstance().map(file) : null;
+        if (mapped == null) {
+            short[] audioData = decode(file);
+            if (PcmDiskCache.isEnabled()) {
+                PcmDiskCache.getInstance().store(file, audioData);
+                mapped = PcmDiskCache.getInstance().map(file);
+            }
+            if (mapped == null) {
+                // Sin caché: lo copiamos a memoria nativa (se libera sola cuando el sample deja de usarse)
+                mapped = Arena.ofAuto().allocate((long) audioData.length * Short.BYTES, Short.BYTES);
+                MemorySegment.copy(audioData, 0, mapped, Sample.LAYOUT, 0, audioData.length);
+            }
+        }
+        return new Sample(mapped);
+    }
+
     /**
      * Carga un archivo de audio y lo convierte a short[] a 44100Hz, 16-bit, Mono.
+     * Si ya se convirtió antes (y no ha cambiado), sale directamente de la caché en disco (PcmDiskCache).
      */
     public static short[] loadSample(File file) throws IOException, UnsupportedAudioFileException {
+        if (!PcmDiskCache.isEnabled()) return decode(file);
+        PcmDiskCache cache = PcmDiskCache.getInstance();
+        short[] cached = cache.load(file);
+        if (cached != null) return cached;
+        short[] audioData = decode(file);
+        cache.store(file, audioData);
+        return audioData;
+    }
+
+    // Conversión completa con Java Sound
+    private static short[] decode(File file) throws IOException, UnsupportedAudioFileException {
         // 1. Obtener el stream de audio original
         AudioInputStream sourceStream = AudioSystem.getAudioInputStream(file);
         AudioFormat sourceFormat = sourceStream.getFormat();
@@ -4,10 +4,15 @@ import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import org.example.tunesfx.controller.ChannelRackController;
 import org.example.tunesfx.controller.PrincipalController;
+import org.example.tunesfx.controller.SintetizadorController;
+import org.example.tunesfx.synth.SynthPatch;
 
 public class GlobalState {
     private static PrincipalController principalController;
     private static ChannelRackController rackController;
+    private static SintetizadorController synthController;
+    // Último patch del sintetizador (se guarda al cerrar su ventana o al abrir un proyecto)
+    private static SynthPatch synthPatch;
     // Propiedad observable para el BPM
     private static final DoubleProperty bpm = new SimpleDoubleProperty(120.0);
 
@@ -38,4 +43,23 @@ public class GlobalState {
     public static ChannelRackController getChannelRackController() {
         return rackController;
     }
-}
\ No newline at end of file
+
+    public static void setSynthController(SintetizadorController sc) {
+        synthController = sc;
+    }
+
+    public static SintetizadorController getSynthController() {
+        return synthController;
+    }
+
+    public static void setSynthPatch(SynthPatch patch) {
+        synthPatch = patch;
+    }
+
+    /**
+     * Patch actual: el de la ventana del sintetizador si está abierta, si no el último que se guardó.
+     */
+    public static SynthPatch getSynthPatch() {
+        return synthController != null ? synthController.getPatch() : synthPatch;
+    }
+}
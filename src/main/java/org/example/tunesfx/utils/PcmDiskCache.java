@@ -0,0 +1,310 @@
+package org.example.tunesfx.utils;
+
+import org.example.tunesfx.audio.Sample;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caché en disco del PCM ya convertido (44.1 kHz, 16 bits, mono, orden de bytes nativo) de cada archivo de audio.
+ * Los datos se guardan por hash del contenido del archivo (dos copias del mismo WAV comparten entrada)
+ * y un índice ruta -> (fecha de modificación, tamaño, hash) evita volver a leer el archivo si no ha cambiado:
+ * en ese caso cargar el sample es mapear el .pcm (y copiarlo, o usarlo tal cual fuera del heap), sin pasar por Java Sound.
+ * Si el archivo cambia de fecha o de tamaño se vuelve a calcular el hash (y a convertir si es nuevo).
+ * Tiene un tamaño máximo: cuando se pasa, se borran los .pcm usados hace más tiempo (LRU).
+ * <p>
+ * Se configura con -Dtunesfx.pcmCacheDir=..., -Dtunesfx.pcmCacheMB=... y -Dtunesfx.pcmCache=false para apagarla.
+ * Cualquier error de la caché solo se avisa: quien la usa vuelve a convertir el archivo como siempre.
+ */
+public class PcmDiskCache {
+
+    private static final long DEFAULT_BUDGET_BYTES = Long.getLong("tunesfx.pcmCacheMB", 512L) * 1024 * 1024;
+    private static final File DEFAULT_DIR = new File(System.getProperty("tunesfx.pcmCacheDir",
+            System.getProperty("user.home") + File.separator + ".tunesfx" + File.separator + "pcm-cache"));
+    private static final boolean ENABLED = !"false".equals(System.getProperty("tunesfx.pcmCache"));
+
+    // Si cambia la conversión (formato de salida), se cambia la versión y todos los hashes dejan de coincidir
+    private static final int FORMAT_VERSION = 1;
+    private static final int INDEX_MAGIC = 0x54465043; // "TFPC"
+    private static final String INDEX_FILE = "index.bin";
+    private static final String BLOB_SUFFIX = ".pcm";
+
+    private static PcmDiskCache instance;
+
+    public static synchronized PcmDiskCache getInstance() {
+        if (instance == null) {
+            instance = new PcmDiskCache(DEFAULT_DIR, DEFAULT_BUDGET_BYTES);
+        }
+        return instance;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    // Lo que sabemos de un archivo de origen la última vez que lo vimos
+    private record SourceEntry(long lastModified, long size, String hash) {}
+
+    private final File directory;
+    private final long budgetBytes;
+    private final Map<String, SourceEntry> sources = new HashMap<>();
+    // hash -> bytes del .pcm; accessOrder = true: se itera del menos al más recientemente usado
+    private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+    private boolean dirty = false;
+
+    public PcmDiskCache(File directory, long budgetBytes) {
+        this.directory = directory;
+        this.budgetBytes = budgetBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("No se pudo crear la caché de PCM en " + directory);
+        }
+        loadIndex();
+        // El orden LRU se guarda al salir (los aciertos solo lo cambian en memoria)
+        Runtime.getRuntime().addShutdownHook(new Thread(this::saveIndexIfDirty, "TunesFX-PcmCacheIndex"));
+    }
+
+    /**
+     * Devuelve el PCM convertido de este archivo si está en la caché, o null si hay que convertirlo.
+     */
+    public short[] load(File source) {
+        MemorySegment segment = map(source);
+        return segment != null ? segment.toArray(Sample.LAYOUT) : null;
+    }
+
+    /**
+     * Como {@link #load(File)} pero sin copiar nada: devuelve el .pcm mapeado en memoria (fuera del heap).
+     * El mapeo va con Arena.ofAuto(): se libera solo cuando ya nadie usa el segmento.
+     */
+    public MemorySegment map(File source) {
+        String key = keyFor(source);
+        try {
+            long lastModified = source.lastModified();
+            long size = source.length();
+            String hash;
+            synchronized (this) {
+                SourceEntry known = sources.get(key);
+                hash = (known != null && known.lastModified() == lastModified && known.size() == size)
+                        ? known.hash() : null;
+            }
+            if (hash == null) {
+                // Archivo nuevo o modificado: puede que otro archivo con el mismo contenido ya esté convertido
+                hash = contentHash(source);
+                synchronized (this) {
+                    if (!blobs.containsKey(hash)) return null;
+                    sources.put(key, new SourceEntry(lastModified, size, hash));
+                    dirty = true;
+                }
+            }
+            MemorySegment segment = mapBlob(hash);
+            synchronized (this) {
+                if (segment == null) {
+                    // Nos han borrado el .pcm por fuera: lo olvidamos y que se convierta de nuevo
+                    forgetBlob(hash);
+                } else if (blobs.get(hash) != null) {
+                    // get() lo mueve al final del orden LRU
+                    dirty = true;
+                }
+            }
+            return segment;
+        } catch (IOException e) {
+            System.err.println("Error leyendo la caché de PCM para " + source + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Guarda el PCM convertido de un archivo (después de un fallo de {@link #load(File)}).
+     */
+    public void store(File source, short[] data) {
+        String key = keyFor(source);
+        try {
+            long lastModified = source.lastModified();
+            long size = source.length();
+            String hash = contentHash(source);
+            boolean alreadyStored;
+            synchronized (this) {
+                alreadyStored = blobs.containsKey(hash);
+            }
+            if (!alreadyStored) writeBlob(hash, data);
+
+            synchronized (this) {
+                sources.put(key, new SourceEntry(lastModified, size, hash));
+                if (blobs.put(hash, data.length * 2L) == null) usedBytes += data.length * 2L;
+                dirty = true;
+                evictIfNeeded(hash);
+                saveIndexIfDirty();
+            }
+        } catch (IOException e) {
+            System.err.println("Error guardando en la caché de PCM " + source + ": " + e.getMessage());
+        }
+    }
+
+    // Mapea el .pcm (solo lectura); null si ya no existe
+    private MemorySegment mapBlob(String hash) throws IOException {
+        Path path = blobFile(hash).toPath();
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto());
+        }
+    }
+
+    // Se escribe a un temporal y se renombra: quien lea en paralelo nunca ve un .pcm a medias
+    private void writeBlob(String hash, short[] data) throws IOException {
+        Path target = blobFile(hash).toPath();
+        Path temp = Files.createTempFile(directory.toPath(), hash, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(data.length * 2).order(ByteOrder.nativeOrder());
+                buffer.asShortBuffer().put(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Borra los .pcm menos usados hasta volver al presupuesto (nunca el que se acaba de guardar)
+    private void evictIfNeeded(String keep) {
+        Iterator<Map.Entry<String, Long>> it = blobs.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getKey().equals(keep)) continue;
+            it.remove();
+            usedBytes -= entry.getValue();
+            sources.values().removeIf(source -> source.hash().equals(entry.getKey()));
+            if (!blobFile(entry.getKey()).delete()) {
+                System.err.println("No se pudo borrar " + blobFile(entry.getKey()));
+            }
+        }
+    }
+
+    private void forgetBlob(String hash) {
+        Long bytes = blobs.remove(hash);
+        if (bytes != null) usedBytes -= bytes;
+        sources.values().removeIf(source -> source.hash().equals(hash));
+        dirty = true;
+    }
+
+    private File blobFile(String hash) {
+        return new File(directory, hash + BLOB_SUFFIX);
+    }
+
+    private static String keyFor(File source) {
+        return source.toPath().toAbsolutePath().normalize().toString();
+    }
+
+    // SHA-256 del contenido (y de la versión del formato)
+    private static String contentHash(File source) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        digest.update((byte) FORMAT_VERSION);
+        // Los .pcm van en el orden de bytes de la máquina (se leen tal cual con Sample.LAYOUT)
+        digest.update((byte) (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1));
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    // --- Índice: archivos de origen y .pcm en orden LRU ---
+
+    private synchronized void loadIndex() {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != FORMAT_VERSION) return;
+            int blobCount = in.readInt();
+            for (int i = 0; i < blobCount; i++) {
+                String hash = in.readUTF();
+                long bytes = in.readLong();
+                // Solo los .pcm que siguen en disco
+                if (blobFile(hash).isFile()) {
+                    blobs.put(hash, bytes);
+                    usedBytes += bytes;
+                }
+            }
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                String path = in.readUTF();
+                SourceEntry entry = new SourceEntry(in.readLong(), in.readLong(), in.readUTF());
+                if (blobs.containsKey(entry.hash())) sources.put(path, entry);
+            }
+        } catch (IOException e) {
+            // Índice roto: empezamos de cero (los .pcm se irán sobrescribiendo)
+            System.err.println("Índice de la caché de PCM ilegible, se ignora: " + e.getMessage());
+            sources.clear();
+            blobs.clear();
+            usedBytes = 0;
+        }
+    }
+
+    private synchronized void saveIndexIfDirty() {
+        if (!dirty) return;
+        File indexFile = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(blobs.size());
+            for (Map.Entry<String, Long> blob : blobs.entrySet()) {
+                out.writeUTF(blob.getKey());
+                out.writeLong(blob.getValue());
+            }
+            out.writeInt(sources.size());
+            for (Map.Entry<String, SourceEntry> source : sources.entrySet()) {
+                out.writeUTF(source.getKey());
+                out.writeLong(source.getValue().lastModified());
+                out.writeLong(source.getValue().size());
+                out.writeUTF(source.getValue().hash());
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el índice de la caché de PCM: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            System.err.println("No se pudo guardar el índice de la caché de PCM: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package org.example.tunesfx.utils;
+
+import org.example.tunesfx.audio.PatternModel;
+import org.example.tunesfx.audio.PlaylistItem;
+import org.example.tunesfx.audio.RackTrack;
+import org.example.tunesfx.audio.Sample;
+import org.example.tunesfx.audio.SamplePool;
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.audio.StepData;
+import org.example.tunesfx.synth.Filter;
+import org.example.tunesfx.synth.LFO;
+import org.example.tunesfx.synth.SynthPatch;
+import org.example.tunesfx.synth.WaveTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Formato binario de proyecto (.tfxp): BPM, patch del sintetizador, filas del rack con sus pasos,
+ * playlist y samples (referenciados por ruta o metidos en el propio archivo).
+ * <pre>
+ * int magic 'TFXP' | short versión | int tamaño de la cabecera
+ * double bpm | patch (opcional)
+ * samples: tipo + (ruta relativa, ruta absoluta) o (offset, frames)
+ * filas: nombre, sample, polifonía, choke group y solo los pasos que no están por defecto
+ * playlist: patrón, compás, pista, duración
+ * datos de los samples embebidos (PCM 16 bits)
+ * </pre>
+ * Todo va en big-endian y las cadenas como longitud + UTF-8.
+ * Al abrir, la cabecera se lee de golpe del archivo mapeado en memoria y los samples se decodifican
+ * en paralelo: las filas del proyecto devuelto ya tienen sus pasos, y su sample llega por
+ * RackTrack.getSampleReady() cuando termina de cargarse.
+ */
+public class ProjectFile {
+    public static final String EXTENSION = "tfxp";
+
+    private static final int MAGIC = 0x54465850; // "TFXP"
+    private static final short VERSION = 1;
+
+    private static final byte SAMPLE_REFERENCED = 0;
+    private static final byte SAMPLE_EMBEDDED = 1;
+    private static final int NO_SAMPLE = -1;
+
+    // Un pool pequeño y de hilos daemon solo para decodificar samples (no bloquea el cierre de la app)
+    private static final ExecutorService DECODE_POOL = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "TunesFX-SampleDecoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final StepData DEFAULT_STEP = new StepData();
+
+    /**
+     * Guarda el proyecto. Si embedSamples es false, los samples que vienen de un archivo se guardan
+     * solo como referencia (ruta relativa al proyecto y absoluta); los que no tienen archivo
+     * (p.ej. los del sintetizador) siempre se meten dentro.
+     */
+    public static void save(File file, SongProject project, boolean embedSamples) throws IOException {
+        File baseDir = file.getAbsoluteFile().getParentFile();
+
+        // Tabla de samples sin repetidos: varias filas pueden compartir el mismo Sample
+        Map<Sample, Integer> sampleIndexes = new IdentityHashMap<>();
+        List<RackTrack> sampleOwners = new ArrayList<>();
+        for (RackTrack track : project.getTracks().values()) {
+            Sample sample = track.getSample();
+            if (sample != null && !sampleIndexes.containsKey(sample)) {
+                sampleIndexes.put(sample, sampleOwners.size());
+                sampleOwners.add(track);
+            }
+        }
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(headerBytes);
+        out.writeDouble(project.getBpm());
+        writePatch(out, project.getSynthPatch());
+
+        List<Sample> embedded = new ArrayList<>();
+        long embeddedOffset = 0;
+        out.writeInt(sampleOwners.size());
+        for (RackTrack owner : sampleOwners) {
+            File sampleFile = owner.getSampleFile();
+            if (!embedSamples && sampleFile != null && sampleFile.isFile()) {
+                out.writeByte(SAMPLE_REFERENCED);
+                writeString(out, relativePath(baseDir, sampleFile));
+                writeString(out, sampleFile.getAbsolutePath());
+            } else {
+                Sample sample = owner.getSample();
+                out.writeByte(SAMPLE_EMBEDDED);
+                out.writeLong(embeddedOffset);
+                out.writeInt(sample.getLength());
+                embedded.add(sample);
+                embeddedOffset += sample.getLength() * 2L;
+            }
+        }
+
+        out.writeInt(project.getTracks().size());
+        for (RackTrack track : project.getTracks().values()) {
+            writeString(out, track.getName());
+            out.writeInt(track.getSample() != null ? sampleIndexes.get(track.getSample()) : NO_SAMPLE);
+            out.writeInt(track.getChannel().getMaxPolyphony());
+            out.writeInt(track.getChannel().getChokeGroup());
+            writeSteps(out, track);
+        }
+
+        out.writeInt(project.getPlaylist().size());
+        for (PlaylistItem item : project.getPlaylist()) {
+            writeString(out, item.getPatternName());
+            out.writeInt(item.getStartBar());
+            out.writeInt(item.getTrackIndex());
+            out.writeDouble(item.getDurationBars());
+        }
+        out.flush();
+
+        // Cabecera fija + cabecera variable; detrás van los samples embebidos
+        ByteBuffer prefix = ByteBuffer.allocate(10);
+        prefix.putInt(MAGIC).putShort(VERSION).putInt(10 + headerBytes.size()).flip();
+
+        // Se escribe a un temporal en la misma carpeta y se renombra: si falla a medias (disco lleno,
+        // se cierra el programa...) el proyecto que había sigue intacto
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, prefix);
+                writeFully(channel, ByteBuffer.wrap(headerBytes.toByteArray()));
+                for (Sample sample : embedded) {
+                    // Copia directa del audio (esté en el heap o no) pasando a big-endian
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(sample.getLength() * 2);
+                    MemorySegment.copy(sample.getSegment(), Sample.LAYOUT, 0, MemorySegment.ofBuffer(buffer),
+                            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN), 0, sample.getLength());
+                    writeFully(channel, buffer);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Abre un proyecto. Vuelve en cuanto está leída la cabecera; los samples se siguen decodificando
+     * en segundo plano (ver RackTrack.getSampleReady()). Para esperar a todos, usa awaitSamples().
+     */
+    public static SongProject open(File file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file.getName() + ": project file too large");
+            }
+            // El mapeo sigue siendo válido después de cerrar el canal
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            return parse(map, file.getAbsoluteFile().getParentFile());
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException(file.getName() + ": corrupt project file", e);
+        }
+    }
+
+    /**
+     * Espera a que estén cargados los samples de todas las filas (para el render headless).
+     */
+    public static void awaitSamples(SongProject project) {
+        CompletableFuture.allOf(project.getTracks().values().stream()
+                .map(RackTrack::getSampleReady)
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private static SongProject parse(ByteBuffer map, File baseDir) throws IOException {
+        if (map.getInt() != MAGIC) throw new IOException("not a TunesFX project");
+        short version = map.getShort();
+        if (version != VERSION) throw new IOException("unsupported project version " + version);
+        int headerSize = map.getInt();
+
+        SongProject project = new SongProject();
+        project.setBpm(map.getDouble());
+        project.setSynthPatch(readPatch(map));
+
+        // Cada sample se decodifica en el pool en cuanto sabemos dónde está
+        int sampleCount = map.getInt();
+        List<CompletableFuture<Sample>> samples = new ArrayList<>(sampleCount);
+        List<File> sampleFiles = new ArrayList<>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            byte kind = map.get();
+            if (kind == SAMPLE_REFERENCED) {
+                File sampleFile = resolveSample(baseDir, readString(map), readString(map));
+                sampleFiles.add(sampleFile);
+                samples.add(CompletableFuture.supplyAsync(() -> decodeFile(sampleFile), DECODE_POOL));
+            } else if (kind == SAMPLE_EMBEDDED) {
+                long offset = headerSize + map.getLong();
+                int frames = map.getInt();
+                // Un offset negativo apuntaría a la cabecera (o daría la vuelta al sumar)
+                if (offset < headerSize || offset > map.limit() || frames < 0 || offset + frames * 2L > map.limit()) {
+                    throw new IOException("corrupt project file: embedded sample out of bounds");
+                }
+                sampleFiles.add(null);
+                samples.add(CompletableFuture.supplyAsync(() -> decodeEmbedded(map, (int) offset, frames), DECODE_POOL));
+            } else {
+                throw new IOException("unknown sample kind " + kind);
+            }
+        }
+
+        int trackCount = map.getInt();
+        for (int i = 0; i < trackCount; i++) {
+            RackTrack track = project.addTrack(readString(map));
+            int sampleIndex = map.getInt();
+            track.getChannel().setMaxPolyphony(map.getInt());
+            track.getChannel().setChokeGroup(map.getInt());
+            readSteps(map, track);
+
+            if (sampleIndex == NO_SAMPLE) {
+                track.setSample(null);
+            } else {
+                track.setSampleFile(sampleFiles.get(sampleIndex));
+                samples.get(sampleIndex).whenComplete((sample, error) -> {
+                    if (error != null) track.getSampleReady().completeExceptionally(error);
+                    else track.setSample(sample);
+                });
+            }
+        }
+
+        int playlistCount = map.getInt();
+        for (int i = 0; i < playlistCount; i++) {
+            PlaylistItem item = new PlaylistItem(readString(map), map.getInt(), map.getInt());
+            item.setDurationBars(map.getDouble());
+            project.getPlaylist().add(item);
+        }
+        return project;
+    }
+
+    private static Sample decodeFile(File file) {
+        try {
+            // Si ese archivo ya está cargado en el rack no se vuelve a decodificar
+            return SamplePool.getInstance().load(file);
+        } catch (Exception e) {
+            throw new RuntimeException("Error loading sample " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Sample decodeEmbedded(ByteBuffer map, int offset, int frames) {
+        short[] data = new short[frames];
+        // duplicate(): cada hilo con su propia posición sobre el mismo mapeo
+        map.duplicate().position(offset).slice().asShortBuffer().get(data);
+        return new Sample(data);
+    }
+
+    // Primero la ruta relativa (el proyecto se ha movido junto con sus samples), luego la absoluta
+    private static File resolveSample(File baseDir, String relativePath, String absolutePath) {
+        if (!relativePath.isEmpty()) {
+            File relative = new File(baseDir, relativePath);
+            if (relative.isFile()) return relative;
+        }
+        return new File(absolutePath);
+    }
+
+    private static String relativePath(File baseDir, File sampleFile) {
+        try {
+            return baseDir.toPath().relativize(sampleFile.getAbsoluteFile().toPath()).toString();
+        } catch (IllegalArgumentException e) {
+            // Otra unidad (Windows): solo nos queda la absoluta
+            return "";
+        }
+    }
+
+    // --- Pasos: solo se guardan los que difieren de un StepData nuevo ---
+
+    private static void writeSteps(DataOutputStream out, RackTrack track) throws IOException {
+        List<StepData> changed = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        PatternModel.Snapshot pattern = track.getPattern().snapshot();
+        for (int i = 0; i < PatternModel.NUM_STEPS; i++) {
+            StepData step = pattern.getStep(i);
+            if (!isDefault(step)) {
+                changed.add(step);
+                indexes.add(i);
+            }
+        }
+        out.writeShort(changed.size());
+        for (int i = 0; i < changed.size(); i++) {
+            StepData step = changed.get(i);
+            out.writeShort(indexes.get(i));
+            out.writeBoolean(step.isActive());
+            out.writeInt(step.getSemitoneOffset());
+            out.writeDouble(step.getVolume());
+            out.writeDouble(step.getPan());
+            out.writeDouble(step.getAttack());
+            out.writeDouble(step.getRelease());
+            out.writeDouble(step.getDurationFactor());
+            out.writeDouble(step.getDelay());
+        }
+    }
+
+    private static void readSteps(ByteBuffer in, RackTrack track) {
+        int count = in.getShort();
+        for (int i = 0; i < count; i++) {
+            int index = in.getShort();
+            if (index < 0 || index >= PatternModel.NUM_STEPS) throw new IllegalArgumentException("step index out of range");
+            StepData step = new StepData();
+            step.setActive(in.get() != 0);
+            step.setSemitoneOffset(in.getInt());
+            step.setVolume(in.getDouble());
+            step.setPan(in.getDouble());
+            step.setAttack(in.getDouble());
+            step.setRelease(in.getDouble());
+            step.setDurationFactor(in.getDouble());
+            step.setDelay(in.getDouble());
+            track.getPattern().setStep(index, step);
+        }
+    }
+
+    private static boolean isDefault(StepData step) {
+        return step.isActive() == DEFAULT_STEP.isActive()
+                && step.getSemitoneOffset() == DEFAULT_STEP.getSemitoneOffset()
+                && step.getVolume() == DEFAULT_STEP.getVolume()
+                && step.getPan() == DEFAULT_STEP.getPan()
+                && step.getAttack() == DEFAULT_STEP.getAttack()
+                && step.getRelease() == DEFAULT_STEP.getRelease()
+                && step.getDurationFactor() == DEFAULT_STEP.getDurationFactor()
+                && step.getDelay() == DEFAULT_STEP.getDelay();
+    }
+
+    // --- Patch del sintetizador (los enums van por nombre para poder reordenarlos) ---
+
+    private static void writePatch(DataOutputStream out, SynthPatch patch) throws IOException {
+        out.writeBoolean(patch != null);
+        if (patch == null) return;
+        for (int i = 0; i < SynthPatch.NUM_OSCILLATORS; i++) {
+            SynthPatch.OscillatorPatch osc = patch.getOscillator(i);
+            writeString(out, osc.getWaveTable().name());
+            out.writeInt(osc.getToneOffset());
+            out.writeInt(osc.getVolume());
+            out.writeInt(osc.getUnisonVoices());
+            out.writeDouble(osc.getDetune());
+            out.writeBoolean(osc.isMuted());
+        }
+        out.writeDouble(patch.getAttack());
+        out.writeDouble(patch.getDecay());
+        out.writeDouble(patch.getSustain());
+        out.writeDouble(patch.getRelease());
+        writeString(out, patch.getFilterType().name());
+        out.writeDouble(patch.getFilterCutoff());
+        out.writeDouble(patch.getFilterResonance());
+        writeString(out, patch.getLfoWaveform().name());
+        writeString(out, patch.getLfoTarget().name());
+        out.writeDouble(patch.getLfoRate());
+        out.writeDouble(patch.getLfoAmount());
+        out.writeInt(patch.getPolyphony());
+        out.writeDouble(patch.getSampleLengthSeconds());
+    }
+
+    private static SynthPatch readPatch(ByteBuffer in) {
+        if (in.get() == 0) return null;
+        SynthPatch patch = new SynthPatch();
+        for (int i = 0; i < SynthPatch.NUM_OSCILLATORS; i++) {
+            SynthPatch.OscillatorPatch osc = patch.getOscillator(i);
+            osc.setWaveTable(WaveTable.valueOf(readString(in)));
+            osc.setToneOffset(in.getInt());
+            osc.setVolume(in.getInt());
+            osc.setUnisonVoices(in.getInt());
+            osc.setDetune(in.getDouble());
+            osc.setMuted(in.get() != 0);
+        }
+        patch.setAttack(in.getDouble());
+        patch.setDecay(in.getDouble());
+        patch.setSustain(in.getDouble());
+        patch.setRelease(in.getDouble());
+        patch.setFilterType(Filter.Tipo.valueOf(readString(in)));
+        patch.setFilterCutoff(in.getDouble());
+        patch.setFilterResonance(in.getDouble());
+        patch.setLfoWaveform(LFO.Waveform.valueOf(readString(in)));
+        patch.setLfoTarget(LFO.Target.valueOf(readString(in)));
+        patch.setLfoRate(in.getDouble());
+        patch.setLfoAmount(in.getDouble());
+        patch.setPolyphony(in.getInt());
+        patch.setSampleLengthSeconds(in.getDouble());
+        return patch;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) throw new IllegalArgumentException("bad string length " + length);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.example.tunesfx.utils;
+
+import org.example.tunesfx.audio.PatternModel;
+import org.example.tunesfx.audio.PlaylistItem;
+import org.example.tunesfx.audio.RackTrack;
+import org.example.tunesfx.audio.Sample;
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.audio.StepData;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lee la descripción de un proyecto en texto (para el render headless). Una orden por línea:
+ * <pre>
+ * # comentario
+ * bpm 128
+ * track "Kick" samples/kick.wav          (ruta relativa a la carpeta del proyecto)
+ * steps "Kick" x...x...x...x...          (un carácter por paso: x = encendido, . = apagado)
+ * step "Kick" 4 volume=0.8 pan=-0.2 pitch=3 attack=0.1 release=0.2 duration=0.5 delay=0
+ * clip "Kick" 1 4 0                      (patrón, compás de inicio, compases, pista de la playlist)
+ * </pre>
+ * Los nombres con espacios van entre comillas.
+ */
+public class ProjectLoader {
+
+    public static SongProject loadText(File file) throws IOException {
+        SongProject project = new SongProject();
+        File baseDir = file.getAbsoluteFile().getParentFile();
+        // Un mismo archivo de audio se carga una sola vez aunque lo usen varias filas
+        Map<File, Sample> loadedSamples = new HashMap<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                List<String> tokens = tokenize(line);
+                if (tokens.isEmpty()) continue;
+                try {
+                    parseLine(project, tokens, baseDir, loadedSamples);
+                } catch (IOException | UnsupportedAudioFileException | RuntimeException e) {
+                    throw new IOException(file.getName() + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return project;
+    }
+
+    private static void parseLine(SongProject project, List<String> tokens, File baseDir, Map<File, Sample> loadedSamples)
+            throws IOException, UnsupportedAudioFileException {
+        String command = tokens.get(0);
+        switch (command) {
+            case "bpm" -> {
+                expectArgs(tokens, 1);
+                project.setBpm(Double.parseDouble(tokens.get(1)));
+            }
+            case "track" -> {
+                expectArgs(tokens, 2);
+                File sampleFile = new File(tokens.get(2));
+                if (!sampleFile.isAbsolute()) sampleFile = new File(baseDir, tokens.get(2));
+                Sample sample = loadedSamples.get(sampleFile);
+                if (sample == null) {
+                    sample = AudioFileLoader.load(sampleFile);
+                    loadedSamples.put(sampleFile, sample);
+                }
+                project.addTrack(tokens.get(1)).setSample(sample);
+            }
+            case "steps" -> {
+                expectArgs(tokens, 2);
+                RackTrack track = requireTrack(project, tokens.get(1));
+                String pattern = tokens.get(2);
+                for (int i = 0; i < pattern.length() && i < PatternModel.NUM_STEPS; i++) {
+                    track.getPattern().setActive(i, pattern.charAt(i) == 'x' || pattern.charAt(i) == 'X');
+                }
+            }
+            case "step" -> {
+                if (tokens.size() < 3) throw new IllegalArgumentException("step needs a track and a step index");
+                RackTrack track = requireTrack(project, tokens.get(1));
+                int index = Integer.parseInt(tokens.get(2));
+                if (index < 0 || index >= PatternModel.NUM_STEPS) {
+                    throw new IllegalArgumentException("step index out of range: " + tokens.get(2));
+                }
+                StepData step = track.getPattern().getStep(index);
+                step.setActive(true);
+                for (int i = 3; i < tokens.size(); i++) {
+                    applyStepParameter(step, tokens.get(i));
+                }
+                track.getPattern().setStep(index, step);
+            }
+            case "clip" -> {
+                if (tokens.size() < 4) throw new IllegalArgumentException("clip needs a pattern, a start bar and a length");
+                requireTrack(project, tokens.get(1));
+                int playlistTrack = tokens.size() > 4 ? Integer.parseInt(tokens.get(4)) : 0;
+                PlaylistItem item = new PlaylistItem(tokens.get(1), Integer.parseInt(tokens.get(2)), playlistTrack);
+                item.setDurationBars(Double.parseDouble(tokens.get(3)));
+                project.getPlaylist().add(item);
+            }
+            default -> throw new IllegalArgumentException("unknown command '" + command + "'");
+        }
+    }
+
+    private static void applyStepParameter(StepData step, String parameter) {
+        int equals = parameter.indexOf('=');
+        if (equals < 0) throw new IllegalArgumentException("expected key=value, got '" + parameter + "'");
+        String key = parameter.substring(0, equals);
+        String value = parameter.substring(equals + 1);
+        switch (key) {
+            case "volume" -> step.setVolume(Double.parseDouble(value));
+            case "pan" -> step.setPan(Double.parseDouble(value));
+            case "pitch" -> step.setSemitoneOffset(Integer.parseInt(value));
+            case "attack" -> step.setAttack(Double.parseDouble(value));
+            case "release" -> step.setRelease(Double.parseDouble(value));
+            case "duration" -> step.setDurationFactor(Double.parseDouble(value));
+            case "delay" -> step.setDelay(Double.parseDouble(value));
+            default -> throw new IllegalArgumentException("unknown step parameter '" + key + "'");
+        }
+    }
+
+    private static RackTrack requireTrack(SongProject project, String name) {
+        RackTrack track = project.findTrack(name);
+        if (track == null) throw new IllegalArgumentException("unknown track '" + name + "' (declare it with 'track' first)");
+        return track;
+    }
+
+    private static void expectArgs(List<String> tokens, int count) {
+        if (tokens.size() != count + 1) {
+            throw new IllegalArgumentException("'" + tokens.get(0) + "' expects " + count + " argument(s)");
+        }
+    }
+
+    // Separa por espacios respetando las comillas; lo que va tras un # es comentario
+    private static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        boolean hasToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                hasToken = true;
+            } else if (!quoted && c == '#') {
+                break;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (hasToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    hasToken = false;
+                }
+            } else {
+                current.append(c);
+                hasToken = true;
+            }
+        }
+        if (hasToken) tokens.add(current.toString());
+        return tokens;
+    }
+}
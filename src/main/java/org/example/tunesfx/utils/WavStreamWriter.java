@@ -0,0 +1,124 @@
+package org.example.tunesfx.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escribe un WAV PCM de 16 bits por trozos, sin tener la canción entera en memoria.
+ * La cabecera se escribe al principio con los tamaños a 0 y se parchea al cerrar.
+ * Si el archivo pasa de 2 GB se convierte en RF64 (EBU Tech 3306): "RIFF" pasa a "RF64"
+ * y el chunk JUNK reservado al principio se convierte en "ds64" con los tamaños de 64 bits.
+ */
+public class WavStreamWriter implements AutoCloseable {
+
+    // RIFF(12) + JUNK/ds64(8 + 28) + fmt(8 + 16) + cabecera de data(8)
+    private static final int HEADER_SIZE = 80;
+    private static final int DS64_SIZE = 28;
+    // Aunque RIFF usa tamaños sin signo, muchos lectores (también javax.sound) los leen con signo: a partir de 2 GB, RF64
+    private static final long MAX_RIFF_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final int bytesPerFrame;
+    // Buffer directo para convertir de float a PCM y escribirlo en el canal
+    private final ByteBuffer pcm;
+    private long dataBytes = 0;
+
+    public WavStreamWriter(File file, int sampleRate, int channels, int maxSamplesPerWrite) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.bytesPerFrame = channels * 2;
+        this.pcm = ByteBuffer.allocateDirect(maxSamplesPerWrite * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        putTag(header, "RIFF");
+        header.putInt(0); // se parchea al cerrar
+        putTag(header, "WAVE");
+        // Hueco para el ds64 si hace falta RF64 (los lectores ignoran los JUNK)
+        putTag(header, "JUNK");
+        header.putInt(DS64_SIZE);
+        header.put(new byte[DS64_SIZE]);
+        putTag(header, "fmt ");
+        header.putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * bytesPerFrame);
+        header.putShort((short) bytesPerFrame);
+        header.putShort((short) 16);
+        putTag(header, "data");
+        header.putInt(0); // se parchea al cerrar
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    /**
+     * Convierte samples[0..count) a 16 bits (con la ganancia y el recorte de siempre) y lo añade al archivo.
+     */
+    public void write(float[] samples, int count) throws IOException {
+        pcm.clear();
+        for (int i = 0; i < count; i++) {
+            float clamped = Math.max(-1.0f, Math.min(1.0f, samples[i] * 0.8f));
+            pcm.putShort((short) (clamped * 32767));
+        }
+        pcm.flip();
+        writeFully(pcm, HEADER_SIZE + dataBytes);
+        dataBytes += count * 2L;
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            patchHeader();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void patchHeader() throws IOException {
+        long riffSize = HEADER_SIZE - 8 + dataBytes;
+        ByteBuffer field = ByteBuffer.allocate(DS64_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (riffSize <= MAX_RIFF_SIZE) {
+            field.putInt((int) riffSize).flip();
+            writeFully(field, 4);
+            field.clear();
+            field.putInt((int) dataBytes).flip();
+            writeFully(field, HEADER_SIZE - 4);
+            return;
+        }
+
+        // RF64: los tamaños de 32 bits se quedan a 0xFFFFFFFF y los de verdad van en el ds64
+        field.put(new byte[]{'R', 'F', '6', '4'}).putInt(-1).flip();
+        writeFully(field, 0);
+        field.clear();
+        field.put(new byte[]{'d', 's', '6', '4'}).flip();
+        writeFully(field, 12);
+        field.clear();
+        field.putLong(riffSize);
+        field.putLong(dataBytes);
+        field.putLong(dataBytes / bytesPerFrame);
+        field.putInt(0); // sin tabla de chunks extra
+        field.flip();
+        writeFully(field, 20);
+        field.clear();
+        field.putInt(-1).flip();
+        writeFully(field, HEADER_SIZE - 4);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void putTag(ByteBuffer buffer, String tag) {
+        for (int i = 0; i < 4; i++) buffer.put((byte) tag.charAt(i));
+    }
+}
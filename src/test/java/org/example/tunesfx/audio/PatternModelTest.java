@@ -0,0 +1,176 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Bitset de pasos activos y fotos inmutables del PatternModel.
+ */
+class PatternModelTest {
+
+    @Test
+    void activeStepsAreABitPerStep() {
+        PatternModel pattern = new PatternModel();
+        pattern.setActive(0, true);
+        pattern.setActive(5, true);
+        pattern.setActive(63, true);
+
+        PatternModel.Snapshot snapshot = pattern.snapshot();
+        assertEquals((1L) | (1L << 5) | (1L << 63), snapshot.getActiveSteps());
+        assertTrue(snapshot.isActive(63));
+        assertFalse(snapshot.isActive(6));
+        // Fuera de rango no está activo (sin excepción: el audio lo consulta a ciegas)
+        assertFalse(snapshot.isActive(-1));
+        assertFalse(snapshot.isActive(64));
+        assertEquals(63, snapshot.lastActiveStep());
+
+        pattern.setActive(63, false);
+        assertEquals(5, pattern.snapshot().lastActiveStep());
+    }
+
+    @Test
+    void lastActiveStepOfEmptyAndCombinedRows() {
+        assertEquals(-1, PatternModel.lastActiveStep(0));
+        assertEquals(-1, new PatternModel().snapshot().lastActiveStep());
+        // El OR de varias filas da el final del bucle de todas
+        assertEquals(12, PatternModel.lastActiveStep((1L << 3) | (1L << 12)));
+    }
+
+    @Test
+    void toggleReturnsTheNewState() {
+        PatternModel pattern = new PatternModel();
+        assertTrue(pattern.toggle(7));
+        assertTrue(pattern.snapshot().isActive(7));
+        assertFalse(pattern.toggle(7));
+        assertFalse(pattern.snapshot().isActive(7));
+    }
+
+    @Test
+    void snapshotsAreImmutableAndVersioned() {
+        PatternModel pattern = new PatternModel();
+        PatternModel.Snapshot empty = pattern.snapshot();
+
+        pattern.editStep(3, step -> {
+            step.setActive(true);
+            step.setSemitoneOffset(12);
+            step.setVolume(0.5);
+        });
+        PatternModel.Snapshot edited = pattern.snapshot();
+
+        // La foto vieja no ve el cambio
+        assertFalse(empty.isActive(3));
+        assertEquals(0, empty.getSemitoneOffset(3));
+        assertEquals(1.0, empty.getVolume(3));
+        assertTrue(edited.getVersion() > empty.getVersion());
+
+        assertTrue(edited.isActive(3));
+        assertEquals(12, edited.getSemitoneOffset(3));
+        assertEquals(2.0f, edited.getPitchMultiplier(3), 1e-6f);
+        assertEquals(0.5, edited.getVolume(3));
+        // Sin cambios no hay foto nueva
+        assertSame(edited, pattern.snapshot());
+    }
+
+    @Test
+    void stepDataCopiesDoNotWriteBack() {
+        PatternModel pattern = new PatternModel();
+        StepData copy = pattern.getStep(2);
+        copy.setActive(true);
+        copy.setPan(-1.0);
+        assertFalse(pattern.snapshot().isActive(2));
+        assertEquals(0.0, pattern.snapshot().getPan(2));
+
+        pattern.setStep(2, copy);
+        assertTrue(pattern.snapshot().isActive(2));
+        assertEquals(-1.0, pattern.snapshot().getPan(2));
+    }
+
+    @Test
+    void editAllPublishesOneSnapshot() {
+        PatternModel pattern = new PatternModel();
+        pattern.setActive(1, true);
+        long before = pattern.snapshot().getVersion();
+
+        pattern.editAll(step -> step.setDelay(0.25));
+
+        PatternModel.Snapshot snapshot = pattern.snapshot();
+        assertEquals(before + 1, snapshot.getVersion());
+        for (int step = 0; step < PatternModel.NUM_STEPS; step++) {
+            assertEquals(0.25, snapshot.getDelay(step));
+        }
+        // Los pasos activos no cambian
+        assertEquals(1L << 1, snapshot.getActiveSteps());
+    }
+
+    @Test
+    void copyFromCopiesEveryParameter() {
+        PatternModel source = new PatternModel();
+        source.setActive(9, true);
+        source.editStep(9, step -> {
+            step.setAttack(0.1);
+            step.setRelease(0.2);
+            step.setDurationFactor(0.3);
+            step.setDelay(0.4);
+            step.setPan(0.5);
+            step.setSemitoneOffset(-5);
+        });
+
+        PatternModel copy = new PatternModel();
+        copy.copyFrom(source);
+        PatternModel.Snapshot a = source.snapshot();
+        PatternModel.Snapshot b = copy.snapshot();
+        assertEquals(a.getActiveSteps(), b.getActiveSteps());
+        assertEquals(a.getAttack(9), b.getAttack(9));
+        assertEquals(a.getRelease(9), b.getRelease(9));
+        assertEquals(a.getDurationFactor(9), b.getDurationFactor(9));
+        assertEquals(a.getDelay(9), b.getDelay(9));
+        assertEquals(a.getPan(9), b.getPan(9));
+        assertEquals(a.getSemitoneOffset(9), b.getSemitoneOffset(9));
+        assertEquals(a.getPitchMultiplier(9), b.getPitchMultiplier(9));
+    }
+
+    @Test
+    void outOfRangeWritesAreRejected() {
+        PatternModel pattern = new PatternModel();
+        assertThrows(IndexOutOfBoundsException.class, () -> pattern.setActive(64, true));
+        assertThrows(IndexOutOfBoundsException.class, () -> pattern.toggle(-1));
+    }
+
+    @Test
+    void readersNeverSeeAHalfWrittenStep() throws InterruptedException {
+        // Un escritor cambia a la vez el paso activo y su volumen; el lector nunca debe ver uno sin el otro
+        PatternModel pattern = new PatternModel();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                PatternModel.Snapshot snapshot = pattern.snapshot();
+                boolean active = snapshot.isActive(0);
+                double volume = snapshot.getVolume(0);
+                if (active != (volume == 0.5)) {
+                    failure.compareAndSet(null, "activo=" + active + " volumen=" + volume);
+                }
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 20_000; i++) {
+            boolean on = (i & 1) == 0;
+            pattern.editStep(0, step -> {
+                step.setActive(on);
+                step.setVolume(on ? 0.5 : 1.0);
+            });
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * El playhead se engancha, corrige poco a poco los errores pequeños y salta con los grandes; y el reloj
+ * de audio del que sale la posición extrapola sin pasarse de lo entregado.
+ */
+class PlayheadClockTest {
+
+    private static final double RATE = 44100;
+    // Un pulso de FX a 60 Hz
+    private static final long PULSE_NANOS = 16_666_667;
+    private static final double PULSE_FRAMES = PULSE_NANOS * RATE / 1e9;
+
+    @Test
+    void firstUpdateLocksOntoTheTarget() {
+        PlayheadClock clock = new PlayheadClock();
+        assertEquals(12_345, clock.update(1_000, 12_345, RATE));
+        assertEquals(0, clock.getDriftMillis());
+    }
+
+    @Test
+    void smallErrorsAreCorrectedByAFifthEachPulse() {
+        PlayheadClock clock = new PlayheadClock();
+        long now = 0;
+        clock.update(now, 0, RATE);
+
+        // Lo que suena va 441 frames (10 ms) por delante de lo previsto
+        now += PULSE_NANOS;
+        double predicted = PULSE_FRAMES;
+        double visual = clock.update(now, predicted + 441, RATE);
+        assertEquals(predicted + 0.2 * 441, visual, 1e-6);
+        assertEquals(-0.8 * 10, clock.getDriftMillis(), 1e-6);
+
+        // Con la posición de audio avanzando al ritmo previsto el error se va cerrando (x0.8 por pulso)
+        double error = 0.8 * 441;
+        for (int pulse = 0; pulse < 20; pulse++) {
+            now += PULSE_NANOS;
+            double audible = (pulse + 2) * PULSE_FRAMES + 441;
+            visual = clock.update(now, audible, RATE);
+            error *= 0.8;
+            assertEquals(audible - error, visual, 1e-6, "pulso " + pulse);
+        }
+        assertTrue(Math.abs(clock.getDriftMillis()) < 0.2);
+        assertEquals(8.0, clock.getMaxDriftMillis(), 1e-6);
+    }
+
+    @Test
+    void largeErrorsSnap() {
+        PlayheadClock clock = new PlayheadClock();
+        clock.update(0, 100_000, RATE);
+        // Un loop: la posición vuelve atrás mucho más de 80 ms
+        double visual = clock.update(PULSE_NANOS, 100, RATE);
+        assertEquals(100, visual);
+        assertEquals(0, clock.getDriftMillis(), 1e-9);
+
+        // Justo por debajo del umbral todavía se suaviza
+        PlayheadClock smooth = new PlayheadClock();
+        smooth.update(0, 0, RATE);
+        double under = 0.079 * RATE;
+        assertEquals(PULSE_FRAMES + 0.2 * under, smooth.update(PULSE_NANOS, PULSE_FRAMES + under, RATE), 1e-6);
+    }
+
+    @Test
+    void resetRelocksAndClearsTheStats() {
+        PlayheadClock clock = new PlayheadClock();
+        clock.update(0, 0, RATE);
+        clock.update(PULSE_NANOS, PULSE_FRAMES + 441, RATE);
+        assertTrue(clock.getMaxDriftMillis() > 0);
+
+        clock.reset();
+        assertEquals(0, clock.getMaxDriftMillis());
+        assertEquals(0, clock.getAverageDriftMillis());
+        // Aunque el error sería pequeño, tras reset se engancha sin suavizar
+        assertEquals(PULSE_FRAMES * 2 + 100, clock.update(PULSE_NANOS * 2, PULSE_FRAMES * 2 + 100, RATE));
+    }
+
+    @Test
+    void audioClockExtrapolatesButNeverPassesWhatWasRendered() {
+        AudioClock clock = new AudioClock(RATE);
+        assertFalse(clock.isRunning());
+
+        // 4096 frames entregados, 2048 de ellos aún por oír
+        long stamp = 5_000_000_000L;
+        clock.publish(4096, 2048, stamp);
+        assertTrue(clock.isRunning());
+        assertEquals(2048, clock.audibleFrame(stamp), 1e-9);
+        assertEquals(2048 * 1000.0 / RATE, clock.getPendingMillis(), 1e-9);
+
+        // 10 ms después han salido 441 frames más
+        assertEquals(2048 + 441, clock.audibleFrame(stamp + 10_000_000), 1e-6);
+        // Un instante anterior a la publicación no retrocede
+        assertEquals(2048, clock.audibleFrame(stamp - 1_000_000), 1e-9);
+        // Si el hilo de audio se retrasa, se queda en lo entregado
+        assertEquals(4096, clock.audibleFrame(stamp + 1_000_000_000L), 1e-9);
+
+        // Lo pendiente nunca es negativo
+        clock.publish(8192, -10, stamp);
+        assertEquals(8192, clock.audibleFrame(stamp), 1e-9);
+    }
+}
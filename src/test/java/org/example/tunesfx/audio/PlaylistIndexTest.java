@@ -0,0 +1,162 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Consultas del índice de la playlist comparadas con recorrer todos los bloques, también después de
+ * moverlos en bloque (como en un arrastre de la selección).
+ */
+class PlaylistIndexTest {
+
+    @Test
+    void clipAtPicksTheTopmostOverlappingClip() {
+        PlaylistIndex index = new PlaylistIndex();
+        PlaylistItem longClip = clip(1, 0, 8);   // compases [0, 8)
+        PlaylistItem shortClip = clip(3, 0, 1);  // [2, 3), encima del largo
+        PlaylistItem sameStart = clip(3, 0, 2);  // [2, 4), mismo inicio pero llega después
+        index.add(longClip);
+        index.add(shortClip);
+        index.add(sameStart);
+
+        assertSame(longClip, index.clipAt(0, 0));
+        assertSame(sameStart, index.clipAt(0, 2.5));
+        assertSame(sameStart, index.clipAt(0, 3.5));
+        assertSame(longClip, index.clipAt(0, 4));
+        // El final no es del bloque
+        assertNull(index.clipAt(0, 8));
+        assertNull(index.clipAt(1, 0));
+        assertNull(index.clipAt(-1, 0));
+    }
+
+    @Test
+    void queriesMatchBruteForce() {
+        Random random = new Random(11);
+        PlaylistIndex index = new PlaylistIndex();
+        List<PlaylistItem> items = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            PlaylistItem item = randomClip(random);
+            items.add(item);
+            index.add(item);
+        }
+        assertEquals(items.size(), index.size());
+        checkAgainstBruteForce(random, index, items);
+    }
+
+    @Test
+    void bulkMoveKeepsTheIndexConsistent() {
+        Random random = new Random(23);
+        PlaylistIndex index = new PlaylistIndex();
+        List<PlaylistItem> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            PlaylistItem item = randomClip(random);
+            items.add(item);
+            index.add(item);
+        }
+
+        // Varios pasos de arrastre de media canción: compases y pistas a la vez, luego redimensionar
+        List<PlaylistItem> selection = items.subList(0, 100);
+        for (int step = 0; step < 10; step++) {
+            int bars = random.nextInt(7) - 3;
+            int tracks = random.nextInt(3) - 1;
+            for (PlaylistItem item : selection) {
+                item.setStartBar(Math.max(1, item.getStartBar() + bars));
+                item.setTrackIndex(Math.max(0, item.getTrackIndex() + tracks));
+                index.update(item);
+            }
+            checkAgainstBruteForce(random, index, items);
+        }
+        for (PlaylistItem item : selection) {
+            item.setDurationBars(0.25 + random.nextInt(16) / 4.0);
+            index.update(item);
+        }
+        checkAgainstBruteForce(random, index, items);
+        assertEquals(items.size(), index.size());
+    }
+
+    @Test
+    void removeAndOverlapsIgnoringTheSelection() {
+        PlaylistIndex index = new PlaylistIndex();
+        PlaylistItem a = clip(1, 2, 2);   // [0, 2) en la pista 2
+        PlaylistItem b = clip(5, 2, 1);   // [4, 5)
+        index.add(a);
+        index.add(b);
+
+        assertTrue(index.overlaps(2, 1, 3, null));
+        assertFalse(index.overlaps(2, 2, 4, null));
+        assertFalse(index.overlaps(2, 1, 3, Set.of(a)));
+        assertTrue(index.overlaps(2, 0, 10, Set.of(a)));
+
+        assertTrue(index.remove(a));
+        assertFalse(index.remove(a));
+        assertFalse(index.contains(a));
+        assertEquals(List.of(b), index.query(0, 10, 0, 100));
+        // Añadir uno que ya está solo lo recoloca
+        b.setStartBar(9);
+        index.add(b);
+        assertEquals(1, index.size());
+        assertSame(b, index.clipAt(2, 8.5));
+    }
+
+    private static void checkAgainstBruteForce(Random random, PlaylistIndex index, List<PlaylistItem> items) {
+        for (int q = 0; q < 300; q++) {
+            int firstTrack = random.nextInt(12) - 1;
+            int lastTrack = firstTrack + random.nextInt(4);
+            double fromBar = random.nextInt(200) / 4.0 - 2;
+            double toBar = fromBar + random.nextInt(80) / 4.0 + 0.25;
+
+            List<PlaylistItem> expected = new ArrayList<>();
+            for (PlaylistItem item : items) {
+                if (item.getTrackIndex() >= firstTrack && item.getTrackIndex() <= lastTrack
+                        && PlaylistIndex.start(item) < toBar && PlaylistIndex.end(item) > fromBar) {
+                    expected.add(item);
+                }
+            }
+            assertSameItems(expected, index.query(firstTrack, lastTrack, fromBar, toBar));
+
+            int track = Math.max(0, firstTrack);
+            PlaylistItem top = index.clipAt(track, fromBar);
+            PlaylistItem expectedTop = null;
+            for (PlaylistItem item : items) {
+                if (item.getTrackIndex() == track && PlaylistIndex.start(item) <= fromBar && PlaylistIndex.end(item) > fromBar
+                        && (expectedTop == null || item.getStartBar() >= expectedTop.getStartBar())) {
+                    expectedTop = item;
+                }
+            }
+            // Con el mismo inicio cualquiera de los empatados vale para este recorrido
+            if (expectedTop == null) assertNull(top);
+            else assertEquals(expectedTop.getStartBar(), top.getStartBar());
+        }
+    }
+
+    private static void assertSameItems(List<PlaylistItem> expected, List<PlaylistItem> actual) {
+        Comparator<PlaylistItem> byIdentity = Comparator.comparingInt(System::identityHashCode);
+        List<PlaylistItem> a = new ArrayList<>(expected);
+        List<PlaylistItem> b = new ArrayList<>(actual);
+        a.sort(byIdentity);
+        b.sort(byIdentity);
+        assertEquals(a.size(), b.size());
+        for (int i = 0; i < a.size(); i++) assertSame(a.get(i), b.get(i));
+    }
+
+    private static PlaylistItem randomClip(Random random) {
+        return clip(1 + random.nextInt(50), random.nextInt(10), 0.25 + random.nextInt(16) / 4.0);
+    }
+
+    private static PlaylistItem clip(int startBar, int track, double durationBars) {
+        PlaylistItem item = new PlaylistItem("p", startBar, track);
+        item.setDurationBars(durationBars);
+        return item;
+    }
+}
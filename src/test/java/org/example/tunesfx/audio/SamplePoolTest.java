@@ -0,0 +1,143 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * El pool comparte los samples con el mismo audio y los suelta con la última referencia.
+ * Es un singleton, así que cada test usa audio propio y mira cómo cambian las estadísticas.
+ */
+class SamplePoolTest {
+
+    // Semillas distintas en cada test: nada de lo que carga uno coincide con lo de otro
+    private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+
+    private final SamplePool pool = SamplePool.getInstance();
+
+    @TempDir
+    File dir;
+
+    @Test
+    void identicalContentIsSharedAndCounted() {
+        short[] pcm = noise(10_000);
+        Sample first = new Sample(pcm.clone());
+        Sample copy = new Sample(pcm.clone());
+        SamplePool.Stats before = pool.getStats();
+
+        assertSame(first, pool.acquire(first));
+        // Otro objeto con el mismo audio: devuelve el que ya estaba
+        assertSame(first, pool.acquire(copy));
+
+        SamplePool.Stats after = pool.getStats();
+        long bytes = pcm.length * 2L;
+        assertEquals(before.uniqueSamples() + 1, after.uniqueSamples());
+        assertEquals(before.references() + 2, after.references());
+        assertEquals(before.liveBytes() + bytes, after.liveBytes());
+        assertEquals(before.bytesSaved() + bytes, after.bytesSaved());
+        assertEquals(before.dedupHits() + 1, after.dedupHits());
+
+        pool.release(first);
+        pool.release(first);
+        assertEquals(before.uniqueSamples(), pool.getStats().uniqueSamples());
+        assertEquals(before.references(), pool.getStats().references());
+    }
+
+    @Test
+    void differentContentIsNotShared() {
+        Sample a = new Sample(noise(2_000));
+        Sample b = new Sample(noise(2_000));
+        assertSame(a, pool.acquire(a));
+        assertSame(b, pool.acquire(b));
+        pool.release(a);
+        pool.release(b);
+    }
+
+    @Test
+    void entryLivesUntilTheLastRelease() {
+        short[] pcm = noise(3_000);
+        Sample first = new Sample(pcm.clone());
+        pool.acquire(first);
+        pool.acquire(first);
+
+        pool.release(first);
+        // Aún queda una referencia: otra copia sigue resolviendo al mismo sample
+        Sample copy = new Sample(pcm.clone());
+        assertSame(first, pool.acquire(copy));
+        pool.release(first);
+        pool.release(first);
+
+        // Ya no está: una copia nueva pasa a ser la del pool
+        Sample fresh = new Sample(pcm.clone());
+        assertSame(fresh, pool.acquire(fresh));
+        pool.release(fresh);
+    }
+
+    @Test
+    void filesWithTheSameAudioLoadOnce() throws Exception {
+        short[] pcm = noise(4_410);
+        File kick = new File(dir, "kick.wav");
+        File renamed = new File(dir, "kick copy.wav");
+        writeWav(kick, pcm);
+        writeWav(renamed, pcm);
+
+        Sample loaded = pool.acquire(pool.load(kick));
+        assertArrayEquals(pcm, loaded.getData());
+        // El mismo archivo sin cambios no se vuelve a decodificar, y otro con el mismo audio tampoco se duplica
+        assertSame(loaded, pool.load(kick));
+        assertSame(loaded, pool.load(renamed));
+
+        pool.release(loaded);
+    }
+
+    @Test
+    void changedFileIsLoadedAgain() throws Exception {
+        File hat = new File(dir, "hat.wav");
+        short[] original = noise(2_000);
+        writeWav(hat, original);
+        Sample loaded = pool.acquire(pool.load(hat));
+
+        short[] edited = noise(2_500);
+        writeWav(hat, edited);
+        hat.setLastModified(hat.lastModified() + 2_000);
+        Sample reloaded = pool.acquire(pool.load(hat));
+
+        assertNotSame(loaded, reloaded);
+        assertArrayEquals(edited, reloaded.getData());
+        pool.release(loaded);
+        pool.release(reloaded);
+    }
+
+    private static short[] noise(int frames) {
+        Random random = new Random(SEEDS.incrementAndGet());
+        short[] data = new short[frames];
+        for (int i = 0; i < frames; i++) data[i] = (short) random.nextInt();
+        return data;
+    }
+
+    // 44100 Hz, 16 bits, mono: lo mismo que produce AudioFileLoader, así el audio vuelve idéntico
+    private static void writeWav(File file, short[] pcm) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(pcm);
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(bytes.array()), format, pcm.length)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Los bloques que suenan en un frame (lo que usa el reproductor al hacer seek, loop o pausa) son los
+ * mismos que saldrían mirando todos uno a uno.
+ */
+class SongTimelineTest {
+
+    @Test
+    void soundingClipsMatchBruteForce() {
+        Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            int count = random.nextInt(60);
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = random.nextInt(10_000);
+                // Muchos cortos y alguno muy largo, que es el caso que obligaba a mirar hacia atrás
+                ends[i] = starts[i] + 1 + (random.nextInt(10) == 0 ? random.nextInt(10_000) : random.nextInt(500));
+            }
+            SongTimeline timeline = timeline(starts, ends);
+            for (int q = 0; q < 200; q++) {
+                long frame = random.nextInt(12_000) - 100;
+                assertEquals(bruteForce(starts, ends, frame), sounding(timeline, frame), "frame " + frame);
+            }
+        }
+    }
+
+    @Test
+    void clipEndIsExclusiveAndStartInclusive() {
+        SongTimeline timeline = timeline(new long[]{0, 100, 100}, new long[]{100, 200, 150});
+        assertEquals(List.of(0), sounding(timeline, 99));
+        assertEquals(List.of(1, 2), sounding(timeline, 100));
+        assertEquals(List.of(1), sounding(timeline, 150));
+        assertEquals(List.of(), sounding(timeline, 200));
+    }
+
+    @Test
+    void emptyTimelineHasNothingSounding() {
+        assertEquals(-1, timeline(new long[0], new long[0]).nextClipSoundingAt(0, 0));
+    }
+
+    // Bloques sueltos: solo importan sus inicios y finales
+    private static SongTimeline timeline(long[] starts, long[] ends) {
+        int count = starts.length;
+        long[][] eventFrames = new long[count][0];
+        int[][] eventSteps = new int[count][0];
+        return new SongTimeline(120.0, new long[0], new int[0], new int[0], new int[0],
+                new SequencerTrack[count], new PatternModel.Snapshot[count],
+                starts, ends, eventFrames, eventSteps);
+    }
+
+    // Índices de bloque (orden de la playlist), ordenados
+    private static List<Integer> sounding(SongTimeline timeline, long frame) {
+        List<Integer> clips = new ArrayList<>();
+        for (int i = timeline.nextClipSoundingAt(frame, 0); i >= 0; i = timeline.nextClipSoundingAt(frame, i + 1)) {
+            clips.add(timeline.getClipByStart(i));
+        }
+        clips.sort(null);
+        return clips;
+    }
+
+    private static List<Integer> bruteForce(long[] starts, long[] ends, long frame) {
+        List<Integer> clips = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            if (starts[i] <= frame && ends[i] > frame) clips.add(i);
+        }
+        return clips;
+    }
+}
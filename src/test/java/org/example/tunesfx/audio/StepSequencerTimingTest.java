@@ -0,0 +1,108 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * El secuenciador dispara cada paso en su frame exacto, sin deriva aunque pasen muchos compases.
+ * Se mezcla offline con un sample que es un solo impulso: cada frame distinto de cero es el
+ * principio de un paso.
+ */
+class StepSequencerTimingTest {
+
+    private static final int BARS = 64;
+    private static final int STEPS_PER_BAR = 16;
+
+    @Test
+    void stepsLandOnTheirFrameWithBpmOfExactFrames() {
+        // 120 bpm: 5512.5 frames por paso, se puede comparar al frame
+        List<Long> starts = render(120.0, 512);
+        double stepFrames = StepSequencer.stepFrames(120.0);
+        assertEquals(BARS * STEPS_PER_BAR, starts.size());
+        for (int k = 0; k < starts.size(); k++) {
+            assertEquals((long) (k * stepFrames), starts.get(k), "paso " + k);
+        }
+    }
+
+    @Test
+    void noDriftWithFractionalStepsAndOddBlockSize() {
+        // 133 bpm: el paso no es un número redondo de frames y los bloques no encajan con los pasos
+        double bpm = 133.0;
+        List<Long> starts = render(bpm, 300);
+        double stepFrames = StepSequencer.stepFrames(bpm);
+        assertEquals(BARS * STEPS_PER_BAR, starts.size());
+        for (int k = 0; k < starts.size(); k++) {
+            double exact = k * stepFrames;
+            long frame = starts.get(k);
+            // Siempre el frame en el que cae el paso (truncado), nunca uno acumulando error
+            assertTrue(frame <= exact + 1e-6 && exact - frame < 1.0,
+                    "paso " + k + ": frame " + frame + ", tocaba " + exact);
+        }
+    }
+
+    @Test
+    void stepDelayIsAppliedInExactFrames() {
+        PatternModel pattern = new PatternModel();
+        pattern.setActive(0, true);
+        pattern.editStep(0, step -> step.setDelay(0.5));
+        pattern.setActive(4, true);
+
+        // Con el último paso activo en el 4 el bucle dura 8 pasos
+        List<Long> starts = render(pattern, 120.0, 256, 8 * 4);
+        double stepFrames = StepSequencer.stepFrames(120.0);
+        assertEquals(8, starts.size());
+        for (int bar = 0; bar < 4; bar++) {
+            double barStart = bar * 8 * stepFrames;
+            long first = (long) barStart + (int) (0.5 * stepFrames);
+            long second = (long) (barStart + 4 * stepFrames);
+            assertEquals(first, starts.get(bar * 2), "compás " + bar);
+            assertEquals(second, starts.get(bar * 2 + 1), "compás " + bar);
+        }
+    }
+
+    private static List<Long> render(double bpm, int blockSize) {
+        PatternModel pattern = new PatternModel();
+        for (int step = 0; step < STEPS_PER_BAR; step++) pattern.setActive(step, true);
+        return render(pattern, bpm, blockSize, BARS * STEPS_PER_BAR);
+    }
+
+    private static List<Long> render(PatternModel pattern, double bpm, int blockSize, int steps) {
+        VoiceMixer mixer = new VoiceMixer(false);
+        MixerChannel channel = new MixerChannel();
+        Sample impulse = impulse();
+        StepSequencer sequencer = new StepSequencer();
+        sequencer.addTrack(new SequencerTrack() {
+            @Override public Sample getSample() { return impulse; }
+            @Override public MixerChannel getChannel() { return channel; }
+            @Override public PatternModel getPattern() { return pattern; }
+        });
+        sequencer.setBpm(bpm);
+        sequencer.start();
+        mixer.addScheduler(sequencer);
+
+        long totalFrames = (long) (steps * StepSequencer.stepFrames(bpm));
+        float[] left = new float[blockSize];
+        float[] right = new float[blockSize];
+        List<Long> starts = new ArrayList<>();
+        for (long block = 0; block < totalFrames; block += blockSize) {
+            int frames = (int) Math.min(blockSize, totalFrames - block);
+            mixer.render(left, right, frames);
+            for (int i = 0; i < frames; i++) {
+                if (left[i] != 0f) starts.add(block + i);
+            }
+        }
+        return starts;
+    }
+
+    // Un impulso seguido de silencio: la voz solo suena en su primer frame
+    private static Sample impulse() {
+        short[] data = new short[256];
+        data[0] = Short.MAX_VALUE;
+        return new Sample(data);
+    }
+}
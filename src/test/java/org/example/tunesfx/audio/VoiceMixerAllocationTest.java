@@ -0,0 +1,102 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Mezclar un bloque no reserva memoria: ni el render, ni los disparos del secuenciador, ni los robos
+ * de voz, ni la conversión a short del callback de audio. Se mide con los bytes reservados por el hilo
+ * (com.sun.management.ThreadMXBean) antes y después de muchos bloques, tras calentar el JIT.
+ */
+class VoiceMixerAllocationTest {
+
+    private static final int WARMUP_BLOCKS = 4_000;
+    private static final int MEASURED_BLOCKS = 1_000;
+
+    @Test
+    void renderDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        VoiceMixer mixer = busyMixer();
+        float[] left = new float[Audio.BUFFER_SIZE];
+        float[] right = new float[Audio.BUFFER_SIZE];
+
+        for (int i = 0; i < WARMUP_BLOCKS; i++) mixer.render(left, right, Audio.BUFFER_SIZE);
+
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_BLOCKS; i++) mixer.render(left, right, Audio.BUFFER_SIZE);
+        long after = threads.getThreadAllocatedBytes(thread);
+
+        assertEquals(0, after - before, "bytes reservados en " + MEASURED_BLOCKS + " bloques");
+    }
+
+    @Test
+    void renderIntoDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        VoiceMixer mixer = busyMixer();
+        ShortBuffer out = ByteBuffer.allocateDirect(Audio.BUFFER_SIZE * 2 * Short.BYTES)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+
+        for (int i = 0; i < WARMUP_BLOCKS; i++) mixer.renderInto(out, Audio.BUFFER_SIZE);
+
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_BLOCKS; i++) mixer.renderInto(out, Audio.BUFFER_SIZE);
+        long after = threads.getThreadAllocatedBytes(thread);
+
+        assertEquals(0, after - before, "bytes reservados en " + MEASURED_BLOCKS + " bloques");
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "la JVM no mide la memoria reservada por hilo");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Un mezclador offline con trabajo de sobra: un secuenciador a 174 bpm con todas las filas
+     * en todos los pasos (más disparos que voces, así que también roba), polifonía limitada,
+     * choke groups y delays.
+     */
+    private static VoiceMixer busyMixer() {
+        VoiceMixer mixer = new VoiceMixer(false);
+        StepSequencer sequencer = new StepSequencer();
+        short[] data = new short[30_000];
+        for (int i = 0; i < data.length; i++) data[i] = (short) (Math.sin(i * 0.05) * 12_000);
+        Sample sample = new Sample(data);
+
+        for (int row = 0; row < 24; row++) {
+            PatternModel pattern = new PatternModel();
+            for (int step = 0; step < 16; step++) pattern.setActive(step, true);
+            pattern.editAll(step -> {
+                step.setDelay(0.25);
+                step.setPan(0.3);
+                step.setAttack(0.1);
+                step.setRelease(0.2);
+            });
+            MixerChannel channel = new MixerChannel();
+            if (row % 3 == 0) channel.setMaxPolyphony(1);
+            if (row % 4 == 0) channel.setChokeGroup(1 + row % 2);
+            sequencer.addTrack(new SequencerTrack() {
+                @Override public Sample getSample() { return sample; }
+                @Override public MixerChannel getChannel() { return channel; }
+                @Override public PatternModel getPattern() { return pattern; }
+            });
+        }
+        sequencer.setBpm(174);
+        sequencer.start();
+        mixer.addScheduler(sequencer);
+        mixer.setStealPolicy(VoiceMixer.StealPolicy.QUIETEST);
+        return mixer;
+    }
+}
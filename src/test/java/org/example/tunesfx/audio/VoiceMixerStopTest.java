@@ -0,0 +1,140 @@
+package org.example.tunesfx.audio;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Parar un canal a mitad de bloque (el final de un bloque de la canción) corta en ese frame exacto:
+ * ni antes, ni se pierden las voces con delay que empiezan antes del corte.
+ */
+class VoiceMixerStopTest {
+
+    private static final int BLOCK = 512;
+    private static final int STOP_AT = 300;
+
+    @Test
+    void voicesPlayUntilTheStopFrameAndThenFade() {
+        float[] left = renderOneBlock((mixer, channel, sample) -> {
+            mixer.trigger(channel, sample, 1.0, 1.0, 0.0, 0.0, 0.0, 1.0, 0);
+            mixer.stop(channel, STOP_AT);
+        });
+        for (int i = 0; i < STOP_AT; i++) assertTrue(left[i] > 0.4f, "frame " + i);
+        assertSilentFrom(left, STOP_AT + SampleVoice.STOP_FADE_SAMPLES + 1);
+    }
+
+    @Test
+    void delayedVoiceStartingBeforeTheStopStillSounds() {
+        float[] left = renderOneBlock((mixer, channel, sample) -> {
+            mixer.trigger(channel, sample, 1.0, 1.0, 0.0, 0.0, 0.0, 1.0, 100);
+            mixer.stop(channel, STOP_AT);
+        });
+        for (int i = 0; i < 100; i++) assertEquals(0f, left[i], "frame " + i);
+        for (int i = 100; i < STOP_AT; i++) assertTrue(left[i] > 0.4f, "frame " + i);
+        assertSilentFrom(left, STOP_AT + SampleVoice.STOP_FADE_SAMPLES + 1);
+    }
+
+    @Test
+    void delayedVoiceStartingAfterTheStopNeverSounds() {
+        float[] left = renderOneBlock((mixer, channel, sample) -> {
+            mixer.trigger(channel, sample, 1.0, 1.0, 0.0, 0.0, 0.0, 1.0, STOP_AT + 50);
+            mixer.stop(channel, STOP_AT);
+        });
+        assertSilentFrom(left, 0);
+    }
+
+    @Test
+    void voicesTriggeredAfterTheStopAreNotAffected() {
+        // El bloque siguiente de la misma fila empieza justo donde acaba el anterior
+        float[] left = renderOneBlock((mixer, channel, sample) -> {
+            mixer.trigger(channel, sample, 1.0, 0.5, 0.0, 0.0, 0.0, 1.0, 0);
+            mixer.stop(channel, STOP_AT);
+            mixer.trigger(channel, sample, 1.0, 0.5, 0.0, 0.0, 0.0, 1.0, STOP_AT);
+        });
+        for (int i = STOP_AT + SampleVoice.STOP_FADE_SAMPLES + 1; i < BLOCK; i++) {
+            assertTrue(left[i] > 0.2f, "frame " + i);
+        }
+    }
+
+    @Test
+    void chokedVoicePlaysUntilTheChokingVoiceStarts() {
+        // Hi-hat abierto en una fila y cerrado en otra del mismo grupo, que entra a mitad de bloque
+        MixerChannel open = new MixerChannel();
+        open.setChokeGroup(1);
+        float[] left = renderOneBlock((mixer, closed, sample) -> {
+            closed.setChokeGroup(1);
+            mixer.trigger(open, sample, 1.0, 0.5, 0.0, 0.0, 0.0, 1.0, 0);
+            mixer.trigger(closed, sample, 1.0, 0.25, 0.0, 0.0, 0.0, 1.0, STOP_AT);
+        });
+        // Hasta el cerrado solo suena el abierto, entero
+        for (int i = 0; i < STOP_AT; i++) assertEquals(0.5f, left[i], 0.01f, "frame " + i);
+        // Después del fundido solo queda el cerrado
+        for (int i = STOP_AT + SampleVoice.STOP_FADE_SAMPLES + 1; i < BLOCK; i++) {
+            assertEquals(0.25f, left[i], 0.01f, "frame " + i);
+        }
+    }
+
+    @Test
+    void chokeDropsADelayedVoiceThatHasNotStartedYet() {
+        MixerChannel open = new MixerChannel();
+        open.setChokeGroup(2);
+        float[] left = renderOneBlock((mixer, closed, sample) -> {
+            closed.setChokeGroup(2);
+            mixer.trigger(open, sample, 1.0, 0.5, 0.0, 0.0, 0.0, 1.0, STOP_AT + 50);
+            mixer.trigger(closed, sample, 1.0, 0.25, 0.0, 0.0, 0.0, 1.0, STOP_AT);
+        });
+        for (int i = 0; i < STOP_AT; i++) assertEquals(0f, left[i], "frame " + i);
+        for (int i = STOP_AT; i < BLOCK; i++) assertEquals(0.25f, left[i], 0.01f, "frame " + i);
+    }
+
+    @Test
+    void stopFromTheUiKeepsTheOrderOfTheQueuedTriggers() {
+        // Desde fuera del hilo de audio todo se encola: el stop para lo de antes y no lo de después
+        VoiceMixer mixer = new VoiceMixer(false);
+        MixerChannel channel = new MixerChannel();
+        Sample sample = constant();
+        mixer.trigger(channel, sample, 1.0, 0.5, 0.0, 0.0, 0.0, 1.0, 0);
+        mixer.stop(channel);
+        mixer.trigger(channel, sample, 1.0, 0.25, 0.0, 0.0, 0.0, 1.0, 0);
+
+        float[] left = new float[BLOCK];
+        mixer.render(left, new float[BLOCK], BLOCK);
+        assertTrue(left[0] > 0.7f);
+        for (int i = SampleVoice.STOP_FADE_SAMPLES + 1; i < BLOCK; i++) {
+            assertEquals(0.25f, left[i], 0.01f, "frame " + i);
+        }
+    }
+
+    private interface BlockAction {
+        void run(VoiceMixer mixer, MixerChannel channel, Sample sample);
+    }
+
+    // Un solo bloque; la acción se ejecuta como scheduler, igual que el reproductor de la canción
+    private static float[] renderOneBlock(BlockAction action) {
+        VoiceMixer mixer = new VoiceMixer(false);
+        MixerChannel channel = new MixerChannel();
+        Sample sample = constant();
+        mixer.addScheduler((m, blockStart, frames) -> {
+            if (blockStart == 0) action.run(m, channel, sample);
+            return false;
+        });
+        float[] left = new float[BLOCK];
+        float[] right = new float[BLOCK];
+        mixer.render(left, right, BLOCK);
+        return left;
+    }
+
+    private static void assertSilentFrom(float[] buffer, int from) {
+        for (int i = from; i < buffer.length; i++) assertEquals(0f, buffer[i], "frame " + i);
+    }
+
+    // Continua a media escala: suena igual en todos los frames mientras la voz esté viva
+    private static Sample constant() {
+        short[] data = new short[4 * BLOCK];
+        Arrays.fill(data, (short) 32767);
+        return new Sample(data);
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.tunesfx.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Niveles de detalle del zoom de la playlist y cuentas de la rejilla (sin JavaFX).
+ */
+class PlaylistGridTest {
+
+    private static final double TRACK_HEIGHT = 40;
+
+    @Test
+    void levelOfDetailFollowsTheZoom() {
+        // Zoom por defecto (160 px por compás): pasos de 10 px, no caben; beats de 40 px, sí
+        assertFalse(PlaylistGrid.showsSteps(160));
+        assertTrue(PlaylistGrid.showsBeats(160));
+        assertTrue(PlaylistGrid.showsBeatLabels(160));
+
+        // Justo en el límite de los pasos (12 px cada uno)
+        assertTrue(PlaylistGrid.showsSteps(192));
+        assertFalse(PlaylistGrid.showsSteps(191.9));
+
+        // Muy alejado solo quedan los compases
+        assertFalse(PlaylistGrid.showsBeats(20));
+        assertFalse(PlaylistGrid.showsBeatLabels(20));
+    }
+
+    @Test
+    void marksAreThinnedInPowersOfTwo() {
+        assertEquals(1, PlaylistGrid.barsPerMark(160, PlaylistGrid.MIN_LABEL_SPACING));
+        assertEquals(1, PlaylistGrid.barsPerMark(40, PlaylistGrid.MIN_LABEL_SPACING));
+        assertEquals(2, PlaylistGrid.barsPerMark(39, PlaylistGrid.MIN_LABEL_SPACING));
+        assertEquals(16, PlaylistGrid.barsPerMark(4, PlaylistGrid.MIN_LABEL_SPACING));
+        for (double width = 4; width <= 2560; width *= 1.15) {
+            long every = PlaylistGrid.barsPerMark(width, PlaylistGrid.MIN_LINE_SPACING);
+            assertEquals(1, Long.bitCount(every), "potencia de 2 con " + width);
+            assertTrue(every * width >= PlaylistGrid.MIN_LINE_SPACING);
+            // Y la más densa posible: con la mitad ya no cabrían
+            assertTrue(every == 1 || every / 2 * width < PlaylistGrid.MIN_LINE_SPACING);
+        }
+    }
+
+    @Test
+    void zoomKeepsTheBarUnderTheMouseInPlace() {
+        double scroll = 1234;
+        double anchorX = 300;
+        double oldWidth = 160;
+        double barUnderMouse = (anchorX + scroll) / oldWidth;
+        for (double newWidth : new double[]{4, 37.5, 160 * 1.15, 2560}) {
+            double newScroll = PlaylistGrid.scrollAfterZoom(scroll, anchorX, oldWidth, newWidth);
+            assertEquals(barUnderMouse, (anchorX + newScroll) / newWidth, 1e-9, "zoom a " + newWidth);
+        }
+        // Sin cambio de zoom no se mueve
+        assertEquals(scroll, PlaylistGrid.scrollAfterZoom(scroll, anchorX, oldWidth, oldWidth), 1e-9);
+    }
+
+    @Test
+    void trackHitTestingAndVisibleRange() {
+        assertEquals(0, PlaylistGrid.trackAt(0, TRACK_HEIGHT, 40));
+        assertEquals(0, PlaylistGrid.trackAt(39.9, TRACK_HEIGHT, 40));
+        assertEquals(1, PlaylistGrid.trackAt(40, TRACK_HEIGHT, 40));
+        assertEquals(-1, PlaylistGrid.trackAt(-0.1, TRACK_HEIGHT, 40));
+        assertEquals(-1, PlaylistGrid.trackAt(40 * TRACK_HEIGHT, TRACK_HEIGHT, 40));
+
+        // Una vista de 200 px con scroll de 1000 px: pistas 25 a 30 (la 30 asoma)
+        assertEquals(25, PlaylistGrid.firstTrackFrom(1000, TRACK_HEIGHT));
+        assertEquals(30, PlaylistGrid.lastTrackTo(1200, TRACK_HEIGHT, 200));
+        // Recortado a las pistas que hay
+        assertEquals(0, PlaylistGrid.firstTrackFrom(-50, TRACK_HEIGHT));
+        assertEquals(39, PlaylistGrid.lastTrackTo(10_000, TRACK_HEIGHT, 40));
+    }
+}
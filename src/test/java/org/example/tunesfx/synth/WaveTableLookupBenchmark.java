@@ -0,0 +1,112 @@
+package org.example.tunesfx.synth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de leer la forma de onda de un bloque de 512 muestras con un unison de 7 voces:
+ * <ul>
+ *   <li>mathSin: calcular Math.sin en cada muestra (lo más ingenuo)</li>
+ *   <li>directIndex: lo que hacía antes getNextSample, fase double e índice truncado en la tabla de 8192</li>
+ *   <li>mipmapFixedPoint: lo de ahora ({@link Oscilator#addTable}), mipmap band-limited con fase
+ *       en punto fijo e interpolación lineal</li>
+ * </ul>
+ * No es un test (no lo lanza surefire). Se ejecuta con el main de esta clase tras {@code mvn test-compile},
+ * con target/classes, target/test-classes y las dependencias de test en el classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaveTableLookupBenchmark {
+
+    private static final int FRAMES = 512;
+    private static final int UNISON = 7;
+    private static final double TABLE_STEP_PER_HZ = (double) WaveTable.SIZE / Sintetizador.AudioInfo.SAMPLE_RATE;
+
+    // Una nota grave, una media y una aguda (la aguda usa niveles altos del mipmap)
+    @Param({"110", "880", "3520"})
+    public double frequency;
+
+    private final float[] out = new float[FRAMES];
+    private final double[] phases = new double[UNISON];
+    private final double[] steps = new double[UNISON];
+    private final float[][] levels = new float[UNISON][];
+    private float[] table;
+    private float gain;
+
+    @Setup
+    public void setup() {
+        table = WaveTable.Saw.getSamples();
+        gain = 1f / UNISON;
+        for (int u = 0; u < UNISON; u++) {
+            // Mismo reparto de detune que Oscilator.recalculateVoices (0.3 semitonos)
+            double spread = -1.0 + 2.0 * u / (UNISON - 1);
+            steps[u] = frequency * TABLE_STEP_PER_HZ * Math.pow(2, spread * 0.3 / 12.0);
+            phases[u] = u * 997.0;
+            levels[u] = WaveTable.Saw.getMipLevel(WaveTable.mipLevelFor(steps[u]));
+        }
+    }
+
+    @Benchmark
+    public float[] mathSin() {
+        Arrays.fill(out, 0f);
+        for (int u = 0; u < UNISON; u++) {
+            double phase = phases[u];
+            double step = steps[u];
+            for (int i = 0; i < FRAMES; i++) {
+                out[i] += (float) Math.sin(phase * (2 * Math.PI / WaveTable.SIZE)) * gain;
+                phase += step;
+                if (phase >= WaveTable.SIZE) phase -= WaveTable.SIZE;
+            }
+            phases[u] = phase;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] directIndex() {
+        Arrays.fill(out, 0f);
+        for (int u = 0; u < UNISON; u++) {
+            double phase = phases[u];
+            double step = steps[u];
+            for (int i = 0; i < FRAMES; i++) {
+                out[i] += table[(int) phase] * gain;
+                phase += step;
+                if (phase >= WaveTable.SIZE) phase -= WaveTable.SIZE;
+            }
+            phases[u] = phase;
+        }
+        return out;
+    }
+
+    @Benchmark
+    public float[] mipmapFixedPoint() {
+        Arrays.fill(out, 0f);
+        for (int u = 0; u < UNISON; u++) {
+            phases[u] = Oscilator.addTable(levels[u], phases[u], steps[u], gain, out, 0, FRAMES);
+        }
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(WaveTableLookupBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.tunesfx.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * La caché de PCM en disco: se invalida cuando el archivo cambia, se queda dentro del presupuesto
+ * borrando lo menos usado, se recupera si le borran un .pcm por fuera y el índice sobrevive entre ejecuciones.
+ * El contenido de los "archivos de audio" da igual (solo se hashea), así que son bytes aleatorios.
+ */
+class PcmDiskCacheTest {
+
+    private static final long BUDGET = 1 << 20;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void changedFilesAreConvertedAgain() throws IOException {
+        PcmDiskCache cache = new PcmDiskCache(new File(dir, "cache"), BUDGET);
+        File source = source("a.wav", 1, 3_000);
+        short[] pcm = pcm(1, 1_000);
+        assertNull(cache.load(source));
+        cache.store(source, pcm);
+        assertArrayEquals(pcm, cache.load(source));
+
+        // Otra fecha con el mismo contenido: se vuelve a hashear y sigue valiendo
+        assertTrue(source.setLastModified(source.lastModified() + 10_000));
+        assertArrayEquals(pcm, cache.load(source));
+        // Una copia con el mismo contenido comparte el .pcm
+        File copy = new File(dir, "copy.wav");
+        Files.copy(source.toPath(), copy.toPath());
+        assertArrayEquals(pcm, cache.load(copy));
+
+        // Otro contenido del mismo tamaño y con otra fecha: hay que convertirlo
+        writeRandom(source, 2, 3_000);
+        assertTrue(source.setLastModified(source.lastModified() + 20_000));
+        assertNull(cache.load(source));
+
+        // Cambia el tamaño
+        writeRandom(copy, 1, 3_001);
+        assertNull(cache.load(copy));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedWithinTheBudget() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        // Caben tres .pcm de 1000 frames (2000 bytes cada uno)
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, 6_000);
+        File a = source("a.wav", 1, 500);
+        File b = source("b.wav", 2, 500);
+        File c = source("c.wav", 3, 500);
+        File d = source("d.wav", 4, 500);
+        cache.store(a, pcm(1, 1_000));
+        cache.store(b, pcm(2, 1_000));
+        cache.store(c, pcm(3, 1_000));
+        // Usar a la pasa al final: el menos usado ahora es b
+        assertArrayEquals(pcm(1, 1_000), cache.load(a));
+        cache.store(d, pcm(4, 1_000));
+
+        assertNull(cache.load(b));
+        assertArrayEquals(pcm(1, 1_000), cache.load(a));
+        assertArrayEquals(pcm(3, 1_000), cache.load(c));
+        assertArrayEquals(pcm(4, 1_000), cache.load(d));
+        assertEquals(3, blobCount(cacheDir));
+        assertTrue(blobBytes(cacheDir) <= 6_000);
+
+        // Uno que no cabe solo se queda él: se borra todo lo demás, pero nunca lo que se acaba de guardar
+        File big = source("big.wav", 5, 500);
+        cache.store(big, pcm(5, 4_000));
+        assertArrayEquals(pcm(5, 4_000), cache.load(big));
+        assertNull(cache.load(a));
+        assertEquals(1, blobCount(cacheDir));
+    }
+
+    @Test
+    void deletedBlobIsForgottenAndStoredAgain() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        PcmDiskCache cache = new PcmDiskCache(cacheDir, BUDGET);
+        File source = source("a.wav", 1, 2_000);
+        short[] pcm = pcm(1, 1_000);
+        cache.store(source, pcm);
+
+        for (File blob : blobs(cacheDir)) assertTrue(blob.delete());
+        assertNull(cache.load(source));
+        // Olvidado: el siguiente store vuelve a escribir el .pcm en lugar de fiarse del índice
+        cache.store(source, pcm);
+        assertEquals(1, blobCount(cacheDir));
+        assertArrayEquals(pcm, cache.load(source));
+    }
+
+    @Test
+    void indexIsKeptAcrossInstances() throws IOException {
+        File cacheDir = new File(dir, "cache");
+        File a = source("a.wav", 1, 2_000);
+        File b = source("b.wav", 2, 2_000);
+        PcmDiskCache first = new PcmDiskCache(cacheDir, BUDGET);
+        first.store(a, pcm(1, 1_000));
+        first.store(b, pcm(2, 1_000));
+        assertTrue(new File(cacheDir, "index.bin").isFile());
+
+        // Otra ejecución: lo encuentra sin que nadie vuelva a guardar nada
+        PcmDiskCache second = new PcmDiskCache(cacheDir, BUDGET);
+        assertArrayEquals(pcm(1, 1_000), second.load(a));
+        assertArrayEquals(pcm(2, 1_000), second.load(b));
+
+        // Lo que ya no está en disco al arrancar no se carga en el índice
+        for (File blob : blobs(cacheDir)) assertTrue(blob.delete());
+        PcmDiskCache third = new PcmDiskCache(cacheDir, BUDGET);
+        assertNull(third.load(a));
+    }
+
+    private File source(String name, long seed, int bytes) throws IOException {
+        File file = new File(dir, name);
+        writeRandom(file, seed, bytes);
+        return file;
+    }
+
+    private static void writeRandom(File file, long seed, int bytes) throws IOException {
+        byte[] data = new byte[bytes];
+        new Random(seed).nextBytes(data);
+        Files.write(file.toPath(), data);
+    }
+
+    private static short[] pcm(long seed, int frames) {
+        Random random = new Random(seed * 31);
+        short[] data = new short[frames];
+        for (int i = 0; i < frames; i++) data[i] = (short) random.nextInt();
+        return data;
+    }
+
+    private static File[] blobs(File cacheDir) {
+        return cacheDir.listFiles((d, name) -> name.endsWith(".pcm"));
+    }
+
+    private static int blobCount(File cacheDir) {
+        return blobs(cacheDir).length;
+    }
+
+    private static long blobBytes(File cacheDir) {
+        long total = 0;
+        for (File blob : blobs(cacheDir)) total += blob.length();
+        return total;
+    }
+}
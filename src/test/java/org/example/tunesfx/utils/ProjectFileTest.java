@@ -0,0 +1,309 @@
+package org.example.tunesfx.utils;
+
+import org.example.tunesfx.audio.PatternModel;
+import org.example.tunesfx.audio.PlaylistItem;
+import org.example.tunesfx.audio.RackTrack;
+import org.example.tunesfx.audio.Sample;
+import org.example.tunesfx.audio.SongProject;
+import org.example.tunesfx.audio.StepData;
+import org.example.tunesfx.synth.Filter;
+import org.example.tunesfx.synth.LFO;
+import org.example.tunesfx.synth.SynthPatch;
+import org.example.tunesfx.synth.WaveTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guardar y volver a abrir un .tfxp deja el proyecto igual: tempo, patch, filas con sus pasos,
+ * playlist y audio de los samples (embebidos o referenciados por ruta).
+ */
+class ProjectFileTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void roundTripWithEmbeddedSamples() throws IOException {
+        Sample kick = noise(1, 4_000);
+        Sample snare = noise(2, 7_321);
+        SongProject project = sampleProject(kick, snare);
+
+        File file = new File(dir, "song." + ProjectFile.EXTENSION);
+        ProjectFile.save(file, project, true);
+        SongProject loaded = ProjectFile.open(file);
+        ProjectFile.awaitSamples(loaded);
+
+        assertProjectsEqual(project, loaded);
+        // Dos filas con el mismo Sample se guardan una vez y vuelven compartiendo el mismo objeto
+        assertSame(loaded.findTrack("Kick").getSample(), loaded.findTrack("Kick 2").getSample());
+        assertNull(loaded.findTrack("Empty").getSample());
+    }
+
+    @Test
+    void referencedSamplesResolveRelativeToTheProject() throws Exception {
+        short[] pcm = noise(3, 5_000).getData();
+        File samplesDir = new File(dir, "samples");
+        samplesDir.mkdirs();
+        File wav = new File(samplesDir, "hat.wav");
+        writeWav(wav, pcm);
+
+        SongProject project = new SongProject();
+        RackTrack hat = project.addTrack("Hat");
+        hat.setSample(new Sample(pcm));
+        hat.setSampleFile(wav);
+        hat.getPattern().setActive(2, true);
+
+        File file = new File(dir, "ref." + ProjectFile.EXTENSION);
+        ProjectFile.save(file, project, false);
+        // Solo la cabecera: el audio se queda en el .wav
+        assertTrue(file.length() < pcm.length);
+
+        // Se mueve la carpeta entera: la ruta relativa sigue valiendo aunque la absoluta ya no exista
+        File moved = new File(dir, "moved");
+        moved.mkdirs();
+        Files.move(samplesDir.toPath(), moved.toPath().resolve("samples"));
+        Files.move(file.toPath(), moved.toPath().resolve(file.getName()));
+
+        SongProject loaded = ProjectFile.open(new File(moved, file.getName()));
+        ProjectFile.awaitSamples(loaded);
+        RackTrack loadedHat = loaded.findTrack("Hat");
+        assertEquals(new File(moved, "samples/hat.wav").getAbsoluteFile(), loadedHat.getSampleFile().getAbsoluteFile());
+        assertArrayEquals(pcm, loadedHat.getSample().getData());
+        assertTrue(loadedHat.getPattern().snapshot().isActive(2));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotProjects() throws IOException {
+        File bogus = new File(dir, "bogus." + ProjectFile.EXTENSION);
+        Files.write(bogus.toPath(), "not a project".getBytes());
+        assertThrows(IOException.class, () -> ProjectFile.open(bogus));
+    }
+
+    @Test
+    void truncatedFileIsReportedAsCorrupt() throws IOException {
+        File file = new File(dir, "cut." + ProjectFile.EXTENSION);
+        ProjectFile.save(file, sampleProject(noise(4, 1_000), noise(5, 1_000)), true);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(40);
+        }
+        assertThrows(IOException.class, () -> ProjectFile.open(file));
+    }
+
+    @Test
+    void embeddedSampleOutsideTheDataIsReportedAsCorrupt() throws IOException {
+        // Offset negativo (apuntaría a la cabecera) y número de frames negativo
+        assertThrows(IOException.class, () -> ProjectFile.open(withEmbeddedEntry(-4, 1_234)));
+        assertThrows(IOException.class, () -> ProjectFile.open(withEmbeddedEntry(0, -1)));
+        assertThrows(IOException.class, () -> ProjectFile.open(withEmbeddedEntry(Long.MAX_VALUE, 1_234)));
+    }
+
+    @Test
+    void saveReplacesTheFileWithoutLeavingTemporaries() throws IOException {
+        File file = new File(dir, "song." + ProjectFile.EXTENSION);
+        ProjectFile.save(file, sampleProject(noise(6, 9_000), noise(7, 9_000)), true);
+        SongProject second = sampleProject(noise(8, 500), noise(9, 500));
+        second.setBpm(90);
+        ProjectFile.save(file, second, true);
+
+        SongProject loaded = ProjectFile.open(file);
+        ProjectFile.awaitSamples(loaded);
+        assertProjectsEqual(second, loaded);
+        assertArrayEquals(new String[]{file.getName()}, dir.list());
+    }
+
+    // Guarda un proyecto con un solo sample embebido de 1234 frames y cambia su entrada en la tabla
+    private File withEmbeddedEntry(long offset, int frames) throws IOException {
+        SongProject project = new SongProject();
+        project.addTrack("Kick").setSample(noise(10, 1_234));
+        File file = new File(dir, "entry" + offset + "_" + frames + "." + ProjectFile.EXTENSION);
+        ProjectFile.save(file, project, true);
+
+        // La entrada original: offset 0 (long) y 1234 frames (int), en big-endian
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] original = ByteBuffer.allocate(12).putLong(0).putInt(1_234).array();
+        int at = indexOf(bytes, original);
+        assertTrue(at > 0);
+        ByteBuffer.wrap(bytes, at, 12).putLong(offset).putInt(frames);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) continue outer;
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    // --- Proyecto de prueba ---
+
+    private static SongProject sampleProject(Sample kick, Sample snare) {
+        SongProject project = new SongProject();
+        project.setBpm(137.5);
+
+        SynthPatch patch = new SynthPatch();
+        patch.getOscillator(0).setWaveTable(WaveTable.Saw);
+        patch.getOscillator(0).setToneOffset(-120);
+        patch.getOscillator(0).setUnisonVoices(5);
+        patch.getOscillator(0).setDetune(0.35);
+        patch.getOscillator(1).setMuted(true);
+        patch.getOscillator(2).setVolume(42);
+        patch.setAttack(0.01);
+        patch.setDecay(0.2);
+        patch.setSustain(0.6);
+        patch.setRelease(0.8);
+        patch.setFilterType(Filter.Tipo.values()[Filter.Tipo.values().length - 1]);
+        patch.setFilterCutoff(1234.5);
+        patch.setFilterResonance(3.3);
+        patch.setLfoWaveform(LFO.Waveform.values()[LFO.Waveform.values().length - 1]);
+        patch.setLfoTarget(LFO.Target.values()[LFO.Target.values().length - 1]);
+        patch.setLfoRate(4.5);
+        patch.setLfoAmount(0.25);
+        patch.setPolyphony(6);
+        patch.setSampleLengthSeconds(1.5);
+        project.setSynthPatch(patch);
+
+        RackTrack kickTrack = project.addTrack("Kick");
+        kickTrack.setSample(kick);
+        kickTrack.getChannel().setMaxPolyphony(2);
+        kickTrack.getChannel().setChokeGroup(3);
+        for (int step = 0; step < 16; step += 4) kickTrack.getPattern().setActive(step, true);
+        StepData tweaked = new StepData();
+        tweaked.setActive(true);
+        tweaked.setSemitoneOffset(-7);
+        tweaked.setVolume(0.7);
+        tweaked.setPan(-0.4);
+        tweaked.setAttack(0.05);
+        tweaked.setRelease(0.3);
+        tweaked.setDurationFactor(0.5);
+        tweaked.setDelay(0.25);
+        kickTrack.getPattern().setStep(63, tweaked);
+        // Un paso apagado pero con parámetros cambiados también se guarda
+        kickTrack.getPattern().editStep(9, step -> step.setPan(0.9));
+
+        RackTrack kick2 = project.addTrack("Kick 2");
+        kick2.setSample(kick);
+        kick2.getPattern().setActive(1, true);
+
+        RackTrack snareTrack = project.addTrack("Snare — ñ");
+        snareTrack.setSample(snare);
+        snareTrack.getPattern().setActive(4, true);
+        snareTrack.getPattern().setActive(12, true);
+
+        project.addTrack("Empty").setSample(null);
+
+        PlaylistItem a = new PlaylistItem("Kick", 0, 0);
+        a.setDurationBars(4);
+        PlaylistItem b = new PlaylistItem("Snare — ñ", 2, 1);
+        b.setDurationBars(1.75);
+        project.getPlaylist().add(a);
+        project.getPlaylist().add(b);
+        return project;
+    }
+
+    private static void assertProjectsEqual(SongProject expected, SongProject actual) {
+        assertEquals(expected.getBpm(), actual.getBpm());
+        assertPatchesEqual(expected.getSynthPatch(), actual.getSynthPatch());
+
+        assertEquals(expected.getTracks().keySet().stream().toList(), actual.getTracks().keySet().stream().toList());
+        for (RackTrack track : expected.getTracks().values()) {
+            RackTrack other = actual.findTrack(track.getName());
+            assertEquals(track.getChannel().getMaxPolyphony(), other.getChannel().getMaxPolyphony());
+            assertEquals(track.getChannel().getChokeGroup(), other.getChannel().getChokeGroup());
+            if (track.getSample() != null) {
+                assertArrayEquals(track.getSample().getData(), other.getSample().getData(), track.getName());
+            }
+            PatternModel.Snapshot a = track.getPattern().snapshot();
+            PatternModel.Snapshot b = other.getPattern().snapshot();
+            assertEquals(a.getActiveSteps(), b.getActiveSteps(), track.getName());
+            for (int step = 0; step < PatternModel.NUM_STEPS; step++) {
+                String where = track.getName() + " paso " + step;
+                assertEquals(a.getSemitoneOffset(step), b.getSemitoneOffset(step), where);
+                assertEquals(a.getVolume(step), b.getVolume(step), where);
+                assertEquals(a.getPan(step), b.getPan(step), where);
+                assertEquals(a.getAttack(step), b.getAttack(step), where);
+                assertEquals(a.getRelease(step), b.getRelease(step), where);
+                assertEquals(a.getDurationFactor(step), b.getDurationFactor(step), where);
+                assertEquals(a.getDelay(step), b.getDelay(step), where);
+            }
+        }
+
+        assertEquals(expected.getPlaylist().size(), actual.getPlaylist().size());
+        Iterator<PlaylistItem> it = actual.getPlaylist().iterator();
+        for (PlaylistItem item : expected.getPlaylist()) {
+            PlaylistItem other = it.next();
+            assertEquals(item.getPatternName(), other.getPatternName());
+            assertEquals(item.getStartBar(), other.getStartBar());
+            assertEquals(item.getTrackIndex(), other.getTrackIndex());
+            assertEquals(item.getDurationBars(), other.getDurationBars());
+        }
+    }
+
+    private static void assertPatchesEqual(SynthPatch expected, SynthPatch actual) {
+        for (int i = 0; i < SynthPatch.NUM_OSCILLATORS; i++) {
+            SynthPatch.OscillatorPatch a = expected.getOscillator(i);
+            SynthPatch.OscillatorPatch b = actual.getOscillator(i);
+            assertEquals(a.getWaveTable(), b.getWaveTable());
+            assertEquals(a.getToneOffset(), b.getToneOffset());
+            assertEquals(a.getVolume(), b.getVolume());
+            assertEquals(a.getUnisonVoices(), b.getUnisonVoices());
+            assertEquals(a.getDetune(), b.getDetune());
+            assertEquals(a.isMuted(), b.isMuted());
+        }
+        assertEquals(expected.getAttack(), actual.getAttack());
+        assertEquals(expected.getDecay(), actual.getDecay());
+        assertEquals(expected.getSustain(), actual.getSustain());
+        assertEquals(expected.getRelease(), actual.getRelease());
+        assertEquals(expected.getFilterType(), actual.getFilterType());
+        assertEquals(expected.getFilterCutoff(), actual.getFilterCutoff());
+        assertEquals(expected.getFilterResonance(), actual.getFilterResonance());
+        assertEquals(expected.getLfoWaveform(), actual.getLfoWaveform());
+        assertEquals(expected.getLfoTarget(), actual.getLfoTarget());
+        assertEquals(expected.getLfoRate(), actual.getLfoRate());
+        assertEquals(expected.getLfoAmount(), actual.getLfoAmount());
+        assertEquals(expected.getPolyphony(), actual.getPolyphony());
+        assertEquals(expected.getSampleLengthSeconds(), actual.getSampleLengthSeconds());
+    }
+
+    private static Sample noise(long seed, int frames) {
+        Random random = new Random(seed);
+        short[] data = new short[frames];
+        for (int i = 0; i < frames; i++) data[i] = (short) random.nextInt();
+        return new Sample(data);
+    }
+
+    // WAV a 44100 Hz, 16 bits, mono: el mismo formato al que convierte AudioFileLoader, así vuelve igual
+    private static void writeWav(File file, short[] pcm) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(pcm);
+        AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+        try (AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(bytes.array()), format, pcm.length)) {
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+        }
+    }
+}